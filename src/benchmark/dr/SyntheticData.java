@@ -0,0 +1,175 @@
+/*
+ * SyntheticData.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr;
+
+import dr.evolution.alignment.SimpleAlignment;
+import dr.evolution.coalescent.CoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.sequence.Sequence;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeModel;
+import dr.math.MathUtils;
+
+/**
+ * Synthetic data sets of a given size for the benchmarks. Everything is generated from
+ * a fixed seed so that each run (and each version of BEAST) sees the same data.
+ *
+ * @author Andrew Rambaut
+ */
+public final class SyntheticData {
+
+    public static final long SEED = 666;
+
+    // the substitution rate used to simulate the sequences (substitutions per site per unit time)
+    private static final double SUBSTITUTION_RATE = 0.05;
+
+    private SyntheticData() {
+    }
+
+    public static Taxa createTaxa(int taxonCount) {
+        Taxa taxa = new Taxa();
+        for (int i = 0; i < taxonCount; i++) {
+            taxa.addTaxon(new Taxon("taxon_" + (i + 1)));
+        }
+        return taxa;
+    }
+
+    /**
+     * Simulates a tree under a constant size coalescent with contemporaneous tips.
+     */
+    public static Tree createTree(Taxa taxa) {
+        ConstantPopulation demographic = new ConstantPopulation(Units.Type.YEARS);
+        demographic.setN0(10.0);
+        return new CoalescentSimulator().simulateTree(taxa, demographic);
+    }
+
+    public static TreeModel createTreeModel(int taxonCount) {
+        MathUtils.setSeed(SEED);
+        return new DefaultTreeModel("treeModel", createTree(createTaxa(taxonCount)));
+    }
+
+    /**
+     * Simulates nucleotide sequences down the tree under a Jukes-Cantor model so that the
+     * alignment has a realistic number of site patterns.
+     */
+    public static SimpleAlignment createAlignment(Tree tree, int siteCount) {
+        int[][] sequences = new int[tree.getNodeCount()][];
+
+        NodeRef root = tree.getRoot();
+        sequences[root.getNumber()] = new int[siteCount];
+        for (int i = 0; i < siteCount; i++) {
+            sequences[root.getNumber()][i] = MathUtils.nextInt(4);
+        }
+        simulateSequences(tree, root, sequences);
+
+        SimpleAlignment alignment = new SimpleAlignment();
+        alignment.setDataType(Nucleotides.INSTANCE);
+        for (int i = 0; i < tree.getExternalNodeCount(); i++) {
+            NodeRef tip = tree.getExternalNode(i);
+            Sequence sequence = new Sequence(tree.getNodeTaxon(tip), Nucleotides.INSTANCE, sequences[tip.getNumber()]);
+            alignment.addSequence(sequence);
+        }
+        return alignment;
+    }
+
+    private static void simulateSequences(Tree tree, NodeRef node, int[][] sequences) {
+        int[] parentSequence = sequences[node.getNumber()];
+        for (int j = 0; j < tree.getChildCount(node); j++) {
+            NodeRef child = tree.getChild(node, j);
+            double branchLength = tree.getNodeHeight(node) - tree.getNodeHeight(child);
+            // the probability of a substitution to any other state under JC69
+            double changeProbability = 0.75 * (1.0 - Math.exp(-4.0 / 3.0 * SUBSTITUTION_RATE * branchLength));
+
+            int[] sequence = parentSequence.clone();
+            for (int i = 0; i < sequence.length; i++) {
+                if (MathUtils.nextDouble() < changeProbability) {
+                    sequence[i] = (sequence[i] + 1 + MathUtils.nextInt(3)) % 4;
+                }
+            }
+            sequences[child.getNumber()] = sequence;
+            simulateSequences(tree, child, sequences);
+        }
+    }
+
+    /**
+     * Creates the text of a BEAST trees file (NEXUS with a translate table) with rates as
+     * node attributes.
+     */
+    public static String createTreesFile(int taxonCount, int treeCount) {
+        MathUtils.setSeed(SEED);
+        Taxa taxa = createTaxa(taxonCount);
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("#NEXUS\n\nBegin taxa;\n\tDimensions ntax=").append(taxonCount).append(";\n\tTaxlabels\n");
+        for (int i = 0; i < taxonCount; i++) {
+            builder.append("\t\t").append(taxa.getTaxonId(i)).append("\n");
+        }
+        builder.append("\t\t;\nEnd;\n\nBegin trees;\n\tTranslate\n");
+        for (int i = 0; i < taxonCount; i++) {
+            builder.append("\t\t").append(i + 1).append(" ").append(taxa.getTaxonId(i));
+            builder.append(i < taxonCount - 1 ? ",\n" : "\n");
+        }
+        builder.append(";\n");
+
+        for (int i = 0; i < treeCount; i++) {
+            Tree tree = createTree(taxa);
+            builder.append("tree STATE_").append(i * 1000).append(" = [&R] ");
+            appendNewick(tree, tree.getRoot(), taxa, builder);
+            builder.append(";\n");
+        }
+        builder.append("End;\n");
+        return builder.toString();
+    }
+
+    private static void appendNewick(Tree tree, NodeRef node, Taxa taxa, StringBuilder builder) {
+        if (tree.isExternal(node)) {
+            builder.append(taxa.getTaxonIndex(tree.getNodeTaxon(node)) + 1);
+        } else {
+            builder.append("(");
+            for (int j = 0; j < tree.getChildCount(node); j++) {
+                if (j > 0) {
+                    builder.append(",");
+                }
+                appendNewick(tree, tree.getChild(node, j), taxa, builder);
+            }
+            builder.append(")");
+        }
+        if (!tree.isRoot(node)) {
+            double branchLength = tree.getNodeHeight(tree.getParent(node)) - tree.getNodeHeight(node);
+            builder.append(":[&rate=").append(SUBSTITUTION_RATE * (0.5 + MathUtils.nextDouble())).append("]");
+            builder.append(branchLength);
+        }
+    }
+}
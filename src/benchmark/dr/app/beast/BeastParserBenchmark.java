@@ -0,0 +1,70 @@
+/*
+ * BeastParserBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.app.beast;
+
+import dr.app.beast.BeastParser;
+import dr.app.beast.BeastVersion;
+import dr.app.beast.ParserIndex;
+import dr.xml.XMLParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time BEAST takes to set up its XML parser in a new JVM, loading every parser listed in the
+ * parsers files or only indexing them. Each fork makes one measurement so the parser classes
+ * are loaded cold, as they are when BEAST starts.
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class BeastParserBenchmark {
+
+    @Param({"false", "true"})
+    public boolean useIndex;
+
+    @Setup
+    public void setup() {
+        System.setProperty(ParserIndex.USE_PARSER_INDEX, Boolean.toString(useIndex));
+    }
+
+    @Benchmark
+    public XMLParser createParser() {
+        List<String> additionalParsers = new ArrayList<String>();
+        additionalParsers.add("beagle");
+        return new BeastParser(new String[]{"benchmark.xml"}, additionalParsers, false, false, false, new BeastVersion());
+    }
+}
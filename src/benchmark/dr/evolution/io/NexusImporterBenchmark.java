@@ -0,0 +1,80 @@
+/*
+ * NexusImporterBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.evolution.io;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.io.Importer;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.tree.Tree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a BEAST-style trees file (translate table, branch rate annotations) from memory
+ * so the cost is that of the parser rather than the disk.
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NexusImporterBenchmark {
+
+    @Param({"100", "1000"})
+    public int taxonCount;
+
+    @Param({"100"})
+    public int treeCount;
+
+    private String treesFile;
+
+    @Setup
+    public void setup() {
+        treesFile = SyntheticData.createTreesFile(taxonCount, treeCount);
+    }
+
+    @Benchmark
+    public List<Tree> importTrees() throws IOException, Importer.ImportException {
+        NexusImporter importer = new NexusImporter(new StringReader(treesFile));
+        return importer.importTrees(null);
+    }
+
+    @Benchmark
+    public List<Tree> importTreesIgnoringComments() throws IOException, Importer.ImportException {
+        NexusImporter importer = new NexusImporter(new StringReader(treesFile), true);
+        return importer.importTrees(null);
+    }
+}
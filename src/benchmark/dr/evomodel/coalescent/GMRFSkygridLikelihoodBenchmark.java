@@ -0,0 +1,132 @@
+/*
+ * GMRFSkygridLikelihoodBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.evomodel.coalescent;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.coalescent.IntervalList;
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.coalescent.GMRFSkygridLikelihood;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.model.Parameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GMRF skygrid likelihood recalculated after a node height change (which changes the
+ * coalescent sufficient statistics) and after a single population size change (which
+ * only changes the field).
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GMRFSkygridLikelihoodBenchmark {
+
+    @Param({"100", "1000"})
+    public int taxonCount;
+
+    @Param({"50", "200"})
+    public int gridPointCount;
+
+    private TreeModel treeModel;
+    private Parameter popSizeParameter;
+    private GMRFSkygridLikelihood likelihood;
+    private int nodeIndex = 0;
+    private int popSizeIndex = 0;
+
+    @Setup
+    public void setup() {
+        treeModel = SyntheticData.createTreeModel(taxonCount);
+
+        List<IntervalList> intervalsList = new ArrayList<IntervalList>();
+        intervalsList.add(new TreeIntervals(treeModel));
+
+        popSizeParameter = new Parameter.Default(gridPointCount + 1, 1.0);
+        double cutOff = treeModel.getNodeHeight(treeModel.getRoot()) * 1.1;
+
+        likelihood = new GMRFSkygridLikelihood(intervalsList,
+                popSizeParameter,
+                null,
+                new Parameter.Default(1.0),
+                new Parameter.Default(1.0),
+                null,
+                null,
+                false,
+                cutOff,
+                gridPointCount,
+                null,
+                new Parameter.Default(1, 1.0));
+        likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double nodeHeightChange() {
+        likelihood.storeModelState();
+        treeModel.storeModelState();
+
+        NodeRef node;
+        do {
+            nodeIndex = (nodeIndex + 1) % treeModel.getInternalNodeCount();
+            node = treeModel.getInternalNode(nodeIndex);
+        } while (treeModel.isRoot(node));
+        double lower = Math.max(treeModel.getNodeHeight(treeModel.getChild(node, 0)),
+                treeModel.getNodeHeight(treeModel.getChild(node, 1)));
+        double upper = treeModel.getNodeHeight(treeModel.getParent(node));
+        treeModel.setNodeHeight(node, (lower + upper) / 2.0);
+
+        double logLikelihood = likelihood.getLogLikelihood();
+
+        treeModel.restoreModelState();
+        likelihood.restoreModelState();
+        return logLikelihood;
+    }
+
+    @Benchmark
+    public double popSizeChange() {
+        likelihood.storeModelState();
+        popSizeParameter.storeParameterValues();
+
+        popSizeIndex = (popSizeIndex + 1) % popSizeParameter.getDimension();
+        popSizeParameter.setParameterValue(popSizeIndex, 1.5);
+
+        double logLikelihood = likelihood.getLogLikelihood();
+
+        popSizeParameter.restoreParameterValues();
+        likelihood.restoreModelState();
+        return logLikelihood;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * SubtreeLeapOperatorBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.evomodel.operators;
+
+import benchmark.dr.SyntheticData;
+import dr.evomodel.operators.SubtreeLeapOperator;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.operators.AdaptationMode;
+import dr.math.MathUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subtree leap proposal followed by a restore of the tree (i.e., a rejected move), so
+ * this measures the cost of finding destination branches and rearranging the tree.
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubtreeLeapOperatorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int taxonCount;
+
+    @Param({"0.1", "1.0"})
+    public double size;
+
+    private TreeModel treeModel;
+    private SubtreeLeapOperator operator;
+
+    @Setup
+    public void setup() {
+        treeModel = SyntheticData.createTreeModel(taxonCount);
+        operator = new SubtreeLeapOperator(treeModel, 1.0, size,
+                SubtreeLeapOperator.DistanceKernelType.NORMAL, AdaptationMode.ADAPTATION_OFF, 0.23);
+        MathUtils.setSeed(SyntheticData.SEED);
+    }
+
+    @Benchmark
+    public double proposeAndReject() {
+        treeModel.storeModelState();
+        double logHastingsRatio = operator.doOperation();
+        treeModel.restoreModelState();
+        return logHastingsRatio;
+    }
+}
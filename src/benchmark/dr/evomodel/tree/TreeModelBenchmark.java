@@ -0,0 +1,124 @@
+/*
+ * TreeModelBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.evomodel.tree;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.model.Model;
+import dr.inference.model.ModelListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changing node heights in a TreeModel, including the propagation of the TreeChangedEvents
+ * to listeners (tree intervals, as used by coalescent likelihoods, plus a simple counter)
+ * and the store/restore that surrounds every proposal.
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeModelBenchmark {
+
+    // the number of heights changed in one tree edit
+    private static final int EDIT_SIZE = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int taxonCount;
+
+    private TreeModel treeModel;
+    private TreeIntervals treeIntervals;
+    private int nodeIndex = 0;
+    private long eventCount = 0;
+
+    @Setup
+    public void setup() {
+        treeModel = SyntheticData.createTreeModel(taxonCount);
+        treeIntervals = new TreeIntervals(treeModel);
+        treeModel.addModelListener(new ModelListener() {
+            @Override
+            public void modelChangedEvent(Model model, Object object, int index) {
+                eventCount++;
+            }
+
+            @Override
+            public void modelRestored(Model model) {
+            }
+        });
+    }
+
+    @Benchmark
+    public long setNodeHeight() {
+        treeModel.storeModelState();
+        changeNodeHeight();
+        treeModel.restoreModelState();
+        return eventCount;
+    }
+
+    @Benchmark
+    public long treeEdit() {
+        treeModel.storeModelState();
+        treeModel.beginTreeEdit();
+        for (int i = 0; i < EDIT_SIZE; i++) {
+            changeNodeHeight();
+        }
+        treeModel.endTreeEdit();
+        treeModel.restoreModelState();
+        return eventCount;
+    }
+
+    @Benchmark
+    public int setNodeHeightAndIntervals() {
+        treeModel.storeModelState();
+        changeNodeHeight();
+        int intervalCount = treeIntervals.getIntervalCount();
+        treeModel.restoreModelState();
+        return intervalCount;
+    }
+
+    private void changeNodeHeight() {
+        NodeRef node;
+        do {
+            nodeIndex = (nodeIndex + 1) % treeModel.getInternalNodeCount();
+            node = treeModel.getInternalNode(nodeIndex);
+        } while (treeModel.isRoot(node));
+
+        double lower = Math.max(treeModel.getNodeHeight(treeModel.getChild(node, 0)),
+                treeModel.getNodeHeight(treeModel.getChild(node, 1)));
+        double upper = treeModel.getNodeHeight(treeModel.getParent(node));
+        treeModel.setNodeHeight(node, (lower + upper) / 2.0);
+    }
+}
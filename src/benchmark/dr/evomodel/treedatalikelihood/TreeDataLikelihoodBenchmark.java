@@ -0,0 +1,134 @@
+/*
+ * TreeDataLikelihoodBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.evomodel.treedatalikelihood;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.tree.TreeModel;
+import dr.evomodel.treedatalikelihood.BeagleDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.PreOrderSettings;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.inference.model.Parameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The nucleotide TreeDataLikelihood (HKY+G4 using BEAGLE) evaluated from scratch and after
+ * a single node height change (as most tree operators make).
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeDataLikelihoodBenchmark {
+
+    @Param({"100", "1000"})
+    public int taxonCount;
+
+    @Param({"1000"})
+    public int siteCount;
+
+    private TreeModel treeModel;
+    private TreeDataLikelihood likelihood;
+    private int nodeIndex = 0;
+
+    @Setup
+    public void setup() {
+        treeModel = SyntheticData.createTreeModel(taxonCount);
+        SitePatterns patterns = new SitePatterns(SyntheticData.createAlignment(treeModel, siteCount),
+                null, 0, -1, 1, true);
+
+        FrequencyModel frequencyModel = new FrequencyModel(Nucleotides.INSTANCE,
+                new Parameter.Default(new double[]{0.25, 0.25, 0.25, 0.25}));
+        HKY hky = new HKY(new Parameter.Default(2.0), frequencyModel);
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma", null, 1.0,
+                new Parameter.Default(0.5), 4, null);
+
+        BeagleDataLikelihoodDelegate delegate = new BeagleDataLikelihoodDelegate(
+                treeModel,
+                patterns,
+                new HomogeneousBranchModel(hky),
+                siteRateModel,
+                false,
+                false,
+                PartialsRescalingScheme.DEFAULT,
+                false,
+                new PreOrderSettings(false, false, false, true));
+
+        likelihood = new TreeDataLikelihood(delegate, treeModel, new DefaultBranchRateModel());
+        likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double fullEvaluation() {
+        likelihood.makeDirty();
+        return likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double partialUpdate() {
+        likelihood.storeModelState();
+
+        NodeRef node = nextInternalNode();
+        double lower = Math.max(treeModel.getNodeHeight(treeModel.getChild(node, 0)),
+                treeModel.getNodeHeight(treeModel.getChild(node, 1)));
+        double upper = treeModel.getNodeHeight(treeModel.getParent(node));
+        treeModel.setNodeHeight(node, (lower + upper) / 2.0);
+
+        double logLikelihood = likelihood.getLogLikelihood();
+        likelihood.restoreModelState();
+        return logLikelihood;
+    }
+
+    /**
+     * Cycles through the internal nodes (excluding the root) so every call changes a
+     * different part of the tree.
+     */
+    private NodeRef nextInternalNode() {
+        NodeRef node;
+        do {
+            nodeIndex = (nodeIndex + 1) % treeModel.getInternalNodeCount();
+            node = treeModel.getInternalNode(nodeIndex);
+        } while (treeModel.isRoot(node));
+        return node;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MCLoggerBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.inference.loggers;
+
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.TabDelimitedFormatter;
+import dr.inference.model.Parameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a line of a tab-delimited log file, with the formatting and writing done on the
+ * chain's thread or handed to the background writer.
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MCLoggerBenchmark {
+
+    @Param({"10", "1000"})
+    public int columnCount;
+
+    @Param({"false", "true"})
+    public boolean asynchronous;
+
+    private File logFile;
+    private Parameter parameter;
+    private MCLogger logger;
+    private long state = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        logFile = File.createTempFile("benchmark", ".log");
+        logFile.deleteOnExit();
+
+        parameter = new Parameter.Default("x", columnCount, 1.0);
+
+        PrintWriter writer = new PrintWriter(new FileOutputStream(logFile));
+        logger = new MCLogger(new TabDelimitedFormatter(writer), 1, false);
+        logger.add(parameter);
+        logger.setAsynchronous(asynchronous);
+        logger.startLogging();
+    }
+
+    @Benchmark
+    public long log() {
+        state++;
+        parameter.setParameterValueQuietly((int) (state % columnCount), state);
+        logger.log(state);
+        return state;
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.stopLogging();
+        logFile.delete();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * HamiltonianMonteCarloOperatorBenchmark.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package benchmark.dr.inference.operators.hmc;
+
+import benchmark.dr.SyntheticData;
+import dr.inference.hmc.GradientWrtParameterProvider;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.hmc.HamiltonianMonteCarloOperator;
+import dr.inference.operators.hmc.MassPreconditioner;
+import dr.inference.operators.hmc.MassPreconditioningOptions;
+import dr.inference.operators.hmc.NoUTurnOperator;
+import dr.math.MathUtils;
+import dr.util.Transform;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One HMC trajectory (a rejected proposal) and one NUTS transition for an iid normal target,
+ * optionally sampled on the log scale (so through a transform) as node heights and branch rates
+ * are. The time per operation is the time per trajectory; run with "-prof gc" to see the bytes
+ * allocated per trajectory (gc.alloc.rate.norm).
+ *
+ * @author Andrew Rambaut
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HamiltonianMonteCarloOperatorBenchmark {
+
+    @Param({"1000", "100000"})
+    public int dimension;
+
+    @Param({"false", "true"})
+    public boolean logTransform;
+
+    private static final int STEP_COUNT = 20;
+    private static final double STEP_SIZE = 0.01;
+
+    private Parameter parameter;
+    private NormalTarget target;
+    private HamiltonianMonteCarloOperator hmc;
+    private NoUTurnOperator nuts;
+
+    @Setup
+    public void setup() {
+        parameter = new Parameter.Default("x", dimension, 1.0);
+        target = new NormalTarget(parameter);
+
+        Transform transform = logTransform ? new Transform.Array(Transform.LOG, dimension, parameter) : null;
+
+        MassPreconditioningOptions preconditioningOptions =
+                new MassPreconditioningOptions.Default(0, 0, 0, 0, false, null, null);
+        HamiltonianMonteCarloOperator.Options options = new HamiltonianMonteCarloOperator.Options(
+                STEP_SIZE, STEP_COUNT, 0.0, preconditioningOptions, 0, 0.0, 0, 0.0, 0.8,
+                HamiltonianMonteCarloOperator.InstabilityHandler.REJECT);
+        MassPreconditioner preconditioner = MassPreconditioner.Type.NONE.factory(target, transform, preconditioningOptions);
+
+        hmc = new HamiltonianMonteCarloOperator(AdaptationMode.ADAPTATION_OFF, 1.0, target, parameter,
+                transform, null, options, preconditioner);
+        nuts = new NoUTurnOperator(hmc, false, 0, 1.0);
+
+        MathUtils.setSeed(SyntheticData.SEED);
+    }
+
+    @Benchmark
+    public double hmcTrajectory() {
+        parameter.storeParameterValues();
+        double logHastingsRatio = hmc.doOperation(target);
+        parameter.restoreParameterValues();
+        return logHastingsRatio;
+    }
+
+    @Benchmark
+    public double nutsTransition() {
+        return nuts.doOperation();
+    }
+
+    /**
+     * Independent normal(1, 1) densities with an analytic gradient that fills the caller's buffer.
+     */
+    private static class NormalTarget extends Likelihood.Abstract implements GradientWrtParameterProvider {
+
+        NormalTarget(Parameter parameter) {
+            super(null);
+            this.parameter = parameter;
+        }
+
+        @Override
+        protected boolean getLikelihoodKnown() {
+            // there is no model to tell us about parameter changes
+            return false;
+        }
+
+        @Override
+        protected double calculateLogLikelihood() {
+            double logL = 0.0;
+            for (int i = 0; i < parameter.getDimension(); i++) {
+                double delta = parameter.getParameterValue(i) - 1.0;
+                logL -= 0.5 * delta * delta;
+            }
+            return logL;
+        }
+
+        @Override
+        public Likelihood getLikelihood() {
+            return this;
+        }
+
+        @Override
+        public Parameter getParameter() {
+            return parameter;
+        }
+
+        @Override
+        public int getDimension() {
+            return parameter.getDimension();
+        }
+
+        @Override
+        public double[] getGradientLogDensity() {
+            double[] gradient = new double[getDimension()];
+            fillGradientLogDensity(gradient);
+            return gradient;
+        }
+
+        @Override
+        public void fillGradientLogDensity(double[] gradient) {
+            for (int i = 0; i < getDimension(); i++) {
+                gradient[i] = 1.0 - parameter.getParameterValue(i);
+            }
+        }
+
+        private final Parameter parameter;
+    }
+}
@@ -33,9 +33,15 @@ import dr.app.checkpoint.BeastCheckpointer;
 import dr.app.plugin.PluginLoader;
 import dr.app.util.Arguments;
 import dr.app.util.Utils;
+import dr.inference.loggers.MCLogger;
+import dr.inference.markovchain.ESSMonitor;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.markovchain.MarkovChainProfiler;
 import dr.inference.mcmc.MCMC;
 import dr.inference.mcmcmc.MCMCMC;
+import dr.inference.mcmcmc.MCMCMCCoordinator;
 import dr.inference.mcmcmc.MCMCMCOptions;
+import dr.inference.mcmcmc.MCMCMCWorker;
 import dr.inference.operators.OperatorSchedule;
 import dr.math.MathUtils;
 import dr.util.*;
@@ -96,7 +102,7 @@ public class BeastMain {
 
     public BeastMain(File inputFile, BeastConsoleApp consoleApp, int maxErrorCount, final boolean verbose,
                      boolean parserWarning, boolean strictXML, List<String> additionalParsers,
-                     MCMCMCOptions mc3Options) {
+                     MCMCMCOptions mc3Options, MCMCMCWorker mc3Worker) {
 
 
         if (inputFile == null) {
@@ -194,7 +200,21 @@ public class BeastMain {
                 infoLogger.info("Overriding checkpointing settings in the provided XML file");
             }
 
-            if (mc3Options == null) {
+            if (mc3Worker != null) {
+
+                infoLogger.info("Running chain " + (mc3Worker.getWorkerIndex() + 1) + " of " +
+                        mc3Worker.getWorkerCount() + " for a distributed MC3 analysis");
+
+                // parse the file returning the MCMC object and let the coordinator run it
+                MCMC mcmc = (MCMC) parser.parse(fileReader, MCMC.class);
+                if (mcmc == null) {
+                    throw new dr.xml.XMLParseException("BEAST XML file is missing an MCMC element");
+                }
+                fileReader.close();
+
+                mc3Worker.run(mcmc);
+
+            } else if (mc3Options == null) {
 
                 // just parse the file running all threads...
                 parser.parse(fileReader, true);
@@ -251,6 +271,14 @@ public class BeastMain {
                 mc3.run();
             }
 
+            if (ComputeService.isUsed()) {
+                infoLogger.info(ComputeService.getReport());
+            }
+
+            if (Boolean.parseBoolean(System.getProperty(BeastParser.PARSER_REPORT))) {
+                infoLogger.info(((BeastParser) parser).getParserReport());
+            }
+
         } catch (java.io.IOException ioe) {
             infoLogger.severe("File error: " + ioe.getMessage());
             throw new RuntimeException("Terminate");
@@ -379,12 +407,14 @@ public class BeastMain {
                         new Arguments.Option("verbose","vb","Give verbose XML parsing messages"),
                         new Arguments.Option("warnings", null, "Show warning messages about BEAST XML file"),
                         new Arguments.Option("strict", "sx", "Fail on non-conforming BEAST XML file"),
+                        new Arguments.Option("parser_report", null, "List the XML parsers that were loaded for the file"),
                         new Arguments.Option("window", "w", "Provide a console window"),
                         new Arguments.Option("options", "o", "Display an options dialog"),
                         new Arguments.Option("working", "wd", "Change working directory to input file's directory"),
                         new Arguments.LongOption("seed", "s", "Specify a random number generator seed"),
                         new Arguments.StringOption("prefix","p",  "PREFIX", "Specify a prefix for all output log filenames"),
                         new Arguments.Option("overwrite", "ow", "Allow overwriting of log files"),
+                        new Arguments.Option("log_async", null, "Format and write file logs on background threads"),
                         new Arguments.IntegerOption("errors", "e", "Specify maximum number of numerical errors before stopping"),
                         new Arguments.IntegerOption("threads", "nt", "The maximum number of computational threads to use (default auto)"),
                         new Arguments.Option("fail_threads", "ft", "Exit with error on uncaught exception in thread"),
@@ -393,7 +423,13 @@ public class BeastMain {
                         new Arguments.LongOption("tests", null, "The number of full evaluation tests to perform (default 1000)"),
                         new Arguments.RealOption("threshold", null, 0.0, Double.MAX_VALUE, "Full evaluation test threshold (default 0.1)"),
                         new Arguments.Option(OperatorSchedule.SHOW_OPERATORS, "op", "Print transition kernel performance to file"),
+                        new Arguments.Option("profile", null, "Time the store, operate, evaluate and restore phases of each operator"),
+                        new Arguments.StringOption("profile_file", null, "FILENAME", "Periodically write operator and likelihood timings to a CSV (or .json) file"),
+                        new Arguments.LongOption("profile_every", null, "Specify a frequency to write timings to the profile file (default 10000)"),
+                        new Arguments.LongOption("ess_every", null, "Report a running estimate of the ESS of the log columns at this frequency"),
+                        new Arguments.StringOption("ess_file", null, "FILENAME", "Write the running ESS of every log column to a tab delimited file"),
 
+                        new Arguments.Option("early_rejection", null, "Stop evaluating proposals once they can no longer be accepted"),
                         new Arguments.Option("adaptation_off", null, "Don't adapt operator sizes"),
                         new Arguments.RealOption("adaptation_target", null, 0.0, 1.0, "Target acceptance rate for adaptive operators (default 0.234)"),
 
@@ -406,6 +442,7 @@ public class BeastMain {
                         new Arguments.Option("beagle_auto", "ba", "BEAGLE: automatically select fastest resource for analysis"),
                         new Arguments.StringOption("beagle_order", "bo", "order", "BEAGLE: set order of resource use"),
                         new Arguments.IntegerOption("beagle_instances", null, "BEAGLE: divide site patterns amongst instances"),
+                        new Arguments.IntegerOption("beagle_shards", null, "BEAGLE: divide site patterns amongst instances evaluated concurrently within each likelihood"),
                         new Arguments.StringOption("beagle_multipartition", "bm", new String[]{"auto", "on", "off"},
                                 false, "BEAGLE: use multipartition extensions if available (default auto)"),
                         new Arguments.Option("beagle_CPU", "bc", "BEAGLE: use CPU instance"),
@@ -438,6 +475,10 @@ public class BeastMain {
                         new Arguments.RealArrayOption("mc3_temperatures", null, -1, "a comma-separated list of the hot chain temperatures"),
                         new Arguments.IntegerOption("mc3_swap", null, 1, Integer.MAX_VALUE, "frequency at which chains temperatures will be swapped"),
                         new Arguments.StringOption("mc3_scheme", null, "NAME", "Specify parallel tempering swap scheme"),
+                        new Arguments.IntegerOption("mc3_coordinator", null, 0, 65535, "coordinate a distributed MC3 analysis, waiting for one worker per chain on the given port"),
+                        new Arguments.StringOption("mc3_host", null, "HOST", "the interface an MC3 coordinator listens on for workers on other machines (default: this machine only; requires -mc3_secret)"),
+                        new Arguments.StringOption("mc3_secret", null, "SECRET", "a secret shared by a distributed MC3 coordinator and its workers"),
+                        new Arguments.StringOption("mc3_worker", null, "HOST:PORT", "run one chain of a distributed MC3 analysis for the coordinator at the given address"),
 
                         new Arguments.StringOption("load_state", null, "FILENAME", "Specify a filename to load a saved state from"),
                         new Arguments.StringOption("save_stem", null, "FILENAME", "Specify a stem for the filenames to save states to"),
@@ -446,6 +487,8 @@ public class BeastMain {
                         new Arguments.LongOption("save_every", null, "Specify a frequency to save the state file"),
                         new Arguments.StringOption("save_state", null, "FILENAME", "Specify a filename to save state to"),
                         new Arguments.Option("full_checkpoint_precision", null, "Use hex-encoded doubles in checkpoint files"),
+                        new Arguments.Option("save_binary", null, "Save binary, incremental state files in the background"),
+                        new Arguments.IntegerOption("save_full_every", null, 1, Integer.MAX_VALUE, "Specify the number of binary state files between full snapshots [default = 10]"),
                         new Arguments.Option("force_resume", null, "Force resuming from a saved state"),
                         new Arguments.LongOption("checkpoint_seed", null, "Seed specified for checkpoint restart"),
 
@@ -523,6 +566,7 @@ public class BeastMain {
         double[] chainTemperatures = null;
         int swapChainsEvery = DEFAULT_SWAP_CHAIN_EVERY;
         MCMCMCOptions.SwapScheme swapScheme = MCMCMCOptions.SwapScheme.ORIGINAL_FLAVOR;
+        MCMCMCWorker mc3Worker = null;
 
         if (arguments.hasOption("particles")) {
             System.setProperty("smc.particle_folder", arguments.getStringOption("particles"));
@@ -677,6 +721,10 @@ public class BeastMain {
             System.setProperty("beagle.instance.count", Integer.toString(arguments.getIntegerOption("beagle_instances")));
         }
 
+        if (arguments.hasOption("beagle_shards")) {
+            System.setProperty("beagle.shard.count", Integer.toString(arguments.getIntegerOption("beagle_shards")));
+        }
+
         if (arguments.hasOption("beagle_scaling")) {
             System.setProperty("beagle.scaling", arguments.getStringOption("beagle_scaling"));
         }
@@ -736,6 +784,10 @@ public class BeastMain {
             }
         }
 
+        if (arguments.hasOption("early_rejection")) {
+            System.setProperty(MarkovChain.EARLY_REJECTION, Boolean.TRUE.toString());
+        }
+
         if (arguments.hasOption("adaptation_off")) {
             System.setProperty("mcmc.use_adaptation", Boolean.FALSE.toString());
         }
@@ -758,6 +810,27 @@ public class BeastMain {
             System.setProperty(OperatorSchedule.SHOW_OPERATORS, Boolean.TRUE.toString());
         }
 
+        if (arguments.hasOption("parser_report")) {
+            System.setProperty(BeastParser.PARSER_REPORT, Boolean.TRUE.toString());
+        }
+
+        if (arguments.hasOption("profile")) {
+            System.setProperty(MarkovChainProfiler.PROFILE, Boolean.TRUE.toString());
+        }
+        if (arguments.hasOption("profile_file")) {
+            System.setProperty(MarkovChainProfiler.PROFILE_FILE, arguments.getStringOption("profile_file"));
+        }
+        if (arguments.hasOption("profile_every")) {
+            System.setProperty(MarkovChainProfiler.PROFILE_EVERY, Long.toString(arguments.getLongOption("profile_every")));
+        }
+
+        if (arguments.hasOption("ess_every")) {
+            System.setProperty(ESSMonitor.ESS, Long.toString(arguments.getLongOption("ess_every")));
+        }
+        if (arguments.hasOption("ess_file")) {
+            System.setProperty(ESSMonitor.ESS_FILE, arguments.getStringOption("ess_file"));
+        }
+
         if (!usingSMC) {
             // ignore these other options
 
@@ -795,6 +868,15 @@ public class BeastMain {
                 System.setProperty(BeastCheckpointer.FULL_CHECKPOINT_PRECISION, "true");
             }
 
+            if (arguments.hasOption("save_binary")) {
+                System.setProperty(BeastCheckpointer.SAVE_STATE_FORMAT, BeastCheckpointer.BINARY_FORMAT);
+            }
+
+            if (arguments.hasOption("save_full_every")) {
+                int fullEvery = arguments.getIntegerOption("save_full_every");
+                System.setProperty(BeastCheckpointer.SAVE_STATE_FULL_EVERY, Integer.toString(fullEvery));
+            }
+
             if (arguments.hasOption("force_resume")) {
                 System.setProperty("force.resume", Boolean.TRUE.toString());
             }
@@ -821,6 +903,18 @@ public class BeastMain {
 
             }
 
+            if (arguments.hasOption("mc3_worker")) {
+                try {
+                    mc3Worker = MCMCMCWorker.connect(arguments.getStringOption("mc3_worker"),
+                            arguments.getStringOption("mc3_secret"));
+                } catch (IOException ioe) {
+                    System.err.println("Unable to connect to the MC3 coordinator: " + ioe.getMessage());
+                    System.exit(1);
+                }
+                // label the output files and the random number seed by the worker's index, as for MPI
+                System.setProperty("mpi.rank.postfix", String.valueOf(mc3Worker.getWorkerIndex()));
+            }
+
             String rankProp = System.getProperty("mpi.rank.postfix");
             if (rankProp != null) {
                 int rank = Integer.valueOf(rankProp);
@@ -870,6 +964,27 @@ public class BeastMain {
 
         printTitle();
 
+        if (arguments.hasOption("mc3_coordinator")) {
+            if (!usingMC3) {
+                System.err.println("The -mc3_coordinator option requires -mc3_chains or -mc3_temperatures");
+                System.exit(1);
+            }
+
+            MathUtils.setSeed(seed);
+            System.out.println("Random number seed: " + seed);
+
+            try {
+                new MCMCMCCoordinator(arguments.getStringOption("mc3_host"),
+                        arguments.getIntegerOption("mc3_coordinator"),
+                        arguments.getStringOption("mc3_secret"),
+                        new MCMCMCOptions(chainTemperatures, swapChainsEvery, swapScheme)).run();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("MC3 coordinator failed: " + e.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
         File inputFile = null;
 
         if (options && !beagleShowInfo) {
@@ -1002,6 +1117,10 @@ public class BeastMain {
             System.setProperty("log.allow.overwrite", "true");
         }
 
+        if (arguments.hasOption("log_async")) {
+            System.setProperty(MCLogger.ASYNCHRONOUS_LOGGING, "true");
+        }
+
         additionalParsers.add("beagle");
 
         if (beagleFlags != 0) {
@@ -1019,7 +1138,8 @@ public class BeastMain {
 
         try {
             new BeastMain(inputFile, consoleApp, maxErrorCount, verbose, warnings, strictXML, additionalParsers,
-                    usingMC3 ? new MCMCMCOptions(chainTemperatures, swapChainsEvery, swapScheme) : null);
+                    usingMC3 && mc3Worker == null ? new MCMCMCOptions(chainTemperatures, swapChainsEvery, swapScheme) : null,
+                    mc3Worker);
 //                    usingMC3, chainTemperatures, swapChainsEvery);
         } catch (RuntimeException rte) {
             // The stack trace here is not useful
@@ -54,6 +54,7 @@ public class BeastParser extends XMLParser {
     public static final String RELEASE ="release";
     public static final String DEV = "development";
     public static final String PARSER_PROPERTIES_SUFFIX ="_parsers.properties";
+    public static final String PARSER_REPORT = "parser.report";
     public String parsers;
 
     public BeastParser(String[] args, List<String> additionalParsers, boolean verbose, boolean parserWarnings, boolean strictXML, Version version) {
@@ -135,6 +136,15 @@ public class BeastParser extends XMLParser {
      */
     private void loadProperties(Class c, String parsersFile, boolean verbose, boolean parserWarning, boolean canReplace) throws IOException {
 
+        // verbose lists each parser as it is loaded so doesn't use the index
+        if (!verbose && Boolean.parseBoolean(System.getProperty(ParserIndex.USE_PARSER_INDEX, "true"))) {
+            List<String[]> index = ParserIndex.readIndex(c, parsersFile);
+            if (index != null) {
+                loadIndex(index, parsersFile, parserWarning, canReplace);
+                return;
+            }
+        }
+
         if (verbose) {
             if (parsersFile.equalsIgnoreCase(RELEASE + PARSER_PROPERTIES_SUFFIX)) {
                 System.out.println("\nAlways loading " + parsersFile + ":");
@@ -208,6 +218,43 @@ public class BeastParser extends XMLParser {
         }
     }
 
+    /**
+     * Add the parsers from the index of a *.properties file. These are only created when they are used.
+     * @param index           the element name and parser class pairs
+     * @param parsersFile     parser file name, (*.properties)
+     * @param parserWarning   parserWarning
+     * @param canReplace      can this new loaded parser to replace old one with the same name
+     */
+    private void loadIndex(List<String[]> index, String parsersFile, boolean parserWarning, boolean canReplace) {
+        for (String[] entry : index) {
+            try {
+                boolean replaced = addIndexedXMLObjectParser(entry[0], entry[1], canReplace);
+                if (parserWarning && replaced) {
+                    System.out.println("WARNING: parser - " + entry[1] + " in " + parsersFile +" is duplicated, "
+                            + "which is REPLACING the same parser loaded previously.\n");
+                }
+            } catch (IllegalArgumentException iae) {
+                System.err.println("\nFailed to load parser: " + iae.getMessage());
+                System.err.println("parser = " + entry[1] + "\n");
+            }
+        }
+    }
+
+    /**
+     * @return a list of the indexed parsers that were created, i.e., those that were needed by the XML
+     */
+    public String getParserReport() {
+        List<String> loadedParsers = getLoadedIndexedParsers();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Parsers loaded: ").append(loadedParsers.size()).append(" (")
+                .append(getUnloadedIndexedParserCount()).append(" element names not used)\n");
+        for (String parser : loadedParsers) {
+            sb.append("  ").append(parser).append("\n");
+        }
+        return sb.toString();
+    }
+
     @Override
     protected void executingRunnable() {
         Logger logger = Logger.getLogger("dr.util.citations");
@@ -40,7 +40,7 @@ import java.io.File;
 public class BeastRemote extends BeastMain {
 
     public BeastRemote(File inputFile, BeastConsoleApp consoleApp, boolean verbose, boolean parserWarning) {
-        super(inputFile, consoleApp, 0, verbose, parserWarning, true, null,  null);
+        super(inputFile, consoleApp, 0, verbose, parserWarning, true, null, null, null);
     }
 
     public static void terminateSlaves() {
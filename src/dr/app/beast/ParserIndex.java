@@ -0,0 +1,191 @@
+/*
+ * ParserIndex.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.app.beast;
+
+import dr.xml.XMLObjectParser;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An index of the element names of the parsers listed in a *_parsers.properties file, written at
+ * build time so that BeastParser can add the parsers without loading their classes. Each line is
+ * 'elementName=parserClass' (or 'elementName=class#field' for a static parser member) and the
+ * first line holds a checksum of the properties file so an out of date index is ignored.
+ *
+ * @author Andrew Rambaut
+ */
+public class ParserIndex {
+
+    public static final String PARSER_INDEX_SUFFIX = "_parsers.index";
+
+    // set to false to load every parser when BEAST starts
+    public static final String USE_PARSER_INDEX = "parser.index";
+
+    private static final String CHECKSUM = "#checksum=";
+
+    private ParserIndex() {
+        // static methods only
+    }
+
+    /**
+     * Reads the index of a parsers file from beside the given class.
+     *
+     * @param c           the class the files are resources of
+     * @param parsersFile the parsers file name (*_parsers.properties)
+     * @return the element name and parser class pairs, or null if there is no index or it is out of date
+     * @throws IOException IOException
+     */
+    public static List<String[]> readIndex(Class<?> c, String parsersFile) throws IOException {
+
+        final InputStream indexStream = c.getResourceAsStream(getIndexFileName(parsersFile));
+        final InputStream parsersStream = c.getResourceAsStream(parsersFile);
+        if (indexStream == null || parsersStream == null) {
+            return null;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(indexStream, "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals(CHECKSUM + getChecksum(parsersStream))) {
+                return null;
+            }
+
+            List<String[]> index = new ArrayList<String[]>();
+            line = reader.readLine();
+            while (line != null) {
+                int split = line.indexOf('=');
+                if (split > 0) {
+                    index.add(new String[]{line.substring(0, split), line.substring(split + 1)});
+                }
+                line = reader.readLine();
+            }
+            return index;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static String getIndexFileName(String parsersFile) {
+        return parsersFile.substring(0, parsersFile.length() - BeastParser.PARSER_PROPERTIES_SUFFIX.length())
+                + PARSER_INDEX_SUFFIX;
+    }
+
+    private static long getChecksum(InputStream stream) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try {
+            int count = stream.read(buffer);
+            while (count >= 0) {
+                crc.update(buffer, 0, count);
+                count = stream.read(buffer);
+            }
+        } finally {
+            stream.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the index of a parsers file by loading each of the parsers in it as BeastParser would.
+     *
+     * @param parsersFile the parsers file (*_parsers.properties)
+     * @param indexFile   the index to write
+     * @throws IOException IOException
+     */
+    public static void writeIndex(File parsersFile, File indexFile) throws IOException {
+
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8"));
+        writer.println(CHECKSUM + getChecksum(new FileInputStream(parsersFile)));
+
+        BufferedReader reader = new BufferedReader(new FileReader(parsersFile));
+        String line = reader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                try {
+                    Class<?> parser = Class.forName(line);
+                    if (XMLObjectParser.class.isAssignableFrom(parser)) {
+                        writeParserNames(writer, (XMLObjectParser) parser.getDeclaredConstructor().newInstance(),
+                                parser.getName());
+                    } else {
+                        boolean parserFound = false;
+                        for (Field field : parser.getDeclaredFields()) {
+                            if (XMLObjectParser.class.isAssignableFrom(field.getType())) {
+                                writeParserNames(writer, (XMLObjectParser) field.get(null),
+                                        parser.getName() + "#" + field.getName());
+                                parserFound = true;
+                            }
+                        }
+
+                        if (!parserFound) {
+                            throw new IllegalArgumentException(parser.getName() + " is not of type XMLObjectParser " +
+                                    "and doesn't contain any static members of this type");
+                        }
+                    }
+                } catch (Throwable t) {
+                    System.err.println("Failed to index parser: " + t.getMessage());
+                    System.err.println("line = " + line);
+                }
+            }
+            line = reader.readLine();
+        }
+        reader.close();
+        writer.close();
+    }
+
+    private static void writeParserNames(PrintWriter writer, XMLObjectParser parser, String parserClass) {
+        for (String parserName : parser.getParserNames()) {
+            writer.println(parserName + "=" + parserClass);
+        }
+    }
+
+    /**
+     * Writes an index for each of the parsers files given.
+     *
+     * @param args the output directory followed by the parsers files
+     * @throws IOException IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ParserIndex <output directory> <parsers file>...");
+            System.exit(1);
+        }
+
+        File outputDirectory = new File(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            File parsersFile = new File(args[i]);
+            File indexFile = new File(outputDirectory, getIndexFileName(parsersFile.getName()));
+            writeIndex(parsersFile, indexFile);
+            System.out.println("Indexed " + parsersFile.getName() + " in " + indexFile.getName());
+        }
+    }
+}
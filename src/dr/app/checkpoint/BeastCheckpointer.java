@@ -31,8 +31,10 @@ import dr.evolution.tree.NodeRef;
 import dr.evomodel.tree.EmpiricalTreeDistributionModel;
 import dr.evomodel.tree.TreeModel;
 import dr.evomodel.tree.TreeParameterModel;
+import dr.inference.loggers.AsyncLogWriter;
 import dr.inference.markovchain.MarkovChain;
 import dr.inference.markovchain.MarkovChainListener;
+import dr.inference.mcmc.MCMCCriterion;
 import dr.inference.model.*;
 import dr.inference.operators.AdaptableMCMCOperator;
 import dr.inference.operators.CheckpointableMCMCOperator;
@@ -67,6 +69,14 @@ public class BeastCheckpointer implements StateLoaderSaver {
     public final static String SAVE_STATE_EVERY = "save.state.every";
     public final static String SAVE_STEM = "save.state.stem";
     public final static String SAVE_STATE_TIME = "save.state.time";
+    public final static String SAVE_STATE_FORMAT = "save.state.format";
+    public final static String SAVE_STATE_FULL_EVERY = "save.state.full.every";
+
+    public final static String TEXT_FORMAT = "text";
+    public final static String BINARY_FORMAT = "binary";
+
+    // the default number of binary checkpoints between full snapshots
+    public final static int DEFAULT_FULL_EVERY = 10;
 
     public final static String FORCE_RESUME = "force.resume";
     public final static String CHECKPOINT_SEED = "checkpoint.seed";
@@ -81,6 +91,8 @@ public class BeastCheckpointer implements StateLoaderSaver {
 
     private boolean useFullPrecision;
 
+    private BinaryCheckpointWriter binaryWriter = null;
+
     private final List<MarkovChainListener> listeners = new ArrayList<MarkovChainListener>();
 
     public static synchronized BeastCheckpointer getInstance(String checkpointFileName, int checkpointEvery, int checkpointFinal, boolean overwrite) {
@@ -130,6 +142,17 @@ public class BeastCheckpointer implements StateLoaderSaver {
         useFullPrecision = (System.getProperty(FULL_CHECKPOINT_PRECISION) != null) &&
                 System.getProperty(FULL_CHECKPOINT_PRECISION).equalsIgnoreCase("true");
 
+        String format = System.getProperty(SAVE_STATE_FORMAT, TEXT_FORMAT);
+        if (format.equalsIgnoreCase(BINARY_FORMAT)) {
+            int fullEvery = DEFAULT_FULL_EVERY;
+            if (System.getProperty(SAVE_STATE_FULL_EVERY) != null) {
+                fullEvery = Integer.parseInt(System.getProperty(SAVE_STATE_FULL_EVERY));
+            }
+            binaryWriter = new BinaryCheckpointWriter(fullEvery);
+        } else if (!format.equalsIgnoreCase(TEXT_FORMAT)) {
+            throw new IllegalArgumentException("Unknown state file format: " + format);
+        }
+
         Factory.INSTANCE = new Factory() {
             @Override
             public StateLoader getInitialStateLoader() {
@@ -151,6 +174,7 @@ public class BeastCheckpointer implements StateLoaderSaver {
 
                     @Override
                     public boolean saveState(MarkovChain markovChain, long state, double lnL) {
+                        AsyncLogWriter.flushAll();
                         return BeastCheckpointer.this.writeStateToFile(saveFile, state, lnL, markovChain);
                     }
 
@@ -180,6 +204,9 @@ public class BeastCheckpointer implements StateLoaderSaver {
 
     @Override
     public boolean saveState(MarkovChain markovChain, long state, double lnL) {
+        // make sure the logs are complete up to this state
+        AsyncLogWriter.flushAll();
+
         String fileName = "";
         if (stemFileName != null && this.saveStateFileName == null) {
             fileName = stemFileName + "_" + state;
@@ -189,6 +216,11 @@ public class BeastCheckpointer implements StateLoaderSaver {
             String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(Calendar.getInstance().getTime());
             fileName = (this.saveStateFileName != null ? this.saveStateFileName : "beast_state_" + timeStamp);
         }
+        if (binaryWriter != null) {
+            // copy the state here and write it out while the chain continues
+            binaryWriter.save(new File(fileName), CheckpointSnapshot.capture(markovChain, state, lnL));
+            return true;
+        }
         return writeStateToFile(new File(fileName), state, lnL, markovChain);
     }
 
@@ -285,12 +317,33 @@ public class BeastCheckpointer implements StateLoaderSaver {
             }
             out.println();
 
+            // the independent streams used by concurrent chains and workers
+            for (int[] streamState : MathUtils.getRandomStreamStates()) {
+                out.print("rng_stream");
+                for (int i = 0; i < streamState.length; i++) {
+                    out.print("\t");
+                    out.print(streamState[i]);
+                }
+                out.println();
+            }
+
             out.print("state\t");
             out.println(state);
 
             out.print("lnL\t");
             out.println(lnL);
 
+            // chains of an MCMCMC analysis record their temperature so it can be restored
+            if (markovChain.getAcceptor() instanceof MCMCCriterion) {
+                MCMCCriterion criterion = (MCMCCriterion) markovChain.getAcceptor();
+                if (criterion.getTemperature() != 1.0 || criterion.getRank() != 0) {
+                    out.print("temperature\t");
+                    out.print(criterion.getTemperature());
+                    out.print("\t");
+                    out.println(criterion.getRank());
+                }
+            }
+
             for (Parameter parameter : Parameter.CONNECTED_PARAMETER_SET) {
                 if (!parameter.isImmutable()) {
                     out.print("parameter");
@@ -469,6 +522,10 @@ public class BeastCheckpointer implements StateLoaderSaver {
 
     protected long readStateFromFile(File file, MarkovChain markovChain, double[] lnL) {
 
+        if (BinaryCheckpointWriter.isBinaryStateFile(file)) {
+            return readBinaryStateFromFile(file, markovChain, lnL);
+        }
+
         DoubleParser parser = useFullPrecision ? DoubleParser.HEX : DoubleParser.TEXT;
 
         OperatorSchedule operatorSchedule = markovChain.getSchedule();
@@ -501,6 +558,22 @@ public class BeastCheckpointer implements StateLoaderSaver {
                 fields = line.split("\t");
             }
 
+            List<int[]> streamStates = new ArrayList<int[]>();
+            while (fields[0].equals("rng_stream")) {
+                try {
+                    int[] streamState = new int[fields.length - 1];
+                    for (int i = 0; i < streamState.length; i++) {
+                        streamState[i] = Integer.parseInt(fields[i + 1]);
+                    }
+                    streamStates.add(streamState);
+                } catch (NumberFormatException nfe) {
+                    throw new RuntimeException("Unable to read random number stream from state file");
+                }
+
+                line = in.readLine();
+                fields = line.split("\t");
+            }
+
             try {
                 if (!fields[0].equals("state")) {
                     throw new RuntimeException("Unable to read state number from state file");
@@ -523,8 +596,23 @@ public class BeastCheckpointer implements StateLoaderSaver {
                 throw new RuntimeException("Unable to read lnL from state file");
             }
 
-            Map<String, Deque<String[]>> savedParameters = new LinkedHashMap<String, Deque<String[]>>();
             line = in.readLine();
+            if (line != null && line.startsWith("temperature\t")) {
+                fields = line.split("\t");
+                if (!(markovChain.getAcceptor() instanceof MCMCCriterion)) {
+                    throw new RuntimeException("Unable to restore the chain temperature from state file");
+                }
+                MCMCCriterion criterion = (MCMCCriterion) markovChain.getAcceptor();
+                try {
+                    criterion.setTemperature(parser.parseDouble(fields[1]));
+                    criterion.setRank(Integer.parseInt(fields[2]));
+                } catch (NumberFormatException nfe) {
+                    throw new RuntimeException("Unable to read temperature from state file");
+                }
+                line = in.readLine();
+            }
+
+            Map<String, Deque<String[]>> savedParameters = new LinkedHashMap<String, Deque<String[]>>();
             while (line != null) {
                 fields = line.split("\t");
                 if (!fields[0].equals("parameter")) {
@@ -847,6 +935,9 @@ public class BeastCheckpointer implements StateLoaderSaver {
                 MathUtils.setSeed(Long.parseLong(System.getProperty(BeastCheckpointer.CHECKPOINT_SEED)));
             } else if (rngState != null) {
                 MathUtils.setRandomState(rngState);
+                if (streamStates.size() > 0) {
+                    MathUtils.setRandomStreamStates(streamStates.toArray(new int[0][]));
+                }
             }
 
             in.close();
@@ -864,6 +955,23 @@ public class BeastCheckpointer implements StateLoaderSaver {
         return state;
     }
 
+    private long readBinaryStateFromFile(File file, MarkovChain markovChain, double[] lnL) {
+        if (binaryWriter != null) {
+            // make sure any state that is still being written is complete
+            binaryWriter.flush();
+        }
+        CheckpointSnapshot snapshot;
+        try {
+            snapshot = BinaryCheckpointWriter.read(file);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to read file: " + ioe.getMessage());
+        }
+        if (lnL != null) {
+            lnL[0] = snapshot.lnL;
+        }
+        return snapshot.restore(markovChain);
+    }
+
     class CheckpointPrintStream extends PrintStream {
         public CheckpointPrintStream(OutputStream out) {
             super(out);
@@ -0,0 +1,275 @@
+/*
+ * BinaryCheckpointWriter.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.checkpoint;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Writes binary state files on a background thread. Every so many checkpoints a full snapshot is
+ * written (to a temporary file which then replaces the state file) and in between only the parameter
+ * values and tree nodes that have changed since the previous checkpoint are appended to a '.delta'
+ * file alongside it. Each delta record carries the id of the snapshot it applies to and a checksum
+ * so that stale or partly written records are ignored when the state is loaded.
+ *
+ * @author Andrew Rambaut
+ */
+class BinaryCheckpointWriter {
+
+    static final String DELTA_SUFFIX = ".delta";
+
+    private static final int FULL_RECORD = 1;
+    private static final int DELTA_RECORD = 0x42434444; // "BCDD"
+
+    private final int fullEvery;
+
+    private final ExecutorService executor;
+    private Future<?> pending = null;
+
+    // only accessed from the writer thread
+    private File baseFile = null;
+    private long baseId;
+    private int deltaCount;
+    private CheckpointSnapshot previous = null;
+
+    /**
+     * @param fullEvery the number of checkpoints between full snapshots (1 writes a full snapshot every time)
+     */
+    BinaryCheckpointWriter(int fullEvery) {
+        if (fullEvery < 1) {
+            throw new IllegalArgumentException("The number of checkpoints between full snapshots must be at least 1");
+        }
+        this.fullEvery = fullEvery;
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // BEAST exits with System.exit() so make sure the last checkpoint is completely written
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }));
+    }
+
+    /**
+     * Queue a snapshot to be written. If the previous one is still being written this waits for it
+     * so that at most one checkpoint is ever held in memory waiting to be written.
+     */
+    synchronized void save(final File file, final CheckpointSnapshot snapshot) {
+        flush();
+        pending = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                write(file, snapshot);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Wait for any pending checkpoint to be written.
+     * @return false if it could not be written.
+     */
+    synchronized boolean flush() {
+        if (pending == null) {
+            return true;
+        }
+        try {
+            pending.get();
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ee) {
+            System.err.println("Unable to write file: " + ee.getCause().getMessage());
+            // start again with a full snapshot
+            previous = null;
+            return false;
+        } finally {
+            pending = null;
+        }
+    }
+
+    private void write(File file, CheckpointSnapshot snapshot) throws IOException {
+        boolean full = previous == null || !file.equals(baseFile) || deltaCount >= fullEvery - 1 ||
+                !snapshot.hasSameStructure(previous);
+
+        if (full) {
+            long id = System.nanoTime() ^ Double.doubleToLongBits(snapshot.lnL) ^ snapshot.state;
+
+            File tmpFile = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(CheckpointSnapshot.MAGIC);
+                out.writeInt(CheckpointSnapshot.VERSION);
+                out.writeInt(FULL_RECORD);
+                out.writeLong(id);
+                snapshot.write(out);
+            } finally {
+                out.close();
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            // any remaining deltas refer to the old snapshot (and would be ignored anyway)
+            Files.deleteIfExists(getDeltaFile(file).toPath());
+
+            baseFile = file;
+            baseId = id;
+            deltaCount = 0;
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(bytes);
+            payload.writeLong(baseId);
+            payload.writeInt(deltaCount);
+            snapshot.writeDelta(payload, previous);
+            payload.close();
+            byte[] record = bytes.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(record);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(getDeltaFile(file), true)));
+            try {
+                out.writeInt(DELTA_RECORD);
+                out.writeInt(record.length);
+                out.write(record);
+                out.writeLong(crc.getValue());
+            } finally {
+                out.close();
+            }
+
+            deltaCount++;
+        }
+
+        previous = snapshot;
+    }
+
+    static File getDeltaFile(File file) {
+        return new File(file.getPath() + DELTA_SUFFIX);
+    }
+
+    /**
+     * @return true if the file starts with the binary state file magic number
+     */
+    static boolean isBinaryStateFile(File file) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readInt() == CheckpointSnapshot.MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the full snapshot in a binary state file and apply, in order, any deltas that follow it.
+     */
+    static CheckpointSnapshot read(File file) throws IOException {
+        CheckpointSnapshot snapshot;
+        long id;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != CheckpointSnapshot.MAGIC) {
+                throw new IOException("Not a binary state file: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != CheckpointSnapshot.VERSION) {
+                throw new IOException("Unsupported binary state file version: " + version);
+            }
+            if (in.readInt() != FULL_RECORD) {
+                throw new IOException("Malformed binary state file: " + file.getName());
+            }
+            id = in.readLong();
+            snapshot = CheckpointSnapshot.read(in);
+        } catch (EOFException eofe) {
+            throw new IOException("Binary state file is truncated: " + file.getName());
+        } finally {
+            in.close();
+        }
+
+        File deltaFile = getDeltaFile(file);
+        if (!deltaFile.exists()) {
+            return snapshot;
+        }
+
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(deltaFile)));
+        try {
+            int sequence = 0;
+            while (true) {
+                byte[] record;
+                try {
+                    if (in.readInt() != DELTA_RECORD) {
+                        break;
+                    }
+                    int length = in.readInt();
+                    if (length < 0 || length > deltaFile.length()) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if (in.readLong() != crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException eofe) {
+                    // the last record was not completely written
+                    break;
+                }
+
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                if (recordIn.readLong() != id || recordIn.readInt() != sequence) {
+                    // belongs to an earlier snapshot
+                    break;
+                }
+                snapshot = snapshot.applyDelta(recordIn);
+                sequence++;
+            }
+        } finally {
+            in.close();
+        }
+
+        return snapshot;
+    }
+}
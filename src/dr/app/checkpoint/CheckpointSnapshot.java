@@ -0,0 +1,782 @@
+/*
+ * CheckpointSnapshot.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.checkpoint;
+
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.tree.EmpiricalTreeDistributionModel;
+import dr.evomodel.tree.TreeModel;
+import dr.evomodel.tree.TreeParameterModel;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.mcmc.MCMCCriterion;
+import dr.inference.model.Model;
+import dr.inference.model.Parameter;
+import dr.inference.model.TransformedMultivariateParameter;
+import dr.inference.operators.AdaptableMCMCOperator;
+import dr.inference.operators.CheckpointableMCMCOperator;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.math.MathUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A copy of everything BeastCheckpointer writes to a state file, taken on the chain thread so that it
+ * can be written out (in full or as the difference from the previous copy) on a background thread.
+ *
+ * @author Andrew Rambaut
+ */
+final class CheckpointSnapshot {
+
+    static final int MAGIC = 0x42435350; // "BCSP"
+    static final int VERSION = 2;
+
+    int[] rngState;
+    int[][] streamStates = new int[0][];
+    long state;
+    double lnL;
+    double temperature = 1.0;
+    int rank = 0;
+
+    final List<ParameterState> parameters = new ArrayList<ParameterState>();
+    final List<OperatorState> operators = new ArrayList<OperatorState>();
+    final List<EmpiricalTreeState> empiricalTrees = new ArrayList<EmpiricalTreeState>();
+    final List<TreeState> trees = new ArrayList<TreeState>();
+
+    static final class ParameterState {
+        String name;
+        int dimension;
+        double[] values;
+    }
+
+    static final class OperatorState {
+        String name;
+        long acceptCount;
+        long rejectCount;
+        boolean adaptable;
+        double adaptableParameter;
+        long adaptationCount;
+        String checkpointStateType;
+        String checkpointState;
+    }
+
+    static final class EmpiricalTreeState {
+        String name;
+        int treeIndex;
+    }
+
+    static final class TreeState {
+        String name;
+        double[] heights;
+        String[] taxa;
+        int[] parents;
+        int[] childOrder;
+        double[][] traits;
+
+        int getNodeCount() {
+            return heights.length;
+        }
+    }
+
+    private CheckpointSnapshot() {
+    }
+
+    /**
+     * Copy the current state of the chain. This must be called on the chain thread.
+     */
+    static CheckpointSnapshot capture(MarkovChain markovChain, long state, double lnL) {
+        CheckpointSnapshot snapshot = new CheckpointSnapshot();
+
+        snapshot.rngState = MathUtils.getRandomState();
+        snapshot.streamStates = MathUtils.getRandomStreamStates();
+        snapshot.state = state;
+        snapshot.lnL = lnL;
+
+        if (markovChain.getAcceptor() instanceof MCMCCriterion) {
+            MCMCCriterion criterion = (MCMCCriterion) markovChain.getAcceptor();
+            snapshot.temperature = criterion.getTemperature();
+            snapshot.rank = criterion.getRank();
+        }
+
+        for (Parameter parameter : Parameter.CONNECTED_PARAMETER_SET) {
+            if (!parameter.isImmutable()) {
+                ParameterState parameterState = new ParameterState();
+                parameterState.name = getParameterCheckpointName(parameter);
+                parameterState.dimension = parameter.getDimension();
+                int valueCount = parameter instanceof TransformedMultivariateParameter ?
+                        ((TransformedMultivariateParameter) parameter).getUntransformedDimension() :
+                        parameter.getDimension();
+                parameterState.values = new double[valueCount];
+                for (int dim = 0; dim < valueCount; dim++) {
+                    parameterState.values[dim] = parameter.getParameterUntransformedValue(dim);
+                }
+                snapshot.parameters.add(parameterState);
+            }
+        }
+
+        OperatorSchedule operatorSchedule = markovChain.getSchedule();
+        for (int i = 0; i < operatorSchedule.getOperatorCount(); i++) {
+            MCMCOperator operator = operatorSchedule.getOperator(i);
+            OperatorState operatorState = new OperatorState();
+            operatorState.name = operator.getOperatorName();
+            operatorState.acceptCount = operator.getAcceptCount();
+            operatorState.rejectCount = operator.getRejectCount();
+            if (operator instanceof AdaptableMCMCOperator) {
+                operatorState.adaptable = true;
+                operatorState.adaptableParameter = ((AdaptableMCMCOperator) operator).getAdaptableParameter();
+                operatorState.adaptationCount = ((AdaptableMCMCOperator) operator).getAdaptationCount();
+            }
+            if (operator instanceof CheckpointableMCMCOperator) {
+                // the operator state is kept in the same tab delimited form as the text state files
+                CheckpointableMCMCOperator checkpointableOperator = (CheckpointableMCMCOperator) operator;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(bytes);
+                checkpointableOperator.writeCheckpointState(new CheckpointableMCMCOperator.CheckpointStateWriter(out));
+                out.flush();
+                operatorState.checkpointStateType = checkpointableOperator.getCheckpointStateType();
+                operatorState.checkpointState = new String(bytes.toByteArray());
+            }
+            snapshot.operators.add(operatorState);
+        }
+
+        List<TreeParameterModel> traitModels = getTraitModels();
+
+        for (Model model : Model.CONNECTED_MODEL_SET) {
+            if (model instanceof EmpiricalTreeDistributionModel) {
+                EmpiricalTreeState treeState = new EmpiricalTreeState();
+                treeState.name = model.getModelName();
+                treeState.treeIndex = ((EmpiricalTreeDistributionModel) model).getCurrentTreeIndex();
+                snapshot.empiricalTrees.add(treeState);
+            } else if (model instanceof TreeModel) {
+                snapshot.trees.add(captureTree((TreeModel) model, traitModels));
+            }
+        }
+
+        return snapshot;
+    }
+
+    private static TreeState captureTree(TreeModel tree, List<TreeParameterModel> traitModels) {
+        TreeState treeState = new TreeState();
+        treeState.name = tree.getModelName();
+
+        List<TreeParameterModel> linkedModels = new ArrayList<TreeParameterModel>();
+        for (TreeParameterModel tpm : traitModels) {
+            if (tree == tpm.getTreeModel()) {
+                linkedModels.add(tpm);
+            }
+        }
+
+        int nodeCount = tree.getNodeCount();
+        treeState.heights = new double[nodeCount];
+        treeState.taxa = new String[(nodeCount + 1) / 2];
+        treeState.parents = new int[nodeCount];
+        treeState.childOrder = new int[nodeCount];
+        treeState.traits = new double[linkedModels.size()][nodeCount];
+
+        for (int i = 0; i < nodeCount; i++) {
+            NodeRef node = tree.getNode(i);
+            int number = node.getNumber();
+            treeState.heights[i] = tree.getNodeHeight(node);
+            if (i < treeState.taxa.length && tree.isExternal(node)) {
+                treeState.taxa[i] = tree.getNodeTaxon(node).getId();
+            }
+
+            treeState.parents[number] = -1;
+            treeState.childOrder[number] = -1;
+            NodeRef parent = tree.getParent(node);
+            if (parent != null) {
+                treeState.parents[number] = parent.getNumber();
+                if (tree.getChild(parent, 0) == node) {
+                    treeState.childOrder[number] = 0;
+                } else if (tree.getChild(parent, 1) == node) {
+                    treeState.childOrder[number] = 1;
+                } else {
+                    throw new RuntimeException("Operation currently only supported for nodes with 2 children.");
+                }
+                for (int j = 0; j < linkedModels.size(); j++) {
+                    treeState.traits[j][number] = linkedModels.get(j).getNodeValue(tree, node);
+                }
+            }
+        }
+        return treeState;
+    }
+
+    /**
+     * Restore the chain to this snapshot, matching parameters, operators and trees as the text state
+     * file reader does.
+     * @return the state number of the snapshot
+     */
+    long restore(MarkovChain markovChain) {
+
+        if (markovChain.getAcceptor() instanceof MCMCCriterion) {
+            MCMCCriterion criterion = (MCMCCriterion) markovChain.getAcceptor();
+            criterion.setTemperature(temperature);
+            criterion.setRank(rank);
+        } else if (temperature != 1.0 || rank != 0) {
+            throw new RuntimeException("Unable to restore the chain temperature from state file");
+        }
+
+        Map<String, Deque<ParameterState>> savedParameters = new LinkedHashMap<String, Deque<ParameterState>>();
+        for (ParameterState parameterState : parameters) {
+            addSaved(savedParameters, parameterState.name, parameterState);
+        }
+
+        for (Parameter parameter : Parameter.CONNECTED_PARAMETER_SET) {
+            if (!parameter.isImmutable()) {
+                ParameterState parameterState = removeSaved(savedParameters, getParameterCheckpointName(parameter));
+                if (parameterState == null) {
+                    throw new RuntimeException("Unable to match state parameter: " + parameter.getParameterName());
+                }
+                if (parameterState.dimension != parameter.getDimension()) {
+                    throw new RuntimeException("Unable to match state parameter dimension: " + parameterState.dimension +
+                            ", expecting " + parameter.getDimension() + " for parameter: " + parameter.getParameterName());
+                }
+
+                if (parameterState.name.endsWith(".rootNodeNumber")) {
+                    parameter.setParameterValue(0, parameterState.values[0]);
+                } else {
+                    for (int dim = 0; dim < parameter.getDimension(); dim++) {
+                        try {
+                            parameter.setParameterUntransformedValue(dim, parameterState.values[dim]);
+                        } catch (RuntimeException rte) {
+                            System.err.println(rte);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<String, Deque<OperatorState>> savedOperators = new LinkedHashMap<String, Deque<OperatorState>>();
+        for (OperatorState operatorState : operators) {
+            addSaved(savedOperators, operatorState.name, operatorState);
+        }
+
+        OperatorSchedule operatorSchedule = markovChain.getSchedule();
+        for (int i = 0; i < operatorSchedule.getOperatorCount(); i++) {
+            MCMCOperator operator = operatorSchedule.getOperator(i);
+            OperatorState operatorState = removeSaved(savedOperators, operator.getOperatorName());
+            if (operatorState == null) {
+                throw new RuntimeException("Unable to match operator: " + operator.getOperatorName());
+            }
+            operator.setAcceptCount(operatorState.acceptCount);
+            operator.setRejectCount(operatorState.rejectCount);
+            if (operator instanceof AdaptableMCMCOperator) {
+                if (!operatorState.adaptable) {
+                    throw new RuntimeException("Coercable operator missing parameter: " + operatorState.name);
+                }
+                ((AdaptableMCMCOperator) operator).setAdaptableParameter(operatorState.adaptableParameter);
+                ((AdaptableMCMCOperator) operator).setAdaptationCount(operatorState.adaptationCount);
+            }
+            if (operator instanceof CheckpointableMCMCOperator) {
+                CheckpointableMCMCOperator checkpointableOperator = (CheckpointableMCMCOperator) operator;
+                if (operatorState.checkpointState == null) {
+                    throw new RuntimeException("Missing " + checkpointableOperator.getCheckpointStateType() +
+                            " operator state for checkpointable operator: " + operator.getOperatorName());
+                }
+                if (!operatorState.checkpointStateType.equals(checkpointableOperator.getCheckpointStateType())) {
+                    throw new RuntimeException("Malformed " + checkpointableOperator.getCheckpointStateType() +
+                            " operator state for checkpointable operator: " + operator.getOperatorName());
+                }
+                // the saved state starts with a tab so the first field is empty
+                checkpointableOperator.readCheckpointState(
+                        new CheckpointableMCMCOperator.CheckpointStateReader(
+                                operatorState.checkpointState.split("\t"),
+                                1,
+                                checkpointableOperator.getCheckpointStateType(),
+                                operator.getOperatorName(),
+                                new CheckpointableMCMCOperator.CheckpointStateReader.DoubleParser() {
+                                    @Override
+                                    public double parseDouble(String string) {
+                                        return Double.parseDouble(string);
+                                    }
+                                }));
+            }
+        }
+
+        Map<String, EmpiricalTreeState> savedEmpiricalTrees = new HashMap<String, EmpiricalTreeState>();
+        for (EmpiricalTreeState treeState : empiricalTrees) {
+            savedEmpiricalTrees.put(treeState.name, treeState);
+        }
+        Map<String, TreeState> savedTrees = new HashMap<String, TreeState>();
+        for (TreeState treeState : trees) {
+            savedTrees.put(treeState.name, treeState);
+        }
+
+        // load the tree models last as we get the node heights from the tree (not the parameters which
+        // which may not be associated with the right node
+        ArrayList<TreeParameterModel> traitModels = getTraitModels();
+
+        for (Model model : Model.CONNECTED_MODEL_SET) {
+            if (model instanceof EmpiricalTreeDistributionModel) {
+                EmpiricalTreeState treeState = savedEmpiricalTrees.get(model.getModelName());
+                if (treeState == null) {
+                    throw new RuntimeException("Expecting, but unable to match empirical tree: " + model.getModelName());
+                }
+                ((EmpiricalTreeDistributionModel) model).setTree(treeState.treeIndex);
+            } else if (model instanceof TreeModel) {
+                TreeState treeState = savedTrees.get(model.getModelName());
+                if (treeState == null) {
+                    throw new RuntimeException("Expecting, but unable to match state parameter:" + model.getModelName());
+                }
+
+                TreeModel treeModel = (TreeModel) model;
+                treeModel.beginTreeEdit();
+                treeModel.adoptTreeStructure(treeState.parents, treeState.heights, treeState.childOrder, treeState.taxa);
+                if (traitModels.size() > 0) {
+                    treeModel.adoptTraitData(treeState.parents, traitModels, treeState.traits, treeState.taxa);
+                }
+                treeModel.endTreeEdit();
+            }
+        }
+
+        if (System.getProperty(BeastCheckpointer.CHECKPOINT_SEED) != null) {
+            MathUtils.setSeed(Long.parseLong(System.getProperty(BeastCheckpointer.CHECKPOINT_SEED)));
+        } else if (rngState != null) {
+            MathUtils.setRandomState(rngState);
+            if (streamStates.length > 0) {
+                MathUtils.setRandomStreamStates(streamStates);
+            }
+        }
+
+        return state;
+    }
+
+    private static ArrayList<TreeParameterModel> getTraitModels() {
+        ArrayList<TreeParameterModel> traitModels = new ArrayList<TreeParameterModel>();
+        for (Model model : Model.CONNECTED_MODEL_SET) {
+            if (model instanceof TreeParameterModel) {
+                traitModels.add((TreeParameterModel) model);
+            }
+        }
+        return traitModels;
+    }
+
+    private static String getParameterCheckpointName(Parameter parameter) {
+        return parameter.getParameterName() == null ? "null" : parameter.getParameterName();
+    }
+
+    private static <T> void addSaved(Map<String, Deque<T>> saved, String key, T value) {
+        Deque<T> values = saved.get(key);
+        if (values == null) {
+            values = new ArrayDeque<T>();
+            saved.put(key, values);
+        }
+        values.addLast(value);
+    }
+
+    private static <T> T removeSaved(Map<String, Deque<T>> saved, String key) {
+        Deque<T> values = saved.get(key);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.removeFirst();
+    }
+
+    /**
+     * @return true if a delta from the given snapshot can describe this one, i.e., they have the same
+     * parameters, operators and trees.
+     */
+    boolean hasSameStructure(CheckpointSnapshot other) {
+        if (other == null || rngState.length != other.rngState.length ||
+                parameters.size() != other.parameters.size() ||
+                operators.size() != other.operators.size() ||
+                empiricalTrees.size() != other.empiricalTrees.size() ||
+                trees.size() != other.trees.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            ParameterState a = parameters.get(i);
+            ParameterState b = other.parameters.get(i);
+            if (!a.name.equals(b.name) || a.dimension != b.dimension || a.values.length != b.values.length) {
+                return false;
+            }
+        }
+        for (int i = 0; i < operators.size(); i++) {
+            if (!operators.get(i).name.equals(other.operators.get(i).name)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < empiricalTrees.size(); i++) {
+            if (!empiricalTrees.get(i).name.equals(other.empiricalTrees.get(i).name)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < trees.size(); i++) {
+            TreeState a = trees.get(i);
+            TreeState b = other.trees.get(i);
+            if (!a.name.equals(b.name) || a.getNodeCount() != b.getNodeCount() ||
+                    a.traits.length != b.traits.length || !Arrays.equals(a.taxa, b.taxa)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Binary encoding
+
+    void write(DataOutputStream out) throws IOException {
+        writeHeader(out);
+
+        out.writeInt(parameters.size());
+        for (ParameterState parameterState : parameters) {
+            writeString(out, parameterState.name);
+            out.writeInt(parameterState.dimension);
+            writeDoubles(out, parameterState.values);
+        }
+
+        writeOperators(out);
+
+        out.writeInt(trees.size());
+        for (TreeState treeState : trees) {
+            writeString(out, treeState.name);
+            out.writeInt(treeState.getNodeCount());
+            out.writeInt(treeState.traits.length);
+            for (String taxon : treeState.taxa) {
+                writeString(out, taxon);
+            }
+            for (int i = 0; i < treeState.getNodeCount(); i++) {
+                writeNode(out, treeState, i);
+            }
+        }
+    }
+
+    static CheckpointSnapshot read(DataInputStream in) throws IOException {
+        CheckpointSnapshot snapshot = new CheckpointSnapshot();
+        snapshot.readHeader(in);
+
+        int parameterCount = in.readInt();
+        for (int i = 0; i < parameterCount; i++) {
+            ParameterState parameterState = new ParameterState();
+            parameterState.name = readString(in);
+            parameterState.dimension = in.readInt();
+            parameterState.values = readDoubles(in);
+            snapshot.parameters.add(parameterState);
+        }
+
+        snapshot.readOperators(in, null);
+
+        int treeCount = in.readInt();
+        for (int i = 0; i < treeCount; i++) {
+            TreeState treeState = new TreeState();
+            treeState.name = readString(in);
+            int nodeCount = in.readInt();
+            int traitCount = in.readInt();
+            treeState.heights = new double[nodeCount];
+            treeState.taxa = new String[(nodeCount + 1) / 2];
+            treeState.parents = new int[nodeCount];
+            treeState.childOrder = new int[nodeCount];
+            treeState.traits = new double[traitCount][nodeCount];
+            for (int j = 0; j < treeState.taxa.length; j++) {
+                treeState.taxa[j] = readString(in);
+            }
+            for (int j = 0; j < nodeCount; j++) {
+                readNode(in, treeState);
+            }
+            snapshot.trees.add(treeState);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Write only what has changed since the previous snapshot, which must have the same structure.
+     * The small, frequently changing parts (rng, operators, empirical tree indices) are always written.
+     */
+    void writeDelta(DataOutputStream out, CheckpointSnapshot previous) throws IOException {
+        writeHeader(out);
+
+        int changedParameters = 0;
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!Arrays.equals(parameters.get(i).values, previous.parameters.get(i).values)) {
+                changedParameters++;
+            }
+        }
+        out.writeInt(changedParameters);
+        for (int i = 0; i < parameters.size(); i++) {
+            double[] values = parameters.get(i).values;
+            double[] previousValues = previous.parameters.get(i).values;
+            if (Arrays.equals(values, previousValues)) {
+                continue;
+            }
+            out.writeInt(i);
+
+            int changedValues = 0;
+            for (int j = 0; j < values.length; j++) {
+                if (!sameValue(values[j], previousValues[j])) {
+                    changedValues++;
+                }
+            }
+            // sparse (index, value) pairs only pay off if less than two thirds of the values changed
+            if (changedValues * 3 < values.length * 2) {
+                out.writeByte(0);
+                out.writeInt(changedValues);
+                for (int j = 0; j < values.length; j++) {
+                    if (!sameValue(values[j], previousValues[j])) {
+                        out.writeInt(j);
+                        out.writeDouble(values[j]);
+                    }
+                }
+            } else {
+                out.writeByte(1);
+                writeDoubles(out, values);
+            }
+        }
+
+        writeOperators(out);
+
+        for (int i = 0; i < trees.size(); i++) {
+            TreeState treeState = trees.get(i);
+            TreeState previousState = previous.trees.get(i);
+            int changedNodes = 0;
+            for (int j = 0; j < treeState.getNodeCount(); j++) {
+                if (isNodeChanged(treeState, previousState, j)) {
+                    changedNodes++;
+                }
+            }
+            out.writeInt(changedNodes);
+            for (int j = 0; j < treeState.getNodeCount(); j++) {
+                if (isNodeChanged(treeState, previousState, j)) {
+                    writeNode(out, treeState, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a delta record and apply it to a copy of this snapshot.
+     */
+    CheckpointSnapshot applyDelta(DataInputStream in) throws IOException {
+        CheckpointSnapshot snapshot = new CheckpointSnapshot();
+        snapshot.readHeader(in);
+
+        for (ParameterState parameterState : parameters) {
+            ParameterState copy = new ParameterState();
+            copy.name = parameterState.name;
+            copy.dimension = parameterState.dimension;
+            copy.values = parameterState.values.clone();
+            snapshot.parameters.add(copy);
+        }
+        int changedParameters = in.readInt();
+        for (int i = 0; i < changedParameters; i++) {
+            ParameterState parameterState = snapshot.parameters.get(in.readInt());
+            if (in.readByte() == 0) {
+                int changedValues = in.readInt();
+                for (int j = 0; j < changedValues; j++) {
+                    int index = in.readInt();
+                    parameterState.values[index] = in.readDouble();
+                }
+            } else {
+                double[] values = readDoubles(in);
+                if (values.length != parameterState.values.length) {
+                    throw new IOException("Checkpoint delta does not match parameter: " + parameterState.name);
+                }
+                parameterState.values = values;
+            }
+        }
+
+        snapshot.readOperators(in, this);
+
+        for (TreeState treeState : trees) {
+            TreeState copy = new TreeState();
+            copy.name = treeState.name;
+            copy.heights = treeState.heights.clone();
+            copy.taxa = treeState.taxa;
+            copy.parents = treeState.parents.clone();
+            copy.childOrder = treeState.childOrder.clone();
+            copy.traits = new double[treeState.traits.length][];
+            for (int j = 0; j < copy.traits.length; j++) {
+                copy.traits[j] = treeState.traits[j].clone();
+            }
+            int changedNodes = in.readInt();
+            for (int j = 0; j < changedNodes; j++) {
+                readNode(in, copy);
+            }
+            snapshot.trees.add(copy);
+        }
+
+        return snapshot;
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeLong(state);
+        out.writeDouble(lnL);
+        out.writeDouble(temperature);
+        out.writeInt(rank);
+        out.writeInt(rngState.length);
+        for (int value : rngState) {
+            out.writeInt(value);
+        }
+        out.writeInt(streamStates.length);
+        for (int[] streamState : streamStates) {
+            out.writeInt(streamState.length);
+            for (int value : streamState) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private void readHeader(DataInputStream in) throws IOException {
+        state = in.readLong();
+        lnL = in.readDouble();
+        temperature = in.readDouble();
+        rank = in.readInt();
+        rngState = new int[in.readInt()];
+        for (int i = 0; i < rngState.length; i++) {
+            rngState[i] = in.readInt();
+        }
+        streamStates = new int[in.readInt()][];
+        for (int i = 0; i < streamStates.length; i++) {
+            streamStates[i] = new int[in.readInt()];
+            for (int j = 0; j < streamStates[i].length; j++) {
+                streamStates[i][j] = in.readInt();
+            }
+        }
+    }
+
+    private void writeOperators(DataOutputStream out) throws IOException {
+        out.writeInt(operators.size());
+        for (OperatorState operatorState : operators) {
+            writeString(out, operatorState.name);
+            out.writeLong(operatorState.acceptCount);
+            out.writeLong(operatorState.rejectCount);
+            out.writeBoolean(operatorState.adaptable);
+            out.writeDouble(operatorState.adaptableParameter);
+            out.writeLong(operatorState.adaptationCount);
+            writeString(out, operatorState.checkpointStateType);
+            writeString(out, operatorState.checkpointState);
+        }
+
+        out.writeInt(empiricalTrees.size());
+        for (EmpiricalTreeState treeState : empiricalTrees) {
+            writeString(out, treeState.name);
+            out.writeInt(treeState.treeIndex);
+        }
+    }
+
+    private void readOperators(DataInputStream in, CheckpointSnapshot base) throws IOException {
+        int operatorCount = in.readInt();
+        if (base != null && operatorCount != base.operators.size()) {
+            throw new IOException("Checkpoint delta does not match the operators of its snapshot");
+        }
+        for (int i = 0; i < operatorCount; i++) {
+            OperatorState operatorState = new OperatorState();
+            operatorState.name = readString(in);
+            operatorState.acceptCount = in.readLong();
+            operatorState.rejectCount = in.readLong();
+            operatorState.adaptable = in.readBoolean();
+            operatorState.adaptableParameter = in.readDouble();
+            operatorState.adaptationCount = in.readLong();
+            operatorState.checkpointStateType = readString(in);
+            operatorState.checkpointState = readString(in);
+            operators.add(operatorState);
+        }
+
+        int empiricalTreeCount = in.readInt();
+        for (int i = 0; i < empiricalTreeCount; i++) {
+            EmpiricalTreeState treeState = new EmpiricalTreeState();
+            treeState.name = readString(in);
+            treeState.treeIndex = in.readInt();
+            empiricalTrees.add(treeState);
+        }
+    }
+
+    private static boolean isNodeChanged(TreeState treeState, TreeState previousState, int node) {
+        if (!sameValue(treeState.heights[node], previousState.heights[node]) ||
+                treeState.parents[node] != previousState.parents[node] ||
+                treeState.childOrder[node] != previousState.childOrder[node]) {
+            return true;
+        }
+        for (int j = 0; j < treeState.traits.length; j++) {
+            if (!sameValue(treeState.traits[j][node], previousState.traits[j][node])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeNode(DataOutputStream out, TreeState treeState, int node) throws IOException {
+        out.writeInt(node);
+        out.writeDouble(treeState.heights[node]);
+        out.writeInt(treeState.parents[node]);
+        out.writeInt(treeState.childOrder[node]);
+        for (double[] trait : treeState.traits) {
+            out.writeDouble(trait[node]);
+        }
+    }
+
+    private static void readNode(DataInputStream in, TreeState treeState) throws IOException {
+        int node = in.readInt();
+        treeState.heights[node] = in.readDouble();
+        treeState.parents[node] = in.readInt();
+        treeState.childOrder[node] = in.readInt();
+        for (double[] trait : treeState.traits) {
+            trait[node] = in.readDouble();
+        }
+    }
+
+    private static boolean sameValue(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -37,6 +37,7 @@ import dr.evolution.tree.MutableTree;
 import dr.evolution.tree.NodeRef;
 import dr.evolution.tree.Tree;
 import dr.evolution.util.Taxon;
+import dr.inference.trace.BinaryLogFile;
 import dr.util.Version;
 import jam.console.ConsoleApplication;
 
@@ -136,7 +137,7 @@ public class LogCombiner {
                         while (importer.hasTree()) {
                             Tree tree = importer.importNextTree();
                             if (firstTree) {
-                                startLog(tree, writer);
+                                startLog(tree, writer, taxonMap);
                                 firstTree = false;
                             }
 
@@ -283,23 +284,14 @@ public class LogCombiner {
 
 
             } else {
-                BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-                //int lineCount = 1;
-                String line = reader.readLine();
-
-                // lines starting with [ are ignored, assuming comments in MrBayes file
-                // lines starting with # are ignored, assuming comments in Migrate or BEAST file
-                while (line.startsWith("[") || line.startsWith("#")) {
-
-                    line = reader.readLine();
-                }
-
+                LogRowReader reader = BinaryLogFile.isBinaryLog(inputFile) ?
+                        new BinaryLogRowReader(inputFile) : new TextLogRowReader(inputFile);
 
                 if (firstFile) {
-                    titles = line.split("\t");
-                    writer.println(line);
+                    titles = reader.readTitles();
+                    writer.println(String.join("\t", titles));
                 } else {
-                    String[] newTitles = line.split("\t");
+                    String[] newTitles = reader.readTitles();
                     if (newTitles.length != titles.length) {
                         System.err.println("ERROR: The number of columns in file, " + inputFileNames[i] + ", does not match that of the first file");
                         return;
@@ -310,12 +302,9 @@ public class LogCombiner {
                         }
                     }
                 }
-                line = reader.readLine();
-                //lineCount++;
-
-                while (line != null) {
-                    String[] parts = line.split("\t");
+                String[] parts = reader.readRow();
 
+                while (parts != null) {
                     long state = -1;
 
                     boolean skip = false;
@@ -390,18 +379,7 @@ public class LogCombiner {
                                 if (logThis) {
                                     writer.print(stateLineEntry);
                                     for (int j = 1; j < parts.length; j++) {
-                                        String value = parts[j];
-
-                                        if (useScale) {
-                                            if (titles[j].equals("clock.rate") || titles[j].startsWith("skyline.popSize")) {
-                                                value = reformatNumbers(value, convertToDecimal, true, 1.0 / scale);
-                                            } else if (titles[j].equals("treeModel.rootHeight")) {
-                                                value = reformatNumbers(value, convertToDecimal, true, scale);
-                                            }
-                                        } else  if (convertToDecimal) {
-                                            value = reformatNumbers(value, convertToDecimal, false, 1.0);
-                                        }
-                                        writer.print("\t" + value);
+                                        writer.print("\t" + formatLogValue(parts[j], titles[j], convertToDecimal, useScale, scale));
                                     }
                                     writer.println();
                                 }
@@ -409,9 +387,9 @@ public class LogCombiner {
 
                         }
                     }
-                    line = reader.readLine();
-                    //lineCount++;
+                    parts = reader.readRow();
                 }
+                reader.close();
             }
 
             firstFile = false;
@@ -441,7 +419,10 @@ public class LogCombiner {
 
     private final Map<String, Integer> taxonMap = new HashMap<String, Integer>();
 
-    private void startLog(Tree tree, PrintWriter writer) {
+    /**
+     * Writes the NEXUS header for the combined trees, filling the taxonMap with the number each taxon is given.
+     */
+    static void startLog(Tree tree, PrintWriter writer, Map<String, Integer> taxonMap) {
 
         int taxonCount = tree.getTaxonCount();
         writer.println("#NEXUS");
@@ -478,9 +459,15 @@ public class LogCombiner {
     }
 
     private void writeTree(long state, Tree tree, boolean convertToDecimal, PrintWriter writer) {
+        writer.println("tree STATE_" + state + formatTree(tree, taxonMap, convertToDecimal));
+    }
+
+    /**
+     * @return the TREE command for the tree following the state number
+     */
+    static String formatTree(Tree tree, Map<String, Integer> taxonMap, boolean convertToDecimal) {
 
-        StringBuilder buffer = new StringBuilder("tree STATE_");
-        buffer.append(state);
+        StringBuilder buffer = new StringBuilder();
 //        Double lnP = (Double) tree.getAttribute("lnP");
 //        if (lnP != null) {
 //            buffer.append(" [&lnP=").append(lnP).append("]");
@@ -511,10 +498,10 @@ public class LogCombiner {
         writeTree(tree, tree.getRoot(), taxonMap, convertToDecimal, buffer);
 
         buffer.append(";");
-        writer.println(buffer.toString());
+        return buffer.toString();
     }
 
-    private String formatValue(Object value) {
+    private static String formatValue(Object value) {
         if( value instanceof String ) {
             return (String) value;
         } else if (value instanceof Object[] ) {
@@ -528,7 +515,7 @@ public class LogCombiner {
         return value.toString();
     }
 
-    private void writeTree(Tree tree, NodeRef node, Map taxonMap, boolean convertToDecimal, StringBuilder buffer) {
+    private static void writeTree(Tree tree, NodeRef node, Map taxonMap, boolean convertToDecimal, StringBuilder buffer) {
 
         NodeRef parent = tree.getParent(node);
 
@@ -572,7 +559,7 @@ public class LogCombiner {
         if (parent != null) {
             buffer.append(":");
             double length = tree.getBranchLength(node);
-            buffer.append(convertToDecimal ? decimalFormatter.format(length) : scientificFormatter.format(length));
+            buffer.append(convertToDecimal ? decimalFormatter.get().format(length) : scientificFormatter.get().format(length));
         }
     }
 
@@ -580,14 +567,95 @@ public class LogCombiner {
         writer.println("End;");
     }
 
-    private static final DecimalFormat decimalFormatter = new DecimalFormat("#.############", new DecimalFormatSymbols(Locale.US));
-    private static final DecimalFormat scientificFormatter = new DecimalFormat("#.############E0", new DecimalFormatSymbols(Locale.US));
+    /**
+     * Reads the column titles and then the rows of a log file, either text or binary.
+     */
+    private interface LogRowReader extends Closeable {
+        String[] readTitles() throws IOException;
+
+        /**
+         * @return the values of the next row or null at the end of the file
+         */
+        String[] readRow() throws IOException;
+    }
+
+    private static class TextLogRowReader implements LogRowReader {
+        TextLogRowReader(File file) throws IOException {
+            reader = new BufferedReader(new FileReader(file));
+        }
+
+        public String[] readTitles() throws IOException {
+            String line = reader.readLine();
+
+            // lines starting with [ are ignored, assuming comments in MrBayes file
+            // lines starting with # are ignored, assuming comments in Migrate or BEAST file
+            while (line.startsWith("[") || line.startsWith("#")) {
+                line = reader.readLine();
+            }
+            return line.split("\t");
+        }
+
+        public String[] readRow() throws IOException {
+            String line = reader.readLine();
+            return line == null ? null : line.split("\t");
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private final BufferedReader reader;
+    }
+
+    private static class BinaryLogRowReader implements LogRowReader {
+        BinaryLogRowReader(File file) throws IOException {
+            log = new BinaryLogFile(file);
+        }
+
+        public String[] readTitles() {
+            return log.getLabels();
+        }
+
+        public String[] readRow() {
+            return row < log.getRowCount() ? log.getRow(row++) : null;
+        }
+
+        public void close() throws IOException {
+            log.close();
+        }
+
+        private final BinaryLogFile log;
+        private int row = 0;
+    }
+
+    // DecimalFormat isn't thread safe and the values are formatted on worker threads by ParallelLogCombiner
+    private static final ThreadLocal<DecimalFormat> decimalFormatter = ThreadLocal.withInitial(() ->
+            new DecimalFormat("#.############", new DecimalFormatSymbols(Locale.US)));
+    private static final ThreadLocal<DecimalFormat> scientificFormatter = ThreadLocal.withInitial(() ->
+            new DecimalFormat("#.############E0", new DecimalFormatSymbols(Locale.US)));
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+(E[\\-\\d\\.]+)?");
 
-    private String reformatNumbers(String line, boolean convertDecimal, boolean useScale, double scale) {
+    /**
+     * Rescales and reformats one value in a log file.
+     */
+    static String formatLogValue(String value, String title, boolean convertToDecimal, boolean useScale, double scale) {
+        if (useScale) {
+            if (title.equals("clock.rate") || title.startsWith("skyline.popSize")) {
+                return reformatNumbers(value, convertToDecimal, true, 1.0 / scale);
+            } else if (title.equals("treeModel.rootHeight")) {
+                return reformatNumbers(value, convertToDecimal, true, scale);
+            }
+        } else  if (convertToDecimal) {
+            return reformatNumbers(value, convertToDecimal, false, 1.0);
+        }
+        return value;
+    }
+
+    private static String reformatNumbers(String line, boolean convertDecimal, boolean useScale, double scale) {
         StringBuilder outLine = new StringBuilder();
 
-        Pattern pattern = Pattern.compile("\\d+\\.\\d+(E[\\-\\d\\.]+)?");
-        Matcher matcher = pattern.matcher(line);
+        Matcher matcher = NUMBER_PATTERN.matcher(line);
 
         int lastEnd = 0;
         while (matcher.find()) {
@@ -597,7 +665,7 @@ public class LogCombiner {
             if (useScale) {
                 value *= scale;
             }
-            String outToken = (convertDecimal ? decimalFormatter.format(value) : scientificFormatter.format(value));
+            String outToken = (convertDecimal ? decimalFormatter.get().format(value) : scientificFormatter.get().format(value));
 
             outLine.append(line.substring(lastEnd, start));
             outLine.append(outToken);
@@ -743,6 +811,7 @@ public class LogCombiner {
                             new Arguments.RealOption("scale", "s", "a scaling factor that will multiply any time units by this value"),
                             new Arguments.Option("strip", null, "strip out all annotations (trees only)"),
                             new Arguments.Option("renumber", "n", "this option renumbers output states consecutively"),
+                            new Arguments.IntegerOption("threads", "nt", "combine the files in parallel using this number of threads (0 for automatic)"),
                             new Arguments.Option("help", "h", "option to print this message")
                     });
 
@@ -797,8 +866,13 @@ public class LogCombiner {
             System.arraycopy(args2, 0, inputFileNames, 0, inputFileNames.length);
             String outputFileName = args2[args2.length - 1];
 
-            new LogCombiner(new long[]{burnin}, resample, inputFileNames, outputFileName, treeFiles, convertToDecimal,
-                    stripAnnotations, renumberOutput, useScale, scale);
+            if (arguments.hasOption("threads")) {
+                new ParallelLogCombiner(new long[]{burnin}, resample, inputFileNames, outputFileName, treeFiles, convertToDecimal,
+                        stripAnnotations, renumberOutput, useScale, scale, arguments.getIntegerOption("threads"));
+            } else {
+                new LogCombiner(new long[]{burnin}, resample, inputFileNames, outputFileName, treeFiles, convertToDecimal,
+                        stripAnnotations, renumberOutput, useScale, scale);
+            }
 
             System.out.println("Finished.");
         }
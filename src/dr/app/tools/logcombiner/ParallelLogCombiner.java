@@ -0,0 +1,775 @@
+/*
+ * ParallelLogCombiner.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.app.tools.logcombiner;
+
+import dr.evolution.io.Importer;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxon;
+import dr.inference.trace.BinaryLogFile;
+import dr.util.ComputeService;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Combines log or tree files as LogCombiner does but with the decoding, checking and reformatting
+ * of the lines done on worker threads. Each file is split into chunks of whole lines (or rows of a
+ * binary log) that are decoded in parallel and written in order by a single writer, which numbers
+ * the states. Only a few chunks per thread are held at once so the memory used doesn't depend on
+ * the size of the files.
+ *
+ * Each file is prescanned for its header and the first sampled state (which gives the sampling
+ * frequency for the state numbering) so that the chunks can be decoded independently. Trees must
+ * be on one line each, as BEAST writes them, and combining stops with an error at any tree that isn't.
+ *
+ * @author Andrew Rambaut
+ */
+public class ParallelLogCombiner {
+
+    private static final int CHUNK_SIZE = 1 << 20; // bytes
+    private static final int BINARY_CHUNK_ROWS = 8192;
+    private static final int CHUNKS_PER_THREAD = 2;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    private static final Pattern TREE_PATTERN = Pattern.compile("tree STATE_(\\d+)(\\s.*)");
+
+    public ParallelLogCombiner(long[] burnins, long resample, String[] inputFileNames, String outputFileName,
+                               boolean treeFiles, boolean convertToDecimal, boolean stripAnnotations,
+                               boolean renumberOutput, boolean useScale, double scale, int threadCount) throws IOException {
+
+        this.treeFiles = treeFiles;
+        this.convertToDecimal = convertToDecimal;
+        this.stripAnnotations = stripAnnotations;
+        this.processTrees = stripAnnotations || convertToDecimal;
+        this.useScale = useScale;
+        this.scale = scale;
+
+        if (threadCount > 0) {
+            ComputeService.setParallelism(threadCount);
+        }
+
+        System.out.println("Creating combined " + (treeFiles ? "tree" : "log") + " file: '" + outputFileName +
+                "' using " + ComputeService.getParallelism() + " threads");
+        System.out.println();
+
+        InputFile[] inputFiles = new InputFile[inputFileNames.length];
+        for (int i = 0; i < inputFileNames.length; i++) {
+            File file = new File(inputFileNames[i]);
+
+            if (!file.exists()) {
+                System.err.println(inputFileNames[i] + " does not exist!");
+                return;
+            } else if (file.isDirectory()) {
+                System.err.println(inputFileNames[i] + " is a directory.");
+                return;
+            }
+
+            long burnin = (burnins.length > i ? burnins[i] : burnins[0]);
+            inputFiles[i] = new InputFile(i, file, burnin, !treeFiles && BinaryLogFile.isBinaryLog(file));
+        }
+
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(outputFileName))), OUTPUT_BUFFER_SIZE));
+
+        try {
+            prescan(inputFiles);
+            writeHeader(inputFiles[0], writer);
+
+            for (int i = 1; i < inputFiles.length; i++) {
+                checkTitles(inputFiles[i]);
+            }
+
+            combine(inputFiles, resample, renumberOutput, writer);
+
+            if (treeFiles) {
+                writer.println("End;");
+            }
+        } catch (CombineException ce) {
+            System.err.println(ce.getMessage());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the header of each file and finds the first state after 0, which is the sampling frequency.
+     */
+    private void prescan(InputFile[] inputFiles) throws IOException, CombineException {
+        for (InputFile inputFile : inputFiles) {
+            inputFile.readHeader();
+        }
+
+        for (InputFile inputFile : inputFiles) {
+            if (inputFile.findStateStep()) {
+                break;
+            }
+        }
+    }
+
+    private void writeHeader(InputFile first, PrintWriter writer) throws IOException, CombineException {
+        if (!treeFiles) {
+            writer.println(String.join("\t", first.titles));
+        } else if (processTrees) {
+            Tree tree = first.readFirstTree();
+            if (tree != null) {
+                LogCombiner.startLog(tree, writer, taxonMap);
+            }
+        } else {
+            for (String line : first.header) {
+                writer.println(line);
+            }
+        }
+    }
+
+    private void checkTitles(InputFile inputFile) throws CombineException {
+        if (treeFiles) {
+            return;
+        }
+        if (inputFile.titles.length != titles.length) {
+            throw new CombineException("ERROR: The number of columns in file, " + inputFile.file.getName() +
+                    ", does not match that of the first file");
+        }
+        for (int k = 0; k < titles.length; k++) {
+            if (!inputFile.titles[k].equals(titles[k])) {
+                System.err.println("WARNING: The column heading, " + inputFile.titles[k] + " in file, " +
+                        inputFile.file.getName() + ", does not match the first file's heading, " + titles[k]);
+            }
+        }
+    }
+
+    /**
+     * Decodes the chunks of all the files on the worker threads and writes them in order.
+     */
+    private void combine(InputFile[] inputFiles, long resample, boolean renumberOutput, PrintWriter writer)
+            throws IOException, CombineException {
+
+        ExecutorService pool = ComputeService.getPool("LogCombiner");
+        int maxQueued = ComputeService.getParallelism() * CHUNKS_PER_THREAD;
+        Deque<Future<Chunk>> queue = new ArrayDeque<Future<Chunk>>();
+
+        long stateCount = (renumberOutput ? -1 : 0);
+
+        try {
+            for (InputFile inputFile : inputFiles) {
+                if (inputFile.burnin > 0) {
+                    System.out.print("Combining file: '" + inputFile.file.getName() + "' removing burnin: " + inputFile.burnin);
+                } else {
+                    System.out.print("Combining file: '" + inputFile.file.getName() + "' without removing burnin");
+                }
+                if (resample > 0) {
+                    System.out.print(", resampling with frequency: " + resample);
+                }
+                System.out.println(useScale ? ", rescaling by: " + scale : "");
+
+                long start = inputFile.dataStart;
+                while (start < inputFile.dataEnd) {
+                    final long end = inputFile.nextChunkEnd(start);
+                    final long chunkStart = start;
+                    queue.addLast(pool.submit(() -> inputFile.decode(chunkStart, end)));
+                    start = end;
+
+                    while (queue.size() >= maxQueued) {
+                        stateCount = write(waitFor(queue.removeFirst()), stateCount, resample, renumberOutput, writer);
+                    }
+                }
+                inputFile.close();
+            }
+
+            while (!queue.isEmpty()) {
+                stateCount = write(waitFor(queue.removeFirst()), stateCount, resample, renumberOutput, writer);
+            }
+        } finally {
+            for (Future<Chunk> future : queue) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Numbers the states of a chunk and writes those that are sampled. This follows LogCombiner.
+     */
+    private long write(Chunk chunk, long stateCount, long resample, boolean renumberOutput, PrintWriter writer)
+            throws CombineException {
+
+        for (int k = 0; k < chunk.count; k++) {
+            // before the first state after 0 the sampling frequency isn't known
+            long step = (chunk.afterStep[k] ? stateStep : -1);
+
+            if (step > 0) {
+                stateCount += (renumberOutput ? 1 : step);
+            }
+
+            if (resample >= 0 && resample % step != 0) {
+                throw new CombineException("ERROR: Resampling frequency is not a multiple of existing sampling frequency");
+            }
+
+            boolean logThis;
+            if (resample < 0) {
+                logThis = true;
+            } else if (!renumberOutput) {
+                logThis = (stateCount % resample == 0);
+            } else {
+                logThis = ((stateCount * step) % resample == 0);
+            }
+
+            long stateLineEntry;
+            if (!renumberOutput || resample < 0) {
+                stateLineEntry = stateCount;
+            } else {
+                stateLineEntry = stateCount / (resample / step);
+            }
+
+            if (logThis) {
+                if (treeFiles) {
+                    writer.print("tree STATE_");
+                }
+                writer.print(stateLineEntry);
+                writer.println(chunk.lines[k]);
+            }
+        }
+        return stateCount;
+    }
+
+    private static Chunk waitFor(Future<Chunk> future) throws IOException, CombineException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CombineException) {
+                throw (CombineException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The decoded lines of a chunk that are past the burnin. Each line is the text following the
+     * state number.
+     */
+    private static final class Chunk {
+        Chunk(int capacity) {
+            states = new long[capacity];
+            lines = new String[capacity];
+            afterStep = new boolean[capacity];
+        }
+
+        void add(long state, String line, boolean isAfterStep) {
+            if (count == lines.length) {
+                int capacity = Math.max(16, count * 2);
+                states = Arrays.copyOf(states, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                afterStep = Arrays.copyOf(afterStep, capacity);
+            }
+            states[count] = state;
+            lines[count] = line;
+            afterStep[count] = isAfterStep;
+            count++;
+        }
+
+        long[] states;
+        String[] lines;
+        boolean[] afterStep;
+        int count = 0;
+    }
+
+    /**
+     * One of the input files. The positions of lines in text files are byte offsets and those of
+     * binary logs are row numbers.
+     */
+    private final class InputFile {
+
+        InputFile(int index, File file, long burnin, boolean isBinary) {
+            this.index = index;
+            this.file = file;
+            this.burnin = burnin;
+            this.isBinary = isBinary;
+        }
+
+        void readHeader() throws IOException, CombineException {
+            if (isBinary) {
+                BinaryLogFile log = new BinaryLogFile(file);
+                titles = log.getLabels();
+                dataStart = 0;
+                dataEnd = log.getRowCount();
+                log.close();
+            } else {
+                boundaryReader = new LineReader(file, 0);
+                dataEnd = boundaryReader.size();
+
+                String line = boundaryReader.readLine();
+                if (!treeFiles) {
+                    // lines starting with [ or # are comments (MrBayes, Migrate or BEAST)
+                    while (line != null && (line.startsWith("[") || line.startsWith("#"))) {
+                        line = boundaryReader.readLine();
+                    }
+                    if (line == null) {
+                        throw new CombineException("ERROR: The file, " + file.getName() + ", has no column headings");
+                    }
+                    titles = line.split("\t");
+                    dataStart = boundaryReader.getPosition();
+                } else {
+                    header = new ArrayList<String>();
+                    while (line != null && !line.trim().startsWith("tree ")) {
+                        header.add(line);
+                        line = boundaryReader.readLine();
+                    }
+                    dataStart = (line != null ? boundaryReader.getLineStart() : dataEnd);
+
+                    if (processTrees) {
+                        translationList = readTranslationList(header);
+                    }
+                }
+            }
+
+            if (index == 0) {
+                ParallelLogCombiner.this.titles = titles;
+            }
+        }
+
+        /**
+         * Looks for the first state after 0 in the file.
+         * @return true if one was found
+         */
+        boolean findStateStep() throws IOException, CombineException {
+            if (isBinary) {
+                BinaryLogFile log = new BinaryLogFile(file);
+                try {
+                    for (int row = 0; row < log.getRowCount(); row++) {
+                        if (setStateStep(log.getRow(row), row)) {
+                            return true;
+                        }
+                    }
+                } finally {
+                    log.close();
+                }
+            } else {
+                LineReader reader = new LineReader(file, dataStart);
+                try {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        if (treeFiles) {
+                            long state = getTreeState(line, reader.getLineStart());
+                            if (state > 0) {
+                                setStateStep(state, reader.getLineStart(), 0);
+                                return true;
+                            }
+                        } else if (setStateStep(line.split("\t"), reader.getLineStart())) {
+                            return true;
+                        }
+                        line = reader.readLine();
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            return false;
+        }
+
+        private boolean setStateStep(String[] parts, long position) {
+            try {
+                long state = Long.parseLong(parts[0]);
+                if (state > 0) {
+                    setStateStep(state, position, parts.length);
+                    return true;
+                }
+            } catch (NumberFormatException nfe) {
+                // not a state
+            }
+            return false;
+        }
+
+        private void setStateStep(long state, long position, int columns) {
+            stateStep = state;
+            stateStepFile = index;
+            stateStepPosition = position;
+            columnCount = columns;
+        }
+
+        private boolean isAfterStep(long position) {
+            return stateStep > 0 && (index > stateStepFile || (index == stateStepFile && position >= stateStepPosition));
+        }
+
+        /**
+         * @return the state of a tree line, or -1 if the line isn't a tree
+         */
+        private long getTreeState(String line, long position) throws IOException, CombineException {
+            if (processTrees) {
+                Tree tree = parseTree(line);
+                return (tree != null ? getState(tree) : -1);
+            }
+            Matcher m = matchTree(line, position);
+            return (m != null ? Long.parseLong(m.group(1)) : -1);
+        }
+
+        /**
+         * Matches a tree command that is written on one line as 'tree STATE_n ... ;'. The trees
+         * are copied without being parsed so a tree command that isn't like this (e.g., one that
+         * continues on the following lines) can't be combined and is an error rather than being
+         * dropped.
+         * @return the match, or null if the line isn't a tree command
+         */
+        private Matcher matchTree(String line, long position) throws CombineException {
+            String command = line.trim();
+            if (!command.regionMatches(true, 0, "tree ", 0, 5)) {
+                return null;
+            }
+            Matcher m = TREE_PATTERN.matcher(command);
+            if (!m.matches() || !command.endsWith(";")) {
+                throw new CombineException("ERROR: The tree at byte " + position + " of file, " + file.getName() +
+                        ", is not on one line as 'tree STATE_n ... ;' so can't be combined in parallel");
+            }
+            return m;
+        }
+
+        Tree readFirstTree() throws IOException, CombineException {
+            LineReader reader = new LineReader(file, dataStart);
+            try {
+                String line = reader.readLine();
+                while (line != null) {
+                    Tree tree = parseTree(line);
+                    if (tree != null) {
+                        return tree;
+                    }
+                    line = reader.readLine();
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        }
+
+        private Tree parseTree(String line) throws IOException, CombineException {
+            String command = line.trim();
+            if (!command.regionMatches(true, 0, "tree ", 0, 5)) {
+                return null;
+            }
+            try {
+                return NexusImporter.parseTree(command, translationList, stripAnnotations);
+            } catch (Importer.ImportException ie) {
+                throw new CombineException("Error Parsing Input Tree: " + ie.getMessage());
+            }
+        }
+
+        private long getState(Tree tree) throws CombineException {
+            String name = tree.getId();
+            if (name == null) {
+                throw new CombineException("ERROR: Trees do not give state numbers as tree attributes.");
+            }
+            // split on underscore in STATE_xxxx
+            return Long.parseLong(name.split("_")[1]);
+        }
+
+        /**
+         * @return the end of the chunk that starts at the given position
+         */
+        long nextChunkEnd(long start) throws IOException {
+            if (isBinary) {
+                return Math.min(start + BINARY_CHUNK_ROWS, dataEnd);
+            }
+            if (start + CHUNK_SIZE >= dataEnd) {
+                return dataEnd;
+            }
+            // the chunk ends at the start of the first line after its size
+            boundaryReader.seek(start + CHUNK_SIZE - 1);
+            boundaryReader.readLine();
+            return boundaryReader.getPosition();
+        }
+
+        /**
+         * Decodes the lines that start in the given range. This is called on the worker threads.
+         */
+        Chunk decode(long start, long end) throws IOException, CombineException {
+            Chunk chunk = new Chunk(isBinary ? (int) (end - start) : 64);
+
+            if (isBinary) {
+                BinaryLogFile log = new BinaryLogFile(file);
+                try {
+                    for (long row = start; row < end; row++) {
+                        decodeLogRow(log.getRow((int) row), row, chunk);
+                    }
+                } finally {
+                    log.close();
+                }
+                return chunk;
+            }
+
+            LineReader reader = new LineReader(file, start);
+            try {
+                while (reader.getPosition() < end) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    if (treeFiles) {
+                        decodeTree(line, reader.getLineStart(), chunk);
+                    } else {
+                        decodeLogRow(line.split("\t"), reader.getLineStart(), chunk);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return chunk;
+        }
+
+        private void decodeLogRow(String[] parts, long position, Chunk chunk) {
+            long state;
+            try {
+                state = Long.parseLong(parts[0]);
+            } catch (NumberFormatException nfe) {
+                return;
+            }
+
+            // if the columnCount is not the same then perhaps the line is corrupt so skip it
+            // (the rows before the first state after 0 don't have a columnCount to compare to)
+            if (state < burnin || !isAfterStep(position) || parts.length != columnCount) {
+                return;
+            }
+
+            StringBuilder line = new StringBuilder();
+            for (int j = 1; j < parts.length; j++) {
+                if (!parts[j].startsWith("{")) {
+                    // complex log values start with a curly bracket - otherwise attempt to parse
+                    // it as a number. If it fails, skip the line as a possible corruption.
+                    try {
+                        Double.parseDouble(parts[j]);
+                    } catch (NumberFormatException nfe) {
+                        return;
+                    }
+                }
+                line.append('\t').append(LogCombiner.formatLogValue(parts[j], titles[j], convertToDecimal, useScale, scale));
+            }
+            chunk.add(state, line.toString(), true);
+        }
+
+        private void decodeTree(String line, long position, Chunk chunk) throws IOException, CombineException {
+            if (processTrees) {
+                Tree tree = parseTree(line);
+                if (tree != null) {
+                    long state = getState(tree);
+                    if (state >= burnin) {
+                        chunk.add(state, LogCombiner.formatTree(tree, taxonMap, convertToDecimal), isAfterStep(position));
+                    }
+                }
+            } else {
+                Matcher m = matchTree(line, position);
+                if (m != null) {
+                    long state = Long.parseLong(m.group(1));
+                    if (state >= burnin) {
+                        chunk.add(state, m.group(2), isAfterStep(position));
+                    }
+                }
+            }
+        }
+
+        void close() throws IOException {
+            if (boundaryReader != null) {
+                boundaryReader.close();
+            }
+        }
+
+        final int index;
+        final File file;
+        final long burnin;
+        final boolean isBinary;
+
+        String[] titles;
+        List<String> header;
+        Map<String, Taxon> translationList;
+
+        long dataStart;
+        long dataEnd;
+
+        private LineReader boundaryReader;
+    }
+
+    /**
+     * Reads the translation table from the header of a trees file.
+     */
+    private Map<String, Taxon> readTranslationList(List<String> header) throws IOException, CombineException {
+        StringBuilder text = new StringBuilder();
+        for (String line : header) {
+            text.append(line).append('\n');
+        }
+        // terminate the header where the first tree would be
+        text.append("END;\n");
+
+        NexusImporter importer = new NexusImporter(new StringReader(text.toString()), stripAnnotations);
+        try {
+            importer.hasTree();
+        } catch (Importer.ImportException ie) {
+            throw new CombineException("Error Parsing Input Tree: " + ie.getMessage());
+        }
+        return (importer.getTranslationList() != null ? importer.getTranslationList() : new HashMap<String, Taxon>());
+    }
+
+    /**
+     * Reads lines from a file keeping track of their byte offsets. Lines end with '\n' (and an
+     * optional '\r') and are decoded in the platform's charset, as FileReader does.
+     */
+    private static final class LineReader implements Closeable {
+
+        LineReader(File file, long position) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            seek(position);
+        }
+
+        void seek(long position) throws IOException {
+            channel.position(position);
+            this.position = position;
+            buffer.clear();
+            buffer.flip();
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        /**
+         * @return the offset of the start of the last line read
+         */
+        long getLineStart() {
+            return lineStart;
+        }
+
+        /**
+         * @return the offset of the next line
+         */
+        long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the next line or null at the end of the file
+         */
+        String readLine() throws IOException {
+            lineStart = position;
+            int length = 0;
+
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    buffer.flip();
+                    if (count <= 0) {
+                        if (length == 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                }
+
+                byte[] bytes = buffer.array();
+                int from = buffer.position();
+                int to = buffer.limit();
+                int i = from;
+                while (i < to && bytes[i] != '\n') {
+                    i++;
+                }
+
+                int count = i - from;
+                if (length + count > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+                }
+                System.arraycopy(bytes, from, line, length, count);
+                length += count;
+                position += count;
+
+                if (i < to) {
+                    // skip the newline
+                    buffer.position(i + 1);
+                    position++;
+                    break;
+                }
+                buffer.position(i);
+            }
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, CHARSET);
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private static final Charset CHARSET = Charset.defaultCharset();
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private byte[] line = new byte[1024];
+        private long position;
+        private long lineStart;
+    }
+
+    /**
+     * An error in the input files that stops the combining.
+     */
+    private static final class CombineException extends Exception {
+        CombineException(String message) {
+            super(message);
+        }
+    }
+
+    private final boolean treeFiles;
+    private final boolean convertToDecimal;
+    private final boolean stripAnnotations;
+    private final boolean processTrees;
+    private final boolean useScale;
+    private final double scale;
+
+    private final Map<String, Integer> taxonMap = new HashMap<String, Integer>();
+    private String[] titles;
+
+    // the first state after 0 gives the sampling frequency
+    private long stateStep = -1;
+    private int stateStepFile = -1;
+    private long stateStepPosition = -1;
+    private int columnCount = 0;
+}
@@ -98,6 +98,14 @@ public class AnnotateAction implements CladeAction {
                 continue;
             }
 
+            AttributeSummary summary = clade.getAttributeSummary(attributeName);
+            if (summary != null) {
+                if (!filter) {
+                    annotateSummaryAttribute(tree, node, attributeName, summary);
+                }
+                continue;
+            }
+
             List<Object> values = clade.getAttributeValues(attributeName);
 
             if (values != null && !values.isEmpty()) {
@@ -258,6 +266,57 @@ public class AnnotateAction implements CladeAction {
         }
     }
 
+    /**
+     * Annotates an attribute from its streaming summary. This gives the same annotations as
+     * the full list of values except that plugins are not called and the bivariate HPD
+     * contours (which need the joint values) are replaced by the HPD of each dimension.
+     */
+    private void annotateSummaryAttribute(MutableTree tree, NodeRef node, String attributeName, AttributeSummary summary) {
+        switch (summary.getType()) {
+            case DISCRETE:
+                annotateModeAttribute(tree, node, attributeName, summary.getCounts());
+                annotateFrequencyAttribute(tree, node, attributeName, summary.getCounts());
+                break;
+            case BOOLEAN:
+                tree.setNodeAttribute(node, attributeName, summary.getValues().getMean());
+                break;
+            case NUMERIC: {
+                StreamingSummary values = summary.getValues();
+                tree.setNodeAttribute(node, attributeName, values.getMean());
+                if (summary.isVariable()) {
+                    tree.setNodeAttribute(node, attributeName + "_median", values.getMedian());
+                    annotateHPDAttribute(tree, node, attributeName + "_95%_HPD", 0.95, values);
+                    tree.setNodeAttribute(node, attributeName + "_range", new Object[]{values.getMin(), values.getMax()});
+                    double negativePortion = values.getNegativeProportion();
+                    tree.setNodeAttribute(node, attributeName + "_sign", new Object[]{negativePortion, 1 - negativePortion});
+                }
+                break;
+            }
+            case DOUBLE_ARRAY: {
+                StreamingSummary[] components = summary.getComponents();
+                for (int k = 0; k < components.length; k++) {
+                    tree.setNodeAttribute(node, attributeName + (k + 1), components[k].getMean());
+                }
+                for (int k = 0; k < components.length; k++) {
+                    StreamingSummary values = components[k];
+                    if (values.getMin() < values.getMax()) {
+                        String name = attributeName + (k + 1);
+                        tree.setNodeAttribute(node, name + "_median", values.getMedian());
+                        tree.setNodeAttribute(node, name + "_range", new Object[]{values.getMin(), values.getMax()});
+                        tree.setNodeAttribute(node, name + "_positiveProb", 1 - values.getNegativeProportion());
+                        annotateHPDAttribute(tree, node, name + "_95%_HPD", 0.95, values);
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    private void annotateHPDAttribute(MutableTree tree, NodeRef node, String label, double hpd, StreamingSummary values) {
+        double[] interval = values.getHPD(hpd);
+        tree.setNodeAttribute(node, label, new Object[]{interval[0], interval[1]});
+    }
+
     // the old (insane) way of doing it... to be removed soon
 //    private void annotateNode(MutableTree tree, NodeRef node, Clade clade) {
 //        boolean filter = false;
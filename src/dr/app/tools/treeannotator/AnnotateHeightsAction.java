@@ -81,7 +81,44 @@ public class AnnotateHeightsAction implements CladeAction {
     private void annotateNode(MutableTree tree, NodeRef node, Clade clade) {
         assert clade != null;
 
-        setNodeHeightAnnotations(tree, node, clade.getHeightValues());
+        if (clade.getHeightSummary() != null) {
+            setNodeHeightAnnotations(tree, node, clade.getHeightSummary());
+        } else {
+            setNodeHeightAnnotations(tree, node, clade.getHeightValues());
+        }
+    }
+
+    /**
+     * Annotates the node from a streaming summary of the heights. KDEs require all the
+     * values so are not available.
+     */
+    public void setNodeHeightAnnotations(MutableTree tree, NodeRef node, StreamingSummary heights) {
+        if (!TIP_HEIGHT_HPDS && tree.isExternal(node)) {
+            return;
+        }
+
+        assert heights != null && heights.getCount() > 0;
+
+        double mean = heights.getMean();
+        double median = heights.getMedian();
+
+        Double[] range = new Double[]{heights.getMin(), heights.getMax()};
+
+        if (Math.abs(range[0] - range[1]) > HEIGHT_EPSILON) {
+            // only create these annotation if there is some variation in height
+            tree.setNodeAttribute(node, "height_mean", mean);
+            tree.setNodeAttribute(node, "height_median", median);
+            tree.setNodeAttribute(node, "height_range", range);
+
+            if (heights.getCount() >= hpdLimit) {
+                for (int i = 0; i < hpdIntervals.length; i++) {
+                    double[] hpd = heights.getHPD(hpdIntervals[i]);
+                    tree.setNodeAttribute(node, "height_" + (hpdIntervals[i] * 100) + "%_HPD", new Double[]{hpd[0], hpd[1]});
+                }
+            }
+        }
+
+        setNodeHeight(tree, node, mean, median);
     }
 
     public void setNodeHeightAnnotations(MutableTree tree, NodeRef node, List<Double> heights) {
@@ -128,6 +165,10 @@ public class AnnotateHeightsAction implements CladeAction {
              }
         }
 
+        setNodeHeight(tree, node, mean, median);
+    }
+
+    private void setNodeHeight(MutableTree tree, NodeRef node, double mean, double median) {
         if (heightsOption == TreeAnnotator.HeightsSummary.MEAN_HEIGHTS ||
                 heightsOption == TreeAnnotator.HeightsSummary.MRCA_HEIGHTS) {
             tree.setNodeHeight(node, mean);
@@ -0,0 +1,162 @@
+/*
+ * AttributeSummary.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.tools.treeannotator;
+
+import java.util.HashMap;
+
+/**
+ * A bounded memory summary of the values of one attribute for a clade, used instead of
+ * the list of values when TreeAnnotator is run with streaming summaries. As with the
+ * value lists, the type of the attribute is taken from the first value seen.
+ *
+ * @author Andrew Rambaut
+ * @version $
+ */
+final class AttributeSummary {
+
+    enum Type {
+        NUMERIC,
+        BOOLEAN,
+        DISCRETE,
+        DOUBLE_ARRAY
+    }
+
+    AttributeSummary(Object firstValue, boolean forceIntegerToDiscrete) {
+        if (firstValue instanceof Boolean) {
+            type = Type.BOOLEAN;
+        } else if (firstValue instanceof String || (forceIntegerToDiscrete && firstValue instanceof Integer)) {
+            type = Type.DISCRETE;
+        } else if (isDoubleArray(firstValue)) {
+            type = Type.DOUBLE_ARRAY;
+        } else {
+            type = Type.NUMERIC;
+        }
+
+        if (type == Type.DISCRETE) {
+            counts = new HashMap<>();
+            values = null;
+            components = null;
+        } else if (type == Type.DOUBLE_ARRAY) {
+            counts = null;
+            values = null;
+            components = new StreamingSummary[((Object[]) firstValue).length];
+            for (int k = 0; k < components.length; k++) {
+                components[k] = new StreamingSummary();
+            }
+        } else {
+            counts = null;
+            values = new StreamingSummary();
+            components = null;
+        }
+    }
+
+    synchronized void add(Object value) {
+        switch (type) {
+            case DISCRETE:
+                counts.merge(value, 1, Integer::sum);
+                break;
+            case BOOLEAN:
+                values.add(value instanceof Boolean && (Boolean) value ? 1.0 : 0.0);
+                break;
+            case DOUBLE_ARRAY:
+                if (value instanceof Object[]) {
+                    Object[] array = (Object[]) value;
+                    for (int k = 0; k < components.length && k < array.length; k++) {
+                        if (array[k] instanceof Double) {
+                            components[k].add((Double) array[k]);
+                        }
+                    }
+                }
+                break;
+            case NUMERIC:
+                if (value instanceof Number) {
+                    double x = ((Number) value).doubleValue();
+                    if (x < numericMin) numericMin = x;
+                    if (x > numericMax) numericMax = x;
+                    values.add(x);
+                } else {
+                    // as with the value lists, values of other types are counted as zero
+                    values.add(0.0);
+                }
+                break;
+        }
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the summary of the values for numeric and boolean (as 0/1) attributes
+     */
+    StreamingSummary getValues() {
+        return values;
+    }
+
+    /**
+     * @return the summaries of each element of a double array attribute
+     */
+    StreamingSummary[] getComponents() {
+        return components;
+    }
+
+    /**
+     * @return the count of each value of a discrete attribute
+     */
+    HashMap<Object, Integer> getCounts() {
+        return counts;
+    }
+
+    /**
+     * @return whether the numeric values (ignoring any of other types) vary
+     */
+    boolean isVariable() {
+        return numericMin < numericMax;
+    }
+
+    private static boolean isDoubleArray(Object value) {
+        if (!(value instanceof Object[]) || ((Object[]) value).length == 0) {
+            return false;
+        }
+        for (Object n : (Object[]) value) {
+            if (!(n instanceof Double)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final Type type;
+    private final StreamingSummary values;
+    private final StreamingSummary[] components;
+    private final HashMap<Object, Integer> counts;
+
+    private double numericMin = Double.MAX_VALUE;
+    private double numericMax = -Double.MAX_VALUE;
+}
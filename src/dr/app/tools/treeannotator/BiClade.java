@@ -30,6 +30,7 @@ import dr.evolution.util.Taxon;
 import dr.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Andrew Rambaut
@@ -145,8 +146,23 @@ class BiClade implements Clade {
         this.credibility = credibility;
     }
 
+    /**
+     * Keep fixed size streaming summaries of the heights and attribute values
+     * instead of lists of all the values.
+     */
+    void useStreamingSummaries(boolean forceIntegerToDiscrete) {
+        this.forceIntegerToDiscrete = forceIntegerToDiscrete;
+        heightSummary = new StreamingSummary();
+        attributeSummaryMap = new ConcurrentHashMap<>();
+    }
+
     @Override
     public void addAttributeValue(String attributeName, Object value) {
+        if (attributeSummaryMap != null) {
+            attributeSummaryMap.computeIfAbsent(attributeName,
+                    k -> new AttributeSummary(value, forceIntegerToDiscrete)).add(value);
+            return;
+        }
         synchronized (attributeValueMap) {
             attributeValueMap.computeIfAbsent(attributeName, k -> new ArrayList<>()).add(value);
         }
@@ -157,8 +173,17 @@ class BiClade implements Clade {
         return attributeValueMap.get(attributeName);
     }
 
+    @Override
+    public AttributeSummary getAttributeSummary(String attributeName) {
+        return (attributeSummaryMap != null ? attributeSummaryMap.get(attributeName) : null);
+    }
+
     @Override
     public void addHeightValue(double height) {
+        if (heightSummary != null) {
+            heightSummary.add(height);
+            return;
+        }
         synchronized (heightValues) {
             heightValues.add(height);
         }
@@ -169,6 +194,11 @@ class BiClade implements Clade {
         return heightValues;
     }
 
+    @Override
+    public StreamingSummary getHeightSummary() {
+        return heightSummary;
+    }
+
 //    public void addChildHeightValues(double leftHeight, double rightHeight) {
 //        leftHeightValues.add(leftHeight);
 //        rightHeightValues.add(rightHeight);
@@ -271,6 +301,10 @@ class BiClade implements Clade {
     private final Map<String, List<Object>> attributeValueMap = new HashMap<>();
     private final List<Double> heightValues = new ArrayList<>();
 
+    private StreamingSummary heightSummary = null;
+    private Map<String, AttributeSummary> attributeSummaryMap = null;
+    private boolean forceIntegerToDiscrete = false;
+
     static {
         if (USE_BITSET_CLADE_KEYS) {
             cladeKeys = BitsetCladeKeys.INSTANCE;
@@ -67,6 +67,16 @@ public interface Clade extends Comparable<Clade> {
 
     List<Object> getAttributeValues(String attributeName);
 
+    /**
+     * @return the streaming summary of the heights or null if every height is being kept
+     */
+    StreamingSummary getHeightSummary();
+
+    /**
+     * @return the streaming summary of an attribute or null if every value is being kept
+     */
+    AttributeSummary getAttributeSummary(String attributeName);
+
     /**
      * Comparable to sort by ascending size
      *
@@ -159,13 +159,15 @@ public final class CladeSystem {
 
             BiClade clade1 = addClades(tree, tree.getChild(node, 0), storeBitsets);
             BiClade clade2 = addClades(tree, tree.getChild(node, 1), storeBitsets);
-            synchronized (cladeMap) {
-                clade = getOrAddClade(clade1, clade2);
-            }
+            clade = getOrAddClade(clade1, clade2);
 
             if (keepParents) {
-                clade1.addParent(clade);
-                clade2.addParent(clade);
+                synchronized (clade1) {
+                    clade1.addParent(clade);
+                }
+                synchronized (clade2) {
+                    clade2.addParent(clade);
+                }
             }
 
             if (storeBitsets) {
@@ -219,31 +221,47 @@ public final class CladeSystem {
     private final Map<Object, BitsetKey> bitsetKeyMap = new ConcurrentHashMap<>();
 
     /**
-     * see if a clade exists otherwise create it
+     * see if a clade exists otherwise create it. The clade map is a concurrent map so
+     * trees can be added from multiple threads.
      */
     private BiClade getOrAddClade(Clade child1, Clade child2) {
         Object key = BiClade.getParentKey(child1.getKey(), child2.getKey());
         BiClade clade = cladeMap.get(key);
         if (clade == null) {
+            BiClade newClade;
             if (keepSubClades) {
-                clade = new BiClade(child1, child2);
+                newClade = new BiClade(child1, child2);
             } else {
-                clade = new BiClade(key, child1.getSize() + child2.getSize());
+                newClade = new BiClade(key, child1.getSize() + child2.getSize());
             }
-            cladeMap.put(clade.getKey(), clade);
-            requiresMrcaKeyList = null;
-        } else {
+            clade = cladeMap.putIfAbsent(key, newClade);
+            if (clade == null) {
+                requiresMrcaKeyList = null;
+                return newClade;
+            }
+        }
+        if (keepSubClades) {
             synchronized (clade) {
-                if (keepSubClades) {
-                    clade.addSubClades(child1, child2);
-                }
+                clade.addSubClades(child1, child2);
             }
-//            }
         }
 
         return clade;
     }
 
+    /**
+     * Switch all the clades to keeping streaming summaries of their heights and
+     * attributes rather than every value (bounded memory for large tree sets).
+     */
+    public void useStreamingSummaries(boolean forceIntegerToDiscrete) {
+        for (BiClade clade : tipClades.values()) {
+            clade.useStreamingSummaries(forceIntegerToDiscrete);
+        }
+        for (BiClade clade : cladeMap.values()) {
+            clade.useStreamingSummaries(forceIntegerToDiscrete);
+        }
+    }
+
     public Clade getClade(Object key) {
         Clade clade = cladeMap.get(key);
         if (clade == null) {
@@ -330,9 +348,10 @@ public final class CladeSystem {
         }
 
         if (requiresMrcaKeyList == null) {
-            requiresMrcaKeyList = new ArrayList<>(cladeMap.values());
+            List<BiClade> keyList = new ArrayList<>(cladeMap.values());
             // sort in descending size
-            requiresMrcaKeyList.sort(Comparator.comparingInt((BiClade clade) -> clade.getSize()).reversed());
+            keyList.sort(Comparator.comparingInt((BiClade clade) -> clade.getSize()).reversed());
+            requiresMrcaKeyList = keyList;
         }
 
         final Set<BiClade> unresolved = new LinkedHashSet<>(requiresMrcaKeyList);
@@ -502,7 +521,7 @@ private static final class NodeSummary {
     }
 }
 
-private List<BiClade> requiresMrcaKeyList = null;
+private volatile List<BiClade> requiresMrcaKeyList = null;
 
 
 public void calculateCladeCredibilities(int totalTreesUsed) {
@@ -727,7 +746,7 @@ private final Map<Integer, BiClade> tipClades = new HashMap<>();
 private final Map<Object, BiClade> tipCladeMap = new HashMap<>();
 
 // a map of clade key to clade (excluding tip clades)
-private final Map<Object, BiClade> cladeMap = new HashMap<>();
+private final Map<Object, BiClade> cladeMap = new ConcurrentHashMap<>();
 
 Clade rootClade;
 
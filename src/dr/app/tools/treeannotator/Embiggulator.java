@@ -32,7 +32,6 @@ import dr.util.Citation;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
@@ -62,7 +61,7 @@ public class Embiggulator {
         this.cladeSystem = cladeSystem;
     }
 
-    public void embiggenBiClades(final int minCladeSize, final int minCladeCount, final int threadCount) {
+    public void embiggenBiClades(final int minCladeSize, final int minCladeCount, final ExecutorService pool) {
         binCladesBySize();
 
         // pull down the clades and tip clades into an array to iterate over easily
@@ -124,12 +123,6 @@ public class Embiggulator {
         System.err.println("|--------------|--------------|--------------|--------------|");
         final int stepSize = Math.max((n - 1 - sizeIndices[maxSize - 1]) / 60, 1);
 
-        ExecutorService pool = null;
-        if (threadCount < 0) {
-            pool = Executors.newCachedThreadPool();
-        } else if (threadCount > 0) {
-            pool = Executors.newFixedThreadPool(threadCount);
-        }
         List<Future<?>> futures = new ArrayList<Future<?>>();
 
         final int[] k = {0};
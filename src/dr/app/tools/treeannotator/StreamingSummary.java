@@ -0,0 +1,352 @@
+/*
+ * StreamingSummary.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.tools.treeannotator;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size summary of a stream of values, used in place of keeping every value of a
+ * node height or attribute. The moments, range and sign are kept exactly and the
+ * distribution is kept as a histogram of weighted bins (a t-digest) from which the median
+ * and HPD intervals are estimated.
+ *
+ * Until more than maxBinCount distinct values have been seen the histogram is exact and
+ * so gives the same medians and HPDs as the full list of values.
+ *
+ * @author Andrew Rambaut
+ * @version $
+ */
+public final class StreamingSummary {
+
+    public static final int DEFAULT_BIN_COUNT = 256;
+
+    // the maximum number of starting points tried when finding an HPD interval
+    private static final int MAX_HPD_WINDOWS = 2000;
+
+    public StreamingSummary() {
+        this(DEFAULT_BIN_COUNT);
+    }
+
+    public StreamingSummary(int maxBinCount) {
+        if (maxBinCount < 2) {
+            throw new IllegalArgumentException("The histogram needs at least 2 bins");
+        }
+        this.maxBinCount = maxBinCount;
+    }
+
+    public synchronized void add(double value) {
+        count++;
+        sum += value;
+
+        // Welford's running variance
+        double delta = value - runningMean;
+        runningMean += delta / count;
+        sumOfSquares += delta * (value - runningMean);
+
+        if (value < min) min = value;
+        if (value > max) max = value;
+        if (value < 0.0) negativeCount++;
+
+        if (buffer.length == bufferSize) {
+            if (buffer.length < maxBinCount) {
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxBinCount));
+            } else {
+                flush();
+            }
+        }
+        buffer[bufferSize] = value;
+        bufferSize++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMean() {
+        return sum / count;
+    }
+
+    public synchronized double getVariance() {
+        return (count > 1 ? sumOfSquares / (count - 1) : 0.0);
+    }
+
+    public synchronized double getMin() {
+        return min;
+    }
+
+    public synchronized double getMax() {
+        return max;
+    }
+
+    public synchronized double getNegativeProportion() {
+        return ((double) negativeCount) / count;
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /**
+     * @param q the quantile in [0, 1]
+     * @return the estimated value (exact whilst the histogram is exact)
+     */
+    public synchronized double getQuantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        flush();
+        createAnchors();
+        return getValueAtRank(q * (count - 1));
+    }
+
+    /**
+     * Finds the shortest interval containing the given proportion of the values.
+     *
+     * @param proportion the HPD proportion (e.g., 0.95)
+     * @return the lower and upper bounds
+     */
+    public synchronized double[] getHPD(double proportion) {
+        if (count == 0) {
+            return new double[] { Double.NaN, Double.NaN };
+        }
+        flush();
+        createAnchors();
+
+        long diff = Math.max(1, Math.round(proportion * count));
+        long windowCount = count - diff + 1;
+        double step = (windowCount <= MAX_HPD_WINDOWS ? 1.0 : ((double) (windowCount - 1)) / (MAX_HPD_WINDOWS - 1));
+        long steps = Math.min(windowCount, MAX_HPD_WINDOWS);
+
+        double minRange = Double.MAX_VALUE;
+        double lower = min;
+        double upper = max;
+        for (long i = 0; i < steps; i++) {
+            double rank = i * step;
+            double minValue = getValueAtRank(rank);
+            double maxValue = getValueAtRank(rank + diff - 1);
+            double range = Math.abs(maxValue - minValue);
+            if (range < minRange) {
+                minRange = range;
+                lower = minValue;
+                upper = maxValue;
+            }
+        }
+        return new double[] { lower, upper };
+    }
+
+    /**
+     * Merges the buffered values into the histogram and then, if there are too many bins,
+     * compresses it.
+     */
+    private void flush() {
+        if (bufferSize == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, bufferSize);
+
+        double[] newCentres = new double[binCount + bufferSize];
+        long[] newCounts = new long[binCount + bufferSize];
+        boolean[] newMerged = new boolean[binCount + bufferSize];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < binCount || j < bufferSize) {
+            if (j == bufferSize || (i < binCount && centres[i] <= buffer[j])) {
+                if (n > 0 && !merged[i] && !newMerged[n - 1] && newCentres[n - 1] == centres[i]) {
+                    newCounts[n - 1] += counts[i];
+                } else {
+                    newCentres[n] = centres[i];
+                    newCounts[n] = counts[i];
+                    newMerged[n] = merged[i];
+                    n++;
+                }
+                i++;
+            } else {
+                if (n > 0 && !newMerged[n - 1] && newCentres[n - 1] == buffer[j]) {
+                    newCounts[n - 1] += 1;
+                } else {
+                    newCentres[n] = buffer[j];
+                    newCounts[n] = 1;
+                    n++;
+                }
+                j++;
+            }
+        }
+        centres = newCentres;
+        counts = newCounts;
+        merged = newMerged;
+        binCount = n;
+        bufferSize = 0;
+        anchorRanks = null;
+
+        if (binCount > maxBinCount) {
+            compress();
+        }
+    }
+
+    /**
+     * Reduces the number of bins by merging neighbouring bins as in the merging t-digest
+     * (Dunning and Ertl, 2019, Computing extremely accurate quantiles using t-digests.
+     * arXiv:1902.04023). The size limit on a bin uses an arcsine scale so bins are small
+     * in the tails (where the HPD limits are) and larger in the middle of the distribution.
+     */
+    private void compress() {
+        double compression = maxBinCount / 2.0;
+        double total = count;
+
+        int n = 0;
+        long cumulative = 0;
+        double qLimit = getQuantileLimit(0.0, compression);
+        double weightedSum = centres[0] * counts[0];
+        long binTotal = counts[0];
+        boolean isMerged = merged[0];
+
+        for (int i = 1; i < binCount; i++) {
+            if ((cumulative + binTotal + counts[i]) / total <= qLimit) {
+                isMerged = isMerged || merged[i] || centres[i] != centres[i - 1];
+                weightedSum += centres[i] * counts[i];
+                binTotal += counts[i];
+            } else {
+                centres[n] = (isMerged ? weightedSum / binTotal : centres[i - 1]);
+                counts[n] = binTotal;
+                merged[n] = isMerged;
+                n++;
+                cumulative += binTotal;
+                qLimit = getQuantileLimit(cumulative / total, compression);
+
+                weightedSum = centres[i] * counts[i];
+                binTotal = counts[i];
+                isMerged = merged[i];
+            }
+        }
+        centres[n] = (isMerged ? weightedSum / binTotal : centres[binCount - 1]);
+        counts[n] = binTotal;
+        merged[n] = isMerged;
+        binCount = n + 1;
+    }
+
+    /**
+     * @return the largest quantile that the bin starting at quantile q can extend to
+     */
+    private static double getQuantileLimit(double q, double compression) {
+        double k = compression * Math.asin(2.0 * q - 1.0) / Math.PI + 1.0;
+        if (k >= compression / 2.0) {
+            return 1.0;
+        }
+        return (Math.sin(k * Math.PI / compression) + 1.0) / 2.0;
+    }
+
+    /**
+     * Creates the piecewise linear map from rank to value. A bin of identical values
+     * covers its ranks exactly, a merged bin is placed at its middle rank and the values
+     * between are interpolated.
+     */
+    private void createAnchors() {
+        if (anchorRanks != null) {
+            return;
+        }
+        double[] ranks = new double[binCount * 2 + 2];
+        double[] values = new double[binCount * 2 + 2];
+        int n = 0;
+        long cumulative = 0;
+        for (int i = 0; i < binCount; i++) {
+            long lower = cumulative;
+            long upper = cumulative + counts[i] - 1;
+            if (merged[i]) {
+                if (i == 0) {
+                    ranks[n] = 0;
+                    values[n] = min;
+                    n++;
+                }
+                ranks[n] = (lower + upper) / 2.0;
+                values[n] = centres[i];
+                n++;
+                if (i == binCount - 1) {
+                    ranks[n] = upper;
+                    values[n] = max;
+                    n++;
+                }
+            } else {
+                ranks[n] = lower;
+                values[n] = centres[i];
+                n++;
+                if (upper > lower) {
+                    ranks[n] = upper;
+                    values[n] = centres[i];
+                    n++;
+                }
+            }
+            cumulative += counts[i];
+        }
+        anchorRanks = Arrays.copyOf(ranks, n);
+        anchorValues = Arrays.copyOf(values, n);
+    }
+
+    private double getValueAtRank(double rank) {
+        int index = Arrays.binarySearch(anchorRanks, rank);
+        if (index >= 0) {
+            return anchorValues[index];
+        }
+        int upper = -index - 1;
+        if (upper == 0) {
+            return anchorValues[0];
+        }
+        if (upper == anchorRanks.length) {
+            return anchorValues[anchorRanks.length - 1];
+        }
+        int lower = upper - 1;
+        double fraction = (rank - anchorRanks[lower]) / (anchorRanks[upper] - anchorRanks[lower]);
+        if (fraction == 0.5) {
+            // the same arithmetic as the mean of the two middle values in a median
+            return (anchorValues[lower] + anchorValues[upper]) / 2.0;
+        }
+        return anchorValues[lower] + (anchorValues[upper] - anchorValues[lower]) * fraction;
+    }
+
+    private final int maxBinCount;
+
+    private long count = 0;
+    private double sum = 0.0;
+    private double runningMean = 0.0;
+    private double sumOfSquares = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long negativeCount = 0;
+
+    private double[] buffer = new double[4];
+    private int bufferSize = 0;
+
+    private double[] centres = new double[0];
+    private long[] counts = new long[0];
+    private boolean[] merged = new boolean[0];
+    private int binCount = 0;
+
+    private double[] anchorRanks = null;
+    private double[] anchorValues = null;
+}
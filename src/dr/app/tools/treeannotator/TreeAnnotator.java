@@ -50,10 +50,9 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Andrew Rambaut
@@ -79,6 +78,7 @@ public class TreeAnnotator extends BaseTreeTool {
     private final AnnotateHeightsAction annotateHeightsAction;
     private final AnnotateAction annotateAction;
     private final int threadCount;
+    private final ExecutorService pool;
 
     private TaxonList taxa = null;
     private int totalTrees;
@@ -140,6 +140,7 @@ public class TreeAnnotator extends BaseTreeTool {
                          final double[] hpd2D,
                          final boolean forceIntegerToDiscrete,
                          final int threadCount,
+                         final boolean useStreamingSummaries,
                          final Target targetOption,
                          final String targetTreeFileName,
                          final String referenceTreeFileName,
@@ -164,7 +165,8 @@ public class TreeAnnotator extends BaseTreeTool {
         totalTrees = 10000;
         totalTreesUsed = 0;
 
-        this.threadCount = threadCount;
+        this.threadCount = (threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors());
+        pool = createPool(this.threadCount);
 
         CladeSystem cladeSystem = new CladeSystem(targetOption == Target.HIPSTR || targetOption == Target.MRHIPSTR || targetOption == Target.MAJORITY_RULE, targetOption == Target.MAJORITY_RULE);
 
@@ -231,6 +233,10 @@ public class TreeAnnotator extends BaseTreeTool {
         // create a new CladeSystem containing only clades from the target tree,
         // copying the credibilities over from the full cladeSystem.
         CladeSystem targetCladeSystem = new CladeSystem(targetTree, cladeSystem, mrcaCladeHeights);
+        if (useStreamingSummaries) {
+            // keep bounded size summaries of the heights and attributes rather than every value
+            targetCladeSystem.useStreamingSummaries(forceIntegerToDiscrete);
+        }
 
         if (referenceTreeFileName != null) {
 
@@ -262,6 +268,20 @@ public class TreeAnnotator extends BaseTreeTool {
         progressStream.println("Total time: " + timeElapsed + " secs");
         progressStream.println();
 
+        pool.shutdown();
+    }
+
+    /**
+     * Creates the threads for this run. These are daemon threads so they don't keep a
+     * run that has failed from exiting.
+     */
+    private static ExecutorService createPool(int threadCount) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "TreeAnnotator " + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     private static void printCladeInformation(CladeSystem cladeSystem) {
@@ -299,41 +319,21 @@ public class TreeAnnotator extends BaseTreeTool {
         startTime = System.currentTimeMillis();
 
         try {
-            // read the first tree using NexusImport to get the taxon list and tip number to taxon mapping
-//            Reader reader = new BufferedReader(new FileReader(inputFileName));
-//            NexusImporter nexusImporter = new NexusImporter(reader, true);
-//            taxa = nexusImporter.importTree(null);
-//
-//            reader = new BufferedReader(new FileReader(inputFileName));
-//            BEASTTreesImporter importer = new BEASTTreesImporter(reader, false);
-//            importer.setTaxonList(taxa);
-
-            Reader reader = new BufferedReader(new FileReader(inputFileName));
-            NexusImporter importer = new NexusImporter(reader, true);
-
-            ExecutorService pool;
-            List<Future<?>> futures;
-            if (THREADED_READING) {
-                if (threadCount <= 0) {
-                    pool = Executors.newCachedThreadPool();
-                } else {
-                    pool = Executors.newFixedThreadPool(threadCount);
-                }
-                futures = new ArrayList<>();
-            }
+            // the text of each tree is read here and then parsed and added to the
+            // clade system on the worker threads
+            BufferedReader reader = new BufferedReader(new FileReader(inputFileName));
+            TreeCommandReader treeReader = new TreeCommandReader(reader, true);
+
+            TreeWorkQueue workQueue = (THREADED_READING ? new TreeWorkQueue(pool, threadCount) : null);
             totalTrees = 0;
             boolean firstTree = true;
-            while (importer.hasTree()) {
-                final Tree tree = importer.importNextTree();
+            String treeCommand;
+            while ((treeCommand = treeReader.nextTreeCommand()) != null) {
                 long state = 0;
 
-                if (taxa == null) {
-                    taxa = new Taxa(tree);
-                }
-
                 if (burninStates > 0) {
                     // if burnin has been specified in states, try to parse it out...
-                    String name = tree.getId().trim();
+                    String name = TreeCommandReader.getTreeId(treeCommand);
 
                     long maxState;
                     if (name.startsWith("STATE_")) {
@@ -356,18 +356,21 @@ public class TreeAnnotator extends BaseTreeTool {
 
                     if (firstTree) {
                         // for the first tree do it outside a thread
+                        Tree tree = treeReader.parseTree(treeCommand);
+                        taxa = new Taxa(tree);
                         cladeSystem.add(tree);
                         firstTree = false;
                     } else {
+                        final String command = treeCommand;
                         if (THREADED_READING) {
-                            futures.add(pool.submit(() -> {
-                                cladeSystem.add(tree);
-                            }));
+                            workQueue.submit(() -> cladeSystem.add(treeReader.parseTree(command)));
                         } else {
-                            cladeSystem.add(tree);
+                            cladeSystem.add(treeReader.parseTree(command));
                         }
                     }
                     totalTreesUsed += 1;
+                } else if (taxa == null) {
+                    taxa = new Taxa(treeReader.parseTree(treeCommand));
                 }
 
                 if (totalTrees > 0 && totalTrees % stepSize == 0) {
@@ -378,14 +381,8 @@ public class TreeAnnotator extends BaseTreeTool {
             }
 
             if (THREADED_READING) {
-                try {
-                    // wait for all the threads to run to completion
-                    for (Future<?> f : futures) {
-                        f.get();
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
+                // wait for all the threads to run to completion
+                workQueue.finish();
             }
 
             reader.close();
@@ -418,47 +415,39 @@ public class TreeAnnotator extends BaseTreeTool {
         int stepSize = totalTrees / 60;
         if (stepSize < 1) stepSize = 1;
 
-        Reader reader = new BufferedReader(new FileReader(inputFileName));
-//         TreeImporter importer = new BEASTTreesImporter(reader, true);
-        TreeImporter importer = new NexusImporter(reader, false);
+        BufferedReader reader = new BufferedReader(new FileReader(inputFileName));
 
         long startTime = System.currentTimeMillis();
 
         totalTreesUsed = 0;
         try {
-            ExecutorService pool;
-            List<Future<?>> futures;
-            if (THREADED_READING) {
-                if (threadCount <= 0) {
-                    pool = Executors.newCachedThreadPool();
-                } else {
-                    pool = Executors.newFixedThreadPool(threadCount);
-                }
+            TreeCommandReader treeReader = new TreeCommandReader(reader, false);
 
-                futures = new ArrayList<>();
-            }
+            TreeWorkQueue workQueue = (THREADED_READING ? new TreeWorkQueue(pool, threadCount) : null);
 
             boolean firstTree = true;
             int counter = 0;
 
-            while (importer.hasTree()) {
-                final Tree tree = importer.importNextTree();
-
+            String treeCommand;
+            while ((treeCommand = treeReader.nextTreeCommand()) != null) {
                 if (counter >= burnin) {
                     if (firstTree) {
+                        // the attribute names must be known before any of the trees are processed
+                        Tree tree = treeReader.parseTree(treeCommand);
                         setupAttributes(tree);
+                        cladeSystem.collectCladeHeights(tree, mrcaCladeHeights);
+                        cladeSystem.traverseTree(tree, collectAttributesAction);
                         firstTree = false;
-                    }
-
-                    if (THREADED_READING) {
-                        futures.add(pool.submit(() -> {
+                    } else if (THREADED_READING) {
+                        final String command = treeCommand;
+                        workQueue.submit(() -> {
+                            Tree tree = treeReader.parseTree(command);
                             cladeSystem.collectCladeHeights(tree, mrcaCladeHeights);
-//                            rootHeights.add(tree.getNodeHeight(tree.getRoot()));
                             cladeSystem.traverseTree(tree, collectAttributesAction);
-                        }));
+                        });
                     } else {
+                        Tree tree = treeReader.parseTree(treeCommand);
                         cladeSystem.collectCladeHeights(tree, mrcaCladeHeights);
-//                        rootHeights.add(tree.getNodeHeight(tree.getRoot()));
                         cladeSystem.traverseTree(tree, collectAttributesAction);
                     }
                     totalTreesUsed += 1;
@@ -472,14 +461,8 @@ public class TreeAnnotator extends BaseTreeTool {
             }
 
             if (THREADED_READING) {
-                try {
-                    // wait for all the threads to run to completion
-                    for (Future<?> f : futures) {
-                        f.get();
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
+                // wait for all the threads to run to completion
+                workQueue.finish();
             }
 
             cladeSystem.calculateCladeCredibilities(totalTreesUsed);
@@ -634,7 +617,7 @@ public class TreeAnnotator extends BaseTreeTool {
 
         if (minCladeCount > 0) {
             Embiggulator embiggulator = new Embiggulator(cladeSystem);
-            embiggulator.embiggenBiClades(1, minCladeCount, threadCount);
+            embiggulator.embiggenBiClades(1, minCladeCount, pool);
         }
 
         HIPSTRTreeBuilder treeBuilder = new HIPSTRTreeBuilder();
@@ -1008,6 +991,7 @@ public class TreeAnnotator extends BaseTreeTool {
                         hpd2D,
                         forceIntegerToDiscrete,
                         -1,
+                        false,
                         targetOption,
                         targetTreeFileName,
                         referenceTreeFileName,
@@ -1056,6 +1040,7 @@ public class TreeAnnotator extends BaseTreeTool {
                         new Arguments.StringOption("reference", "rt", "tree_file_name", "specifies a reference tree for sampled trees to be compared with"),
                         new Arguments.StringOption("metrics", "tm", "output_file_name", "file name to write tree metrics for each tree compared to the target"),
                         new Arguments.IntegerOption("threads", "nt", "max number of threads (default automatic)"),
+                        new Arguments.Option("lowMemory", "lm", "keep fixed size streaming summaries of node heights and attributes instead of every value (KDEs and 2D HPDs are not available)"),
                         new Arguments.Option("nexusHeader", "nx", "include the full nexus taxon block (default off)"),
 //                        new Arguments.Option("forceDiscrete", null, "forces integer traits to be treated as discrete traits."),
                         new Arguments.StringOption("hpd2D", null, "the HPD interval to be used for the bivariate traits", "specifies a (vector of comma separated) HPD proportion(s)"),
@@ -1199,6 +1184,12 @@ public class TreeAnnotator extends BaseTreeTool {
             threadCount = arguments.getIntegerOption("threads");
         }
 
+        boolean useStreamingSummaries = arguments.hasOption("lowMemory");
+        if (useStreamingSummaries && useKDEs) {
+            progressStream.println("KDEs of node heights are not available with the 'lowMemory' option");
+            useKDEs = false;
+        }
+
         if (arguments.hasOption("nexusHeader")) {
             includeNexusHeader = true;
         }
@@ -1237,6 +1228,7 @@ public class TreeAnnotator extends BaseTreeTool {
                 hpd2D,
                 forceIntegerToDiscrete,
                 threadCount,
+                useStreamingSummaries,
                 target,
                 targetTreeFileName,
                 referenceTreeFileName,
@@ -0,0 +1,155 @@
+/*
+ * TreeCommandReader.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.tools.treeannotator;
+
+import dr.evolution.io.Importer;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the TREE commands of a NEXUS trees file as text so that the (expensive) parsing
+ * of each tree can be done on a worker thread. The header (TAXA block and the
+ * TRANSLATE table) is read once with a NexusImporter and the resulting translation
+ * table is shared by all the trees.
+ *
+ * Each tree is expected to start on a new line (as written by BEAST) but may span
+ * several lines.
+ *
+ * @author Andrew Rambaut
+ * @version $
+ */
+final class TreeCommandReader {
+
+    TreeCommandReader(BufferedReader reader, boolean ignoreMetaComments) throws IOException, Importer.ImportException {
+        this.reader = reader;
+        this.ignoreMetaComments = ignoreMetaComments;
+
+        StringBuilder header = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null && !isTreeStart(line)) {
+            header.append(line).append('\n');
+            line = reader.readLine();
+        }
+        pendingLine = line;
+
+        if (line == null) {
+            translationList = null;
+            finished = true;
+        } else {
+            // read the header, terminated where the first tree would be, to get the translation table
+            header.append("END;\n");
+            NexusImporter importer = new NexusImporter(new StringReader(header.toString()), ignoreMetaComments);
+            importer.hasTree();
+            translationList = (importer.getTranslationList() != null ?
+                    importer.getTranslationList() : new HashMap<String, Taxon>());
+        }
+    }
+
+    /**
+     * @return the text of the next TREE command or null if there are no more trees
+     */
+    String nextTreeCommand() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        String line = (pendingLine != null ? pendingLine : reader.readLine());
+        pendingLine = null;
+        while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+        }
+        if (line == null || !isTreeStart(line)) {
+            // end of the trees block
+            finished = true;
+            return null;
+        }
+
+        String trimmed = line.trim();
+        if (trimmed.endsWith(";")) {
+            return trimmed;
+        }
+
+        StringBuilder command = new StringBuilder(trimmed);
+        line = reader.readLine();
+        while (line != null) {
+            trimmed = line.trim();
+            command.append('\n').append(trimmed);
+            if (trimmed.endsWith(";")) {
+                break;
+            }
+            line = reader.readLine();
+        }
+        return command.toString();
+    }
+
+    /**
+     * Parses a TREE command returned by nextTreeCommand. This may be called from any thread.
+     */
+    Tree parseTree(String treeCommand) throws IOException, Importer.ImportException {
+        return NexusImporter.parseTree(treeCommand, translationList, ignoreMetaComments);
+    }
+
+    /**
+     * Gets the name of the tree (e.g., STATE_1000) without parsing it.
+     */
+    static String getTreeId(String treeCommand) {
+        int start = treeCommand.indexOf(' ');
+        int end = treeCommand.indexOf('=');
+        if (start < 0 || end < start) {
+            return "";
+        }
+        String id = treeCommand.substring(start + 1, end);
+        int comment = id.indexOf('[');
+        if (comment >= 0) {
+            id = id.substring(0, comment);
+        }
+        return id.trim();
+    }
+
+    private static boolean isTreeStart(String line) {
+        String trimmed = line.trim();
+        int length = (trimmed.regionMatches(true, 0, "UTREE", 0, 5) ? 5 :
+                (trimmed.regionMatches(true, 0, "TREE", 0, 4) ? 4 : -1));
+        return length > 0 && trimmed.length() > length &&
+                (Character.isWhitespace(trimmed.charAt(length)) || trimmed.charAt(length) == '*');
+    }
+
+    private final BufferedReader reader;
+    private final boolean ignoreMetaComments;
+    private final Map<String, Taxon> translationList;
+    private String pendingLine;
+    private boolean finished = false;
+}
@@ -0,0 +1,119 @@
+/*
+ * TreeWorkQueue.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.app.tools.treeannotator;
+
+import dr.evolution.io.Importer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the per-tree work (parsing and adding to the clade system) on the threads of a
+ * TreeAnnotator run. Only a few trees per thread are allowed to be waiting at any one time so the
+ * reading thread blocks rather than reading the whole tree file into memory.
+ *
+ * @author Andrew Rambaut
+ * @version $
+ */
+final class TreeWorkQueue {
+
+    private static final int QUEUED_TREES_PER_THREAD = 4;
+
+    interface Task {
+        void run() throws IOException, Importer.ImportException;
+    }
+
+    TreeWorkQueue(ExecutorService pool, int threadCount) {
+        this.pool = pool;
+        permits = new Semaphore(threadCount * QUEUED_TREES_PER_THREAD);
+    }
+
+    /**
+     * Submits a task, waiting if too many are already queued. Any error from a task that
+     * has already completed is thrown here.
+     */
+    void submit(Task task) throws IOException, Importer.ImportException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        futures.add(pool.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+            return null;
+        }));
+
+        while (!futures.isEmpty() && futures.peekFirst().isDone()) {
+            waitFor(futures.removeFirst());
+        }
+    }
+
+    /**
+     * Waits for all the tasks to complete.
+     */
+    void finish() throws IOException, Importer.ImportException {
+        while (!futures.isEmpty()) {
+            waitFor(futures.removeFirst());
+        }
+    }
+
+    private static void waitFor(Future<?> future) throws IOException, Importer.ImportException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Importer.ImportException) {
+                throw (Importer.ImportException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private final ExecutorService pool;
+    private final Semaphore permits;
+    private final Deque<Future<?>> futures = new ArrayDeque<>();
+}
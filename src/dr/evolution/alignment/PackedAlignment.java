@@ -0,0 +1,495 @@
+/*
+ * PackedAlignment.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evolution.alignment;
+
+import dr.evolution.datatype.DataType;
+import dr.evolution.sequence.Sequence;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.TaxonList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable alignment that keeps the states of all the sequences in a single byte array. The
+ * states that occur in the alignment are given codes and if there are no more than 16 of them
+ * (e.g., nucleotides with a few ambiguity codes) two sites are packed into each byte, otherwise
+ * one. Each taxon's sites are contiguous.
+ * <p>
+ * Large FASTA files can be read directly into a PackedAlignment (with readFasta) without making
+ * a Sequence for each taxon. Sequences are only made (as copies) if they are asked for.
+ *
+ * @author Andrew Rambaut
+ */
+public class PackedAlignment extends Alignment.Abstract {
+
+    private static final int MAX_NIBBLE_CODES = 16;
+    private static final int MAX_BYTE_CODES = 256;
+
+    private static final long MAP_SIZE = 1L << 28;
+
+    /**
+     * Packs a copy of an alignment.
+     */
+    public PackedAlignment(Alignment alignment) {
+        this(new Taxa(alignment), alignment.getDataType(), alignment.getSiteCount(), findStates(alignment));
+
+        int[] column = new int[taxonCount];
+        for (int j = 0; j < siteCount; j++) {
+            alignment.getSitePattern(j, column);
+            for (int i = 0; i < taxonCount; i++) {
+                setCode(i, j, stateCodes[column[i]]);
+            }
+        }
+    }
+
+    /**
+     * @param states whether each state of the data type is used
+     */
+    private PackedAlignment(TaxonList taxa, DataType dataType, int siteCount, boolean[] states) {
+        this.taxa = new Taxa(taxa);
+        this.dataType = dataType;
+        this.taxonCount = taxa.getTaxonCount();
+        this.siteCount = siteCount;
+
+        stateCodes = new int[states.length];
+        Arrays.fill(stateCodes, -1);
+        int codeCount = 0;
+        for (int state = 0; state < states.length; state++) {
+            if (states[state]) {
+                codeCount++;
+            }
+        }
+        if (codeCount > MAX_BYTE_CODES) {
+            throw new IllegalArgumentException("Too many different states (" + codeCount + ") for a PackedAlignment");
+        }
+        codeStates = new int[codeCount];
+        codeCount = 0;
+        for (int state = 0; state < states.length; state++) {
+            if (states[state]) {
+                stateCodes[state] = codeCount;
+                codeStates[codeCount] = state;
+                codeCount++;
+            }
+        }
+
+        nibbles = codeCount <= MAX_NIBBLE_CODES;
+        rowLength = (nibbles ? (siteCount + 1) / 2 : siteCount);
+        long length = (long) rowLength * taxonCount;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The alignment is too large (" + taxonCount + " taxa by " +
+                    siteCount + " sites) for a PackedAlignment");
+        }
+        data = new byte[(int) length];
+    }
+
+    private static boolean[] findStates(Alignment alignment) {
+        boolean[] states = new boolean[getStateLimit(alignment.getDataType())];
+        int[] column = new int[alignment.getSequenceCount()];
+        for (int j = 0; j < alignment.getSiteCount(); j++) {
+            alignment.getSitePattern(j, column);
+            for (int state : column) {
+                states[state] = true;
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return one more than the largest state of the data type
+     */
+    private static int getStateLimit(DataType dataType) {
+        return Math.max(dataType.getAmbiguousStateCount(),
+                Math.max(dataType.getGapState(), dataType.getUnknownState()) + 1);
+    }
+
+    /**
+     * Reads an aligned FASTA file through a memory map. The taxa are named by the whole of each
+     * header line and all the sequences must be the same length.
+     */
+    public static PackedAlignment readFasta(File file, DataType dataType) throws IOException, AlignmentParseException {
+
+        // the state of each byte (as an upper case character) or -1 if it is not valid
+        int[] charStates = new int[MAX_BYTE_CODES];
+        Arrays.fill(charStates, -1);
+        String validChars = (dataType.getValidChars() != null ? new String(dataType.getValidChars()) : null);
+        for (int b = 0; b < MAX_BYTE_CODES; b++) {
+            char c = Character.toUpperCase((char) b);
+            if (!Character.isWhitespace(c) && (validChars == null || validChars.indexOf(c) >= 0)) {
+                try {
+                    charStates[b] = dataType.getState(c);
+                } catch (RuntimeException e) {
+                    // not a character of this data type
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            // first pass - find the taxa and the length of the sequences and the states that are used
+            Taxa taxa = new Taxa();
+            boolean[] states = new boolean[getStateLimit(dataType)];
+            int siteCount = -1;
+
+            MappedBytes bytes = new MappedBytes(channel);
+            int b = bytes.next();
+            while (b >= 0 && b != '>') {
+                b = bytes.next();
+            }
+            while (b == '>') {
+                StringBuilder name = new StringBuilder();
+                for (b = bytes.next(); b >= 0 && b != '\n'; b = bytes.next()) {
+                    name.append((char) b);
+                }
+                Taxon taxon = new Taxon(name.toString().trim());
+
+                int sites = 0;
+                for (b = bytes.next(); b >= 0 && b != '>'; b = bytes.next()) {
+                    if (!Character.isWhitespace(b)) {
+                        int state = charStates[b];
+                        if (state < 0) {
+                            throw new AlignmentParseException("Sequence of " + taxon.getId() +
+                                    " contains invalid char '" + (char) b + "' at index " + sites);
+                        }
+                        states[state] = true;
+                        sites++;
+                    }
+                }
+
+                if (siteCount < 0) {
+                    siteCount = sites;
+                } else if (sites != siteCount) {
+                    throw new AlignmentParseException("Sequence of " + taxon.getId() + " has " + sites +
+                            " sites but the previous sequences have " + siteCount);
+                }
+                taxa.addTaxon(taxon);
+            }
+
+            if (taxa.getTaxonCount() == 0) {
+                throw new AlignmentParseException("No sequences found in " + file.getName());
+            }
+
+            // second pass - pack the states
+            PackedAlignment alignment = new PackedAlignment(taxa, dataType, siteCount, states);
+
+            bytes = new MappedBytes(channel);
+            int taxon = -1;
+            int site = 0;
+            for (b = bytes.next(); b >= 0; b = bytes.next()) {
+                if (b == '>') {
+                    taxon++;
+                    site = 0;
+                    while (b >= 0 && b != '\n') {
+                        b = bytes.next();
+                    }
+                } else if (taxon >= 0 && !Character.isWhitespace(b)) {
+                    alignment.setCode(taxon, site, alignment.stateCodes[charStates[b]]);
+                    site++;
+                }
+            }
+
+            return alignment;
+        }
+    }
+
+    /**
+     * Reads through a file in memory mapped sections.
+     */
+    private static final class MappedBytes {
+        MappedBytes(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+        }
+
+        int next() throws IOException {
+            if (buffer == null || !buffer.hasRemaining()) {
+                if (mapEnd >= length) {
+                    return -1;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapEnd, Math.min(MAP_SIZE, length - mapEnd));
+                mapEnd += buffer.capacity();
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        private final FileChannel channel;
+        private final long length;
+        private MappedByteBuffer buffer = null;
+        private long mapEnd = 0;
+    }
+
+    private int getCode(int taxonIndex, int siteIndex) {
+        if (nibbles) {
+            int b = data[taxonIndex * rowLength + (siteIndex >> 1)];
+            return ((siteIndex & 1) == 0 ? b : b >> 4) & 0x0F;
+        }
+        return data[taxonIndex * rowLength + siteIndex] & 0xFF;
+    }
+
+    private void setCode(int taxonIndex, int siteIndex, int code) {
+        if (nibbles) {
+            int index = taxonIndex * rowLength + (siteIndex >> 1);
+            if ((siteIndex & 1) == 0) {
+                data[index] = (byte) ((data[index] & 0xF0) | code);
+            } else {
+                data[index] = (byte) ((data[index] & 0x0F) | (code << 4));
+            }
+        } else {
+            data[taxonIndex * rowLength + siteIndex] = (byte) code;
+        }
+    }
+
+    /**
+     * @return true if two sites are packed into each byte
+     */
+    public boolean isNibblePacked() {
+        return nibbles;
+    }
+
+    /**
+     * Copies the states of a sequence into the given array.
+     */
+    public void getSequenceStates(int taxonIndex, int[] states) {
+        for (int j = 0; j < siteCount; j++) {
+            states[j] = codeStates[getCode(taxonIndex, j)];
+        }
+    }
+
+    // **************************************************************
+    // Alignment IMPLEMENTATION
+    // **************************************************************
+
+    public void setDataType(DataType dataType) {
+        if (dataType != this.dataType) {
+            throw new UnsupportedOperationException("The data type of a PackedAlignment can't be changed");
+        }
+    }
+
+    public String getAlignedSequenceString(int sequenceIndex) {
+        StringBuilder builder = new StringBuilder(siteCount);
+        for (int j = 0; j < siteCount; j++) {
+            builder.append(dataType.getChar(getState(sequenceIndex, j)));
+        }
+        return builder.toString();
+    }
+
+    public String getUnalignedSequenceString(int sequenceIndex) {
+        StringBuilder builder = new StringBuilder(siteCount);
+        for (int j = 0; j < siteCount; j++) {
+            int state = getState(sequenceIndex, j);
+            if (!dataType.isGapState(state)) {
+                builder.append(dataType.getChar(state));
+            }
+        }
+        return builder.toString();
+    }
+
+    // **************************************************************
+    // SiteList IMPLEMENTATION
+    // **************************************************************
+
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    public int[] getSitePattern(int siteIndex) {
+        int[] pattern = new int[taxonCount];
+        getSitePattern(siteIndex, pattern);
+        return pattern;
+    }
+
+    @Override
+    public void getSitePattern(int siteIndex, int[] pattern) {
+        if (nibbles) {
+            int index = siteIndex >> 1;
+            int shift = (siteIndex & 1) << 2;
+            for (int i = 0; i < taxonCount; i++) {
+                pattern[i] = codeStates[(data[index] >> shift) & 0x0F];
+                index += rowLength;
+            }
+        } else {
+            int index = siteIndex;
+            for (int i = 0; i < taxonCount; i++) {
+                pattern[i] = codeStates[data[index] & 0xFF];
+                index += rowLength;
+            }
+        }
+    }
+
+    public double[][] getUncertainSitePattern(int siteIndex) {
+        throw new UnsupportedOperationException("getUncertainSitePattern not implemented yet");
+    }
+
+    public int getPatternIndex(int siteIndex) {
+        return siteIndex;
+    }
+
+    public int getState(int taxonIndex, int siteIndex) {
+        return codeStates[getCode(taxonIndex, siteIndex)];
+    }
+
+    public double[] getUncertainState(int taxonIndex, int siteIndex) {
+        throw new UnsupportedOperationException("getUncertainState not implemented yet");
+    }
+
+    // **************************************************************
+    // PatternList IMPLEMENTATION
+    // **************************************************************
+
+    @Override
+    public int getInvariantCount() {
+        int invariantSites = 0;
+        int[] pattern = new int[taxonCount];
+        for (int j = 0; j < siteCount; j++) {
+            getSitePattern(j, pattern);
+            if (Patterns.isInvariant(pattern)) {
+                invariantSites++;
+            }
+        }
+        return invariantSites;
+    }
+
+    @Override
+    public double[][] getUncertainPattern(int patternIndex) {
+        throw new UnsupportedOperationException("getUncertainPattern not implemented yet");
+    }
+
+    @Override
+    public double[] getUncertainPatternState(int taxonIndex, int patternIndex) {
+        throw new UnsupportedOperationException("getUncertainPatternState not implemented yet");
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    public boolean areUncertain() {
+        return false;
+    }
+
+    // **************************************************************
+    // SequenceList IMPLEMENTATION
+    // **************************************************************
+
+    public int getSequenceCount() {
+        return taxonCount;
+    }
+
+    /**
+     * @return a copy of the ith sequence
+     */
+    public Sequence getSequence(int index) {
+        int[] states = new int[siteCount];
+        getSequenceStates(index, states);
+        return new Sequence(getTaxon(index), dataType, states);
+    }
+
+    public void setSequenceAttribute(int index, String name, Object value) {
+        throw new UnsupportedOperationException("The sequences of a PackedAlignment can't have attributes");
+    }
+
+    public Object getSequenceAttribute(int index, String name) {
+        return null;
+    }
+
+    public List<Sequence> getSequences() {
+        List<Sequence> sequences = new ArrayList<Sequence>(taxonCount);
+        for (int i = 0; i < taxonCount; i++) {
+            sequences.add(getSequence(i));
+        }
+        return sequences;
+    }
+
+    // **************************************************************
+    // TaxonList IMPLEMENTATION
+    // **************************************************************
+
+    public int getTaxonCount() {
+        return taxonCount;
+    }
+
+    public Taxon getTaxon(int taxonIndex) {
+        return taxa.getTaxon(taxonIndex);
+    }
+
+    public String getTaxonId(int taxonIndex) {
+        return taxa.getTaxonId(taxonIndex);
+    }
+
+    public int getTaxonIndex(String id) {
+        return taxa.getTaxonIndex(id);
+    }
+
+    public int getTaxonIndex(Taxon taxon) {
+        return taxa.getTaxonIndex(taxon);
+    }
+
+    public List<Taxon> asList() {
+        return taxa.asList();
+    }
+
+    public Object getTaxonAttribute(int taxonIndex, String name) {
+        return taxa.getTaxonAttribute(taxonIndex, name);
+    }
+
+    public Iterator<Taxon> iterator() {
+        return taxa.iterator();
+    }
+
+    public String toString() {
+        dr.util.NumberFormatter formatter = new dr.util.NumberFormatter(6);
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < taxonCount; i++) {
+            builder.append(">").append(formatter.formatToFieldWidth(getTaxonId(i), 10)).append("\n");
+            builder.append(getAlignedSequenceString(i)).append("\n");
+        }
+        return builder.toString();
+    }
+
+    private final Taxa taxa;
+    private final DataType dataType;
+    private final int taxonCount;
+    private final int siteCount;
+
+    // the state of each code and the code of each state (or -1 if it isn't used)
+    private final int[] codeStates;
+    private final int[] stateCodes;
+
+    private final boolean nibbles;
+    private final int rowLength;
+    private final byte[] data;
+}
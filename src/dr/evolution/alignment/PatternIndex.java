@@ -0,0 +1,115 @@
+/*
+ * PatternIndex.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evolution.alignment;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table from site patterns to their index in a list of patterns, used to
+ * find repeated patterns without comparing each new pattern with all the previous ones. The table
+ * holds only the indices and hashes of the patterns; the patterns themselves are in the caller's
+ * array.
+ *
+ * @author Andrew Rambaut
+ */
+final class PatternIndex {
+
+    PatternIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+    }
+
+    static int hash(int[] pattern) {
+        long h = pattern.length;
+        for (int state : pattern) {
+            h = h * 0x9E3779B97F4A7C15L + state;
+        }
+        // final mixing so the low bits depend on every state
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    /**
+     * @return the index of the pattern in patterns or -1 if it isn't there
+     */
+    int find(int[] pattern, int hash, int[][] patterns) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (slotHashes[slot] == hash && Arrays.equals(patterns[slots[slot] - 1], pattern)) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a pattern which must not already be in the table.
+     */
+    void add(int hash, int patternIndex) {
+        if ((size + 1) * 2 > slots.length) {
+            resize();
+        }
+        insert(hash, patternIndex + 1);
+        size++;
+    }
+
+    private void insert(int hash, int entry) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+        slotHashes[slot] = hash;
+    }
+
+    private void resize() {
+        int[] oldSlots = slots;
+        int[] oldHashes = slotHashes;
+        slots = new int[oldSlots.length * 2];
+        slotHashes = new int[oldSlots.length * 2];
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                insert(oldHashes[i], oldSlots[i]);
+            }
+        }
+    }
+
+    // the index of the pattern in each slot plus one (so 0 is empty)
+    private int[] slots;
+    private int[] slotHashes;
+    private int size = 0;
+}
@@ -242,11 +242,16 @@ public class SimpleAlignment extends Sequences implements Alignment, dr.util.XHT
      * @return the site pattern at siteIndex
      */
     public int[] getSitePattern(int siteIndex) {
+        int[] pattern = new int[getSequenceCount()];
+        getSitePattern(siteIndex, pattern);
+        return pattern;
+    }
+
+    @Override
+    public void getSitePattern(int siteIndex, int[] pattern) {
         Sequence seq;
         int i, n = getSequenceCount();
 
-        int[] pattern = new int[n];
-
         for (i = 0; i < n; i++) {
             seq = getSequence(i);
 
@@ -255,8 +260,6 @@ public class SimpleAlignment extends Sequences implements Alignment, dr.util.XHT
             else
                 pattern[i] = seq.getState(siteIndex);
         }
-
-        return pattern;
     }
 
     @Override
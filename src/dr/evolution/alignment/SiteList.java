@@ -45,6 +45,15 @@ public interface SiteList extends PatternList {
 	 */
 	int[] getSitePattern(int siteIndex);
 
+	/**
+	 * Copies the pattern of a site into the given array (one state per sequence). This
+	 * should be overridden by lists that can fill the array without making a new one.
+	 */
+	default void getSitePattern(int siteIndex, int[] pattern) {
+		int[] sitePattern = getSitePattern(siteIndex);
+		System.arraycopy(sitePattern, 0, pattern, 0, sitePattern.length);
+	}
+
 	/**
 	 * Gets the pattern of site as an array of state frequency vectors (one per sequence)
 	 * @return the site pattern at siteIndex
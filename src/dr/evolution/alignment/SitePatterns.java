@@ -33,9 +33,13 @@ import dr.evolution.datatype.DataType;
 import dr.evolution.datatype.Nucleotides;
 import dr.evolution.util.Taxon;
 import dr.evolution.util.TaxonList;
+import dr.util.ComputeService;
 import dr.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static dr.evolution.alignment.SitePatterns.CompressionType.*;
 
@@ -67,6 +71,14 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
 
     public static final int MINIMUM_UNAMBIGUOUS = 2;
 
+    // set to false to find the patterns of large alignments on a single thread
+    public static final String PARALLEL_PATTERNS = "patterns.parallel";
+
+    // the number of states (sites x taxa) above which the patterns are found in parallel
+    private static final long PARALLEL_THRESHOLD = 1L << 22;
+
+    private static final int MINIMUM_BLOCK_SIZE = 256;
+
     private final boolean isCompressed;
 
     /**
@@ -108,6 +120,9 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
 
     private boolean uncertainSites = false;
 
+    // finds repeated patterns while they are being added
+    private PatternIndex patternIndex = null;
+
     /**
      * Constructor
      */
@@ -261,6 +276,9 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
             uncertainPatterns = new double[siteCount][][];
         }
 
+        // the constant patterns below are always compressed
+        patternIndex = new PatternIndex(Math.min(siteCount, 1 << 16));
+
         if (DEBUG) {
             System.err.println("Creating SitePatterns using compression type: " + compression.toString());
         }
@@ -279,29 +297,43 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
         int site = 0;
         int count = 0;
 
-        for (int i = from; i <= to; i += every) {
-            int[] pattern = siteList.getSitePattern(i);
-            double weight = siteList.getPatternWeight(i);
-
-            if (uncertainSites) {
-                sitePatternIndices[site] = addUncertainPattern(pattern, weight, siteList.getUncertainSitePattern(i));
-            } else{
-                // @todo - what is `strip` being used for?
-                if (!strip || !isInvariant(pattern, false) ||
-                        (!isGapped(pattern) &&
-                                !isAmbiguous(pattern) &&
-                                !isUnknown(pattern))) {
+        if (!uncertainSites && compression != UNCOMPRESSED && isParallel(siteList)) {
+            count = addPatternsInParallel(siteList, from, to, every, strip, compression);
+        } else {
+            // compressed patterns are read into this array which is only kept if the pattern is new
+            int[] sitePattern = new int[siteList.getPatternLength()];
 
-                    sitePatternIndices[site] = addPattern(pattern, weight, compression);
+            for (int i = from; i <= to; i += every) {
+                int[] pattern;
+                if (uncertainSites || compression == UNCOMPRESSED) {
+                    pattern = siteList.getSitePattern(i);
+                } else {
+                    siteList.getSitePattern(i, sitePattern);
+                    pattern = sitePattern;
+                }
+                double weight = siteList.getPatternWeight(i);
 
-                    count += 1;
+                if (uncertainSites) {
+                    sitePatternIndices[site] = addUncertainPattern(pattern, weight, siteList.getUncertainSitePattern(i));
                 } else {
-                    sitePatternIndices[site] = -1;
+                    if (isIncluded(pattern, strip)) {
+
+                        sitePatternIndices[site] = addPattern(pattern, weight, compression);
+                        if (patterns[sitePatternIndices[site]] == sitePattern) {
+                            sitePattern = new int[sitePattern.length];
+                        }
+
+                        count += 1;
+                    } else {
+                        sitePatternIndices[site] = -1;
+                    }
                 }
+                site++;
             }
-            site++;
         }
 
+        patternIndex = null;
+
         if (DEBUG) {
             System.err.println("Added " + count + " site patterns");
 
@@ -351,6 +383,120 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
         countInvariantSites();
     }
 
+    private boolean isIncluded(int[] pattern, boolean strip) {
+        // @todo - what is `strip` being used for?
+        return !strip || !isInvariant(pattern, false) ||
+                (!isGapped(pattern) &&
+                        !isAmbiguous(pattern) &&
+                        !isUnknown(pattern));
+    }
+
+    /**
+     * Whether to find the patterns on several threads. The sites of a SimpleAlignment or a
+     * PackedAlignment can be read concurrently and it is only worth it for large alignments.
+     */
+    private boolean isParallel(SiteList siteList) {
+        return (siteList instanceof SimpleAlignment || siteList instanceof PackedAlignment) &&
+                (long) siteCount * siteList.getPatternLength() >= PARALLEL_THRESHOLD &&
+                ComputeService.getParallelism() > 1 &&
+                Boolean.parseBoolean(System.getProperty(PARALLEL_PATTERNS, "true"));
+    }
+
+    /**
+     * The unique patterns of a block of sites in the order they first occur.
+     */
+    private static final class PatternBlock {
+        PatternBlock(int siteCount) {
+            patterns = new int[siteCount][];
+            weights = new double[siteCount];
+            sitePatternIndices = new int[siteCount];
+        }
+
+        final int[][] patterns;
+        final double[] weights;
+        final int[] sitePatternIndices;
+        int patternCount = 0;
+    }
+
+    /**
+     * Finds the unique patterns of blocks of sites on the ComputeService pool and then merges
+     * them in order. This gives the same patterns in the same order as adding the sites one at
+     * a time.
+     *
+     * @return the number of sites added
+     */
+    private int addPatternsInParallel(final SiteList siteList, final int from, int to, final int every,
+                                      final boolean strip, CompressionType compression) {
+
+        final int sites = ((to - from) / every) + 1;
+        final int blockSize = Math.max(MINIMUM_BLOCK_SIZE, sites / (ComputeService.getParallelism() * 4) + 1);
+
+        ExecutorService pool = ComputeService.getPool("SitePatterns");
+        List<Future<PatternBlock>> futures = new ArrayList<Future<PatternBlock>>();
+        for (int start = 0; start < sites; start += blockSize) {
+            final int blockStart = start;
+            final int blockEnd = Math.min(start + blockSize, sites);
+            futures.add(pool.submit(() -> findBlockPatterns(siteList, from, every, blockStart, blockEnd, strip)));
+        }
+
+        int site = 0;
+        int count = 0;
+        for (Future<PatternBlock> future : futures) {
+            PatternBlock block;
+            try {
+                block = future.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error finding site patterns: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            int[] blockToPattern = new int[block.patternCount];
+            for (int j = 0; j < block.patternCount; j++) {
+                blockToPattern[j] = addPattern(block.patterns[j], block.weights[j], compression);
+            }
+            for (int index : block.sitePatternIndices) {
+                if (index >= 0) {
+                    sitePatternIndices[site] = blockToPattern[index];
+                    count++;
+                } else {
+                    sitePatternIndices[site] = -1;
+                }
+                site++;
+            }
+        }
+        return count;
+    }
+
+    private PatternBlock findBlockPatterns(SiteList siteList, int from, int every, int blockStart, int blockEnd,
+                                           boolean strip) {
+        PatternBlock block = new PatternBlock(blockEnd - blockStart);
+        PatternIndex blockIndex = new PatternIndex(Math.min(blockEnd - blockStart, 1 << 12));
+
+        int[] pattern = new int[siteList.getPatternLength()];
+        for (int k = blockStart; k < blockEnd; k++) {
+            int i = from + k * every;
+            siteList.getSitePattern(i, pattern);
+
+            if (isIncluded(pattern, strip)) {
+                int hash = PatternIndex.hash(pattern);
+                int index = blockIndex.find(pattern, hash, block.patterns);
+                if (index < 0) {
+                    index = block.patternCount;
+                    block.patterns[index] = pattern;
+                    blockIndex.add(hash, index);
+                    block.patternCount++;
+                    pattern = new int[pattern.length];
+                }
+                block.weights[index] += siteList.getPatternWeight(i);
+                block.sitePatternIndices[k - blockStart] = index;
+            } else {
+                block.sitePatternIndices[k - blockStart] = -1;
+            }
+        }
+        return block;
+    }
+
     /**
      * adds a pattern to the pattern list with the given weight
      *
@@ -358,15 +504,15 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
      */
     private int addPattern(int[] pattern, double weight, CompressionType compression) {
 
+        int hash = 0;
         if (compression != UNCOMPRESSED) {
             // this will compress unique patterns, further compression of ambiguously similar
             // patterns is done in a later step
-            for (int i = 0; i < patternCount; i++) {
-                if (comparePatterns(patterns[i], pattern, false)) {
-                    patterns[i] = pattern;
-                    weights[i] += weight;
-                    return i;
-                }
+            hash = PatternIndex.hash(pattern);
+            int i = patternIndex.find(pattern, hash, patterns);
+            if (i >= 0) {
+                weights[i] += weight;
+                return i;
             }
         }
 
@@ -375,6 +521,10 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
         patterns[index] = pattern;
         weights[index] = weight;
 
+        if (compression != UNCOMPRESSED) {
+            patternIndex.add(hash, index);
+        }
+
         patternCount++;
 
         return index;
@@ -0,0 +1,289 @@
+/*
+ * IndexedNexusImporter.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evolution.io;
+
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.TaxonList;
+import dr.util.ComputeService;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A TreeImporter for NEXUS trees files that uses a NexusTreeIndex to read the trees directly from
+ * their positions in the file. Trees can be skipped as burn-in or thinned without being read and
+ * the selected trees are parsed in parallel on the ComputeService pool.
+ * <p>
+ * The taxa come from the header of the file (read with NexusImporter) and the trees are those of
+ * the first TREES block.
+ *
+ * @author Andrew Rambaut
+ */
+public class IndexedNexusImporter implements TreeImporter, Closeable {
+
+    private static final int TREES_PER_THREAD = 4;
+
+    public IndexedNexusImporter(File file) throws IOException, Importer.ImportException {
+        this(file, null, false, true);
+    }
+
+    /**
+     * @param file               the trees file
+     * @param taxonList          a taxon list that gives the taxon numbers, or null to number them as the file does
+     * @param ignoreMetaComments whether to skip the node attributes
+     * @param saveIndex          whether to save the index beside the file so it can be reused
+     */
+    public IndexedNexusImporter(File file, TaxonList taxonList, boolean ignoreMetaComments, boolean saveIndex)
+            throws IOException, Importer.ImportException {
+        this.taxonList = taxonList;
+        this.ignoreMetaComments = ignoreMetaComments;
+
+        index = NexusTreeIndex.getIndex(file, saveIndex);
+        if (index.getTreeCount() == 0) {
+            throw new NexusImporter.MissingBlockException("TREES block is missing");
+        }
+
+        // read the taxa and translation table from the header and first tree
+        try (Reader reader = new FileReader(file)) {
+            NexusImporter importer = new NexusImporter(reader, ignoreMetaComments);
+            importer.importTree(taxonList);
+            translationList = importer.getTranslationList();
+        }
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        selectTrees(0, 1);
+    }
+
+    /**
+     * The number of trees in the file.
+     */
+    public int getTreeCount() {
+        return index.getTreeCount();
+    }
+
+    public NexusTreeIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Selects the trees returned by hasTree, importNextTree and importTrees.
+     *
+     * @param firstTree the number of the first tree (i.e., the number of burn-in trees)
+     * @param thin      the interval between the selected trees
+     */
+    public void selectTrees(int firstTree, int thin) {
+        if (thin < 1) {
+            throw new IllegalArgumentException("The thinning interval must be at least 1");
+        }
+        this.firstTree = firstTree;
+        this.thin = thin;
+        rewind();
+    }
+
+    /**
+     * Selects the trees with states of at least the given burn-in, thinned by the given interval.
+     */
+    public void selectTreesFromState(long burninState, int thin) {
+        selectTrees(index.getFirstTree(burninState), thin);
+    }
+
+    /**
+     * Goes back to the first selected tree.
+     */
+    public void rewind() {
+        for (Future<Tree> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        nextTree = firstTree;
+    }
+
+    /**
+     * @return the numbers of the selected trees
+     */
+    public int[] getSelectedTrees() {
+        int count = Math.max(0, (index.getTreeCount() - firstTree + thin - 1) / thin);
+        int[] trees = new int[count];
+        for (int i = 0; i < count; i++) {
+            trees[i] = firstTree + i * thin;
+        }
+        return trees;
+    }
+
+    /**
+     * Reads and parses a single tree.
+     *
+     * @param tree the number of the tree in the file
+     */
+    public Tree importTree(int tree) throws IOException, Importer.ImportException {
+        return NexusImporter.parseTree(readTreeCommand(tree), translationList, taxonList, ignoreMetaComments);
+    }
+
+    /**
+     * Reads and parses the given trees in parallel.
+     *
+     * @param trees the numbers of the trees in the file
+     * @return the trees in the same order
+     */
+    public List<Tree> importTreesByNumber(int[] trees) throws IOException, Importer.ImportException {
+        ExecutorService pool = getPool();
+        List<Future<Tree>> futures = new ArrayList<Future<Tree>>(trees.length);
+        for (final int tree : trees) {
+            futures.add(pool.submit(() -> importTree(tree)));
+        }
+
+        List<Tree> treeList = new ArrayList<Tree>(trees.length);
+        try {
+            for (Future<Tree> future : futures) {
+                treeList.add(waitFor(future));
+            }
+        } finally {
+            for (Future<Tree> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return treeList;
+    }
+
+    // TreeImporter methods
+
+    @Override
+    public int countTrees() {
+        return getSelectedTrees().length;
+    }
+
+    @Override
+    public boolean hasTree() {
+        return !pending.isEmpty() || nextTree < index.getTreeCount();
+    }
+
+    /**
+     * Returns the next selected tree. The trees following it are parsed ahead on the pool.
+     */
+    @Override
+    public Tree importNextTree() throws IOException, Importer.ImportException {
+        ExecutorService pool = getPool();
+        int maxPending = ComputeService.getParallelism() * TREES_PER_THREAD;
+        while (pending.size() < maxPending && nextTree < index.getTreeCount()) {
+            final int tree = nextTree;
+            pending.addLast(pool.submit(() -> importTree(tree)));
+            nextTree += thin;
+        }
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+        return waitFor(pending.removeFirst());
+    }
+
+    /**
+     * Returns the first selected tree, numbering the taxa as in the given list.
+     */
+    @Override
+    public Tree importTree(TaxonList taxonList) throws IOException, Importer.ImportException {
+        if (firstTree >= index.getTreeCount()) {
+            return null;
+        }
+        return NexusImporter.parseTree(readTreeCommand(firstTree), translationList, taxonList, ignoreMetaComments);
+    }
+
+    /**
+     * Returns all the selected trees. The taxa are numbered as in the taxon list given to the
+     * constructor (the taxonList here is ignored).
+     */
+    @Override
+    public List<Tree> importTrees(TaxonList taxonList) throws IOException, Importer.ImportException {
+        return importTreesByNumber(getSelectedTrees());
+    }
+
+    public void close() throws IOException {
+        rewind();
+        channel.close();
+    }
+
+    private String readTreeCommand(int tree) throws IOException {
+        long start = index.getTreeStart(tree);
+        int length = (int) (index.getTreeEnd(tree) - start);
+
+        // positional reads don't move the channel so can be made on several threads at once
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("The trees file is shorter than its index");
+            }
+        }
+        // decode as the FileReader used by NexusImporter would
+        return new String(buffer.array(), 0, length, Charset.defaultCharset());
+    }
+
+    private static ExecutorService getPool() {
+        return ComputeService.getPool("IndexedNexusImporter");
+    }
+
+    private static Tree waitFor(Future<Tree> future) throws IOException, Importer.ImportException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Importer.ImportException) {
+                throw (Importer.ImportException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private final NexusTreeIndex index;
+    private final FileChannel channel;
+
+    private final TaxonList taxonList;
+    private final boolean ignoreMetaComments;
+    private final Map<String, Taxon> translationList;
+
+    private int firstTree;
+    private int thin;
+
+    private int nextTree;
+    private final Deque<Future<Tree>> pending = new ArrayDeque<Future<Tree>>();
+}
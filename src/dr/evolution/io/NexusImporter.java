@@ -370,6 +370,53 @@ public class NexusImporter extends Importer implements SequenceImporter, TreeImp
         return tree;
     }
 
+    /**
+     * Returns the taxon translation table of the TREES block currently being read (only
+     * available once hasTree() has been called). It is not modified while reading trees
+     * so can be shared by parseTree() calls on other threads.
+     */
+    public Map<String, Taxon> getTranslationList() {
+        return translationList;
+    }
+
+    /**
+     * Parses a single TREE command (e.g., one line of a BEAST trees file) on its own. This
+     * allows the text of the trees to be read sequentially and the trees to be parsed in
+     * parallel.
+     *
+     * @param treeCommand     the complete command, from 'tree' to the closing ';'
+     * @param translationList the translation table, from getTranslationList()
+     * @param ignoreMetaComments whether to skip the node attributes
+     * @return the tree
+     */
+    public static Tree parseTree(String treeCommand, Map<String, Taxon> translationList,
+                                 boolean ignoreMetaComments) throws IOException, ImportException {
+        return parseTree(treeCommand, translationList, null, ignoreMetaComments);
+    }
+
+    /**
+     * Parses a single TREE command numbering the taxa as in a taxon list (as importTrees(taxonList, true) does).
+     *
+     * @param treeCommand     the complete command, from 'tree' to the closing ';'
+     * @param translationList the translation table, from getTranslationList()
+     * @param taxonList       the taxon list that gives the taxon numbers, or null to use the translation table
+     * @param ignoreMetaComments whether to skip the node attributes
+     * @return the tree
+     */
+    public static Tree parseTree(String treeCommand, Map<String, Taxon> translationList, TaxonList taxonList,
+                                 boolean ignoreMetaComments) throws IOException, ImportException {
+        // terminate the command so that the token following the tree is the end of the block
+        NexusImporter importer = new NexusImporter(new StringReader(treeCommand + "\nEND;"), ignoreMetaComments);
+        HashMap<String, Taxon> translation = (translationList instanceof HashMap ?
+                (HashMap<String, Taxon>) translationList : new HashMap<String, Taxon>(translationList));
+        String[] lastToken = new String[] { importer.readToken(";") };
+        Tree tree = importer.readNextTree(translation, lastToken, taxonList);
+        if (tree == null) {
+            throw new BadFormatException("Expecting a TREE command, found '" + lastToken[0] + "'");
+        }
+        return tree;
+    }
+
     public boolean startReadingTrees(TaxonList[] taxonList) throws IOException, ImportException {
         boolean done = false;
 
@@ -0,0 +1,297 @@
+/*
+ * NexusTreeIndex.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evolution.io;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The byte offsets of the TREE commands in the first TREES block of a NEXUS file, found in one pass
+ * over the memory mapped file. Each command must start on a new line (as BEAST writes them) but may
+ * span several lines. The state number is kept for trees labelled STATE_n.
+ * <p>
+ * The index can be saved beside the trees file (as 'file.trees.index') and is reused while the
+ * trees file's length and modification time are unchanged.
+ *
+ * @author Andrew Rambaut
+ */
+public class NexusTreeIndex {
+
+    public static final String INDEX_FILE_SUFFIX = ".index";
+
+    private static final int MAGIC = 0x42544958; // "BTIX"
+    private static final int VERSION = 1;
+
+    private static final long MAP_SIZE = 1L << 28;
+
+    // enough of the start of each line to hold the command and the tree's label
+    private static final int LINE_HEAD_SIZE = 128;
+
+    private static final Pattern TREE_COMMAND = Pattern.compile("(?is)u?tree[\\s*]+(?-i)(?:STATE_(\\d+))?.*");
+    private static final Pattern END_COMMAND = Pattern.compile("(?is)end(block)?\\s*;.*");
+
+    private NexusTreeIndex(long fileLength, long lastModified, long[] offsets, long[] states) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.offsets = offsets;
+        this.states = states;
+    }
+
+    /**
+     * Gets the index of a trees file, reading it from beside the file if it is up to date or
+     * building (and, if saveIndex is true, saving) it otherwise.
+     *
+     * @param file      the trees file
+     * @param saveIndex whether to save a new index beside the file
+     * @return the index
+     * @throws IOException IOException
+     */
+    public static NexusTreeIndex getIndex(File file, boolean saveIndex) throws IOException {
+        File indexFile = getIndexFile(file);
+        if (indexFile.exists()) {
+            NexusTreeIndex index = readIndex(indexFile);
+            if (index != null && index.isIndexOf(file)) {
+                return index;
+            }
+        }
+
+        NexusTreeIndex index = buildIndex(file);
+        if (saveIndex) {
+            try {
+                index.writeIndex(indexFile);
+            } catch (IOException ioe) {
+                // the file's directory may not be writable so just keep the index in memory
+                indexFile.delete();
+            }
+        }
+        return index;
+    }
+
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Finds the TREE commands by scanning the file in memory mapped sections.
+     */
+    public static NexusTreeIndex buildIndex(File file) throws IOException {
+        long lastModified = file.lastModified();
+
+        long[] offsets = new long[1024];
+        long[] states = new long[1024];
+        int count = 0;
+        long blockEnd = -1;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size();
+
+            byte[] lineHead = new byte[LINE_HEAD_SIZE];
+            int lineHeadLength = 0;
+            long lineStart = 0;
+            boolean atLineStart = true;
+
+            for (long mapStart = 0; mapStart < length && blockEnd < 0; mapStart += MAP_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+                        Math.min(MAP_SIZE, length - mapStart));
+
+                for (int i = 0; buffer.hasRemaining(); i++) {
+                    byte b = buffer.get();
+
+                    if (b == '\n') {
+                        long position = mapStart + i + 1;
+                        if (lineHeadLength > 0) {
+                            String head = new String(lineHead, 0, lineHeadLength, StandardCharsets.ISO_8859_1);
+                            if (isTreeCommand(head)) {
+                                if (count == offsets.length) {
+                                    offsets = Arrays.copyOf(offsets, count * 2);
+                                    states = Arrays.copyOf(states, count * 2);
+                                }
+                                offsets[count] = lineStart;
+                                states[count] = getState(head);
+                                count++;
+                            } else if (count > 0 && END_COMMAND.matcher(head).matches()) {
+                                blockEnd = lineStart;
+                                break;
+                            }
+                        }
+                        lineHeadLength = 0;
+                        lineStart = position;
+                        atLineStart = true;
+                    } else if (atLineStart && (b == ' ' || b == '\t' || b == '\r')) {
+                        // skip the indentation
+                    } else {
+                        if (atLineStart) {
+                            lineStart = mapStart + i;
+                            atLineStart = false;
+                        }
+                        if (lineHeadLength < LINE_HEAD_SIZE) {
+                            lineHead[lineHeadLength] = b;
+                            lineHeadLength++;
+                        }
+                    }
+                }
+            }
+
+            if (blockEnd < 0) {
+                // the last line may not have a newline
+                String head = new String(lineHead, 0, lineHeadLength, StandardCharsets.ISO_8859_1);
+                if (lineHeadLength > 0 && isTreeCommand(head)) {
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count + 1);
+                        states = Arrays.copyOf(states, count + 1);
+                    }
+                    offsets[count] = lineStart;
+                    states[count] = getState(head);
+                    count++;
+                }
+                blockEnd = length;
+            }
+
+            long[] treeOffsets = Arrays.copyOf(offsets, count + 1);
+            treeOffsets[count] = blockEnd;
+            return new NexusTreeIndex(length, lastModified, treeOffsets, Arrays.copyOf(states, count));
+        }
+    }
+
+    private static boolean isTreeCommand(String lineHead) {
+        return TREE_COMMAND.matcher(lineHead).matches();
+    }
+
+    private static long getState(String lineHead) {
+        Matcher matcher = TREE_COMMAND.matcher(lineHead);
+        if (matcher.matches() && matcher.group(1) != null) {
+            try {
+                return Long.parseLong(matcher.group(1));
+            } catch (NumberFormatException nfe) {
+                // too long to be a state
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index or null if the file isn't an index
+     */
+    public static NexusTreeIndex readIndex(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            int count = in.readInt();
+
+            long[] offsets = new long[count + 1];
+            long[] states = new long[count];
+            for (int i = 0; i <= count; i++) {
+                offsets[i] = in.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                states[i] = in.readLong();
+            }
+            return new NexusTreeIndex(fileLength, lastModified, offsets, states);
+        } catch (EOFException eofe) {
+            // a truncated index
+            return null;
+        }
+    }
+
+    public void writeIndex(File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeInt(states.length);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            for (long state : states) {
+                out.writeLong(state);
+            }
+        }
+    }
+
+    /**
+     * @return true if the trees file hasn't changed since it was indexed
+     */
+    public boolean isIndexOf(File file) {
+        return file.length() == fileLength && file.lastModified() == lastModified;
+    }
+
+    public int getTreeCount() {
+        return states.length;
+    }
+
+    /**
+     * @return the byte offset of the start of the tree's command
+     */
+    public long getTreeStart(int tree) {
+        return offsets[tree];
+    }
+
+    /**
+     * @return the byte offset just past the tree's command (the start of the next one or the end of the block)
+     */
+    public long getTreeEnd(int tree) {
+        return offsets[tree + 1];
+    }
+
+    /**
+     * @return the state number of the tree or -1 if its label isn't STATE_n
+     */
+    public long getState(int tree) {
+        return states[tree];
+    }
+
+    /**
+     * @return the number of the first tree with a state number of at least the given state
+     * (or the number of trees if there is none)
+     */
+    public int getFirstTree(long state) {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] >= state) {
+                return i;
+            }
+        }
+        return states.length;
+    }
+
+    private final long fileLength;
+    private final long lastModified;
+
+    // the start of each tree and the end of the block
+    private final long[] offsets;
+    private final long[] states;
+}
@@ -46,7 +46,7 @@ public class Sequence implements Identifiable, Attributable {
      * Empty constructor.
      */
     public Sequence() {
-        sequenceString = new StringBuffer();
+        sequenceString = new StringBuilder();
     }
 
     /**
@@ -55,7 +55,7 @@ public class Sequence implements Identifiable, Attributable {
      * @param sequence a string representing the sequence
      */
     public Sequence(String sequence) {
-        sequenceString = new StringBuffer();
+        sequenceString = new StringBuilder();
         setSequenceString(sequence);
     }
 
@@ -76,13 +76,13 @@ public class Sequence implements Identifiable, Attributable {
      * @param sequence the sequence's symbol string
      */
     public Sequence(Taxon taxon, String sequence) {
-        sequenceString = new StringBuffer();
+        sequenceString = new StringBuilder();
         setTaxon(taxon);
         setSequenceString(sequence);
     }
 
     public Sequence(Taxon taxon, DataType dataType, int[] states) {
-        sequenceString = new StringBuffer();
+        sequenceString = new StringBuilder();
         setTaxon(taxon);
         this.dataType = dataType;
         setSequenceStates(states);
@@ -277,7 +277,7 @@ public class Sequence implements Identifiable, Attributable {
     // **************************************************************
 
     protected Taxon taxon = null;
-    protected StringBuffer sequenceString = null;
+    protected StringBuilder sequenceString = null;
     protected DataType dataType = null;
 }
 
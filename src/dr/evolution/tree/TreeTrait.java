@@ -87,6 +87,17 @@ public interface TreeTrait<T> {
      */
     boolean getLoggable();
 
+    /**
+     * Specifies whether the trait string is simply the formatted trait value, so the value
+     * can be captured and formatted later. Traits that don't override getTraitString() in
+     * one of the base classes below can override this to return true.
+     *
+     * @return true if the trait string is formatted from the value
+     */
+    default boolean isFormattedFromValue() {
+        return false;
+    }
+
 
     interface TraitInfo<T> {
         String getTraitName();
@@ -216,6 +227,8 @@ public interface TreeTrait<T> {
                 public double[] getTrait(Tree tree, NodeRef node) { return info.getTrait(tree, node); }
 
                 public boolean getLoggable() { return info.isTraitLoggable(); }
+
+                public boolean isFormattedFromValue() { return true; }
             };
 
             return trait;
@@ -37,11 +37,14 @@ import dr.inference.model.Model;
 import dr.inference.model.Parameter;
 import dr.inference.model.Variable;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
- * A model component for trees. This version uses flat arrays for nodes and heights to maximize
- * speed (particularly storing/restoring) on very large trees.
+ * A model component for trees. This version keeps the tree in flat arrays (the parent, children,
+ * height and rate of each node indexed by the node number) to maximize speed on very large trees.
+ * Only the nodes changed since the last store or restore are copied when the state is stored or
+ * restored so these cost nothing like the size of the tree.
  *
  * @author Andrew Rambaut
  */
@@ -85,40 +88,25 @@ public class BigFastTreeModel extends TreeModel {
 
         nodes = new NodeRef[nodeCount];
 
-        edges = new int[nodeCount * 3];
-        storedEdges = new int[nodeCount * 3];
+        parents = new int[nodeCount];
+        leftChildren = new int[nodeCount];
+        rightChildren = new int[nodeCount];
 
         heights = new double[nodeCount];
-        storedHeights = new double[nodeCount];
+        rates = new double[nodeCount];
+        Arrays.fill(rates, 1.0);
 
-        boolean done = false;
-        NodeRef node = binaryTree.getRoot();
-        do {
-            node = TreeUtils.postorderSuccessor(binaryTree, node);
-
-            int number = node.getNumber();
-
-            if (binaryTree.isExternal(node)) {
-                nodes[number] = new Node(number, binaryTree.getNodeTaxon(node));
-                edges[(number * 3)] = binaryTree.getParent(node).getNumber(); // parent
-                edges[(number * 3) + 1] = -1; // child 1
-                edges[(number * 3) + 2] = -1; // child 2
-            } else {
-                if (binaryTree.isRoot(node)) {
-                    root = number;
-                    done = true;
-                    edges[(number * 3)] = -1;
-                } else {
-                    edges[(number * 3)] = binaryTree.getParent(node).getNumber(); // parent
-                }
-                nodes[number] = new Node(number);
+        changed = new boolean[nodeCount];
+        changedNodes = new int[nodeCount];
 
-                edges[(number * 3) + 1] = binaryTree.getChild(node, 0).getNumber(); // child 1
-                edges[(number * 3) + 2] = binaryTree.getChild(node, 1).getNumber(); // child 2;
-            }
-            heights[number] = binaryTree.getNodeHeight(node);
+        copyNodes(binaryTree);
 
-        } while (!done);
+        storedParents = parents.clone();
+        storedLeftChildren = leftChildren.clone();
+        storedRightChildren = rightChildren.clone();
+        storedHeights = heights.clone();
+        storedRates = rates.clone();
+        storedRoot = root;
     }
 
     protected void copyTopology(Tree tree){
@@ -126,6 +114,14 @@ public class BigFastTreeModel extends TreeModel {
         FlexibleTree binaryTree = new FlexibleTree(tree);
         binaryTree.resolveTree();
 
+        copyNodes(binaryTree);
+
+        for (int i = 0; i < nodeCount; i++) {
+            markChanged(i);
+        }
+    };
+
+    private void copyNodes(FlexibleTree binaryTree) {
         boolean done = false;
         NodeRef node = binaryTree.getRoot();
         do {
@@ -135,27 +131,26 @@ public class BigFastTreeModel extends TreeModel {
 
             if (binaryTree.isExternal(node)) {
                 nodes[number] = new Node(number, binaryTree.getNodeTaxon(node));
-                edges[(number * 3)] = binaryTree.getParent(node).getNumber(); // parent
-                edges[(number * 3) + 1] = -1; // child 1
-                edges[(number * 3) + 2] = -1; // child 2
+                parents[number] = binaryTree.getParent(node).getNumber();
+                leftChildren[number] = -1;
+                rightChildren[number] = -1;
             } else {
                 if (binaryTree.isRoot(node)) {
                     root = number;
                     done = true;
-                    edges[(number * 3)] = -1;
+                    parents[number] = -1;
                 } else {
-                    edges[(number * 3)] = binaryTree.getParent(node).getNumber(); // parent
+                    parents[number] = binaryTree.getParent(node).getNumber();
                 }
                 nodes[number] = new Node(number);
 
-                edges[(number * 3) + 1] = binaryTree.getChild(node, 0).getNumber(); // child 1
-                edges[(number * 3) + 2] = binaryTree.getChild(node, 1).getNumber(); // child 2;
+                leftChildren[number] = binaryTree.getChild(node, 0).getNumber();
+                rightChildren[number] = binaryTree.getChild(node, 1).getNumber();
             }
             heights[number] = binaryTree.getNodeHeight(node);
 
         } while (!done);
-    };
-
+    }
 
     @Override
     protected void handleModelChangedEvent(Model model, Object object, int index) {
@@ -217,9 +212,8 @@ public class BigFastTreeModel extends TreeModel {
      */
     @Override
     public double getNodeRate(NodeRef node) {
-//        //mimics default tree that does not have node rates
-            return 1.0;
-//        throw new UnsupportedOperationException("getNodeRate not available in BigFastTreeModel");
+        // 1.0 unless set (as a default tree that does not have node rates)
+        return rates[node.getNumber()];
     }
 
     @Override
@@ -257,14 +251,8 @@ public class BigFastTreeModel extends TreeModel {
         if(isExternal(node)){
             return 0;
         }
-        int kids=0;
-        for (int i = 0; i < 2; i++) {
-            if(edges[(node.getNumber() * 3) + i + 1]>-1){
-                kids+=1;
-            };
-        }
-
-        return kids;
+        int number = node.getNumber();
+        return (leftChildren[number] > -1 ? 1 : 0) + (rightChildren[number] > -1 ? 1 : 0);
 
     }
 
@@ -332,21 +320,39 @@ public class BigFastTreeModel extends TreeModel {
     }
 
     private int getParent(int nodeNumber) {
-        return edges[(nodeNumber * 3)];
+        return parents[nodeNumber];
     }
 
     private int getChild(int nodeNumber, int i) {
         assert i == 0 || i == 1;
-        return edges[(nodeNumber * 3) + i + 1];
+        return (i == 0 ? leftChildren[nodeNumber] : rightChildren[nodeNumber]);
     }
 
     private void setParent(int nodeNumber, int parentNumber) {
-         edges[(nodeNumber * 3)] = parentNumber;
+        markChanged(nodeNumber);
+        parents[nodeNumber] = parentNumber;
     }
 
     private void setChild(int nodeNumber, int i, int childNumber) {
         assert i == 0 || i == 1;
-        edges[(nodeNumber * 3) + i + 1] = childNumber;
+        markChanged(nodeNumber);
+        if (i == 0) {
+            leftChildren[nodeNumber] = childNumber;
+        } else {
+            rightChildren[nodeNumber] = childNumber;
+        }
+    }
+
+    /**
+     * Records that a node has changed since the state was stored so it is copied when the state is
+     * next stored or restored.
+     */
+    private void markChanged(int nodeNumber) {
+        if (!changed[nodeNumber]) {
+            changed[nodeNumber] = true;
+            changedNodes[changedCount] = nodeNumber;
+            changedCount++;
+        }
     }
 
     // *****************************************************************
@@ -414,7 +420,24 @@ public class BigFastTreeModel extends TreeModel {
 
     @Override
     public void replaceChild(NodeRef node, NodeRef child, NodeRef newChild) {
-        throw new RuntimeException("Unimplemented");
+
+        if (!inEdit) throw new RuntimeException("Must be in edit transaction to call this method!");
+
+        int parent = node.getNumber();
+
+        if (getChild(parent, 0) == child.getNumber()) {
+            setChild(parent, 0, newChild.getNumber());
+        } else if (getChild(parent, 1) == child.getNumber()) {
+            setChild(parent, 1, newChild.getNumber());
+        } else {
+            throw new IllegalArgumentException("Child not in node");
+        }
+        setParent(child.getNumber(), -1);
+        setParent(newChild.getNumber(), parent);
+
+        pushTreeChangedEvent(TreeChangedEvent.create(node, false));
+        pushTreeChangedEvent(TreeChangedEvent.create(child, false));
+        pushTreeChangedEvent(TreeChangedEvent.create(newChild, false));
     }
 
 
@@ -431,18 +454,22 @@ public class BigFastTreeModel extends TreeModel {
 
     @Override
     public void setNodeHeight(NodeRef node, double height) {
+        markChanged(node.getNumber());
         heights[node.getNumber()] = height;
         pushTreeChangedEvent(TreeChangedEvent.create(node, true));
     }
 
     @Override
     public void setNodeHeightQuietly(NodeRef n, double height) {
+        markChanged(n.getNumber());
         heights[n.getNumber()] = height;
     }
 
     @Override
     public void setNodeRate(NodeRef n, double rate) {
-        throw new UnsupportedOperationException("BigFastTreeModel cannot have node rates set");
+        markChanged(n.getNumber());
+        rates[n.getNumber()] = rate;
+        pushTreeChangedEvent(TreeChangedEvent.create(n, false));
     }
 
     public void setNodeTrait(NodeRef n, String name, double value) {
@@ -565,11 +592,25 @@ public class BigFastTreeModel extends TreeModel {
      */
     @Override
     protected void storeState() {
-        System.arraycopy(edges, 0, storedEdges, 0, edges.length);
-        System.arraycopy(heights, 0, storedHeights, 0, heights.length);
+        if (changedCount * 4 > nodeCount) {
+            System.arraycopy(parents, 0, storedParents, 0, nodeCount);
+            System.arraycopy(leftChildren, 0, storedLeftChildren, 0, nodeCount);
+            System.arraycopy(rightChildren, 0, storedRightChildren, 0, nodeCount);
+            System.arraycopy(heights, 0, storedHeights, 0, nodeCount);
+            System.arraycopy(rates, 0, storedRates, 0, nodeCount);
+        } else {
+            for (int i = 0; i < changedCount; i++) {
+                int node = changedNodes[i];
+                storedParents[node] = parents[node];
+                storedLeftChildren[node] = leftChildren[node];
+                storedRightChildren[node] = rightChildren[node];
+                storedHeights[node] = heights[node];
+                storedRates[node] = rates[node];
+            }
+        }
+        clearChanged();
 
         storedRoot = root;
-
     }
 
     /**
@@ -577,18 +618,26 @@ public class BigFastTreeModel extends TreeModel {
      */
     @Override
     protected void restoreState() {
-
-        int[] tmp = storedEdges;
-        storedEdges = edges;
-        edges = tmp;
-
-        double[] tmp2 = storedHeights;
-        storedHeights = heights;
-        heights = tmp2;
+        for (int i = 0; i < changedCount; i++) {
+            int node = changedNodes[i];
+            parents[node] = storedParents[node];
+            leftChildren[node] = storedLeftChildren[node];
+            rightChildren[node] = storedRightChildren[node];
+            heights[node] = storedHeights[node];
+            rates[node] = storedRates[node];
+        }
+        clearChanged();
 
         root = storedRoot;
     }
 
+    private void clearChanged() {
+        for (int i = 0; i < changedCount; i++) {
+            changed[changedNodes[i]] = false;
+        }
+        changedCount = 0;
+    }
+
     /**
      * accept the stored state
      */
@@ -671,13 +720,26 @@ public class BigFastTreeModel extends TreeModel {
     private int storedRoot;
 
     /**
-     * list of internal nodes (including root)
+     * the parent and children of each node (-1 if none)
      */
-    private int[] edges = null;
-    private int[] storedEdges = null;
+    private final int[] parents;
+    private final int[] leftChildren;
+    private final int[] rightChildren;
+    private final int[] storedParents;
+    private final int[] storedLeftChildren;
+    private final int[] storedRightChildren;
+
+    private final double[] heights;
+    private final double[] rates;
+    private final double[] storedHeights;
+    private final double[] storedRates;
 
-    private double[] heights = null;
-    private double[] storedHeights = null;
+    /**
+     * the nodes changed since the state was last stored or restored
+     */
+    private final boolean[] changed;
+    private final int[] changedNodes;
+    private int changedCount = 0;
 
     private final NodeRef[] nodes;
 
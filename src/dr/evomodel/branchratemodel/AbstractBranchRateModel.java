@@ -76,6 +76,10 @@ public abstract class AbstractBranchRateModel extends AbstractModelLikelihood im
         return Double.toString(getBranchRate(tree, node));
     }
 
+    public boolean isFormattedFromValue() {
+        return true;
+    }
+
     public Model getModel() {
         return this;
     }
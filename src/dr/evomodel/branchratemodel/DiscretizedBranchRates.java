@@ -189,6 +189,11 @@ public class DiscretizedBranchRates extends AbstractBranchRateModel implements C
                 return true;
             }
 
+            @Override
+            public boolean isFormattedFromValue() {
+                return true;
+            }
+
             @Override
             public String toString() {
                 return RATE;
@@ -226,6 +231,11 @@ public class DiscretizedBranchRates extends AbstractBranchRateModel implements C
                 return true;
             }
 
+            @Override
+            public boolean isFormattedFromValue() {
+                return true;
+            }
+
             @Override
             public String toString() {
                 return RATE_CATEGORY;
@@ -35,15 +35,20 @@ import dr.inference.model.Likelihood;
 import dr.inference.model.MatrixParameter;
 import dr.inference.model.Model;
 import dr.inference.model.Parameter;
+import dr.inference.model.Variable;
 import dr.util.Author;
 import dr.util.Citable;
 import dr.util.Citation;
+import dr.util.ComputeService;
 import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.SymmTridiagMatrix;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @author Mandev Gill
@@ -55,6 +60,9 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
 
     public static final boolean DEBUG = false;
 
+    // the number of changed trees needed to calculate their sufficient statistics in parallel
+    private static final int MIN_PARALLEL_TREES = 4;
+
     private final double cutOff;
     private final int numGridPoints;
     private final int oldFieldLength;
@@ -74,6 +82,25 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
     private double[] ploidySums;
     private double[] storedPloidySums;
 
+    // the contribution of each tree to the sufficient statistics, so only the trees that change need
+    // to be recalculated. The contribution of tree i is in the grid cells treeFirstCell[i] to
+    // treeLastCell[i] and its ploidy term in those up to treePloidyLastCell[i]. The stored rows are
+    // swapped in when a tree first changes after storeState.
+    private double[][] treeNumCoalEvents;
+    private double[][] storedTreeNumCoalEvents;
+    private double[][] treeSufficientStatistics;
+    private double[][] storedTreeSufficientStatistics;
+    private int[] treeFirstCell;
+    private int[] storedTreeFirstCell;
+    private int[] treeLastCell;
+    private int[] storedTreeLastCell;
+    private int[] treePloidyLastCell;
+    private int[] storedTreePloidyLastCell;
+
+    private boolean[] treeKnown;
+    private boolean[] storedTreeKnown;
+    private boolean[] treeChanged;
+
 //    protected SymmTridiagMatrix precMatrix;
 //    protected SymmTridiagMatrix storedPrecMatrix;
 
@@ -467,6 +494,9 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
             IntervalList intervalList = (IntervalList) model;
             int tn = intervalsList.indexOf(intervalList);
             if (tn >= 0) {
+                if (treeKnown != null) {
+                    treeKnown[tn] = false;
+                }
                 intervalsKnown = false;
                 likelihoodKnown = false;
             } else {
@@ -477,6 +507,21 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
         }
     }
 
+    protected void handleVariableChangedEvent(Variable variable, int index, Parameter.ChangeType type) {
+        super.handleVariableChangedEvent(variable, index, type);
+        if (variable == ploidyFactors) {
+            // the ploidy factors scale the sufficient statistics of their trees
+            if (treeKnown != null) {
+                if (index >= 0) {
+                    treeKnown[index] = false;
+                } else {
+                    Arrays.fill(treeKnown, false);
+                }
+            }
+            intervalsKnown = false;
+        }
+    }
+
     public void initializationReport() {
         System.out.println("Creating a GMRF smoothed skyride model for multiple loci (SkyGrid)");
         System.out.println("\tPopulation sizes: " + popSizeParameter.getDimension());
@@ -498,14 +543,161 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
         }
     }
 
+    /**
+     * Brings the sufficient statistics up to date. Only the trees that have changed since the last
+     * call are recalculated (in parallel if there are several) and the totals are only summed again
+     * over the grid cells where the contributions of these trees have changed.
+     */
     protected void setupSufficientStatistics() {
+        if (treeKnown == null) {
+            setupTreeStatistics();
+        }
+
+        List<Integer> changedTrees = new ArrayList<Integer>();
+        // the trees changed for the first time since storeState can be compared with their stored rows
+        boolean[] newlyChanged = new boolean[numTrees];
+        int firstCell = fieldLength;
+        int lastCell = -1;
+        for (int i = 0; i < numTrees; i++) {
+            if (!treeKnown[i]) {
+                changedTrees.add(i);
+                if (treeChanged[i]) {
+                    if (treeLastCell[i] >= 0) {
+                        firstCell = Math.min(firstCell, treeFirstCell[i]);
+                        lastCell = Math.max(lastCell, treeLastCell[i]);
+                    }
+                } else {
+                    // keep the stored contribution to restore and recalculate into the other rows
+                    swapTreeStatistics(i);
+                    treeChanged[i] = true;
+                    newlyChanged[i] = true;
+                }
+            }
+        }
+
+        if (changedTrees.size() >= MIN_PARALLEL_TREES && ComputeService.getParallelism() > 1) {
+            ExecutorService pool = ComputeService.getPool("GMRFSkygridLikelihood");
+            List<Future<?>> futures = new ArrayList<Future<?>>(changedTrees.size());
+            for (final int i : changedTrees) {
+                futures.add(pool.submit(() -> setupTreeSufficientStatistics(i)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Error calculating the skygrid sufficient statistics: " +
+                            e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } else {
+            for (int i : changedTrees) {
+                setupTreeSufficientStatistics(i);
+            }
+        }
+
+        for (int i : changedTrees) {
+            if (newlyChanged[i] && treeFirstCell[i] == storedTreeFirstCell[i] &&
+                    treeLastCell[i] == storedTreeLastCell[i] && treePloidyLastCell[i] == storedTreePloidyLastCell[i]) {
+                // a move within the tree only changes the cells between the old and new times
+                for (int cell = treeFirstCell[i]; cell <= treeLastCell[i]; cell++) {
+                    if (treeNumCoalEvents[i][cell] != storedTreeNumCoalEvents[i][cell] ||
+                            treeSufficientStatistics[i][cell] != storedTreeSufficientStatistics[i][cell]) {
+                        firstCell = Math.min(firstCell, cell);
+                        lastCell = Math.max(lastCell, cell);
+                    }
+                }
+            } else {
+                if (newlyChanged[i] && storedTreeLastCell[i] >= 0) {
+                    firstCell = Math.min(firstCell, storedTreeFirstCell[i]);
+                    lastCell = Math.max(lastCell, storedTreeLastCell[i]);
+                }
+                firstCell = Math.min(firstCell, treeFirstCell[i]);
+                lastCell = Math.max(lastCell, treeLastCell[i]);
+            }
+            treeKnown[i] = true;
+        }
 
-        //numCoalEvents = new double[fieldLength];
-        //sufficientStatistics = new double[fieldLength];
+        double[] logPloidyFactors = new double[numTrees];
+        for (int i = 0; i < numTrees; i++) {
+            logPloidyFactors[i] = Math.log(1 / getPopulationFactor(i));
+        }
+
+        // sum the contributions of all the trees in the cells that may have changed, in the same
+        // order each time so the totals don't depend on which trees changed
+        for (int cell = firstCell; cell <= lastCell; cell++) {
+            double numCoal = 0.0;
+            double sufficientStatistic = 0.0;
+            double ploidySum = 0.0;
+            for (int i = 0; i < numTrees; i++) {
+                if (cell >= treeFirstCell[i] && cell <= treeLastCell[i]) {
+                    numCoal += treeNumCoalEvents[i][cell];
+                    sufficientStatistic += treeSufficientStatistics[i][cell];
+                    if (cell <= treePloidyLastCell[i]) {
+                        // as the trees were added in turn, the ploidy term of each tree is multiplied
+                        // by the coalescent events in the cell so far, including those of earlier trees
+                        ploidySum += logPloidyFactors[i] * numCoal;
+                    }
+                }
+            }
+            numCoalEvents[cell] = numCoal;
+            sufficientStatistics[cell] = sufficientStatistic;
+            ploidySums[cell] = ploidySum;
+        }
+    }
+
+    private void setupTreeStatistics() {
+        treeNumCoalEvents = new double[numTrees][fieldLength];
+        storedTreeNumCoalEvents = new double[numTrees][fieldLength];
+        treeSufficientStatistics = new double[numTrees][fieldLength];
+        storedTreeSufficientStatistics = new double[numTrees][fieldLength];
+        treeFirstCell = new int[numTrees];
+        storedTreeFirstCell = new int[numTrees];
+        treeLastCell = new int[numTrees];
+        storedTreeLastCell = new int[numTrees];
+        treePloidyLastCell = new int[numTrees];
+        storedTreePloidyLastCell = new int[numTrees];
+        Arrays.fill(treeLastCell, -1);
+        Arrays.fill(storedTreeLastCell, -1);
+
+        treeKnown = new boolean[numTrees];
+        storedTreeKnown = new boolean[numTrees];
+        treeChanged = new boolean[numTrees];
+    }
+
+    private void swapTreeStatistics(int i) {
+        double[] tmp = treeNumCoalEvents[i];
+        treeNumCoalEvents[i] = storedTreeNumCoalEvents[i];
+        storedTreeNumCoalEvents[i] = tmp;
+        tmp = treeSufficientStatistics[i];
+        treeSufficientStatistics[i] = storedTreeSufficientStatistics[i];
+        storedTreeSufficientStatistics[i] = tmp;
+
+        int tmpCell = treeFirstCell[i];
+        treeFirstCell[i] = storedTreeFirstCell[i];
+        storedTreeFirstCell[i] = tmpCell;
+        tmpCell = treeLastCell[i];
+        treeLastCell[i] = storedTreeLastCell[i];
+        storedTreeLastCell[i] = tmpCell;
+        tmpCell = treePloidyLastCell[i];
+        treePloidyLastCell[i] = storedTreePloidyLastCell[i];
+        storedTreePloidyLastCell[i] = tmpCell;
+    }
+
+    /**
+     * Calculates the contribution of tree i to the sufficient statistics.
+     */
+    private void setupTreeSufficientStatistics(int i) {
+        double[] numCoalEvents = treeNumCoalEvents[i];
+        double[] sufficientStatistics = treeSufficientStatistics[i];
+
+        // only the cells of the previous contribution need clearing
+        if (treeLastCell[i] >= 0) {
+            Arrays.fill(numCoalEvents, treeFirstCell[i], treeLastCell[i] + 1, 0.0);
+            Arrays.fill(sufficientStatistics, treeFirstCell[i], treeLastCell[i] + 1, 0.0);
+        }
 
-        Arrays.fill(numCoalEvents, 0);
-        Arrays.fill(sufficientStatistics, 0);
-        Arrays.fill(ploidySums, 0);
         //index of smallest grid point greater than at least one sampling/coalescent time in current tree
         int minGridIndex;
         //index of greatest grid point less than at least one sampling/coalescent time in current tree
@@ -523,88 +715,108 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
         //time of last coalescent event in tree
         double lastCoalescentTime;
 
-        for (int i = 0; i < numTrees; i++) {
-            ploidyFactor = 1 / getPopulationFactor(i);
-            currentTimeIndex = 0;
+        ploidyFactor = 1 / getPopulationFactor(i);
+        currentTimeIndex = 0;
+        currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
+        nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
+        while (nextTime <= currentTime) {
+            currentTimeIndex++;
             currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
             nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-            while (nextTime <= currentTime) {
+        }
+        // need to reduce currentTimeIndex on getLineages
+
+        //  numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+        numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
+        minGridIndex = 0;
+        while (minGridIndex < numGridPoints - 1 && gridPoints[minGridIndex] <= currentTime) { // MAS: Unclear about need for -1
+            minGridIndex++;
+        }
+        currentGridIndex = minGridIndex;
+        treeFirstCell[i] = minGridIndex;
+
+        lastCoalescentTime = // currentTime +
+                intervalsList.get(i).getTotalDuration();
+
+//            theLastTime = lastCoalescentTime;
+
+        maxGridIndex = numGridPoints - 1;
+        while ((maxGridIndex >= 0) && (gridPoints[maxGridIndex] >= lastCoalescentTime)) {
+            maxGridIndex = maxGridIndex - 1;
+        }
+
+        if (maxGridIndex >= 0 && minGridIndex < numGridPoints) {
+
+
+            //from likelihood of interval between first sampling time and gridPoints[minGridIndex]
+
+            while (nextTime < gridPoints[currentGridIndex]) {
+
+                //check to see if interval ends with coalescent event
+                //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
+                    numCoalEvents[currentGridIndex]++;
+                }
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                currentTime = nextTime;
                 currentTimeIndex++;
-                currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
                 nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-            }
-            // need to reduce currentTimeIndex on getLineages
 
-            //  numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
-            numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
-            minGridIndex = 0;
-            while (minGridIndex < numGridPoints - 1 && gridPoints[minGridIndex] <= currentTime) { // MAS: Unclear about need for -1
-                minGridIndex++;
-            }
-            currentGridIndex = minGridIndex;
+                while (nextTime <= currentTime) {
+                    currentTimeIndex++;
+                    currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
+                    nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
+                }
 
-            lastCoalescentTime = // currentTime +
-                    intervalsList.get(i).getTotalDuration();
+                //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
 
-//            theLastTime = lastCoalescentTime;
 
-            maxGridIndex = numGridPoints - 1;
-            while ((maxGridIndex >= 0) && (gridPoints[maxGridIndex] >= lastCoalescentTime)) {
-                maxGridIndex = maxGridIndex - 1;
             }
 
-            if (maxGridIndex >= 0 && minGridIndex < numGridPoints) {
+            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
+            currentGridIndex++;
 
-                //from likelihood of interval between first sampling time and gridPoints[minGridIndex]
 
-                while (nextTime < gridPoints[currentGridIndex]) {
+            //from likelihood of intervals between gridPoints[minGridIndex] and gridPoints[maxGridIndex]
+
+            while (currentGridIndex <= maxGridIndex) {
+                if (nextTime >= gridPoints[currentGridIndex]) {
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+
+                    currentGridIndex++;
+                } else {
+
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
                     //check to see if interval ends with coalescent event
                     //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
                     if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
                         numCoalEvents[currentGridIndex]++;
                     }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
                     currentTime = nextTime;
                     currentTimeIndex++;
                     nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-
                     while (nextTime <= currentTime) {
                         currentTimeIndex++;
                         currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
                         nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
                     }
 
-                    //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                    // numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
                     numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
 
 
-                }
-
-                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
-
-                currentGridIndex++;
-
-
-                //from likelihood of intervals between gridPoints[minGridIndex] and gridPoints[maxGridIndex]
-
-                while (currentGridIndex <= maxGridIndex) {
-                    if (nextTime >= gridPoints[currentGridIndex]) {
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                        ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
-
-                        currentGridIndex++;
-                    } else {
-
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-
-                        //check to see if interval ends with coalescent event
+                    while (nextTime < gridPoints[currentGridIndex]) {
+                        //check to see if interval is coalescent interval or sampling interval
                         //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
                         if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
+
                             numCoalEvents[currentGridIndex]++;
                         }
+                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+
                         currentTime = nextTime;
                         currentTimeIndex++;
                         nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
@@ -614,116 +826,95 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
                             nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
                         }
 
-                        // numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                        //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
                         numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
 
 
-                        while (nextTime < gridPoints[currentGridIndex]) {
-                            //check to see if interval is coalescent interval or sampling interval
-                            //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                            if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
+                    }
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
-                                numCoalEvents[currentGridIndex]++;
-                            }
-                            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                    currentGridIndex++;
+                }
+            }
 
-                            currentTime = nextTime;
-                            currentTimeIndex++;
-                            nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-                            while (nextTime <= currentTime) {
-                                currentTimeIndex++;
-                                currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
-                                nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-                            }
+            //from likelihood of interval between gridPoints[maxGridIndex] and lastCoalescentTime
 
-                            //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
-                            numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
+            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
+            //check to see if interval ends with coalescent event
+            // if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+            if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
 
-                        }
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                        ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
+                numCoalEvents[currentGridIndex]++;
+            }
 
-                        currentGridIndex++;
-                    }
+            currentTime = nextTime;
+            currentTimeIndex++;
+
+            while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
+                // currentTime = nextTime;
+                // currentTimeIndex++;
+
+                nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
+                while (nextTime <= currentTime) {
+                    currentTimeIndex++;
+                    currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
+                    nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
                 }
 
-                //from likelihood of interval between gridPoints[maxGridIndex] and lastCoalescentTime
+                //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
 
-                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
-                //check to see if interval ends with coalescent event
-                // if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
+                //check to see if interval is coalescent interval or sampling interval
+
 
+                //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
                     numCoalEvents[currentGridIndex]++;
                 }
-
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
                 currentTime = nextTime;
                 currentTimeIndex++;
 
-                while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
-                    // currentTime = nextTime;
-                    // currentTimeIndex++;
+            }
+            // the ploidy term is added as each cell is finished so isn't in the last one
+            treePloidyLastCell[i] = currentGridIndex - 1;
+
+            // if tree does not overlap with any gridpoints/change-points, in which case logpopsize is constant
+
+        } else {
+            while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
+                //check to see if interval is coalescent interval or sampling interval
+                //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
+
+                    numCoalEvents[currentGridIndex]++;
+                }
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
+                currentTime = nextTime;
+                currentTimeIndex++;
+                if ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
                     nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
+
                     while (nextTime <= currentTime) {
                         currentTimeIndex++;
                         currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
                         nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
                     }
 
-                    //numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                    // numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
                     numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
 
 
-                    //check to see if interval is coalescent interval or sampling interval
-
-
-                    //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
-                        numCoalEvents[currentGridIndex]++;
-                    }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                    currentTime = nextTime;
-                    currentTimeIndex++;
-
                 }
 
-                // if tree does not overlap with any gridpoints/change-points, in which case logpopsize is constant
-
-            } else {
-                while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
-                    //check to see if interval is coalescent interval or sampling interval
-                    //if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex) > 0) {
-
-                        numCoalEvents[currentGridIndex]++;
-                    }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (nextTime - currentTime) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-
-                    currentTime = nextTime;
-                    currentTimeIndex++;
-                    if ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
-                        nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-
-                        while (nextTime <= currentTime) {
-                            currentTimeIndex++;
-                            currentTime = intervalsList.get(i).getIntervalTime(currentTimeIndex);
-                            nextTime = intervalsList.get(i).getIntervalTime(currentTimeIndex + 1);
-                        }
-
-                        // numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
-                        numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex);
-
-
-                    }
-
-                }
-                ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
-
             }
+            treePloidyLastCell[i] = currentGridIndex;
+
         }
+        treeLastCell[i] = currentGridIndex;
 
     }
 
@@ -959,6 +1150,11 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
         System.arraycopy(numCoalEvents, 0, storedNumCoalEvents, 0, numCoalEvents.length);
         // storedPrecMatrix = precMatrix.copy();
         System.arraycopy(ploidySums, 0, storedPloidySums, 0, ploidySums.length);
+
+        if (treeKnown != null) {
+            System.arraycopy(treeKnown, 0, storedTreeKnown, 0, numTrees);
+            Arrays.fill(treeChanged, false);
+        }
     }
 
 
@@ -972,6 +1168,16 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
         double[] tmp2 = ploidySums;
         ploidySums = storedPloidySums;
         storedPloidySums = tmp2;
+
+        if (treeKnown != null) {
+            for (int i = 0; i < numTrees; i++) {
+                if (treeChanged[i]) {
+                    swapTreeStatistics(i);
+                    treeChanged[i] = false;
+                }
+            }
+            System.arraycopy(storedTreeKnown, 0, treeKnown, 0, numTrees);
+        }
     }
 
     // Implementation of GradientWrtParameterProvider
@@ -28,6 +28,7 @@
 package dr.evomodel.coalescent.basta;
 
 import dr.evolution.tree.Tree;
+import dr.util.ComputeService;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -53,10 +54,8 @@ public class ParallelBastaLikelihoodDelegate extends GenericBastaLikelihoodDeleg
                                            boolean transpose) {
         super(name, tree, stateCount, transpose);
 
-        if (threadCount > 1) {
-            pool = Executors.newFixedThreadPool(threadCount);
-        } else if (threadCount < -1) {
-            pool = Executors.newCachedThreadPool();
+        if (threadCount > 1 || threadCount < -1) {
+            pool = ComputeService.getPool("ParallelBastaLikelihoodDelegate");
         } else {
             throw new IllegalArgumentException("Illegal threadCount value");
         }
@@ -27,6 +27,8 @@
 
 package dr.evomodel.substmodel;
 
+import dr.util.ComputeService;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -44,7 +46,7 @@ public class ParallelRobustCountingExecutor {
                                           int numSites) {
 
         int threadCount = Math.min(requestedThreads, numSites);
-        pool = Executors.newFixedThreadPool(threadCount);
+        pool = ComputeService.getPool("ParallelRobustCountingExecutor");
 
         int elementsPerThread = (numSites + threadCount - 1) / threadCount;
         int start = 0;
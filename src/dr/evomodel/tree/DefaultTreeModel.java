@@ -34,6 +34,7 @@ import dr.inference.model.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -52,8 +53,17 @@ public class DefaultTreeModel extends TreeModel {
 
     private static final boolean TEST_NODE_BOUNDS = false;
 
+    /**
+     * If true then, rather than copying the whole node structure on every store, the nodes and
+     * node parameters are recorded in a journal as they are changed and restoring just puts
+     * these back. This is the default for tree models that aren't told which to use and setting
+     * the system property tree.journal to false makes it the copy.
+     */
+    public static final boolean JOURNAL_STATE = Boolean.parseBoolean(System.getProperty("tree.journal", "true"));
+
     public DefaultTreeModel(String name) {
         super(name, true);
+        journalState = JOURNAL_STATE;
         nodeCount = 0;
         externalNodeCount = 0;
         internalNodeCount = 0;
@@ -76,9 +86,20 @@ public class DefaultTreeModel extends TreeModel {
      */
 
     public DefaultTreeModel(String name, Tree tree, boolean copyAttributes, boolean fixHeights, boolean fixTree) {
+        this(name, tree, copyAttributes, fixHeights, fixTree, JOURNAL_STATE);
+    }
+
+    /**
+     * @param journalState whether to journal the changes to the tree (see JOURNAL_STATE) rather
+     *                     than copy the whole node structure when the state is stored
+     */
+    public DefaultTreeModel(String name, Tree tree, boolean copyAttributes, boolean fixHeights, boolean fixTree,
+                            boolean journalState) {
 
         super(name, !fixTree);
 
+        this.journalState = journalState;
+
         // get a rooted version of the tree to clone
         FlexibleTree binaryTree = new FlexibleTree(tree, copyAttributes);
         binaryTree.resolveTree();
@@ -98,7 +119,7 @@ public class DefaultTreeModel extends TreeModel {
         nodeCount = internalNodeCount + externalNodeCount;
 
         nodes = new Node[nodeCount];
-        storedNodes = new Node[nodeCount];
+        storedNodes = (journalState ? null : new Node[nodeCount]);
 
         int i = 0;
         int j = externalNodeCount;
@@ -112,17 +133,21 @@ public class DefaultTreeModel extends TreeModel {
                 node.number = i;
 
                 nodes[i] = node;
-                storedNodes[i] = new Node();
-                storedNodes[i].taxon = node.taxon;
-                storedNodes[i].number = i;
+                if (!journalState) {
+                    storedNodes[i] = new Node();
+                    storedNodes[i].taxon = node.taxon;
+                    storedNodes[i].number = i;
+                }
 
                 i++;
             } else {
                 node.number = j;
 
                 nodes[j] = node;
-                storedNodes[j] = new Node();
-                storedNodes[j].number = j;
+                if (!journalState) {
+                    storedNodes[j] = new Node();
+                    storedNodes[j].number = j;
+                }
 
                 j++;
             }
@@ -456,6 +481,20 @@ public class DefaultTreeModel extends TreeModel {
         throw new UnsupportedOperationException("TreeModel does not use NodeAttributes");
     }
 
+    /**
+     * Node height and rate parameters are only added to the model's variables (which are all
+     * stored and restored with the model) if they aren't being journaled.
+     */
+    private void addNodeParameter(Parameter parameter) {
+        if (journalState) {
+            Parameter.CONNECTED_PARAMETER_SET.add(parameter);
+            parameter.addVariableListener(this);
+            addStatistic(parameter);
+        } else {
+            addVariable(parameter);
+        }
+    }
+
     // *****************************************************************
     // Interface ModelComponent
     // *****************************************************************
@@ -465,7 +504,11 @@ public class DefaultTreeModel extends TreeModel {
      */
     protected void storeState() {
 
-        copyNodeStructure(storedNodes);
+        if (journalState) {
+            journalOpen = true;
+        } else {
+            copyNodeStructure(storedNodes);
+        }
         storedRootNumber = root.getNumber();
 
     }
@@ -475,14 +518,66 @@ public class DefaultTreeModel extends TreeModel {
      */
     protected void restoreState() {
 
-        Node[] tmp = storedNodes;
-        storedNodes = nodes;
-        nodes = tmp;
+        if (journalState) {
+            restoreJournal();
 
-        root = nodes[storedRootNumber];
+            root = nodes[storedRootNumber];
+        } else {
+            Node[] tmp = storedNodes;
+            storedNodes = nodes;
+            nodes = tmp;
 
-        remapParameterNodes();
+            root = nodes[storedRootNumber];
+
+            remapParameterNodes();
+        }
+
+    }
+
+    /**
+     * Puts back the links and parameters of each node, and the value of each node parameter,
+     * that have been changed since the state was stored.
+     */
+    private void restoreJournal() {
+        for (Node node : changedNodes) {
+            node.parent = node.storedParent;
+            node.leftChild = node.storedLeftChild;
+            node.rightChild = node.storedRightChild;
+            node.heightParameter = node.storedHeightParameter;
+            node.rateParameter = node.storedRateParameter;
+            node.traitParameters = node.storedTraitParameters;
+        }
+
+        // parameter objects may have been swapped between nodes (see swapParameterObjects)
+        for (Node node : changedNodes) {
+            parameterNodeMap.put(node.heightParameter, node);
+            if (hasRates) {
+                parameterNodeMap.put(node.rateParameter, node);
+            }
+            if (hasTraits) {
+                for (Parameter trait : node.traitParameters.values()) {
+                    parameterNodeMap.put(trait, node);
+                }
+            }
+        }
+
+        for (NodeParameter parameter : changedParameters) {
+            parameter.restoreValue();
+        }
+
+        clearJournal();
+    }
 
+    private void clearJournal() {
+        for (Node node : changedNodes) {
+            node.journaled = false;
+        }
+        for (NodeParameter parameter : changedParameters) {
+            parameter.journaled = false;
+        }
+        changedNodes.clear();
+        changedParameters.clear();
+        journalOpen = false;
     }
 
     private void remapParameterNodes() {
@@ -503,7 +598,10 @@ public class DefaultTreeModel extends TreeModel {
      * accept the stored state
      */
     protected void acceptState() {
-    } // nothing to do
+        if (journalState) {
+            clearJournal();
+        }
+    }
 
     /**
      * Copies the node connections from this TreeModel's nodes array to the
@@ -914,6 +1012,9 @@ public class DefaultTreeModel extends TreeModel {
      */
     private void swapParameterObjects(Node n1, Node n2) {
 
+        n1.journal();
+        n2.journal();
+
         double height1 = n1.getHeight();
         double height2 = n2.getHeight();
 
@@ -991,6 +1092,12 @@ public class DefaultTreeModel extends TreeModel {
 
         Map<String, Parameter> traitParameters = new HashMap<String, Parameter>();
 
+        // the links and parameters as they were when the state was stored (if journaled is true)
+        private Node storedParent, storedLeftChild, storedRightChild;
+        private Parameter storedHeightParameter, storedRateParameter;
+        private Map<String, Parameter> storedTraitParameters;
+        private boolean journaled = false;
+
         public Node() {
             parent = null;
             leftChild = rightChild = null;
@@ -1006,8 +1113,8 @@ public class DefaultTreeModel extends TreeModel {
             parent = null;
             leftChild = rightChild = null;
 
-            heightParameter = new Parameter.Default(tree.getNodeHeight(node));
-            addVariable(heightParameter);
+            heightParameter = new NodeParameter(tree.getNodeHeight(node));
+            addNodeParameter(heightParameter);
             parameterNodeMap.put(heightParameter, this);
 
             number = node.getNumber();
@@ -1025,14 +1132,14 @@ public class DefaultTreeModel extends TreeModel {
         public final void createRateParameter(double[] initialValues) {
             if (rateParameter == null) {
                 if (initialValues != null) {
-                    rateParameter = new Parameter.Default(initialValues[0]);
+                    rateParameter = new NodeParameter(initialValues[0]);
                 } else {
-                    rateParameter = new Parameter.Default(1.0);
+                    rateParameter = new NodeParameter(1.0);
                 }
                 setParameterId("rate", rateParameter);
                 rateParameter.addBounds(new Parameter.DefaultBounds(Double.POSITIVE_INFINITY, 0.0, 1));
                 parameterNodeMap.put(rateParameter, this);
-                addVariable(rateParameter);
+                addNodeParameter(rateParameter);
             }
         }
 
@@ -1140,6 +1247,23 @@ public class DefaultTreeModel extends TreeModel {
             return number;
         }
 
+        /**
+         * Records the links and parameters of this node if it is the first change to it since
+         * the state was stored.
+         */
+        final void journal() {
+            if (journalOpen && !journaled) {
+                storedParent = parent;
+                storedLeftChild = leftChild;
+                storedRightChild = rightChild;
+                storedHeightParameter = heightParameter;
+                storedRateParameter = rateParameter;
+                storedTraitParameters = traitParameters;
+                journaled = true;
+                changedNodes.add(this);
+            }
+        }
+
         public void setNumber(int n) {
             number = n;
         }
@@ -1170,6 +1294,8 @@ public class DefaultTreeModel extends TreeModel {
          * @param node new child node
          */
         public void addChild(Node node) {
+            journal();
+            node.journal();
             if (leftChild == null) {
                 leftChild = node;
             } else if (rightChild == null) {
@@ -1186,6 +1312,8 @@ public class DefaultTreeModel extends TreeModel {
          * @param node child to be removed
          */
         public Node removeChild(Node node) {
+            journal();
+            node.journal();
             if (leftChild == node) {
                 leftChild = null;
             } else if (rightChild == node) {
@@ -1206,13 +1334,18 @@ public class DefaultTreeModel extends TreeModel {
             Node node;
             if (n == 0) {
                 node = leftChild;
-                leftChild = null;
             } else if (n == 1) {
                 node = rightChild;
-                rightChild = null;
             } else {
                 throw new IllegalArgumentException("TreeModel.Nodes can only have 2 children");
             }
+            journal();
+            node.journal();
+            if (n == 0) {
+                leftChild = null;
+            } else {
+                rightChild = null;
+            }
             node.parent = null;
             return node;
         }
@@ -1238,6 +1371,50 @@ public class DefaultTreeModel extends TreeModel {
         }
     }
 
+    /**
+     * A node height or rate parameter that records its value in the journal the first time it
+     * is changed after the state was stored.
+     */
+    private final class NodeParameter extends Parameter.Default {
+
+        NodeParameter(double initialValue) {
+            super(initialValue);
+        }
+
+        @Override
+        public void setParameterValue(int i, double value) {
+            journal();
+            super.setParameterValue(i, value);
+        }
+
+        @Override
+        public void setParameterValueQuietly(int i, double value) {
+            journal();
+            super.setParameterValueQuietly(i, value);
+        }
+
+        @Override
+        public void setParameterValueNotifyChangedAll(int i, double value) {
+            journal();
+            super.setParameterValueNotifyChangedAll(i, value);
+        }
+
+        private void journal() {
+            if (journalOpen && !journaled) {
+                storedValue = getParameterValue(0);
+                journaled = true;
+                changedParameters.add(this);
+            }
+        }
+
+        private void restoreValue() {
+            super.setParameterValueQuietly(0, storedValue);
+        }
+
+        private double storedValue;
+        private boolean journaled = false;
+    }
+
     /**
      * This class provides bounds for parameters that represent a node height
      * in this tree model.
@@ -1318,4 +1495,12 @@ public class DefaultTreeModel extends TreeModel {
 
     private final Map<Parameter, Node> parameterNodeMap = new HashMap<>();
 
+    /**
+     * the nodes and node parameters changed since the state was stored (if journalState)
+     */
+    private final boolean journalState;
+    private boolean journalOpen = false;
+    private final List<Node> changedNodes = new ArrayList<>();
+    private final List<NodeParameter> changedParameters = new ArrayList<>();
+
 }
@@ -29,12 +29,14 @@ package dr.evomodel.tree;
 
 import dr.app.tools.NexusExporter;
 import dr.evolution.tree.*;
+import dr.inference.loggers.AsyncLogWriter;
 import dr.inference.loggers.LogFormatter;
 import dr.inference.loggers.MCLogger;
 import dr.util.Keywordable;
 
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A logger that logs tree and clade frequencies.
@@ -180,6 +182,60 @@ public class TreeLogger extends MCLogger {
                 logLine("\t\t;");
             }
         }
+
+        // other trees can't be copied so these are written on the MCMC thread
+        if (isAsynchronous() && canCopy(tree)) {
+            startTreeWriter();
+        }
+    }
+
+    /**
+     * @return true if the tree can be copied to a SimpleTree to be written later. This needs the
+     * node rates of a tree model and its tips to be numbered before its internal nodes.
+     */
+    private static boolean canCopy(Tree tree) {
+        if (!(tree instanceof TreeModel)) {
+            return false;
+        }
+        for (int i = 0; i < tree.getNodeCount(); i++) {
+            if (tree.isExternal(tree.getNode(i)) != (i < tree.getExternalNodeCount())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startTreeWriter() {
+        TreeEntry[] entries = new TreeEntry[AsyncLogWriter.DEFAULT_BUFFER_SIZE];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new TreeEntry();
+        }
+
+        treeWriter = new AsyncLogWriter<TreeEntry>("tree-log-writer", entries, new Consumer<TreeEntry>() {
+            public void accept(TreeEntry entry) {
+                StringBuffer buffer = new StringBuffer(entry.prefix);
+                appendNewick(entry.tree, entry.branchRates, entry.treeTraitProviders, buffer);
+                entry.clear();
+                logLine(buffer.toString());
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        if (treeWriter != null) {
+            treeWriter.flush();
+        }
+        super.flush();
+    }
+
+    @Override
+    protected void stopAsynchronous() {
+        if (treeWriter != null) {
+            treeWriter.close();
+            treeWriter = null;
+        }
+        super.stopAsynchronous();
     }
 
     private String cleanTaxonName(String taxaId) {
@@ -233,25 +289,193 @@ public class TreeLogger extends MCLogger {
 
             buffer.append(" = [&R] ");
 
-            if (substitutions) {
-                TreeUtils.newick(tree, tree.getRoot(), false, TreeUtils.BranchLengthType.LENGTHS_AS_SUBSTITUTIONS,
-                        format, branchRates, treeTraitProviders, idMap, buffer);
+            if (treeWriter != null) {
+                // copy the tree and its traits and leave the newick to the background writer
+                TreeEntry entry = treeWriter.acquire();
+                entry.prefix = buffer.toString();
+                entry.tree = new SimpleTree(tree);
+                entry.branchRates = substitutions ? new CapturedBranchRates(tree, branchRates) : null;
+                entry.treeTraitProviders = captureTreeTraits(tree, treeTraitProviders);
+                treeWriter.publish(entry);
             } else {
-                //System.out.println(treeTraitProviders.length);
-                TreeUtils.newick(tree, tree.getRoot(), !mapNames, TreeUtils.BranchLengthType.LENGTHS_AS_TIME,
-                        format, null, treeTraitProviders, idMap, buffer);
+                appendNewick(tree, branchRates, treeTraitProviders, buffer);
+                logLine(buffer.toString());
             }
+        }
+    }
 
-            buffer.append(";");
-            logLine(buffer.toString());
+    private void appendNewick(Tree tree, BranchRates branchRates, TreeTraitProvider[] treeTraitProviders,
+                              StringBuffer buffer) {
+        if (substitutions) {
+            TreeUtils.newick(tree, tree.getRoot(), false, TreeUtils.BranchLengthType.LENGTHS_AS_SUBSTITUTIONS,
+                    format, branchRates, treeTraitProviders, idMap, buffer);
+        } else {
+            //System.out.println(treeTraitProviders.length);
+            TreeUtils.newick(tree, tree.getRoot(), !mapNames, TreeUtils.BranchLengthType.LENGTHS_AS_TIME,
+                    format, null, treeTraitProviders, idMap, buffer);
         }
+
+        buffer.append(";");
     }
 
     public void stopLogging() {
+        stopAsynchronous();
         logLine("End;");
         super.stopLogging();
     }
 
+    /**
+     * Capture the current values of the loggable node and branch traits. Traits that are
+     * formatted from their values are captured as values and formatted by the writer, any
+     * others are formatted now.
+     */
+    private static TreeTraitProvider[] captureTreeTraits(Tree tree, TreeTraitProvider[] treeTraitProviders) {
+        if (treeTraitProviders == null) {
+            return null;
+        }
+
+        TreeTraitProvider[] captured = new TreeTraitProvider[treeTraitProviders.length];
+        for (int i = 0; i < treeTraitProviders.length; i++) {
+            List<TreeTrait<?>> traitList = new ArrayList<TreeTrait<?>>();
+            for (TreeTrait<?> trait : treeTraitProviders[i].getTreeTraits()) {
+                if (trait.getLoggable() && trait.getIntent() != TreeTrait.Intent.WHOLE_TREE) {
+                    traitList.add(new CapturedTreeTrait(tree, trait));
+                }
+            }
+            final TreeTrait<?>[] traits = traitList.toArray(new TreeTrait<?>[0]);
+            captured[i] = new TreeTraitProvider() {
+                public TreeTrait<?>[] getTreeTraits() {
+                    return traits;
+                }
+
+                public TreeTrait<?> getTreeTrait(String key) {
+                    for (TreeTrait<?> trait : traits) {
+                        if (trait.getTraitName().equals(key)) {
+                            return trait;
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+        return captured;
+    }
+
+    /**
+     * The values of a trait at every node, indexed by node number.
+     */
+    private static class CapturedTreeTrait implements TreeTrait<Object> {
+
+        CapturedTreeTrait(Tree tree, TreeTrait<?> trait) {
+            this.name = trait.getTraitName();
+            this.intent = trait.getIntent();
+            this.traitClass = trait.getTraitClass();
+            this.formattedFromValue = trait.isFormattedFromValue();
+
+            values = new Object[tree.getNodeCount()];
+            for (int i = 0; i < values.length; i++) {
+                NodeRef node = tree.getNode(i);
+                if (intent == Intent.BRANCH && tree.isRoot(node)) {
+                    // the root has no branch so its value isn't written (or always available)
+                    continue;
+                }
+                if (formattedFromValue) {
+                    Object value = trait.getTrait(tree, node);
+                    if (value instanceof double[]) {
+                        value = ((double[]) value).clone();
+                    } else if (value instanceof int[]) {
+                        value = ((int[]) value).clone();
+                    }
+                    values[i] = value;
+                } else {
+                    values[i] = trait.getTraitString(tree, node);
+                }
+            }
+        }
+
+        public String getTraitName() {
+            return name;
+        }
+
+        public Intent getIntent() {
+            return intent;
+        }
+
+        public Class<?> getTraitClass() {
+            return traitClass;
+        }
+
+        public Object getTrait(Tree tree, NodeRef node) {
+            return values[node.getNumber()];
+        }
+
+        public String getTraitString(Tree tree, NodeRef node) {
+            Object value = values[node.getNumber()];
+            if (!formattedFromValue || value == null) {
+                return (String) value;
+            } else if (value instanceof Double) {
+                return TreeTrait.D.formatTrait((Double) value);
+            } else if (value instanceof Integer) {
+                return TreeTrait.I.formatTrait((Integer) value);
+            } else if (value instanceof double[]) {
+                return TreeTrait.DA.formatTrait((double[]) value);
+            } else {
+                return TreeTrait.IA.formatTrait((int[]) value);
+            }
+        }
+
+        public boolean getLoggable() {
+            return true;
+        }
+
+        private final String name;
+        private final Intent intent;
+        private final Class<?> traitClass;
+        private final boolean formattedFromValue;
+        private final Object[] values;
+    }
+
+    /**
+     * The branch rates at the time the tree was captured, indexed by node number.
+     */
+    private static class CapturedBranchRates implements BranchRates {
+
+        CapturedBranchRates(Tree tree, BranchRates branchRates) {
+            rates = new double[tree.getNodeCount()];
+            for (int i = 0; i < rates.length; i++) {
+                NodeRef node = tree.getNode(i);
+                if (!tree.isRoot(node)) {
+                    rates[i] = branchRates.getBranchRate(tree, node);
+                }
+            }
+        }
+
+        public double getBranchRate(Tree tree, NodeRef node) {
+            return rates[node.getNumber()];
+        }
+
+        private final double[] rates;
+    }
+
+    /**
+     * A tree captured at one state, held in the ring buffer of the background writer.
+     */
+    private static class TreeEntry {
+        void clear() {
+            prefix = null;
+            tree = null;
+            branchRates = null;
+            treeTraitProviders = null;
+        }
+
+        String prefix;
+        Tree tree;
+        BranchRates branchRates;
+        TreeTraitProvider[] treeTraitProviders;
+    }
+
+    private AsyncLogWriter<TreeEntry> treeWriter = null;
+
     public Tree getTree() {
 		return tree;
 	}
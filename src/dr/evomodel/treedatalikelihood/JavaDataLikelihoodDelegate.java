@@ -0,0 +1,823 @@
+/*
+ * JavaDataLikelihoodDelegate.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evomodel.treedatalikelihood;
+
+import dr.evolution.alignment.PatternList;
+import dr.evolution.alignment.UncertainSiteList;
+import dr.evolution.datatype.DataType;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.TaxonList;
+import dr.evomodel.branchmodel.BranchModel;
+import dr.evomodel.siteratemodel.SiteRateModel;
+import dr.evomodel.substmodel.SubstitutionModel;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.inference.model.AbstractModel;
+import dr.inference.model.Model;
+import dr.inference.model.Parameter;
+import dr.inference.model.Variable;
+import dr.util.TaskPool;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * JavaDataLikelihoodDelegate
+ *
+ * A DataLikelihoodDelegate that computes the partials, transition matrices, scaling factors and
+ * site log likelihoods entirely in Java. It consumes the same branch and node operation lists as
+ * BeagleDataLikelihoodDelegate so can be used where no BEAGLE library is available.
+ *
+ * All buffers are flat double[] arrays laid out as [category][pattern][state] (as in BEAGLE).
+ * The site patterns are divided into contiguous blocks and each block is computed over the whole
+ * operation list by a separate thread - the patterns are independent so no synchronisation is
+ * required until the block log likelihoods are summed.
+ *
+ * @author Marc Suchard
+ */
+public class JavaDataLikelihoodDelegate extends AbstractModel implements DataLikelihoodDelegate {
+
+    private static final boolean COUNT_CALCULATIONS = true; // keep a cumulative total of number of computations
+
+    /**
+     * @param tree Used for configuration and branch model mappings - shouldn't be watched for changes
+     * @param patternList List of patterns
+     * @param branchModel Specifies substitution model for each branch
+     * @param siteRateModel Specifies rates per site
+     * @param useAmbiguities Whether to respect state ambiguities in data
+     * @param rescalingScheme the scaling scheme ('none', 'always' or otherwise delayed until the first underflow)
+     * @param threadCount the number of threads over which to divide the patterns
+     */
+    public JavaDataLikelihoodDelegate(Tree tree,
+                                      PatternList patternList,
+                                      BranchModel branchModel,
+                                      SiteRateModel siteRateModel,
+                                      boolean useAmbiguities,
+                                      PartialsRescalingScheme rescalingScheme,
+                                      int threadCount) {
+        this(tree, patternList, branchModel, siteRateModel, useAmbiguities, rescalingScheme, true, threadCount);
+    }
+
+    /**
+     * @param tree Used for configuration and branch model mappings - shouldn't be watched for changes
+     * @param patternList List of patterns
+     * @param branchModel Specifies substitution model for each branch
+     * @param siteRateModel Specifies rates per site
+     * @param useAmbiguities Whether to respect state ambiguities in data
+     * @param rescalingScheme the scaling scheme ('none', 'always' or otherwise delayed until the first underflow)
+     * @param delayRescalingUntilUnderflow if false, scale from the start (unless the scheme is 'none')
+     * @param threadCount the number of threads over which to divide the patterns
+     */
+    public JavaDataLikelihoodDelegate(Tree tree,
+                                      PatternList patternList,
+                                      BranchModel branchModel,
+                                      SiteRateModel siteRateModel,
+                                      boolean useAmbiguities,
+                                      PartialsRescalingScheme rescalingScheme,
+                                      boolean delayRescalingUntilUnderflow,
+                                      int threadCount) {
+
+        super("JavaDataLikelihoodDelegate");
+        final Logger logger = Logger.getLogger("dr.evomodel");
+
+        logger.info("\nCreating Java DataLikelihood Delegate");
+        setId(patternList.getId());
+
+        this.tree = tree;
+        this.dataType = patternList.getDataType();
+        this.patternList = patternList;
+        this.patternCount = patternList.getPatternCount();
+        this.stateCount = dataType.getStateCount();
+        this.patternWeights = patternList.getPatternWeights();
+
+        // Check for matching state counts
+        int stateCount2 = branchModel.getRootFrequencyModel().getFrequencyCount();
+        if (stateCount != stateCount2) {
+            throw new IllegalArgumentException("Pattern state count (" + stateCount
+                    + ") does not match substitution model state count (" + stateCount2 + ")");
+        }
+
+        this.branchModel = branchModel;
+        addModel(this.branchModel);
+
+        this.siteRateModel = siteRateModel;
+        addModel(this.siteRateModel);
+
+        this.categoryCount = siteRateModel.getCategoryCount();
+
+        nodeCount = tree.getNodeCount();
+        tipCount = tree.getExternalNodeCount();
+        internalNodeCount = nodeCount - tipCount;
+
+        partialsSize = categoryCount * patternCount * stateCount;
+        matrixSize = stateCount * stateCount;
+
+        if (patternList instanceof UncertainSiteList) {
+            useAmbiguities = true;
+        }
+        this.useAmbiguities = useAmbiguities;
+
+        this.rescalingScheme = (rescalingScheme == null ? PartialsRescalingScheme.DEFAULT : rescalingScheme);
+        if (this.rescalingScheme == PartialsRescalingScheme.ALWAYS ||
+                (!delayRescalingUntilUnderflow && this.rescalingScheme != PartialsRescalingScheme.NONE)) {
+            useScaleFactors = true;
+        }
+        this.delayRescalingUntilUnderflow = delayRescalingUntilUnderflow;
+
+        // one partials buffer for each tip and two for each internal node (for store restore)
+        partialBufferHelper = new BufferIndexHelper(nodeCount, tipCount);
+        // two matrices for each node (for store restore)
+        matrixBufferHelper = new BufferIndexHelper(nodeCount, 0);
+
+        partials = new double[partialBufferHelper.getBufferCount()][];
+        scaleFactors = new double[partialBufferHelper.getBufferCount()][];
+        for (int i = tipCount; i < partials.length; i++) {
+            partials[i] = new double[partialsSize];
+            scaleFactors[i] = new double[patternCount];
+        }
+
+        matrices = new double[matrixBufferHelper.getBufferCount()][categoryCount * matrixSize];
+        tipStates = new int[tipCount][];
+
+        branchUpdateIndices = new int[nodeCount];
+        branchLengths = new double[nodeCount];
+        patternLogLikelihoods = new double[patternCount];
+        tmpMatrix = new double[matrixSize];
+        tmpMatrix2 = new double[matrixSize];
+
+        try {
+            for (int i = 0; i < tipCount; i++) {
+                // Find the id of tip i in the patternList
+                String id = tree.getTaxonId(i);
+                int index = patternList.getTaxonIndex(id);
+
+                if (index == -1) {
+                    throw new TaxonList.MissingTaxonException("Taxon, " + id + ", in tree, " + tree.getId() +
+                            ", is not found in patternList, " + patternList.getId());
+                } else {
+                    if (useAmbiguities) {
+                        setPartials(patternList, index, i);
+                    } else {
+                        setStates(patternList, index, i);
+                    }
+                }
+            }
+        } catch (TaxonList.MissingTaxonException mte) {
+            throw new RuntimeException(mte.toString());
+        }
+
+        this.taskPool = new TaskPool(patternCount, Math.max(1, threadCount));
+
+        logger.info("    " + (useAmbiguities ? "Using" : "Ignoring") + " ambiguities in tree likelihood.");
+        logger.info("    With " + patternCount + " unique site patterns.");
+        if (patternList.areUncertain() && !useAmbiguities) {
+            logger.info("    WARNING: Uncertain site patterns will be ignored.");
+        }
+        logger.info("    Using rescaling scheme : " + (useScaleFactors ? "always" :
+                (this.rescalingScheme == PartialsRescalingScheme.NONE ? "none" : "delay rescaling until first underflow")));
+        logger.info("    Dividing patterns between " + taskPool.getNumThreads() + " thread" +
+                (taskPool.getNumThreads() > 1 ? "s" : "") + ".");
+
+        updateSubstitutionModel = true;
+        updateSiteModel = true;
+    }
+
+    /**
+     * Sets the partials from a sequence in an alignment.
+     */
+    private void setPartials(PatternList patternList, int sequenceIndex, int nodeIndex) {
+        double[] tipPartials = new double[partialsSize];
+
+        int v = 0;
+        for (int i = 0; i < patternCount; i++) {
+            if (patternList instanceof UncertainSiteList) {
+                ((UncertainSiteList) patternList).fillPartials(sequenceIndex, i, tipPartials, v);
+                v += stateCount;
+            } else if (patternList.areUncertain()) {
+                double[] prob = patternList.getUncertainPatternState(sequenceIndex, i);
+                System.arraycopy(prob, 0, tipPartials, v, stateCount);
+                v += stateCount;
+            } else {
+                int state = patternList.getPatternState(sequenceIndex, i);
+                boolean[] stateSet = dataType.getStateSet(state);
+                for (int j = 0; j < stateCount; j++) {
+                    tipPartials[v] = stateSet[j] ? 1.0 : 0.0;
+                    v++;
+                }
+            }
+        }
+
+        // if there is more than one category then replicate the partials for each
+        int n = patternCount * stateCount;
+        int k = n;
+        for (int i = 1; i < categoryCount; i++) {
+            System.arraycopy(tipPartials, 0, tipPartials, k, n);
+            k += n;
+        }
+
+        partials[nodeIndex] = tipPartials;
+    }
+
+    /**
+     * Sets the states from a sequence in an alignment. Any ambiguous state is treated as missing
+     * data (as is done by BEAGLE).
+     */
+    private void setStates(PatternList patternList, int sequenceIndex, int nodeIndex) {
+        int[] states = new int[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            int state = patternList.getPatternState(sequenceIndex, i);
+            states[i] = (state < stateCount ? state : stateCount);
+        }
+        tipStates[nodeIndex] = states;
+    }
+
+    @Override
+    public TreeTraversal.TraversalType getOptimalTraversalType() {
+        return TreeTraversal.TraversalType.POST_ORDER;
+    }
+
+    @Override
+    public int getTraitCount() {
+        return 1;
+    }
+
+    @Override
+    public int getTraitDim() {
+        return patternCount;
+    }
+
+    @Override
+    public int getPartitionCat() {
+        return 0;
+    }
+
+    @Override
+    public RateRescalingScheme getRateRescalingScheme() {
+        return RateRescalingScheme.NONE;
+    }
+
+    public PatternList getPatternList() {
+        return patternList;
+    }
+
+    /**
+     * Calculate the log likelihood of the current state.
+     *
+     * @return the log likelihood.
+     */
+    @Override
+    public double calculateLikelihood(List<BranchOperation> branchOperations, List<NodeOperation> nodeOperations,
+                                      int rootNodeNumber) throws LikelihoodException {
+
+        if (updateSiteModel) {
+            categoryRates = siteRateModel.getCategoryRates();
+            if (categoryRates == null) {
+                // If this returns null then there was a numerical error calculating the category rates
+                // (probably a very small alpha) so reject the move.
+                return Double.NEGATIVE_INFINITY;
+            }
+            categoryWeights = siteRateModel.getCategoryProportions();
+        }
+
+        if (updateSubstitutionModel || updateSiteModel) {
+            frequencies = branchModel.getRootFrequencyModel().getFrequencies();
+        }
+
+        int branchUpdateCount = 0;
+        for (BranchOperation op : branchOperations) {
+            branchUpdateIndices[branchUpdateCount] = op.getBranchNumber();
+            branchLengths[branchUpdateCount] = op.getBranchLength();
+            branchUpdateCount++;
+        }
+
+        updateTransitionMatrices(branchUpdateCount);
+
+        // the buffer offsets only flip once between store and restore so it is safe to
+        // flip again when recomputing after an underflow.
+        final int operationCount = nodeOperations.size();
+        final int[] operations = new int[operationCount * OPERATION_TUPLE_SIZE];
+        int k = 0;
+        for (NodeOperation op : nodeOperations) {
+            int nodeNum = op.getNodeNumber();
+            partialBufferHelper.flipOffset(nodeNum);
+
+            operations[k] = partialBufferHelper.getOffsetIndex(nodeNum);
+            operations[k + 1] = partialBufferHelper.getOffsetIndex(op.getLeftChild());
+            operations[k + 2] = matrixBufferHelper.getOffsetIndex(op.getLeftChild());
+            operations[k + 3] = partialBufferHelper.getOffsetIndex(op.getRightChild());
+            operations[k + 4] = matrixBufferHelper.getOffsetIndex(op.getRightChild());
+            k += OPERATION_TUPLE_SIZE;
+        }
+
+        final int[] scaleBuffers;
+        if (useScaleFactors) {
+            scaleBuffers = new int[internalNodeCount];
+            for (int i = 0; i < internalNodeCount; i++) {
+                scaleBuffers[i] = partialBufferHelper.getOffsetIndex(i + tipCount);
+            }
+        } else {
+            scaleBuffers = null;
+        }
+
+        final int rootIndex = partialBufferHelper.getOffsetIndex(rootNodeNumber);
+
+        double logL = taskPool.mapReduce(
+                (start, end, thread) -> {
+                    for (int i = 0; i < operationCount; i++) {
+                        updatePartials(operations, i * OPERATION_TUPLE_SIZE, start, end);
+                    }
+                    return calculateRootLogLikelihoods(rootIndex, scaleBuffers, start, end);
+                },
+                Double::sum);
+
+        if (COUNT_CALCULATIONS) {
+            totalMatrixUpdateCount += branchUpdateCount;
+            totalPartialsUpdateCount += operationCount;
+            totalEvaluationCount += 1;
+        }
+
+        if (Double.isNaN(logL) || Double.isInfinite(logL)) {
+            if (!useScaleFactors && rescalingScheme != PartialsRescalingScheme.NONE) {
+                Logger.getLogger("dr.evomodel").info("Underflow calculating likelihood. Attempting a rescaling..." +
+                        (getId() != null ? " (" + getId() + ")" : ""));
+                useScaleFactors = true;
+                throw new LikelihoodUnderflowException();
+            }
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        updateSubstitutionModel = false;
+        updateSiteModel = false;
+
+        return logL;
+    }
+
+    /**
+     * Computes the transition probability matrices for the branches in branchUpdateIndices, convolving
+     * the matrices where the branch model maps more than one substitution model to a branch.
+     */
+    private void updateTransitionMatrices(int branchUpdateCount) {
+        final List<SubstitutionModel> substitutionModels = branchModel.getSubstitutionModels();
+
+        for (int i = 0; i < branchUpdateCount; i++) {
+            final int branchIndex = branchUpdateIndices[i];
+            matrixBufferHelper.flipOffset(branchIndex);
+            final double[] matrix = matrices[matrixBufferHelper.getOffsetIndex(branchIndex)];
+
+            if (substitutionModels.size() == 1 && !branchModel.requiresMatrixConvolution()) {
+                final SubstitutionModel substitutionModel = substitutionModels.get(0);
+                for (int c = 0; c < categoryCount; c++) {
+                    substitutionModel.getTransitionProbabilities(categoryRates[c] * branchLengths[i], tmpMatrix);
+                    System.arraycopy(tmpMatrix, 0, matrix, c * matrixSize, matrixSize);
+                }
+            } else {
+                BranchModel.Mapping mapping = branchModel.getBranchModelMapping(tree.getNode(branchIndex));
+                int[] order = mapping.getOrder();
+                double[] weights = mapping.getWeights();
+
+                double sum = 0.0;
+                for (double w : weights) {
+                    sum += w;
+                }
+
+                for (int c = 0; c < categoryCount; c++) {
+                    final double distance = categoryRates[c] * branchLengths[i];
+                    final int offset = c * matrixSize;
+
+                    // matrices are in order from rootward to tipward
+                    substitutionModels.get(order[0]).getTransitionProbabilities(
+                            distance * weights[0] / sum, tmpMatrix);
+                    System.arraycopy(tmpMatrix, 0, matrix, offset, matrixSize);
+
+                    for (int j = 1; j < order.length; j++) {
+                        substitutionModels.get(order[j]).getTransitionProbabilities(
+                                distance * weights[j] / sum, tmpMatrix);
+                        System.arraycopy(matrix, offset, tmpMatrix2, 0, matrixSize);
+                        multiplyMatrices(tmpMatrix2, tmpMatrix, matrix, offset);
+                    }
+                }
+            }
+        }
+    }
+
+    private void multiplyMatrices(double[] a, double[] b, double[] result, int offset) {
+        for (int i = 0; i < stateCount; i++) {
+            for (int j = 0; j < stateCount; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < stateCount; k++) {
+                    sum += a[i * stateCount + k] * b[k * stateCount + j];
+                }
+                result[offset + i * stateCount + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Computes the partials for a block of patterns for a single node operation.
+     */
+    private void updatePartials(int[] operations, int k, int patternStart, int patternEnd) {
+        final int destIndex = operations[k];
+        final int child1 = operations[k + 1];
+        final double[] matrices1 = matrices[operations[k + 2]];
+        final int child2 = operations[k + 3];
+        final double[] matrices2 = matrices[operations[k + 4]];
+
+        final double[] dest = partials[destIndex];
+
+        for (int c = 0; c < categoryCount; c++) {
+            final int mOffset = c * matrixSize;
+            final int pOffset = (c * patternCount + patternStart) * stateCount;
+
+            if (child1 < tipCount && tipStates[child1] != null) {
+                if (child2 < tipCount && tipStates[child2] != null) {
+                    statesStatesPruning(tipStates[child1], matrices1, tipStates[child2], matrices2,
+                            dest, mOffset, pOffset, patternStart, patternEnd);
+                } else {
+                    statesPartialsPruning(tipStates[child1], matrices1, partials[child2], matrices2,
+                            dest, mOffset, pOffset, patternStart, patternEnd);
+                }
+            } else if (child2 < tipCount && tipStates[child2] != null) {
+                statesPartialsPruning(tipStates[child2], matrices2, partials[child1], matrices1,
+                        dest, mOffset, pOffset, patternStart, patternEnd);
+            } else {
+                partialsPartialsPruning(partials[child1], matrices1, partials[child2], matrices2,
+                        dest, mOffset, pOffset, patternStart, patternEnd);
+            }
+        }
+
+        if (useScaleFactors) {
+            scalePartials(dest, scaleFactors[destIndex], patternStart, patternEnd);
+        }
+    }
+
+    private void statesStatesPruning(int[] states1, double[] matrices1, int[] states2, double[] matrices2,
+                                     double[] dest, int mOffset, int v, int patternStart, int patternEnd) {
+        for (int p = patternStart; p < patternEnd; p++) {
+            final int state1 = states1[p];
+            final int state2 = states2[p];
+
+            if (state1 < stateCount && state2 < stateCount) {
+                int w1 = mOffset + state1;
+                int w2 = mOffset + state2;
+                for (int i = 0; i < stateCount; i++) {
+                    dest[v] = matrices1[w1] * matrices2[w2];
+                    v++;
+                    w1 += stateCount;
+                    w2 += stateCount;
+                }
+            } else if (state1 < stateCount) {
+                // child 2 has a gap or unknown state so treat it as unknown
+                int w1 = mOffset + state1;
+                for (int i = 0; i < stateCount; i++) {
+                    dest[v] = matrices1[w1];
+                    v++;
+                    w1 += stateCount;
+                }
+            } else if (state2 < stateCount) {
+                // child 1 has a gap or unknown state so treat it as unknown
+                int w2 = mOffset + state2;
+                for (int i = 0; i < stateCount; i++) {
+                    dest[v] = matrices2[w2];
+                    v++;
+                    w2 += stateCount;
+                }
+            } else {
+                // both children have a gap or unknown state so set partials to 1
+                for (int i = 0; i < stateCount; i++) {
+                    dest[v] = 1.0;
+                    v++;
+                }
+            }
+        }
+    }
+
+    private void statesPartialsPruning(int[] states1, double[] matrices1, double[] partials2, double[] matrices2,
+                                       double[] dest, int mOffset, int v, int patternStart, int patternEnd) {
+        for (int p = patternStart; p < patternEnd; p++) {
+            final int state1 = states1[p];
+            int w = mOffset;
+
+            if (state1 < stateCount) {
+                for (int i = 0; i < stateCount; i++) {
+                    double sum = 0.0;
+                    for (int j = 0; j < stateCount; j++) {
+                        sum += matrices2[w + j] * partials2[v + j];
+                    }
+                    dest[v + i] = matrices1[w + state1] * sum;
+                    w += stateCount;
+                }
+            } else {
+                // child 1 has a gap or unknown state so don't use it
+                for (int i = 0; i < stateCount; i++) {
+                    double sum = 0.0;
+                    for (int j = 0; j < stateCount; j++) {
+                        sum += matrices2[w + j] * partials2[v + j];
+                    }
+                    dest[v + i] = sum;
+                    w += stateCount;
+                }
+            }
+            v += stateCount;
+        }
+    }
+
+    private void partialsPartialsPruning(double[] partials1, double[] matrices1, double[] partials2, double[] matrices2,
+                                         double[] dest, int mOffset, int v, int patternStart, int patternEnd) {
+        for (int p = patternStart; p < patternEnd; p++) {
+            int w = mOffset;
+            for (int i = 0; i < stateCount; i++) {
+                double sum1 = 0.0;
+                double sum2 = 0.0;
+                for (int j = 0; j < stateCount; j++) {
+                    sum1 += matrices1[w + j] * partials1[v + j];
+                    sum2 += matrices2[w + j] * partials2[v + j];
+                }
+                dest[v + i] = sum1 * sum2;
+                w += stateCount;
+            }
+            v += stateCount;
+        }
+    }
+
+    /**
+     * Scales the partials at a node for a block of patterns by the largest value across
+     * categories and states, storing the log of the scaling factor.
+     */
+    private void scalePartials(double[] dest, double[] logScaleFactors, int patternStart, int patternEnd) {
+        final int categoryStride = patternCount * stateCount;
+
+        for (int p = patternStart; p < patternEnd; p++) {
+            double scaleFactor = 0.0;
+            int v = p * stateCount;
+            for (int c = 0; c < categoryCount; c++) {
+                for (int i = 0; i < stateCount; i++) {
+                    if (dest[v + i] > scaleFactor) {
+                        scaleFactor = dest[v + i];
+                    }
+                }
+                v += categoryStride;
+            }
+
+            if (scaleFactor < SCALING_THRESHOLD && scaleFactor > 0.0) {
+                v = p * stateCount;
+                for (int c = 0; c < categoryCount; c++) {
+                    for (int i = 0; i < stateCount; i++) {
+                        dest[v + i] /= scaleFactor;
+                    }
+                    v += categoryStride;
+                }
+                logScaleFactors[p] = Math.log(scaleFactor);
+            } else {
+                logScaleFactors[p] = 0.0;
+            }
+        }
+    }
+
+    /**
+     * Integrates the root partials over categories and root frequencies for a block of patterns
+     * and returns the weighted sum of the pattern log likelihoods.
+     */
+    private double calculateRootLogLikelihoods(int rootIndex, int[] scaleBuffers, int patternStart, int patternEnd) {
+        final double[] rootPartials = partials[rootIndex];
+        final int categoryStride = patternCount * stateCount;
+
+        double logL = 0.0;
+        for (int p = patternStart; p < patternEnd; p++) {
+            double sum = 0.0;
+            int v = p * stateCount;
+            for (int c = 0; c < categoryCount; c++) {
+                double categorySum = 0.0;
+                for (int i = 0; i < stateCount; i++) {
+                    categorySum += frequencies[i] * rootPartials[v + i];
+                }
+                sum += categoryWeights[c] * categorySum;
+                v += categoryStride;
+            }
+
+            double logSum = Math.log(sum);
+            if (scaleBuffers != null) {
+                for (int scaleBuffer : scaleBuffers) {
+                    logSum += scaleFactors[scaleBuffer][p];
+                }
+            }
+
+            patternLogLikelihoods[p] = logSum;
+            logL += patternWeights[p] * logSum;
+        }
+        return logL;
+    }
+
+    @Override
+    public double[] getSiteLogLikelihoods() {
+        double[] siteLogLikelihoods = new double[patternCount];
+        System.arraycopy(patternLogLikelihoods, 0, siteLogLikelihoods, 0, patternCount);
+        return siteLogLikelihoods;
+    }
+
+    @Override
+    public void makeDirty() {
+        updateSiteModel = true;
+        updateSubstitutionModel = true;
+        fireModelChanged();
+    }
+
+    @Override
+    protected void handleModelChangedEvent(Model model, Object object, int index) {
+        if (model == siteRateModel) {
+            updateSiteModel = true;
+        } else if (model == branchModel) {
+            updateSubstitutionModel = true;
+        }
+
+        // Tell TreeDataLikelihood to update all nodes
+        fireModelChanged();
+    }
+
+    @Override
+    protected void handleVariableChangedEvent(Variable variable, int index, Parameter.ChangeType type) {
+        // no variables to handle
+    }
+
+    /**
+     * Stores the additional state other than model components
+     */
+    @Override
+    public void storeState() {
+        partialBufferHelper.storeState();
+        matrixBufferHelper.storeState();
+    }
+
+    /**
+     * Restore the additional stored state
+     */
+    @Override
+    public void restoreState() {
+        updateSiteModel = true;
+        updateSubstitutionModel = true;
+
+        partialBufferHelper.restoreState();
+        matrixBufferHelper.restoreState();
+    }
+
+    @Override
+    protected void acceptState() {
+    }
+
+    @Override
+    public void setCallback(TreeDataLikelihood treeDataLikelihood) {
+        // Do nothing
+    }
+
+    @Override
+    public void setComputePostOrderStatisticsOnly(boolean computePostOrderStatistic) {
+        // Do nothing
+    }
+
+    @Override
+    public boolean providesPostOrderStatisticsOnly() {
+        return false;
+    }
+
+    @Override
+    public int vectorizeNodeOperations(List<NodeOperation> nodeOperations, int[] operations) {
+        throw new RuntimeException("Not yet implemented");
+    }
+
+    @Override
+    public PreOrderSettings getPreOrderSettings() {
+        return PreOrderSettings.getDefault();
+    }
+
+    @Override
+    public boolean getPreferGPU() {
+        return false;
+    }
+
+    @Override
+    public boolean getUseAmbiguities() {
+        return useAmbiguities;
+    }
+
+    @Override
+    public PartialsRescalingScheme getRescalingScheme() {
+        return rescalingScheme;
+    }
+
+    @Override
+    public boolean getDelayRescalingUntilUnderflow() {
+        return delayRescalingUntilUnderflow &&
+                rescalingScheme != PartialsRescalingScheme.ALWAYS && rescalingScheme != PartialsRescalingScheme.NONE;
+    }
+
+    public int getThreadCount() {
+        return taskPool.getNumThreads();
+    }
+
+    @Override
+    public String getReport() {
+        return "JavaDataLikelihoodDelegate(" + getId() + ")" +
+                "\n  matrix updates = " + totalMatrixUpdateCount +
+                "\n  partials updates = " + totalPartialsUpdateCount +
+                "\n  evaluations = " + totalEvaluationCount +
+                "\n  threads = " + taskPool.getNumThreads() + "\n";
+    }
+
+    // **************************************************************
+    // INSTANCE PROFILEABLE
+    // **************************************************************
+
+    @Override
+    public long getTotalCalculationCount() {
+        // Can only return one count at the moment so return the number of partials updated
+        return totalPartialsUpdateCount;
+    }
+
+    // **************************************************************
+    // INSTANCE VARIABLES
+    // **************************************************************
+
+    private static final int OPERATION_TUPLE_SIZE = 5;
+
+    private static final double SCALING_THRESHOLD = 1.0E-100;
+
+    private final Tree tree;
+    private final PatternList patternList;
+    private final DataType dataType;
+    private final BranchModel branchModel;
+    private final SiteRateModel siteRateModel;
+
+    private final int nodeCount;
+    private final int tipCount;
+    private final int internalNodeCount;
+    private final int patternCount;
+    private final int stateCount;
+    private final int categoryCount;
+    private final int partialsSize;
+    private final int matrixSize;
+
+    private final double[] patternWeights;
+    private final double[] patternLogLikelihoods;
+
+    private final BufferIndexHelper partialBufferHelper;
+    private final BufferIndexHelper matrixBufferHelper;
+
+    /**
+     * partials and log scale factors indexed by partials buffer, tips have null partials
+     * if they are represented by states
+     */
+    private final double[][] partials;
+    private final double[][] scaleFactors;
+    private final int[][] tipStates;
+
+    /**
+     * transition matrices indexed by matrix buffer, laid out as [category][from][to]
+     */
+    private final double[][] matrices;
+
+    private final int[] branchUpdateIndices;
+    private final double[] branchLengths;
+    private final double[] tmpMatrix;
+    private final double[] tmpMatrix2;
+
+    private double[] categoryRates;
+    private double[] categoryWeights;
+    private double[] frequencies;
+
+    private final boolean useAmbiguities;
+    private final PartialsRescalingScheme rescalingScheme;
+    private final boolean delayRescalingUntilUnderflow;
+    private boolean useScaleFactors = false;
+
+    private boolean updateSubstitutionModel;
+    private boolean updateSiteModel;
+
+    private final TaskPool taskPool;
+
+    private long totalMatrixUpdateCount = 0;
+    private long totalPartialsUpdateCount = 0;
+    private long totalEvaluationCount = 0;
+}
@@ -57,6 +57,10 @@ public class PreOrderSettings {
         this.useRewardAwareBranchModelDelegate = useRewardAwareBranchModelDelegate;
     }
 
+    public boolean isUsePreOrder() {
+        return usePreOrder;
+    }
+
     public static PreOrderSettings getDefault() {
         return new PreOrderSettings(false, false, false, false);
     }
@@ -0,0 +1,324 @@
+/*
+ * ShardedDataLikelihoodDelegate.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.evomodel.treedatalikelihood;
+
+import dr.evomodel.branchmodel.BranchModel;
+import dr.evomodel.siteratemodel.SiteRateModel;
+import dr.evomodel.substmodel.SubstitutionModel;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.inference.model.AbstractModel;
+import dr.inference.model.Model;
+import dr.inference.model.Parameter;
+import dr.inference.model.Variable;
+import dr.util.Citable;
+import dr.util.Citation;
+import dr.util.TaskPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * ShardedDataLikelihoodDelegate - a DataLikelihoodDelegate that divides the site patterns of a single
+ * partition into contiguous blocks (shards), each with its own delegate. The shards are evaluated
+ * concurrently from the same operation lists and their log likelihoods summed, so a single
+ * TreeDataLikelihood can use many cores without splitting it into a CompoundLikelihood.
+ * Shards only compute the post-order likelihood; the parser rejects them with pre-order traversals
+ * because the gradient delegates require a single instance holding all the patterns.
+ *
+ * @author Marc Suchard
+ */
+public class ShardedDataLikelihoodDelegate extends AbstractModel implements DataLikelihoodDelegate, Citable {
+
+    /**
+     * @param shards the delegates for each contiguous block of patterns, in pattern order
+     * @param branchModel the branch model shared by the shards
+     * @param siteRateModel the site rate model shared by the shards
+     * @param threadCount the number of threads over which to evaluate the shards
+     */
+    public ShardedDataLikelihoodDelegate(List<DataLikelihoodDelegate> shards,
+                                         BranchModel branchModel,
+                                         SiteRateModel siteRateModel,
+                                         int threadCount) {
+        super("ShardedDataLikelihoodDelegate");
+
+        if (shards.size() < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+
+        final Logger logger = Logger.getLogger("dr.evomodel");
+
+        this.shards = new ArrayList<>(shards);
+        this.branchModel = branchModel;
+        this.siteRateModel = siteRateModel;
+
+        setId(shards.get(0).getId());
+
+        int patternCount = 0;
+        for (DataLikelihoodDelegate shard : shards) {
+            addModel(shard);
+            patternCount += shard.getTraitDim();
+        }
+        this.patternCount = patternCount;
+
+        this.shardLogLikelihoods = new double[shards.size()];
+        this.shardExceptions = new LikelihoodException[shards.size()];
+        this.taskPool = new TaskPool(shards.size(), Math.max(1, Math.min(threadCount, shards.size())));
+
+        logger.info("  Dividing " + patternCount + " patterns into " + shards.size() +
+                " shards evaluated on " + taskPool.getNumThreads() + " thread" +
+                (taskPool.getNumThreads() > 1 ? "s" : ""));
+    }
+
+    public List<DataLikelihoodDelegate> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    @Override
+    public TreeTraversal.TraversalType getOptimalTraversalType() {
+        return shards.get(0).getOptimalTraversalType();
+    }
+
+    @Override
+    public double calculateLikelihood(final List<BranchOperation> branchOperations,
+                                      final List<NodeOperation> nodeOperations,
+                                      final int rootNodeNumber) throws LikelihoodException {
+
+        // the substitution and site models are shared by the shards and compute their
+        // decompositions lazily so make sure these are up to date before going parallel.
+        prepareSharedModels();
+
+        taskPool.fork((shard, thread) -> {
+            try {
+                shardLogLikelihoods[shard] = shards.get(shard).calculateLikelihood(
+                        branchOperations, nodeOperations, rootNodeNumber);
+                shardExceptions[shard] = null;
+            } catch (LikelihoodException le) {
+                shardExceptions[shard] = le;
+            }
+        });
+
+        for (LikelihoodException le : shardExceptions) {
+            if (le != null) {
+                // all shards will recompute all nodes on the next attempt
+                throw le;
+            }
+        }
+
+        double logL = 0.0;
+        for (double shardLogLikelihood : shardLogLikelihoods) {
+            logL += shardLogLikelihood;
+        }
+        return logL;
+    }
+
+    private void prepareSharedModels() {
+        if (siteRateModel.getCategoryRates() == null) {
+            return;
+        }
+        siteRateModel.getCategoryProportions();
+        for (SubstitutionModel substitutionModel : branchModel.getSubstitutionModels()) {
+            substitutionModel.getEigenDecomposition();
+        }
+        branchModel.getRootFrequencyModel().getFrequencies();
+    }
+
+    @Override
+    public double[] getSiteLogLikelihoods() {
+        double[] siteLogLikelihoods = new double[patternCount];
+        int offset = 0;
+        for (DataLikelihoodDelegate shard : shards) {
+            double[] shardSiteLogLikelihoods = shard.getSiteLogLikelihoods();
+            System.arraycopy(shardSiteLogLikelihoods, 0, siteLogLikelihoods, offset, shardSiteLogLikelihoods.length);
+            offset += shardSiteLogLikelihoods.length;
+        }
+        return siteLogLikelihoods;
+    }
+
+    @Override
+    public int getTraitCount() {
+        return 1;
+    }
+
+    @Override
+    public int getTraitDim() {
+        return patternCount;
+    }
+
+    @Override
+    public int getPartitionCat() {
+        return shards.get(0).getPartitionCat();
+    }
+
+    @Override
+    public RateRescalingScheme getRateRescalingScheme() {
+        return shards.get(0).getRateRescalingScheme();
+    }
+
+    @Override
+    public void makeDirty() {
+        for (DataLikelihoodDelegate shard : shards) {
+            shard.makeDirty();
+        }
+    }
+
+    @Override
+    protected void handleModelChangedEvent(Model model, Object object, int index) {
+        // pass on the event so TreeDataLikelihood updates all nodes
+        fireModelChanged();
+    }
+
+    @Override
+    protected void handleVariableChangedEvent(Variable variable, int index, Parameter.ChangeType type) {
+        // no variables to handle
+    }
+
+    /**
+     * The shards are sub-models so are stored and restored along with this model.
+     */
+    @Override
+    public void storeState() {
+    }
+
+    @Override
+    public void restoreState() {
+    }
+
+    @Override
+    protected void acceptState() {
+    }
+
+    @Override
+    public void setCallback(TreeDataLikelihood treeDataLikelihood) {
+        for (DataLikelihoodDelegate shard : shards) {
+            shard.setCallback(treeDataLikelihood);
+        }
+    }
+
+    @Override
+    public int vectorizeNodeOperations(List<NodeOperation> nodeOperations, int[] operations) {
+        throw new RuntimeException("Not yet implemented");
+    }
+
+    @Override
+    public void setComputePostOrderStatisticsOnly(boolean computePostOrderStatistics) {
+        for (DataLikelihoodDelegate shard : shards) {
+            shard.setComputePostOrderStatisticsOnly(computePostOrderStatistics);
+        }
+    }
+
+    @Override
+    public boolean providesPostOrderStatisticsOnly() {
+        return false;
+    }
+
+    @Override
+    public PreOrderSettings getPreOrderSettings() {
+        return shards.get(0).getPreOrderSettings();
+    }
+
+    @Override
+    public boolean getPreferGPU() {
+        return shards.get(0).getPreferGPU();
+    }
+
+    @Override
+    public boolean getUseAmbiguities() {
+        return shards.get(0).getUseAmbiguities();
+    }
+
+    @Override
+    public PartialsRescalingScheme getRescalingScheme() {
+        return shards.get(0).getRescalingScheme();
+    }
+
+    @Override
+    public boolean getDelayRescalingUntilUnderflow() {
+        return shards.get(0).getDelayRescalingUntilUnderflow();
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (DataLikelihoodDelegate shard : shards) {
+            String report = shard.getReport();
+            if (report != null) {
+                sb.append(report);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    // **************************************************************
+    // INSTANCE PROFILEABLE
+    // **************************************************************
+
+    @Override
+    public long getTotalCalculationCount() {
+        long count = 0;
+        for (DataLikelihoodDelegate shard : shards) {
+            count += shard.getTotalCalculationCount();
+        }
+        return count;
+    }
+
+    // **************************************************************
+    // INSTANCE CITABLE
+    // **************************************************************
+
+    @Override
+    public Citation.Category getCategory() {
+        return Citation.Category.FRAMEWORK;
+    }
+
+    @Override
+    public String getDescription() {
+        return shards.get(0) instanceof Citable ? ((Citable) shards.get(0)).getDescription() : null;
+    }
+
+    @Override
+    public List<Citation> getCitations() {
+        return shards.get(0) instanceof Citable ?
+                ((Citable) shards.get(0)).getCitations() : Collections.<Citation>emptyList();
+    }
+
+    // **************************************************************
+    // INSTANCE VARIABLES
+    // **************************************************************
+
+    private final List<DataLikelihoodDelegate> shards;
+    private final BranchModel branchModel;
+    private final SiteRateModel siteRateModel;
+    private final int patternCount;
+
+    private final double[] shardLogLikelihoods;
+    private final LikelihoodException[] shardExceptions;
+
+    private final TaskPool taskPool;
+}
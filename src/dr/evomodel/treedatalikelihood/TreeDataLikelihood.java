@@ -49,7 +49,7 @@ import java.util.logging.Logger;
  */
 
 public final class TreeDataLikelihood extends AbstractModelLikelihood implements
-        ProcessAlongTree, TreeTraitProvider, Citable, Profileable, Reportable {
+        ProcessAlongTree, TreeTraitProvider, Citable, Profileable, Reportable, BoundedLikelihood {
 
     private static final boolean COUNT_TOTAL_OPERATIONS = true;
     private static final long MAX_UNDERFLOWS_BEFORE_ERROR = 100;
@@ -182,6 +182,22 @@ public final class TreeDataLikelihood extends AbstractModelLikelihood implements
         }
     }
 
+    @Override
+    public double getLogLikelihoodUpperBound() {
+        if (likelihoodDelegate == null) {
+            return 0.0;
+        }
+        // the probability of a set of discrete site patterns can't be greater than one but
+        // continuous trait densities have no such bound
+        if (likelihoodDelegate instanceof BeagleDataLikelihoodDelegate ||
+                likelihoodDelegate instanceof JavaDataLikelihoodDelegate ||
+                likelihoodDelegate instanceof MultiPartitionDataLikelihoodDelegate ||
+                likelihoodDelegate instanceof ShardedDataLikelihoodDelegate) {
+            return 0.0;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
     public void calculatePostOrderStatistics() {
         if(likelihoodDelegate != null) {
             if (COUNT_TOTAL_OPERATIONS) {
@@ -29,8 +29,10 @@ package dr.evomodelxml.tree;
 
 import dr.util.FileHelpers;
 import dr.xml.*;
+import dr.evolution.io.IndexedNexusImporter;
 import dr.evolution.io.NexusImporter;
 import dr.evolution.io.Importer;
+import dr.evolution.io.TreeImporter;
 import dr.evolution.tree.Tree;
 import dr.evolution.util.TaxonList;
 import dr.evomodel.tree.EmpiricalTreeDistributionModel;
@@ -75,13 +77,27 @@ public class EmpiricalTreeDistributionModelParser extends AbstractXMLObjectParse
         final File file = FileHelpers.getFile(fileName);
 
         List<Tree> trees = null;
-        NexusImporter importer = null;
+        TreeImporter importer = null;
         try {
-            FileReader reader = new FileReader(file);
-            importer = new NexusImporter(reader);
-            if (!iterate) {
-                trees = importer.importTrees(taxa, true); // Re-order taxon numbers to original TaxonList order
-                reader.close();
+            if (xo.hasAttribute(BURNIN) || xo.hasAttribute(THIN)) {
+                // index the file so the burn-in and thinned out trees are never read
+                IndexedNexusImporter indexedImporter = new IndexedNexusImporter(file, iterate ? null : taxa, false, false);
+                indexedImporter.selectTrees(xo.getAttribute(BURNIN, 0), xo.getAttribute(THIN, 1));
+                Logger.getLogger("dr.evomodel").info("    Using " + indexedImporter.countTrees() + " of the " +
+                        indexedImporter.getTreeCount() + " trees in file, " + fileName);
+                importer = indexedImporter;
+                if (!iterate) {
+                    trees = importer.importTrees(taxa);
+                    indexedImporter.close();
+                }
+            } else {
+                FileReader reader = new FileReader(file);
+                NexusImporter nexusImporter = new NexusImporter(reader);
+                importer = nexusImporter;
+                if (!iterate) {
+                    trees = nexusImporter.importTrees(taxa, true); // Re-order taxon numbers to original TaxonList order
+                    reader.close();
+                }
             }
         } catch (FileNotFoundException e) {
             throw new XMLParseException(e.getMessage());
@@ -89,6 +105,8 @@ public class EmpiricalTreeDistributionModelParser extends AbstractXMLObjectParse
             throw new XMLParseException(e.getMessage());
         } catch (Importer.ImportException e) {
             throw new XMLParseException(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new XMLParseException(e.getMessage());
         }
         
 
@@ -102,7 +120,8 @@ public class EmpiricalTreeDistributionModelParser extends AbstractXMLObjectParse
     }
 
     public static final String FILE_NAME = "fileName";
-//    public static final String BURNIN = "burnin";
+    public static final String BURNIN = "burnin";
+    public static final String THIN = "thin";
 
     public XMLSyntaxRule[] getSyntaxRules() {
         return new XMLSyntaxRule[]{
@@ -110,8 +129,10 @@ public class EmpiricalTreeDistributionModelParser extends AbstractXMLObjectParse
                 AttributeRule.newBooleanRule(ITERATE, true),
                 new StringAttributeRule(FILE_NAME,
                         "The name of a NEXUS tree file"),
-//                AttributeRule.newIntegerRule(BURNIN, true,
-//                        "The number of trees to exclude"),
+                AttributeRule.newIntegerRule(BURNIN, true,
+                        "The number of trees to exclude"),
+                AttributeRule.newIntegerRule(THIN, true,
+                        "Use every nth tree after the burn-in"),
                 new ElementRule(TaxonList.class),
         };
     }
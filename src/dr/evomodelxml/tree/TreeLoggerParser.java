@@ -31,6 +31,7 @@ import dr.evolution.colouring.TreeColouringProvider;
 import dr.evolution.tree.*;
 import dr.evomodel.tree.TreeLogger;
 import dr.inference.loggers.LogFormatter;
+import dr.inference.loggers.MCLogger;
 import dr.inference.loggers.Loggable;
 import dr.inference.loggers.TabDelimitedFormatter;
 import dr.inference.model.Likelihood;
@@ -345,6 +346,9 @@ public class TreeLoggerParser extends LoggerParser {
         mapNames = xo.getAttribute(MAP_NAMES, true);
 
         condition = logEvery == 0 ? (TreeLogger.LogUpon) xo.getChild(TreeLogger.LogUpon.class) : null;
+
+        asynchronous = xo.hasAttribute(FILE_NAME) &&
+                xo.getAttribute(ASYNCHRONOUS, Boolean.getBoolean(MCLogger.ASYNCHRONOUS_LOGGING));
     }
 
     /**
@@ -362,6 +366,8 @@ public class TreeLoggerParser extends LoggerParser {
             logger.setTitle(title);
         }
 
+        logger.setAsynchronous(asynchronous);
+
         return logger;
     }
 
@@ -374,6 +380,7 @@ public class TreeLoggerParser extends LoggerParser {
     protected TreeLogger.LogUpon condition;
     protected boolean mapNames;
     protected LogFormatter formatter;
+    protected boolean asynchronous;
     protected TreeAttributeProvider[] treeAttributeProviders;
     protected TreeTraitProvider[] treeTraitProviders;
     protected int logEvery;
@@ -388,6 +395,8 @@ public class TreeLoggerParser extends LoggerParser {
     private final XMLSyntaxRule[] rules = {
             AttributeRule.newIntegerRule(LOG_EVERY, true),
             AttributeRule.newBooleanRule(ALLOW_OVERWRITE_LOG, true),
+            AttributeRule.newBooleanRule(ASYNCHRONOUS, true,
+                    "Generate and write the trees on a background thread"),
             new StringAttributeRule(FILE_NAME,
                     "The name of the file to send log output to. " +
                             "If no file name is specified then log is sent to standard output", true),
@@ -60,11 +60,13 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
 
     public static final String BEAGLE_INSTANCE_COUNT = "beagle.instance.count";
     public static final String BEAGLE_THREAD_COUNT = "beagle.thread.count";
+    public static final String BEAGLE_SHARD_COUNT = "beagle.shard.count";
     public static final String THREAD_COUNT = "thread.count";
 
     public static final String TREE_DATA_LIKELIHOOD = "treeDataLikelihood";
     public static final String USE_AMBIGUITIES = "useAmbiguities";
     public static final String INSTANCE_COUNT = "instanceCount";
+    public static final String SHARD_COUNT = "shardCount";
     public static final String PREFER_GPU = "preferGPU";
     public static final String SCALING_SCHEME = "scalingScheme";
     public static final String DELAY_SCALING = "delayScaling";
@@ -73,6 +75,7 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
     public static final String BRANCHINFINITESIMAL_DERIVATIVE = "branchInfinitesimalDerivative";
     public static final String INITIAL_NUM_CATS = "initialNumCats";
     public static final String PARTITION = "partition";
+    public static final String FORCE_JAVA = "forceJava";
 
     public String getParserName() {
         return TREE_DATA_LIKELIHOOD;
@@ -80,6 +83,7 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
 
     protected Likelihood createTreeDataLikelihood(String id,
                                                   int beagleInstanceCount,
+                                                  int shardCount,
                                                   List<PatternList> patternLists,
                                                   List<BranchModel> branchModels,
                                                   List<SiteRateModel> siteRateModels,
@@ -90,6 +94,7 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
                                                   boolean preferGPU,
                                                   PartialsRescalingScheme scalingScheme,
                                                   boolean delayRescalingUntilUnderflow,
+                                                  boolean forceJava,
                                                   PreOrderSettings settings/*,
                                                   Parameter siteAssignInd,
                                                   List<Parameter> polyaPartitionCategories,
@@ -130,9 +135,26 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
             }
         }
 
-        boolean useJava = Boolean.parseBoolean(System.getProperty("java.only", "false"));
+        boolean useJava = forceJava || Boolean.parseBoolean(System.getProperty("java.only", "false"));
+        if (useJava && settings.isUsePreOrder()) {
+            if (forceJava) {
+                throw new XMLParseException("Pre-order traversals are not available with Java-only computation in TreeDataLikelihood object '" + id);
+            }
+            logger.warning("  Java-only computation is not available with pre-order traversals - ignoring this option.");
+            useJava = false;
+        }
         if (useJava) {
-            logger.warning("  Java-only computation is not available - ignoring this option.");
+            useBeagle3MultiPartition = false;
+        }
+
+        if (shardCount > 1) {
+            if (settings.isUsePreOrder()) {
+                // the gradient delegates need a single BEAGLE instance holding all the patterns
+                throw new XMLParseException("Pattern shards are not available with pre-order traversals in TreeDataLikelihood object '" + id +
+                        "' - remove the '" + SHARD_COUNT + "' attribute or the -beagle_shards option");
+            }
+            // each shard is its own instance evaluated within a single likelihood
+            useBeagle3MultiPartition = false;
         }
 
         int beagleThreadCount = -1;
@@ -197,7 +219,11 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
         logger.info("\nCreating tree data likelihood" + plural + " for " + patternLists.size() + " partition" + plural);
 
         if (beagleInstanceCount > 1) {
-            logger.info("  dividing each partition between " + beagleInstanceCount + " BEAGLE instances:");
+            logger.info("  dividing each partition between " + beagleInstanceCount + (useJava ? " Java" : " BEAGLE") + " instances:");
+        }
+
+        if (shardCount > 1) {
+            logger.info("  dividing the patterns of each likelihood between " + shardCount + " concurrent shards:");
         }
 
 //        if(siteAssignInd == null) {
@@ -209,16 +235,24 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
 
             for (int j = 0; j < bic; j++) {
                 PatternList subPatterns = new Patterns(partitionPatterns, j, bic, partitionPatterns.areUnique());
-                DataLikelihoodDelegate dataLikelihoodDelegate = new BeagleDataLikelihoodDelegate(
-                        treeModel,
-                        subPatterns,
-                        branchModels.get(i),
-                        siteRateModels.get(i),
-                        useAmbiguities,
-                        preferGPU,
-                        scalingScheme,
-                        delayRescalingUntilUnderflow,
-                        settings);
+                DataLikelihoodDelegate dataLikelihoodDelegate;
+                // can't shard a set of patterns more than the number of patterns...
+                int shards = Math.min(subPatterns.getPatternCount(), shardCount);
+                if (shards > 1) {
+                    List<DataLikelihoodDelegate> shardDelegates = new ArrayList<>();
+                    for (int k = 0; k < shards; k++) {
+                        PatternList shardPatterns = new Patterns(subPatterns, k, shards, subPatterns.areUnique());
+                        shardDelegates.add(createDataLikelihoodDelegate(useJava, treeModel, shardPatterns,
+                                branchModels.get(i), siteRateModels.get(i), useAmbiguities, preferGPU,
+                                scalingScheme, delayRescalingUntilUnderflow, settings, 1));
+                    }
+                    dataLikelihoodDelegate = new ShardedDataLikelihoodDelegate(shardDelegates,
+                            branchModels.get(i), siteRateModels.get(i), shards);
+                } else {
+                    dataLikelihoodDelegate = createDataLikelihoodDelegate(useJava, treeModel, subPatterns,
+                            branchModels.get(i), siteRateModels.get(i), useAmbiguities, preferGPU,
+                            scalingScheme, delayRescalingUntilUnderflow, settings, beagleThreadCount);
+                }
 
                 TreeDataLikelihood treeDataLikelihood = new TreeDataLikelihood(
                         dataLikelihoodDelegate,
@@ -278,6 +312,40 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
         return new CompoundLikelihood(treeDataLikelihoods);
     }
 
+    private DataLikelihoodDelegate createDataLikelihoodDelegate(boolean useJava,
+                                                                Tree treeModel,
+                                                                PatternList patternList,
+                                                                BranchModel branchModel,
+                                                                SiteRateModel siteRateModel,
+                                                                boolean useAmbiguities,
+                                                                boolean preferGPU,
+                                                                PartialsRescalingScheme scalingScheme,
+                                                                boolean delayRescalingUntilUnderflow,
+                                                                PreOrderSettings settings,
+                                                                int javaThreadCount) {
+        if (useJava) {
+            return new JavaDataLikelihoodDelegate(
+                    treeModel,
+                    patternList,
+                    branchModel,
+                    siteRateModel,
+                    useAmbiguities,
+                    scalingScheme,
+                    delayRescalingUntilUnderflow,
+                    javaThreadCount);
+        }
+        return new BeagleDataLikelihoodDelegate(
+                treeModel,
+                patternList,
+                branchModel,
+                siteRateModel,
+                useAmbiguities,
+                preferGPU,
+                scalingScheme,
+                delayRescalingUntilUnderflow,
+                settings);
+    }
+
     public Object parseXMLObject(XMLObject xo) throws XMLParseException {
 
 //        int initialNumCats = xo.getAttribute(INITIAL_NUM_CATS, 3);
@@ -297,6 +365,12 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
             beagleInstanceCount = Math.max(1, Integer.parseInt(bic));
         }
 
+        int shardCount = xo.getAttribute(SHARD_COUNT, 1);
+        String bsc = System.getProperty(BEAGLE_SHARD_COUNT);
+        if (bsc != null && bsc.length() > 0) {
+            shardCount = Math.max(1, Integer.parseInt(bsc));
+        }
+
         List<PatternList> patternLists = new ArrayList<PatternList>();
         List<SiteRateModel> siteRateModels = new ArrayList<SiteRateModel>();
         List<BranchModel> branchModels = new ArrayList<BranchModel>();
@@ -427,6 +501,8 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
 
         final boolean delayScaling = xo.getAttribute(DELAY_SCALING, true);
 
+        final boolean forceJava = xo.getAttribute(FORCE_JAVA, false);
+
         if (tipStatesModel != null) {
             throw new XMLParseException("TreeDataLikelihood is not currently compatible with TipStateModel (i.e., a sequence error model).");
         }
@@ -434,6 +510,7 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
         return createTreeDataLikelihood(
                 xo.getId(),
                 beagleInstanceCount,
+                shardCount,
                 patternLists,
                 branchModels,
                 siteRateModels,
@@ -444,6 +521,7 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
                 preferGPU,
                 scalingScheme,
                 delayScaling,
+                forceJava,
                 settings/*,
                 indicators,
                 polyaPartitionCategories,
@@ -469,6 +547,8 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
             AttributeRule.newBooleanRule(PREFER_GPU, true),
             AttributeRule.newStringRule(SCALING_SCHEME,true),
             AttributeRule.newIntegerRule(INSTANCE_COUNT, true),
+            AttributeRule.newIntegerRule(SHARD_COUNT, true),
+            AttributeRule.newBooleanRule(FORCE_JAVA, true),
 
             // really it should be this set of elements or the PARTITION elements
             new OrRule(
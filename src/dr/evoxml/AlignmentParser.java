@@ -28,14 +28,19 @@
 package dr.evoxml;
 
 import dr.evolution.alignment.Alignment;
+import dr.evolution.alignment.AlignmentParseException;
+import dr.evolution.alignment.PackedAlignment;
 import dr.evolution.alignment.SimpleAlignment;
 import dr.evolution.datatype.DataType;
 import dr.evolution.datatype.Nucleotides;
 import dr.evolution.sequence.Sequence;
 import dr.evolution.sequence.UncertainSequence;
 import dr.evoxml.util.DataTypeUtils;
+import dr.util.FileHelpers;
 import dr.xml.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
@@ -45,6 +50,8 @@ import java.util.logging.Logger;
 public class AlignmentParser extends AbstractXMLObjectParser {
 
     public static final String ALIGNMENT = "alignment";
+    public static final String FILE_NAME = "fileName";
+    public static final String PACKED = "packed";
 
     public String getParserName() {
         return ALIGNMENT;
@@ -52,14 +59,45 @@ public class AlignmentParser extends AbstractXMLObjectParser {
 
     public Object parseXMLObject(XMLObject xo) throws XMLParseException {
 
-        final SimpleAlignment alignment = new SimpleAlignment();
-
         final DataType dataType = DataTypeUtils.getDataType(xo);
 
         if (dataType == null) {
             throw new XMLParseException("dataType attribute expected for alignment element");
         }
 
+        final Alignment alignment;
+        if (xo.hasAttribute(FILE_NAME)) {
+            final File file = FileHelpers.getFile(xo.getStringAttribute(FILE_NAME));
+            try {
+                alignment = PackedAlignment.readFasta(file, dataType);
+            } catch (IOException ioe) {
+                throw new XMLParseException("Unable to read FASTA file " + file.getName() + " in alignment element: " + ioe.getMessage());
+            } catch (AlignmentParseException ape) {
+                throw new XMLParseException("Error parsing FASTA file " + file.getName() + " in alignment element: " + ape.getMessage());
+            }
+        } else {
+            final SimpleAlignment simpleAlignment = parseSequences(xo, dataType);
+            if (xo.getAttribute(PACKED, false)) {
+                alignment = new PackedAlignment(simpleAlignment);
+            } else {
+                alignment = simpleAlignment;
+            }
+        }
+
+        final Logger logger = Logger.getLogger("dr.evoxml");
+        logger.info("\nRead " + (alignment instanceof PackedAlignment ? "packed " : "") + "alignment" +
+                (xo.hasAttribute(XMLParser.ID) ? ": " + xo.getId() : "") +
+                "\n  Sequences = " + alignment.getSequenceCount() +
+                "\n      Sites = " + alignment.getSiteCount() +
+                "\n   Datatype = " + alignment.getDataType().getDescription());
+
+        return alignment;
+    }
+
+    private SimpleAlignment parseSequences(XMLObject xo, DataType dataType) throws XMLParseException {
+
+        final SimpleAlignment alignment = new SimpleAlignment();
+
         alignment.setDataType(dataType);
 
         for (int i = 0; i < xo.getChildCount(); i++) {
@@ -76,12 +114,6 @@ public class AlignmentParser extends AbstractXMLObjectParser {
             }
         }
 
-        final Logger logger = Logger.getLogger("dr.evoxml");
-        logger.info("\nRead alignment" + (xo.hasAttribute(XMLParser.ID) ? ": " + xo.getId() : "") +
-                "\n  Sequences = " + alignment.getSequenceCount() +
-                "\n      Sites = " + alignment.getSiteCount() +
-                "\n   Datatype = " + alignment.getDataType().getDescription());
-
         return alignment;
     }
 
@@ -110,7 +142,10 @@ public class AlignmentParser extends AbstractXMLObjectParser {
                         "    <taxon idref=\"taxon3\"/>\n" +
                         "    ACG?CTAGAATCGAGCTTCGAGGATAGCATGC\n" +
                         "  </sequence>\n" +
-                        "</alignment>\n";
+                        "</alignment>\n" +
+                        "\n" +
+                        "<!-- A large alignment read directly from an aligned FASTA file -->\n" +
+                        "<alignment fileName=\"sequences.fasta\" dataType=\"" + Nucleotides.DESCRIPTION + "\"/>\n";
     }
 
     public XMLSyntaxRule[] getSyntaxRules() {
@@ -125,6 +160,12 @@ public class AlignmentParser extends AbstractXMLObjectParser {
                             DataType.getRegisteredDataTypeNames(), false),
                     new ElementRule(DataType.class)
             ),
-            new ElementRule(Sequence.class, 1, Integer.MAX_VALUE)
+            new XORRule(
+                    new StringAttributeRule(FILE_NAME,
+                            "An aligned FASTA file to read the sequences from (into a packed alignment)"),
+                    new ElementRule(Sequence.class, 1, Integer.MAX_VALUE)
+            ),
+            AttributeRule.newBooleanRule(PACKED, true,
+                    "Whether to keep the sequences packed into a single byte array (default false)")
     };
 }
@@ -51,6 +51,15 @@ public interface GradientWrtParameterProvider extends NumericGradientStepSizePro
 
     double[] getGradientLogDensity();
 
+    /**
+     * Writes the gradient into a caller-supplied buffer of length getDimension(). Providers that
+     * can fill the buffer directly should override this so repeated calls do not allocate.
+     * @param gradient the buffer to fill
+     */
+    default void fillGradientLogDensity(double[] gradient) {
+        System.arraycopy(getGradientLogDensity(), 0, gradient, 0, getDimension());
+    }
+
     class Negative implements GradientWrtParameterProvider {
 
         private final GradientWrtParameterProvider provider;
@@ -84,6 +93,15 @@ public interface GradientWrtParameterProvider extends NumericGradientStepSizePro
 
             return gradient;
         }
+
+        @Override
+        public void fillGradientLogDensity(double[] gradient) {
+
+            provider.fillGradientLogDensity(gradient);
+            for (int i = 0; i < getDimension(); ++i) {
+                gradient[i] = -gradient[i];
+            }
+        }
     }
 
     class ParameterWrapper implements GradientWrtParameterProvider, HessianWrtParameterProvider, Reportable {
@@ -266,6 +266,34 @@ public class JointGradient implements GradientWrtParameterProvider, HessianWrtPa
         return getDerivativeLogDensity(DerivativeType.GRADIENT);
     }
 
+    @Override
+    public void fillGradientLogDensity(double[] gradient) {
+
+        if (parallelExecutor != null) {
+            System.arraycopy(getDerivativeLogDensity(DerivativeType.GRADIENT), 0, gradient, 0, dimension);
+            return;
+        }
+
+        derivativeList.get(0).fillGradientLogDensity(gradient);
+
+        int size = derivativeList.size();
+        if (size > 1) {
+            if (gradientBuffer == null) {
+                gradientBuffer = new double[dimension];
+            }
+
+            for (int i = 1; i < size; i++) {
+                derivativeList.get(i).fillGradientLogDensity(gradientBuffer);
+
+                for (int j = 0; j < dimension; j++) {
+                    gradient[j] += gradientBuffer[j];
+                }
+            }
+        }
+    }
+
+    private double[] gradientBuffer;
+
     private static final boolean DEBUG = false;
     private static final boolean DEBUG_KILL = false;
 
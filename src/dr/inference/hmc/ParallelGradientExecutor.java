@@ -27,6 +27,9 @@
 
 package dr.inference.hmc;
 
+import dr.math.MathUtils;
+import dr.util.ComputeService;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -48,12 +51,7 @@ public class ParallelGradientExecutor {
 
         assert derivativeList.size() > 1;
 
-        if (threads <= 0) {
-            pool = Executors.newCachedThreadPool();
-        } else {
-            int threadCount = Math.min(threads, derivativeList.size());
-            pool = Executors.newFixedThreadPool(threadCount);
-        }
+        pool = ComputeService.getPool("ParallelGradientExecutor");
 
         derivativeCaller = new ArrayList<>(derivativeList.size());
         for (int i = 0; i < derivativeList.size(); ++i) {
@@ -85,6 +83,9 @@ public class ParallelGradientExecutor {
         public DerivativeCaller(GradientWrtParameterProvider gradient, int index) {
             this.gradient = gradient;
             this.index = index;
+            // any random draws made while computing this gradient come from its own stream
+            // so they don't depend on which pool thread runs it
+            this.randomStream = MathUtils.nextRandomStream();
         }
 
         public double[] call() throws Exception {
@@ -93,7 +94,12 @@ public class ParallelGradientExecutor {
                         " with type " + type + " in executor");
             }
 
-            return type.getDerivativeLogDensity(gradient);
+            MathUtils.RandomStream previousStream = MathUtils.setThreadRandomStream(randomStream);
+            try {
+                return type.getDerivativeLogDensity(gradient);
+            } finally {
+                MathUtils.setThreadRandomStream(previousStream);
+            }
         }
 
         public void setDerivativeType(JointGradient.DerivativeType type) {
@@ -102,6 +108,7 @@ public class ParallelGradientExecutor {
 
         private final GradientWrtParameterProvider gradient;
         private final int index;
+        private final MathUtils.RandomStream randomStream;
 
         private JointGradient.DerivativeType type;
     }
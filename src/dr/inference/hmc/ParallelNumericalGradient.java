@@ -5,6 +5,7 @@ import dr.inference.model.Parameter;
 import dr.math.NumericalDerivative;
 import dr.math.UnivariateFunction;
 import dr.math.matrixAlgebra.WrappedVector;
+import dr.util.ComputeService;
 import dr.xml.Reportable;
 
 import java.util.ArrayList;
@@ -22,7 +23,7 @@ public class ParallelNumericalGradient implements GradientWrtParameterProvider,
         this.parameters = parameters;
         this.threadCount = likelihoods.size();
 
-        pool = Executors.newFixedThreadPool(threadCount);
+        pool = ComputeService.getPool("ParallelNumericalGradient");
 
 //        ensureState();
     }
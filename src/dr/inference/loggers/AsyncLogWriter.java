@@ -0,0 +1,203 @@
+/*
+ * AsyncLogWriter.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.loggers;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hands log entries from the MCMC thread to a background thread that formats and writes them.
+ * The entries are held in a fixed ring of preallocated slots: the MCMC thread fills a free slot
+ * and publishes it, the background thread writes it and returns it to the ring. If the writer
+ * falls behind, the MCMC thread waits for a slot to be released so the amount of buffered output
+ * is bounded.
+ *
+ * All open writers can be flushed with flushAll() so that the logs are complete up to the current
+ * state when a checkpoint is written.
+ *
+ * @author Andrew Rambaut
+ */
+public class AsyncLogWriter<T> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private static final Set<AsyncLogWriter<?>> openWriters =
+            Collections.synchronizedSet(new LinkedHashSet<AsyncLogWriter<?>>());
+
+    /**
+     * Wait until every open writer has written all the entries published so far.
+     */
+    public static void flushAll() {
+        AsyncLogWriter<?>[] writers;
+        synchronized (openWriters) {
+            writers = openWriters.toArray(new AsyncLogWriter<?>[0]);
+        }
+        for (AsyncLogWriter<?> writer : writers) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * @param name   a name for the background thread
+     * @param slots  the preallocated entries, one for each position in the ring
+     * @param writer called on the background thread to write each published entry
+     */
+    public AsyncLogWriter(String name, T[] slots, Consumer<T> writer) {
+        if (slots.length == 0) {
+            throw new IllegalArgumentException("At least one slot is required");
+        }
+        this.writer = writer;
+        this.free = new ArrayBlockingQueue<T>(slots.length);
+        this.pending = new ArrayBlockingQueue<T>(slots.length);
+        for (T slot : slots) {
+            free.add(slot);
+        }
+
+        thread = new Thread(new Runnable() {
+            public void run() {
+                writeEntries();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        openWriters.add(this);
+    }
+
+    /**
+     * @return a free slot to fill, waiting for the background thread to release one if necessary
+     */
+    public T acquire() {
+        checkError();
+        if (closed) {
+            throw new IllegalStateException("The log writer has been closed");
+        }
+        try {
+            return free.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the log writer");
+        }
+    }
+
+    /**
+     * Pass a filled slot to the background thread to be written.
+     */
+    public void publish(T slot) {
+        synchronized (this) {
+            published++;
+        }
+        pending.add(slot);
+    }
+
+    /**
+     * Wait until all the entries published so far have been written.
+     */
+    public void flush() {
+        synchronized (this) {
+            while (written < published && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        checkError();
+    }
+
+    /**
+     * Write all the outstanding entries and stop the background thread.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            openWriters.remove(this);
+            thread.interrupt();
+        }
+    }
+
+    private void writeEntries() {
+        while (true) {
+            T slot;
+            try {
+                slot = pending.take();
+            } catch (InterruptedException ie) {
+                return;
+            }
+
+            try {
+                writer.accept(slot);
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (error == null) {
+                        error = t;
+                    }
+                }
+            }
+
+            free.add(slot);
+            synchronized (this) {
+                written++;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void checkError() {
+        if (error != null) {
+            Throwable t = error;
+            error = null;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException("Error writing log: " + t.getMessage(), t);
+        }
+    }
+
+    private final Consumer<T> writer;
+    private final BlockingQueue<T> free;
+    private final BlockingQueue<T> pending;
+    private final Thread thread;
+
+    private long published = 0;
+    private long written = 0;
+    private Throwable error = null;
+    private volatile boolean closed = false;
+}
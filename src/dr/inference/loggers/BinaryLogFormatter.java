@@ -0,0 +1,500 @@
+/*
+ * BinaryLogFormatter.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.loggers;
+
+import dr.inference.trace.BinaryLogFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class that writes a log in a binary, column oriented format. Rows are collected into blocks
+ * and each block is written as one column after another, each with the narrowest type that holds
+ * all its values in that block (long, int, double or, for anything that is not a number, string).
+ * Numerical columns of an MCLogger are passed as values (see ColumnarLogFormatter) and written
+ * as doubles without being formatted. Blocks are simply appended so a log can be extended when
+ * a run is resumed, and a reader can map the file and decode only the columns it needs (see
+ * dr.inference.trace.BinaryLogFile).
+ *
+ * The layout (all numbers big-endian) is:
+ * <pre>
+ * file    := MAGIC VERSION record*
+ * record  := HEADING string | LABELS count string* | BLOCK rows columns byteLength column*
+ * column  := LONG long* | INT int* | DOUBLE double* | STRING byteLength string*
+ * string  := length utf8-byte*
+ * </pre>
+ *
+ * @author Andrew Rambaut
+ */
+public class BinaryLogFormatter implements ColumnarLogFormatter {
+
+    public static final int MAGIC = 0x424C4F47; // "BLOG"
+    public static final int VERSION = 1;
+
+    public static final byte HEADING = 1;
+    public static final byte LABELS = 2;
+    public static final byte BLOCK = 3;
+
+    public static final byte LONG_COLUMN = 0;
+    public static final byte INT_COLUMN = 1;
+    public static final byte DOUBLE_COLUMN = 2;
+    public static final byte STRING_COLUMN = 3;
+
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private DataOutputStream out;
+    private final int blockSize;
+
+    // the existing log being added to (null if this is a new log)
+    private final File appendFile;
+    private String[] labels = null;
+
+    private final List<Row> rows = new ArrayList<Row>();
+
+    public BinaryLogFormatter(OutputStream stream) {
+        this(stream, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize the number of rows in each block. Up to this many rows will be lost if
+     *                  the program is killed without finishing the log.
+     */
+    public BinaryLogFormatter(OutputStream stream, int blockSize) {
+        this.blockSize = checkBlockSize(blockSize);
+        this.appendFile = null;
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a formatter that adds to an existing binary log, as when a run is resumed from a
+     * checkpoint. The rows of the existing log from the first state that is logged onwards, and
+     * any block that was only partly written, are replaced. If the file is not a binary log then
+     * a new log is written.
+     *
+     * @param blockSize the number of rows in each block
+     */
+    public BinaryLogFormatter(File file, int blockSize) throws IOException {
+        this.blockSize = checkBlockSize(blockSize);
+        if (BinaryLogFile.isBinaryLog(file)) {
+            // the file is opened when the first row is logged and its state is known
+            this.appendFile = file;
+            this.out = null;
+        } else {
+            this.appendFile = null;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+    }
+
+    private static int checkBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1");
+        }
+        return blockSize;
+    }
+
+    public void startLogging(String title) {
+        if (appendFile != null) {
+            return;
+        }
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write binary log: " + ioe.getMessage());
+        }
+    }
+
+    public void logHeading(String heading) {
+        if (heading != null) {
+            for (String line : heading.split("[\r\n]")) {
+                logLine(line);
+            }
+        }
+    }
+
+    public void logLine(String line) {
+        if (appendFile != null) {
+            // the existing log keeps its original heading
+            return;
+        }
+        try {
+            out.writeByte(HEADING);
+            writeString(out, line);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write binary log: " + ioe.getMessage());
+        }
+    }
+
+    public void logLabels(String[] labels) {
+        this.labels = labels.clone();
+        if (appendFile != null) {
+            // checked against the existing labels when the file is opened
+            return;
+        }
+        try {
+            writeLabels();
+            out.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write binary log: " + ioe.getMessage());
+        }
+    }
+
+    public void logValues(String[] values) {
+        long state;
+        try {
+            state = Long.parseLong(values[0].trim());
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("The first column of a binary log must be the state");
+        }
+        String[] strings = Arrays.copyOfRange(values, 1, values.length);
+        addRow(new Row(state, new double[strings.length], strings));
+    }
+
+    public void logValues(long state, double[] numbers, String[] strings) {
+        addRow(new Row(state, numbers.clone(), strings.clone()));
+    }
+
+    public void stopLogging() {
+        if (out == null) {
+            // nothing was added to the existing log
+            return;
+        }
+        writeBlock();
+        try {
+            out.close();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write binary log: " + ioe.getMessage());
+        }
+    }
+
+    private void addRow(Row row) {
+        if (out == null) {
+            try {
+                openForAppend(row.state);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Unable to append to binary log: " + ioe.getMessage());
+            }
+        }
+        if (rows.size() > 0 && row.strings.length != rows.get(0).strings.length) {
+            // the number of columns has changed so start a new block
+            writeBlock();
+        }
+        rows.add(row);
+        if (rows.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Cuts the existing log back to the rows before the given state and opens it for appending.
+     * The rows of a block that are kept are carried over into the first new block.
+     */
+    private void openForAppend(long firstState) throws IOException {
+        List<Row> keptRows = new ArrayList<Row>();
+        String[] existingLabels = null;
+
+        RandomAccessFile file = new RandomAccessFile(appendFile, "rw");
+        try {
+            final long size = file.length();
+            // the magic number was checked when the formatter was created
+            file.seek(8);
+            long end = 8;
+            boolean cut = false;
+            while (end < size && !cut) {
+                try {
+                    byte record = file.readByte();
+                    if (record == HEADING) {
+                        readString(file);
+                    } else if (record == LABELS) {
+                        String[] strings = new String[file.readInt()];
+                        for (int i = 0; i < strings.length; i++) {
+                            strings[i] = readString(file);
+                        }
+                        existingLabels = strings;
+                    } else if (record == BLOCK) {
+                        int rowCount = file.readInt();
+                        int columnCount = file.readInt();
+                        long length = file.readLong();
+                        if (file.getFilePointer() + length > size) {
+                            // a partly written block
+                            break;
+                        }
+                        byte[] bytes = new byte[(int) length];
+                        file.readFully(bytes);
+                        for (Row row : readBlock(bytes, rowCount, columnCount)) {
+                            if (row.state >= firstState) {
+                                cut = true;
+                                break;
+                            }
+                            keptRows.add(row);
+                        }
+                        if (cut) {
+                            // this block is rewritten with just the kept rows
+                            break;
+                        }
+                        keptRows.clear();
+                    } else {
+                        break;
+                    }
+                } catch (EOFException eofe) {
+                    break;
+                }
+                end = file.getFilePointer();
+            }
+            if (!cut) {
+                keptRows.clear();
+            }
+
+            if (existingLabels != null && labels != null && !Arrays.equals(existingLabels, labels)) {
+                throw new IOException("the columns being logged differ from those in " + appendFile.getName());
+            }
+
+            file.setLength(end);
+        } finally {
+            file.close();
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(appendFile, true), BUFFER_SIZE));
+        if (existingLabels == null && labels != null) {
+            writeLabels();
+        }
+        rows.addAll(keptRows);
+    }
+
+    private static List<Row> readBlock(byte[] bytes, int rowCount, int columnCount) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        List<Row> rows = new ArrayList<Row>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Row(0, new double[columnCount - 1], new String[columnCount - 1]));
+        }
+        for (int j = 0; j < columnCount; j++) {
+            byte type = in.readByte();
+            if (type == STRING_COLUMN) {
+                in.readInt();
+            }
+            for (Row row : rows) {
+                double number = 0.0;
+                String string = null;
+                switch (type) {
+                    case LONG_COLUMN:
+                        long longValue = in.readLong();
+                        number = longValue;
+                        string = Long.toString(longValue);
+                        break;
+                    case INT_COLUMN:
+                        int intValue = in.readInt();
+                        number = intValue;
+                        string = Integer.toString(intValue);
+                        break;
+                    case DOUBLE_COLUMN:
+                        number = in.readDouble();
+                        break;
+                    case STRING_COLUMN:
+                        string = readString(in);
+                        break;
+                    default:
+                        throw new IOException("unknown column type (" + type + ")");
+                }
+                if (j == 0) {
+                    row.state = (long) number;
+                } else {
+                    row.numbers[j - 1] = number;
+                    row.strings[j - 1] = string;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void writeLabels() throws IOException {
+        out.writeByte(LABELS);
+        out.writeInt(labels.length);
+        for (String label : labels) {
+            writeString(out, label);
+        }
+    }
+
+    private void writeBlock() {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        int rowCount = rows.size();
+        int columnCount = rows.get(0).strings.length + 1;
+
+        try {
+            // write the columns to a buffer first so that the block can be skipped by readers
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream block = new DataOutputStream(bytes);
+            for (int j = 0; j < columnCount; j++) {
+                writeColumn(block, j);
+            }
+            block.close();
+
+            out.writeByte(BLOCK);
+            out.writeInt(rowCount);
+            out.writeInt(columnCount);
+            out.writeLong(bytes.size());
+            bytes.writeTo(out);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write binary log: " + ioe.getMessage());
+        }
+
+        rows.clear();
+    }
+
+    private void writeColumn(DataOutputStream block, int column) throws IOException {
+        if (column == 0) {
+            // the state column is always stored as longs
+            block.writeByte(LONG_COLUMN);
+            for (Row row : rows) {
+                block.writeLong(row.state);
+            }
+            return;
+        }
+
+        final int k = column - 1;
+
+        boolean numbers = true;
+        for (Row row : rows) {
+            if (row.strings[k] != null) {
+                numbers = false;
+                break;
+            }
+        }
+        if (numbers) {
+            block.writeByte(DOUBLE_COLUMN);
+            for (Row row : rows) {
+                block.writeDouble(row.numbers[k]);
+            }
+            return;
+        }
+
+        // the column was given as text so find the narrowest type that holds it
+        int rowCount = rows.size();
+
+        byte type = INT_COLUMN;
+        long[] longs = new long[rowCount];
+        double[] doubles = new double[rowCount];
+        for (int i = 0; i < rowCount && type != STRING_COLUMN; i++) {
+            String value = getText(rows.get(i), k).trim();
+            if (type == INT_COLUMN) {
+                try {
+                    longs[i] = Long.parseLong(value);
+                    doubles[i] = longs[i];
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    type = DOUBLE_COLUMN;
+                }
+            }
+            try {
+                doubles[i] = Double.parseDouble(value);
+            } catch (NumberFormatException nfe) {
+                type = STRING_COLUMN;
+            }
+        }
+
+        if (type == INT_COLUMN) {
+            for (long value : longs) {
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    type = LONG_COLUMN;
+                    break;
+                }
+            }
+        }
+
+        block.writeByte(type);
+        switch (type) {
+            case LONG_COLUMN:
+                for (long value : longs) {
+                    block.writeLong(value);
+                }
+                break;
+            case INT_COLUMN:
+                for (long value : longs) {
+                    block.writeInt((int) value);
+                }
+                break;
+            case DOUBLE_COLUMN:
+                for (double value : doubles) {
+                    block.writeDouble(value);
+                }
+                break;
+            case STRING_COLUMN:
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream strings = new DataOutputStream(bytes);
+                for (Row row : rows) {
+                    writeString(strings, getText(row, k));
+                }
+                strings.close();
+                block.writeInt(bytes.size());
+                bytes.writeTo(block);
+                break;
+        }
+    }
+
+    private static String getText(Row row, int k) {
+        return (row.strings[k] != null ? row.strings[k] : Double.toString(row.numbers[k]));
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A logged row: the state and, for each other column, either its text or (where the text is
+     * null) its value.
+     */
+    private static final class Row {
+        Row(long state, double[] numbers, String[] strings) {
+            this.state = state;
+            this.numbers = numbers;
+            this.strings = strings;
+        }
+
+        long state;
+        final double[] numbers;
+        final String[] strings;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * ColumnarLogFormatter.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.loggers;
+
+/**
+ * A LogFormatter that stores numbers as numbers. MCLogger passes it the values of its numerical
+ * columns directly rather than formatting them as text for it to parse back.
+ *
+ * @author Andrew Rambaut
+ */
+public interface ColumnarLogFormatter extends LogFormatter {
+
+    /**
+     * Log a row of values. The arrays are only valid for the duration of the call.
+     *
+     * @param state   the state
+     * @param numbers the value of each column (after the state) that is a number
+     * @param strings the text of each column that is not a number, or null where the column is a number
+     */
+    void logValues(long state, double[] numbers, String[] strings);
+}
@@ -107,7 +107,14 @@ public interface LogColumn extends Serializable {
         }
 
         public final String getFormatted() {
-            StringBuffer buffer = new StringBuffer(getFormattedValue());
+            return padToMinimumWidth(getFormattedValue());
+        }
+
+        /**
+         * @return the value padded with spaces to the minimum width of this column
+         */
+        protected final String padToMinimumWidth(String value) {
+            StringBuffer buffer = new StringBuffer(value);
 
             if (minimumWidth > 0) {
                 while (buffer.length() < minimumWidth) {
@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -44,6 +45,11 @@ import java.util.stream.Collectors;
  */
 public class MCLogger implements Logger {
 
+    /**
+     * System property to write file logs asynchronously by default
+     */
+    public static final String ASYNCHRONOUS_LOGGING = "log.asynchronous";
+
     private static final int PERFORMANCE_SAMPLE_SIZE = 100;
     /**
      * Output performance stats in this log
@@ -119,6 +125,38 @@ public class MCLogger implements Logger {
         this.logEvery = logEvery;
     }
 
+    /**
+     * @param loggers the loggers of a chain
+     * @return the MCLogger with the most columns that logs periodically or null if there isn't one
+     */
+    public static MCLogger getLargestLogger(Logger[] loggers) {
+        MCLogger largestLogger = null;
+        if (loggers != null) {
+            for (Logger logger : loggers) {
+                if (logger instanceof MCLogger && ((MCLogger) logger).getLogEvery() > 0 &&
+                        (largestLogger == null || ((MCLogger) logger).getColumnCount() > largestLogger.getColumnCount())) {
+                    largestLogger = (MCLogger) logger;
+                }
+            }
+        }
+        return largestLogger;
+    }
+
+    /**
+     * Set whether the values should be formatted and written on a background thread. The
+     * values of numerical columns are captured at each logged state and formatted later; any
+     * other columns are formatted when they are captured. Must be set before startLogging().
+     *
+     * @param asynchronous true to write on a background thread
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
     public final void addFormatter(LogFormatter formatter) {
 
         formatters.add(formatter);
@@ -222,6 +260,106 @@ public class MCLogger implements Logger {
 
             logLabels(labels);
         }
+
+        if (asynchronous && logEvery > 0) {
+            startAsynchronous();
+        }
+    }
+
+    /**
+     * Find the columns whose values can be captured as numbers and formatted later (or written
+     * as numbers by a ColumnarLogFormatter).
+     */
+    private void findValueColumns() {
+        final int columnCount = getColumnCount();
+
+        valueColumns = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            LogColumn column = getColumn(i);
+            valueColumns[i] = column instanceof NumberColumn && ((NumberColumn) column).isFormattedFromValue();
+        }
+        currentRow = new LogRow(columnCount);
+    }
+
+    private void startAsynchronous() {
+        final int columnCount = getColumnCount();
+
+        findValueColumns();
+
+        LogRow[] rows = new LogRow[AsyncLogWriter.DEFAULT_BUFFER_SIZE];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new LogRow(columnCount);
+        }
+
+        rowWriter = new AsyncLogWriter<LogRow>("log-writer", rows, new Consumer<LogRow>() {
+            public void accept(LogRow row) {
+                writeRow(row);
+            }
+        });
+    }
+
+    /**
+     * Wait until the background writer (if logging asynchronously) has written all the rows
+     * logged so far.
+     */
+    public void flush() {
+        if (rowWriter != null) {
+            rowWriter.flush();
+        }
+    }
+
+    /**
+     * Write any buffered values and stop the background writer. Subclasses that write to the
+     * formatters directly should call this before doing so.
+     */
+    protected void stopAsynchronous() {
+        if (rowWriter != null) {
+            rowWriter.close();
+            rowWriter = null;
+        }
+    }
+
+    /**
+     * Write a captured row (on the background thread if logging asynchronously). The values of
+     * numerical columns are given directly to columnar formatters and formatted for the others.
+     */
+    private void writeRow(LogRow row) {
+        final int columnCount = row.numbers.length;
+
+        double[] numbers = row.numbers;
+        String[] strings = row.strings;
+        if (row.performance != null) {
+            numbers = Arrays.copyOf(numbers, columnCount + 1);
+            strings = Arrays.copyOf(strings, columnCount + 1);
+            strings[columnCount] = row.performance;
+        }
+
+        String[] values = null;
+        for (LogFormatter formatter : formatters) {
+            if (formatter instanceof ColumnarLogFormatter) {
+                ((ColumnarLogFormatter) formatter).logValues(row.state, numbers, strings);
+            } else {
+                if (values == null) {
+                    values = formatRow(row.state, numbers, strings);
+                }
+                formatter.logValues(values);
+            }
+        }
+    }
+
+    private String[] formatRow(long state, double[] numbers, String[] strings) {
+        String[] values = new String[strings.length + 1];
+
+        values[0] = Long.toString(state);
+
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] == null) {
+                values[i + 1] = ((NumberColumn) getColumn(i)).getFormatted(numbers[i]);
+            } else {
+                values[i + 1] = strings[i];
+            }
+        }
+        return values;
     }
 
     public final void log(int state) {
@@ -241,14 +379,27 @@ public class MCLogger implements Logger {
 
             final int columnCount = getColumnCount();
 
-            String[] values = new String[columnCount + (performanceReport ? 2 : 1)];
-
-            values[0] = Long.toString(state);
+            final LogRow row;
+            if (rowWriter != null) {
+                // capture the values in the next slot of the ring to be written by the writer
+                row = rowWriter.acquire();
+            } else {
+                if (valueColumns == null || valueColumns.length != columnCount) {
+                    findValueColumns();
+                }
+                row = currentRow;
+            }
 
+            row.state = state;
             for (int i = 0; i < columnCount; i++) {
-                values[i + 1] = getColumnFormatted(i);
+                if (valueColumns[i]) {
+                    row.numbers[i] = ((NumberColumn) getColumn(i)).getDoubleValue();
+                } else {
+                    row.strings[i] = getColumnFormatted(i);
+                }
             }
 
+            String performance = null;
             if (performanceReport) {
                 long time = System.currentTimeMillis();
                 rollingTime.add(time);
@@ -269,14 +420,19 @@ public class MCLogger implements Logger {
 
                     String timePerMillion = getTimePerMillion(hoursPerMillionStates);
                     String units = getUnits(hoursPerMillionStates);
-                    values[columnCount + 1] = timePerMillion + units;
+                    performance = timePerMillion + units;
 
                 } else {
-                    values[columnCount + 1] = "-";
+                    performance = "-";
                 }
             }
 
-            logValues(values);
+            row.performance = performance;
+            if (rowWriter != null) {
+                rowWriter.publish(row);
+            } else {
+                writeRow(row);
+            }
         }
 
         if (performanceReport && !performanceReportStarted && state >= performanceReportDelay) {
@@ -287,11 +443,33 @@ public class MCLogger implements Logger {
 
     public void stopLogging() {
 
+        stopAsynchronous();
+
         for (LogFormatter formatter : formatters) {
             formatter.stopLogging();
         }
     }
 
+    /**
+     * The values captured at one state, held in the ring buffer of the background writer.
+     */
+    private static class LogRow {
+        LogRow(int columnCount) {
+            numbers = new double[columnCount];
+            strings = new String[columnCount];
+        }
+
+        long state;
+        final double[] numbers;
+        final String[] strings;
+        String performance;
+    }
+
+    private boolean asynchronous = false;
+    private boolean[] valueColumns = null;
+    private LogRow currentRow = null;
+    private AsyncLogWriter<LogRow> rowWriter = null;
+
     private String title = null;
 
     private Set<String> keywords = new HashSet<String>();
@@ -304,11 +482,17 @@ public class MCLogger implements Logger {
         return formatters;
     }
 
+    /**
+     * Replace the destinations of the log. Any rows still buffered for the background writer are
+     * written to the old formatters first.
+     */
     public void setFormatters(List<LogFormatter> formatters) {
+        flush();
         this.formatters = formatters;
     }
 
-    protected List<LogFormatter> formatters = new ArrayList<LogFormatter>();
+    // volatile as the background writer reads the formatters
+    protected volatile List<LogFormatter> formatters = new ArrayList<LogFormatter>();
 
     private boolean performanceReportStarted = false;
     private long startTime;
@@ -57,4 +57,8 @@ public class MatrixEntryColumn extends NumberColumn {
 	public double getDoubleValue() {
 		return mat[indexI][indexJ] / normalization;
 	}
+
+	public boolean isFormattedFromValue() {
+		return true;
+	}
 }
@@ -102,7 +102,7 @@ public abstract class NumberColumn extends LogColumn.Abstract {
 	public int getDecimalPlaces() { return dp; }
 	
 
-    public String formatValue(double value) {
+    public synchronized String formatValue(double value) {
        if (dp < 0 && sf < 0) {
 			// return it at full precision
 			return Double.toString(value);
@@ -143,6 +143,26 @@ public abstract class NumberColumn extends LogColumn.Abstract {
 		return formatValue(getDoubleValue());
 	}
 	
+	/**
+	 * Returns a string containing the given value with the formatting of this
+	 * column. This is used to format a value captured earlier (possibly on
+	 * another thread).
+	 *
+	 * @return the formatted string.
+	 */
+	public String getFormatted(double value) {
+		return padToMinimumWidth(formatValue(value));
+	}
+
+	/**
+	 * @return true if getFormatted() is simply the formatted current value, so
+	 * the value can be captured and formatted later. Columns that don't override
+	 * getFormattedValue() can override this to return true.
+	 */
+	public boolean isFormattedFromValue() {
+		return false;
+	}
+
 	private int getNumFractionDigits(double value) {
 		value = Math.abs(value);
 		for (int i = 0; i < cutoffTable.length; i++) {
@@ -0,0 +1,192 @@
+/*
+ * ESSMonitor.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.markovchain;
+
+import dr.inference.loggers.LogColumn;
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.NumberColumn;
+import dr.inference.model.Model;
+import dr.inference.trace.BatchMeansESS;
+import dr.util.FileHelpers;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a running batch means estimate of the ESS of each numerical column of a log as it is
+ * sampled. When switched on (with the 'mcmc.ess' system property giving the number of states
+ * between reports, or the 'mcmc.ess.file' property, or -ess_every or -ess_file on the BEAST command
+ * line) the smallest ESS is reported to the screen or, if a file is given, the ESS of every column
+ * is written to that file as a tab delimited row.
+ *
+ * @author Andrew Rambaut
+ */
+public final class ESSMonitor implements MarkovChainListener {
+
+    public static final String ESS = "mcmc.ess";
+    public static final String ESS_FILE = "mcmc.ess.file";
+
+    public static final long DEFAULT_ESS_EVERY = 100000;
+
+    // the ESS below which a column is counted as not yet sampled enough
+    private static final double TARGET_ESS = 200.0;
+
+    /**
+     * @return true if the live ESS has been requested for this run
+     */
+    public static boolean isRequested() {
+        return System.getProperty(ESS) != null || System.getProperty(ESS_FILE) != null;
+    }
+
+    /**
+     * Monitors the columns of the given logger, sampled as often as it logs.
+     */
+    public ESSMonitor(MCLogger logger) {
+        this(logger, Long.parseLong(System.getProperty(ESS, Long.toString(DEFAULT_ESS_EVERY))), System.getProperty(ESS_FILE));
+    }
+
+    public ESSMonitor(MCLogger logger, long reportEvery, String fileName) {
+        this.logEvery = logger.getLogEvery();
+        this.reportEvery = reportEvery;
+        this.fileName = fileName;
+
+        for (int i = 0; i < logger.getColumnCount(); i++) {
+            LogColumn column = logger.getColumn(i);
+            if (column instanceof NumberColumn) {
+                columns.add((NumberColumn) column);
+            }
+        }
+        estimators = new BatchMeansESS[columns.size()];
+        for (int i = 0; i < estimators.length; i++) {
+            estimators[i] = new BatchMeansESS();
+        }
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public String getColumnLabel(int index) {
+        return columns.get(index).getLabel();
+    }
+
+    /**
+     * @return the current estimate of the ESS of a column (NaN until there are enough samples)
+     */
+    public double getESS(int index) {
+        return estimators[index].getESS();
+    }
+
+    @Override
+    public void bestState(long state, MarkovChain markovChain, Model bestModel) {
+        // do nothing
+    }
+
+    @Override
+    public void currentState(long state, MarkovChain markovChain, Model currentModel) {
+        if (logEvery > 0 && state % logEvery == 0) {
+            for (int i = 0; i < estimators.length; i++) {
+                estimators[i].add(columns.get(i).getDoubleValue());
+            }
+        }
+        if (reportEvery > 0 && state > 0 && state % reportEvery == 0) {
+            report(state);
+        }
+    }
+
+    @Override
+    public void finished(long chainLength, MarkovChain markovChain) {
+        if (reportEvery > 0) {
+            report(chainLength);
+        }
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        // the file is complete so don't reopen (and truncate) it
+        fileName = null;
+        reportEvery = 0;
+    }
+
+    private void report(long state) {
+        if (fileName != null) {
+            if (out == null) {
+                try {
+                    out = new PrintStream(new FileOutputStream(FileHelpers.getFile(fileName)));
+                } catch (FileNotFoundException e) {
+                    System.err.println("Unable to open ESS file, " + fileName + ": " + e.getMessage());
+                    fileName = null;
+                    return;
+                }
+                StringBuilder sb = new StringBuilder("state");
+                for (NumberColumn column : columns) {
+                    sb.append("\t").append(column.getLabel());
+                }
+                out.println(sb);
+            }
+            StringBuilder sb = new StringBuilder(Long.toString(state));
+            for (int i = 0; i < estimators.length; i++) {
+                sb.append("\t").append(estimators[i].getESS());
+            }
+            out.println(sb);
+            out.flush();
+        } else {
+            int minColumn = -1;
+            int belowTarget = 0;
+            for (int i = 0; i < estimators.length; i++) {
+                double ess = estimators[i].getESS();
+                if (!Double.isNaN(ess)) {
+                    if (minColumn < 0 || ess < estimators[minColumn].getESS()) {
+                        minColumn = i;
+                    }
+                    if (ess < TARGET_ESS) {
+                        belowTarget++;
+                    }
+                }
+            }
+            if (minColumn >= 0) {
+                System.out.println("ESS at state " + state + ": minimum " +
+                        Math.round(estimators[minColumn].getESS()) + " (" + getColumnLabel(minColumn) + "), " +
+                        belowTarget + " of " + estimators.length + " columns below " + (int) TARGET_ESS);
+            }
+        }
+    }
+
+    private final long logEvery;
+    private long reportEvery;
+    private String fileName;
+
+    private final List<NumberColumn> columns = new ArrayList<NumberColumn>();
+    private final BatchMeansESS[] estimators;
+
+    private PrintStream out = null;
+}
@@ -28,6 +28,7 @@
 package dr.inference.markovchain;
 
 import dr.evomodel.continuous.GibbsIndependentCoalescentOperator;
+import dr.inference.mcmc.MCMCCriterion;
 import dr.inference.model.*;
 import dr.inference.operators.*;
 
@@ -50,10 +51,15 @@ public final class MarkovChain implements Serializable {
     private static final long serialVersionUID = 181L;
 
     private final static boolean DEBUG = false;
-    private final static boolean PROFILE = false;
 
     public static final double EVALUATION_TEST_THRESHOLD = 1e-1;
 
+    /**
+     * The system property that turns early rejection on (or off) for every chain, whatever the
+     * XML says.
+     */
+    public static final String EARLY_REJECTION = "mcmc.early_rejection";
+
     private final OperatorSchedule schedule;
     private final Acceptor acceptor;
     private final Likelihood likelihood;
@@ -74,6 +80,11 @@ public final class MarkovChain implements Serializable {
 
     private double evaluationTestThreshold = EVALUATION_TEST_THRESHOLD;
 
+    private final MarkovChainProfiler profiler;
+
+    private boolean useEarlyRejection = false;
+    private Likelihood surrogateLikelihood = null;
+    private Likelihood approximatedLikelihood = null;
 
     public MarkovChain(Likelihood likelihood,
                        OperatorSchedule schedule, Acceptor acceptor,
@@ -92,6 +103,12 @@ public final class MarkovChain implements Serializable {
         this.minOperatorCountForFullEvaluation = minOperatorCountForFullEvaluation;
         this.evaluationTestThreshold = evaluationTestThreshold;
 
+        this.profiler = MarkovChainProfiler.isRequested() ? new MarkovChainProfiler(schedule, likelihood) : null;
+
+        if (profiler != null) {
+            addMarkovChainListener(profiler);
+        }
+
         Likelihood.CONNECTED_LIKELIHOOD_SET.add(likelihood);
         Likelihood.CONNECTED_LIKELIHOOD_SET.addAll(likelihood.getLikelihoodSet());
 
@@ -181,6 +198,9 @@ public final class MarkovChain implements Serializable {
 
         Map<String, Double> diagnosticDensities = null;
 
+        // the score a proposal must exceed to be accepted when it is drawn before evaluation
+        double[] acceptanceValue = {Double.NaN};
+
         while (!pleaseStop && (currentState < (currentLength + length))) {
             // periodically log states
             fireCurrentModel(currentState, currentModel);
@@ -200,14 +220,27 @@ public final class MarkovChain implements Serializable {
                 fillDensities(likelihood, diagnosticDensities);
             }
 
-            // assert Profiler.startProfile("Store");
+            // the full evaluation test needs every proposal evaluated and Gibbs moves are always accepted
+            final boolean decideEarly = (useEarlyRejection || surrogateLikelihood != null) &&
+                    !usingFullEvaluation && !(mcmcOperator instanceof GibbsOperator);
+
+            double oldSurrogateScore = 0.0;
+            double oldApproximatedScore = 0.0;
+            if (decideEarly && surrogateLikelihood != null) {
+                oldSurrogateScore = surrogateLikelihood.getLogLikelihood();
+                oldApproximatedScore = approximatedLikelihood.getLogLikelihood();
+            }
+
+            long phaseStart = (profiler != null ? System.nanoTime() : 0);
 
             // The current model is stored here in case the proposal fails
             if (currentModel != null) {
                 currentModel.storeModelState();
             }
 
-            // assert Profiler.stopProfile("Store");
+            if (profiler != null) {
+                phaseStart = profiler.record(op, MarkovChainProfiler.Phase.STORE, phaseStart);
+            }
 
             boolean operatorSucceeded = true;
             double hastingsRatio = 1.0;
@@ -216,20 +249,26 @@ public final class MarkovChain implements Serializable {
             logr[0] = -Double.MAX_VALUE;
 
             // The new model is proposed
-            // assert Profiler.startProfile("Operate");
-
             if (DEBUG) {
                 System.out.println("\n>> Iteration: " + currentState);
                 System.out.println("\n&& Operator: " + mcmcOperator.getOperatorName());
             }
 
+            if (mcmcOperator instanceof MultipleTryOperator && acceptor instanceof MCMCCriterion) {
+                // the tries are weighted by the tempered posterior
+                ((MultipleTryOperator) mcmcOperator).setTemperature(((MCMCCriterion) acceptor).getTemperature());
+            }
+
             if (mcmcOperator instanceof GeneralOperator) {
                 hastingsRatio = ((GeneralOperator) mcmcOperator).operate(likelihood);
             } else {
                 hastingsRatio = mcmcOperator.operate();
             }
 
-            // assert Profiler.stopProfile("Operate");
+            if (profiler != null) {
+                phaseStart = profiler.record(op, MarkovChainProfiler.Phase.OPERATE, phaseStart);
+            }
+
             if (hastingsRatio == Double.NEGATIVE_INFINITY) {
                 // Should the evaluation be short-cutted?
                 // Previously this was set to false if OperatorFailedException was thrown.
@@ -243,34 +282,34 @@ public final class MarkovChain implements Serializable {
             //    System.err.print("" + currentState + ": ");
             if (operatorSucceeded) {
 
-                // The new model is proposed
-                // assert Profiler.startProfile("Evaluate");
-
                 if (DEBUG) {
                     System.out.println("** Evaluate");
                 }
 
-                long elapsedTime = 0;
                 long calculationCount = 0;
-                if (PROFILE) {
-                    elapsedTime = System.nanoTime();
-                    if (likelihood instanceof Profileable) {
-                        calculationCount = ((Profileable) likelihood).getTotalCalculationCount();
-                    }
+                if (profiler != null && likelihood instanceof Profileable) {
+                    calculationCount = ((Profileable) likelihood).getTotalCalculationCount();
                 }
 
                 // The new model is evaluated
-                score = evaluate(likelihood);
+                if (decideEarly) {
+                    score = evaluateAgainstAcceptanceValue(oldScore, hastingsRatio,
+                            oldSurrogateScore, oldApproximatedScore, acceptanceValue);
+                } else {
+                    acceptanceValue[0] = Double.NaN;
+                    score = evaluate(likelihood);
+                }
 
-                if (PROFILE) {
-                    long duration = System.nanoTime() - elapsedTime;
-                    mcmcOperator.addEvaluationTime(duration);
+                if (profiler != null) {
+                    long evaluateStart = phaseStart;
+                    phaseStart = profiler.record(op, MarkovChainProfiler.Phase.EVALUATE, evaluateStart);
+                    mcmcOperator.addEvaluationTime(phaseStart - evaluateStart);
                     long newCalculationCount = (likelihood instanceof Profileable) ?
-                            ((Profileable) likelihood).getTotalCalculationCount() : 1;
+                            ((Profileable) likelihood).getTotalCalculationCount() : calculationCount + 1;
                     mcmcOperator.addCalculationCount(newCalculationCount - calculationCount);
 
                     if (DEBUG) {
-                        System.out.println("Time: " + duration + "ns");
+                        System.out.println("Time: " + (phaseStart - evaluateStart) + "ns");
                     }
                 }
 
@@ -372,12 +411,19 @@ public final class MarkovChain implements Serializable {
                     }
                 }
 
-                if (score > bestScore) {
+                // a score at or below the acceptance value may only be a bound on the true score
+                if (score > bestScore && (Double.isNaN(acceptanceValue[0]) || score > acceptanceValue[0])) {
                     bestScore = score;
                     fireBestModel(currentState, currentModel);
                 }
 
-                accept = mcmcOperator instanceof GibbsOperator || acceptor.accept(oldScore, score, hastingsRatio, logr);
+                if (mcmcOperator instanceof GibbsOperator) {
+                    accept = true;
+                } else if (Double.isNaN(acceptanceValue[0])) {
+                    accept = acceptor.accept(oldScore, score, hastingsRatio, logr);
+                } else {
+                    accept = ((MCMCCriterion) acceptor).accept(acceptanceValue[0], oldScore, score, hastingsRatio, logr);
+                }
 
                 deviation = score - oldScore;
             }
@@ -393,6 +439,10 @@ public final class MarkovChain implements Serializable {
                 currentModel.acceptModelState();
                 currentScore = score;
 
+                if (profiler != null) {
+                    profiler.record(op, MarkovChainProfiler.Phase.ACCEPT, phaseStart);
+                }
+
             } else {
                 if (DEBUG) {
                     System.out.println("** Move rejected: new score = " + score
@@ -401,10 +451,17 @@ public final class MarkovChain implements Serializable {
 
                 mcmcOperator.reject();
 
-                // assert Profiler.startProfile("Restore");
-
                 currentModel.restoreModelState();
 
+                if (surrogateLikelihood != null) {
+                    // the surrogate isn't part of the model so isn't restored with it
+                    surrogateLikelihood.makeDirty();
+                }
+
+                if (profiler != null) {
+                    profiler.record(op, MarkovChainProfiler.Phase.RESTORE, phaseStart);
+                }
+
                 if (usingFullEvaluation) {
                     // This is a test that the state is correctly restored. The
                     // restored state is fully evaluated and the likelihood compared with
@@ -439,7 +496,6 @@ public final class MarkovChain implements Serializable {
                     }
                 }
             }
-            // assert Profiler.stopProfile("Restore");
 
 
             if (isAdapting(mcmcOperator)) {
@@ -492,6 +548,51 @@ public final class MarkovChain implements Serializable {
         return schedule;
     }
 
+    /**
+     * Draws the acceptance value of each proposal before it is evaluated so that the components
+     * of a CompoundLikelihood are evaluated cheapest first and evaluation stops as soon as the
+     * proposal can no longer be accepted.
+     *
+     * @param useEarlyRejection whether to reject proposals early
+     */
+    public void setEarlyRejection(boolean useEarlyRejection) {
+        if (useEarlyRejection && !(acceptor instanceof MCMCCriterion)) {
+            throw new IllegalArgumentException("Early rejection requires an MCMC acceptance criterion");
+        }
+        this.useEarlyRejection = useEarlyRejection;
+    }
+
+    public boolean isUsingEarlyRejection() {
+        return useEarlyRejection;
+    }
+
+    /**
+     * Uses two stage, delayed acceptance. Each proposal is first accepted or rejected with the
+     * surrogate in place of the approximated likelihood and the approximated likelihood is only
+     * evaluated for proposals that pass this stage.
+     *
+     * @param surrogate    a cheap approximation to the approximated likelihood
+     * @param approximated an expensive component of the posterior
+     */
+    public void setDelayedAcceptance(Likelihood surrogate, Likelihood approximated) {
+        if (!(acceptor instanceof MCMCCriterion)) {
+            throw new IllegalArgumentException("Delayed acceptance requires an MCMC acceptance criterion");
+        }
+        if (!(likelihood instanceof CompoundLikelihood) || !((CompoundLikelihood) likelihood).contains(approximated)) {
+            throw new IllegalArgumentException("The likelihood approximated by the surrogate, " + approximated.getId() +
+                    ", is not a component of the posterior");
+        }
+        this.surrogateLikelihood = surrogate;
+        this.approximatedLikelihood = approximated;
+    }
+
+    /**
+     * @return the runtime profiler for this chain or null if profiling was not requested
+     */
+    public MarkovChainProfiler getProfiler() {
+        return profiler;
+    }
+
     public Acceptor getAcceptor() {
         return acceptor;
     }
@@ -528,6 +629,52 @@ public final class MarkovChain implements Serializable {
         return evaluate(likelihood);
     }
 
+    /**
+     * Evaluates a proposal after drawing the value its score must exceed to be accepted, so that
+     * evaluation can stop as soon as the proposal can't be accepted. With delayed acceptance the
+     * surrogate likelihood first stands in for the approximated one and the approximated likelihood
+     * is only evaluated if the proposal passes this first stage. The acceptance value of the second
+     * stage corrects for the difference between the two so the chain still targets the posterior
+     * (Christen & Fox 2005, J Comput Graph Stat 14: 795-810).
+     *
+     * @param acceptanceValue returns the value the score must exceed for the proposal to be accepted
+     * @return the score of the proposed state or, if the proposal was rejected before it was fully
+     * evaluated, an upper bound on it that is no greater than the acceptance value
+     */
+    private double evaluateAgainstAcceptanceValue(double oldScore, double hastingsRatio,
+                                                  double oldSurrogateScore, double oldApproximatedScore,
+                                                  double[] acceptanceValue) {
+        final MCMCCriterion criterion = (MCMCCriterion) acceptor;
+
+        if (surrogateLikelihood == null) {
+            acceptanceValue[0] = criterion.getAcceptanceValue(oldScore, hastingsRatio);
+            if (!(likelihood instanceof CompoundLikelihood)) {
+                return evaluate(likelihood);
+            }
+            final double logLikelihood = ((CompoundLikelihood) likelihood).getLogLikelihood(acceptanceValue[0], null);
+            return Double.isNaN(logLikelihood) ? Double.NEGATIVE_INFINITY : logLikelihood;
+        }
+
+        // first stage: the posterior with the surrogate in place of the approximated likelihood
+        final double surrogateScore = surrogateLikelihood.getLogLikelihood();
+        final double oldFirstStageScore = oldScore - oldApproximatedScore + oldSurrogateScore;
+        final double firstStageValue = criterion.getAcceptanceValue(oldFirstStageScore, hastingsRatio);
+        final double otherScore = ((CompoundLikelihood) likelihood).getLogLikelihood(
+                useEarlyRejection ? firstStageValue - surrogateScore : Double.NEGATIVE_INFINITY,
+                approximatedLikelihood);
+
+        if (!(otherScore + surrogateScore > firstStageValue)) {
+            acceptanceValue[0] = Double.POSITIVE_INFINITY;
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        // second stage: the ratio of the approximated likelihood to the surrogate
+        acceptanceValue[0] = otherScore + surrogateScore +
+                criterion.getAcceptanceValue(oldApproximatedScore - oldSurrogateScore, 0.0);
+        final double logLikelihood = otherScore + approximatedLikelihood.getLogLikelihood();
+        return Double.isNaN(logLikelihood) ? Double.NEGATIVE_INFINITY : logLikelihood;
+    }
+
     protected double evaluate(Likelihood likelihood) {
 
         double logPosterior = 0.0;
@@ -0,0 +1,370 @@
+/*
+ * MarkovChainProfiler.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.markovchain;
+
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Model;
+import dr.inference.model.Profileable;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.util.FileHelpers;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runtime instrumentation for a MarkovChain. When switched on (with the 'mcmc.profile' or
+ * 'mcmc.profile.file' system properties, or -profile on the BEAST command line) the chain records
+ * wall clock time spent in the store, operate, evaluate, restore and accept phases of each
+ * operator. The per-likelihood evaluation counts and times collected by CompoundLikelihood and
+ * the calculation counts of Profileable likelihoods are gathered alongside them.
+ *
+ * If a metrics file is given, the cumulative figures are written to it every 'mcmc.profile.every'
+ * states as CSV or, if the file name ends with '.json', as one JSON object per line.
+ *
+ * @author Andrew Rambaut
+ */
+public final class MarkovChainProfiler implements MarkovChainListener {
+
+    public static final String PROFILE = "mcmc.profile";
+    public static final String PROFILE_FILE = "mcmc.profile.file";
+    public static final String PROFILE_EVERY = "mcmc.profile.every";
+
+    public static final long DEFAULT_PROFILE_EVERY = 10000;
+
+    public enum Phase {
+        STORE("store"),
+        OPERATE("operate"),
+        EVALUATE("evaluate"),
+        RESTORE("restore"),
+        ACCEPT("accept");
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * @return true if profiling has been requested for this run
+     */
+    public static boolean isRequested() {
+        return Boolean.parseBoolean(System.getProperty(PROFILE)) || System.getProperty(PROFILE_FILE) != null;
+    }
+
+    public MarkovChainProfiler(OperatorSchedule schedule, Likelihood likelihood) {
+        this.schedule = schedule;
+        this.likelihood = likelihood;
+
+        int operatorCount = schedule.getOperatorCount();
+        this.times = new long[operatorCount * PHASES.length];
+        this.counts = new long[operatorCount];
+
+        this.fileName = System.getProperty(PROFILE_FILE);
+        this.every = Long.parseLong(System.getProperty(PROFILE_EVERY, Long.toString(DEFAULT_PROFILE_EVERY)));
+        this.json = fileName != null && fileName.toLowerCase().endsWith(".json");
+    }
+
+    /**
+     * Adds the time since start to the given phase of an operator.
+     *
+     * @param operator the index of the operator in the schedule
+     * @param phase    the phase
+     * @param start    the System.nanoTime() at the start of the phase
+     * @return the current System.nanoTime() so phases can be chained
+     */
+    public long record(int operator, Phase phase, long start) {
+        long now = System.nanoTime();
+        times[operator * PHASES.length + phase.ordinal()] += now - start;
+        if (phase == Phase.STORE) {
+            counts[operator]++;
+        }
+        return now;
+    }
+
+    /**
+     * @return the total time in nanoseconds spent by an operator in the given phase
+     */
+    public long getTime(int operator, Phase phase) {
+        return times[operator * PHASES.length + phase.ordinal()];
+    }
+
+    /**
+     * @return the number of times the operator has been profiled
+     */
+    public long getCount(int operator) {
+        return counts[operator];
+    }
+
+    /**
+     * @return the total time in nanoseconds spent by an operator in all phases
+     */
+    public long getTotalTime(int operator) {
+        long total = 0;
+        for (Phase phase : PHASES) {
+            total += getTime(operator, phase);
+        }
+        return total;
+    }
+
+    /**
+     * Gives the metrics file of a heated MC3 chain its own name by inserting the chain index
+     * before the extension.
+     *
+     * @param index the index of the chain
+     */
+    public void setChainIndex(int index) {
+        if (fileName != null && index > 0) {
+            int dot = fileName.lastIndexOf('.');
+            if (dot > fileName.lastIndexOf('/')) {
+                fileName = fileName.substring(0, dot) + ".chain" + index + fileName.substring(dot);
+            } else {
+                fileName = fileName + ".chain" + index;
+            }
+        }
+    }
+
+    public OperatorSchedule getSchedule() {
+        return schedule;
+    }
+
+    public void reset() {
+        Arrays.fill(times, 0);
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * The evaluation statistics for a component likelihood.
+     */
+    public static final class LikelihoodProfile {
+        LikelihoodProfile(String name, int depth, long evaluations, long time, long calculations) {
+            this.name = name;
+            this.depth = depth;
+            this.evaluations = evaluations;
+            this.time = time;
+            this.calculations = calculations;
+        }
+
+        public final String name;
+        public final int depth;
+        public final long evaluations;
+        public final long time;
+        public final long calculations;
+    }
+
+    /**
+     * Walks the CompoundLikelihood hierarchy below the chain's likelihood collecting the
+     * evaluation count and time for each child, and the calculation count if it is Profileable.
+     *
+     * @return a list of the component likelihoods in depth first order
+     */
+    public List<LikelihoodProfile> getLikelihoodProfiles() {
+        List<LikelihoodProfile> profiles = new ArrayList<LikelihoodProfile>();
+        addLikelihoodProfiles(likelihood, 0, profiles);
+        return profiles;
+    }
+
+    private static void addLikelihoodProfiles(Likelihood likelihood, int depth, List<LikelihoodProfile> profiles) {
+        if (!(likelihood instanceof CompoundLikelihood)) {
+            return;
+        }
+        CompoundLikelihood compound = (CompoundLikelihood) likelihood;
+        long[] evaluationTimes = compound.getEvaluationTimes();
+        int[] evaluationCounts = compound.getEvaluationCounts();
+
+        for (int i = 0; i < compound.getLikelihoodCount(); i++) {
+            Likelihood child = compound.getLikelihood(i);
+            long calculations = child instanceof Profileable ? ((Profileable) child).getTotalCalculationCount() : -1;
+            profiles.add(new LikelihoodProfile(getName(child), depth,
+                    evaluationCounts != null ? evaluationCounts[i] : 0,
+                    evaluationTimes != null ? evaluationTimes[i] : 0,
+                    calculations));
+            addLikelihoodProfiles(child, depth + 1, profiles);
+        }
+    }
+
+    private static String getName(Likelihood likelihood) {
+        return likelihood.getId() != null ? likelihood.getId() : likelihood.prettyName();
+    }
+
+    // MarkovChainListener IMPLEMENTATION
+
+    @Override
+    public void bestState(long state, MarkovChain markovChain, Model bestModel) {
+    }
+
+    @Override
+    public void currentState(long state, MarkovChain markovChain, Model currentModel) {
+        if (fileName != null && state > 0 && state % every == 0) {
+            writeMetrics(state);
+        }
+    }
+
+    @Override
+    public void finished(long chainLength, MarkovChain markovChain) {
+        if (fileName != null) {
+            writeMetrics(chainLength);
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            // the file is complete so don't reopen (and truncate) it
+            fileName = null;
+        }
+    }
+
+    private void writeMetrics(long state) {
+        if (out == null) {
+            try {
+                out = new PrintStream(new FileOutputStream(FileHelpers.getFile(fileName)));
+            } catch (FileNotFoundException e) {
+                System.err.println("Unable to open profile metrics file, " + fileName + ": " + e.getMessage());
+                fileName = null;
+                return;
+            }
+            startTime = System.nanoTime();
+            if (!json) {
+                out.println("state,elapsed,type,name,count,store,operate,evaluate,restore,accept,calculations");
+            }
+        }
+
+        double elapsed = (System.nanoTime() - startTime) / 1.0E9;
+        if (json) {
+            writeJSON(state, elapsed);
+        } else {
+            writeCSV(state, elapsed);
+        }
+        out.flush();
+    }
+
+    private void writeCSV(long state, double elapsed) {
+        String prefix = state + "," + elapsed + ",";
+        for (int i = 0; i < schedule.getOperatorCount(); i++) {
+            StringBuilder sb = new StringBuilder(prefix);
+            sb.append("operator,").append(csvName(schedule.getOperator(i).getOperatorName()));
+            sb.append(",").append(counts[i]);
+            for (Phase phase : PHASES) {
+                sb.append(",").append(toMillis(getTime(i, phase)));
+            }
+            sb.append(",");
+            out.println(sb);
+        }
+        for (LikelihoodProfile profile : getLikelihoodProfiles()) {
+            out.println(prefix + "likelihood," + csvName(profile.name) + "," + profile.evaluations +
+                    ",,," + toMillis(profile.time) + ",,," + (profile.calculations >= 0 ? profile.calculations : ""));
+        }
+    }
+
+    private void writeJSON(long state, double elapsed) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"state\":").append(state).append(",\"elapsed\":").append(elapsed);
+        sb.append(",\"operators\":[");
+        for (int i = 0; i < schedule.getOperatorCount(); i++) {
+            MCMCOperator operator = schedule.getOperator(i);
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append("{\"name\":").append(jsonName(operator.getOperatorName()));
+            sb.append(",\"count\":").append(counts[i]);
+            sb.append(",\"accepted\":").append(operator.getAcceptCount());
+            for (Phase phase : PHASES) {
+                sb.append(",\"").append(phase).append("\":").append(toMillis(getTime(i, phase)));
+            }
+            sb.append("}");
+        }
+        sb.append("],\"likelihoods\":[");
+        boolean first = true;
+        for (LikelihoodProfile profile : getLikelihoodProfiles()) {
+            if (!first) {
+                sb.append(",");
+            }
+            first = false;
+            sb.append("{\"name\":").append(jsonName(profile.name));
+            sb.append(",\"depth\":").append(profile.depth);
+            sb.append(",\"evaluations\":").append(profile.evaluations);
+            sb.append(",\"evaluate\":").append(toMillis(profile.time));
+            if (profile.calculations >= 0) {
+                sb.append(",\"calculations\":").append(profile.calculations);
+            }
+            sb.append("}");
+        }
+        sb.append("]}");
+        out.println(sb);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1.0E6;
+    }
+
+    private static String csvName(String name) {
+        if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0) {
+            return "\"" + name.replace("\"", "\"\"") + "\"";
+        }
+        return name;
+    }
+
+    private static String jsonName(String name) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : name.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private final OperatorSchedule schedule;
+    private final Likelihood likelihood;
+
+    private final long[] times;
+    private final long[] counts;
+
+    private String fileName;
+    private final long every;
+    private final boolean json;
+
+    private transient PrintStream out = null;
+    private long startTime;
+}
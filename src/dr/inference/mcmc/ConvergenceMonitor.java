@@ -0,0 +1,295 @@
+/*
+ * ConvergenceMonitor.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.mcmc;
+
+import dr.inference.loggers.NumberColumn;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.markovchain.MarkovChainListener;
+import dr.inference.model.Model;
+import dr.inference.trace.BatchMeansESS;
+
+import java.util.*;
+
+/**
+ * Stops an MCMC run once it has converged. A running batch means estimate of the ESS of each of
+ * the monitored columns is kept and, every checkEvery states, the smallest ESS and the largest
+ * split-R-hat are compared with the targets. When both are met the chain is asked to stop and
+ * finishes as usual (the loggers write their last state and close and a final checkpoint is saved
+ * if checkpointing is on).
+ * <p>
+ * Monitors with the same group name (e.g., replicate chains in a 'concurrent' element) pool their
+ * chains for the R-hat, matching the columns by position (the replicates in one XML file must have
+ * differently named parameters but log them in the same order). The group only stops, all together,
+ * once the columns of every member have reached the target ESS and the pooled R-hat is met. A group
+ * is forgotten when all its members have finished, so a later run can reuse the name.
+ *
+ * @author Andrew Rambaut
+ */
+public class ConvergenceMonitor implements MarkovChainListener {
+
+    /**
+     * @param columns     the columns to monitor
+     * @param sampleEvery the number of states between samples of the columns
+     * @param checkEvery  the number of states between checks of the targets
+     * @param targetESS   the smallest ESS that each column must reach
+     * @param targetRHat  the largest split-R-hat allowed for each column (or NaN to not use R-hat)
+     * @param burnin      the fraction of the samples to discard when checking
+     * @param group       the name of the group of replicate chains or null if this is the only one
+     */
+    public ConvergenceMonitor(List<NumberColumn> columns, long sampleEvery, long checkEvery,
+                              double targetESS, double targetRHat, double burnin, String group) {
+        if (sampleEvery <= 0 || checkEvery <= 0) {
+            throw new IllegalArgumentException("The sample and check frequencies must be positive");
+        }
+        if (burnin < 0.0 || burnin >= 1.0) {
+            throw new IllegalArgumentException("The burn-in must be a fraction between 0 and 1");
+        }
+        this.columns = new ArrayList<NumberColumn>(columns);
+        this.sampleEvery = sampleEvery;
+        this.checkEvery = checkEvery;
+        this.targetESS = targetESS;
+        this.targetRHat = targetRHat;
+        this.burnin = burnin;
+
+        estimators = new BatchMeansESS[columns.size()];
+        for (int i = 0; i < estimators.length; i++) {
+            estimators[i] = new BatchMeansESS();
+        }
+
+        this.group = group;
+        if (group != null) {
+            synchronized (GROUPS) {
+                List<ConvergenceMonitor> members = GROUPS.get(group);
+                if (members == null || hasFinishedMember(members)) {
+                    // a new group or the name is being reused after an earlier run
+                    members = new ArrayList<ConvergenceMonitor>();
+                    GROUPS.put(group, members);
+                }
+                members.add(this);
+                this.members = members;
+            }
+        } else {
+            this.members = Collections.singletonList(this);
+        }
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public String getColumnLabel(int index) {
+        return columns.get(index).getLabel();
+    }
+
+    /**
+     * @return the ESS of a column after the burn-in (NaN until there are enough samples)
+     */
+    public synchronized double getESS(int index) {
+        return estimators[index].getESS(burnin);
+    }
+
+    /**
+     * @return the split-R-hat of a column over all the chains in the group
+     */
+    public double getRHat(int index) {
+        List<BatchMeansESS> chains = new ArrayList<BatchMeansESS>();
+        synchronized (GROUPS) {
+            for (ConvergenceMonitor member : members) {
+                BatchMeansESS estimator = member.getEstimator(index);
+                if (estimator != null) {
+                    chains.add(estimator);
+                }
+            }
+        }
+        return BatchMeansESS.getSplitRHat(chains.toArray(new BatchMeansESS[0]), burnin);
+    }
+
+    /**
+     * @return true if the targets were met and the chain was asked to stop
+     */
+    public boolean hasConverged() {
+        return converged;
+    }
+
+    private static boolean hasFinishedMember(List<ConvergenceMonitor> members) {
+        for (ConvergenceMonitor member : members) {
+            if (member.finished) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a copy of the estimator of the column at the given position or null if there isn't one
+     */
+    private synchronized BatchMeansESS getEstimator(int index) {
+        if (index < estimators.length) {
+            return new BatchMeansESS(estimators[index]);
+        }
+        return null;
+    }
+
+    @Override
+    public void bestState(long state, MarkovChain markovChain, Model bestModel) {
+        // do nothing
+    }
+
+    @Override
+    public void currentState(long state, MarkovChain markovChain, Model currentModel) {
+        this.markovChain = markovChain;
+        if (converged) {
+            // another chain in the group found the targets were met
+            markovChain.pleaseStop();
+            return;
+        }
+
+        if (state % sampleEvery == 0) {
+            synchronized (this) {
+                for (int i = 0; i < estimators.length; i++) {
+                    estimators[i].add(columns.get(i).getDoubleValue());
+                }
+            }
+        }
+
+        if (state > 0 && state % checkEvery == 0 && !converged) {
+            check(state);
+        }
+    }
+
+    @Override
+    public void finished(long chainLength, MarkovChain markovChain) {
+        this.markovChain = null;
+        this.finished = true;
+
+        if (group != null) {
+            synchronized (GROUPS) {
+                boolean allFinished = true;
+                for (ConvergenceMonitor member : members) {
+                    allFinished &= member.finished;
+                }
+                if (allFinished && GROUPS.get(group) == members) {
+                    GROUPS.remove(group);
+                }
+            }
+        }
+    }
+
+    private void check(long state) {
+        double minESS = Double.POSITIVE_INFINITY;
+        double maxRHat = 0.0;
+        String minESSLabel = null;
+        String maxRHatLabel = null;
+
+        List<ConvergenceMonitor> group;
+        synchronized (GROUPS) {
+            group = new ArrayList<ConvergenceMonitor>(members);
+        }
+
+        // every chain in the group must reach the target ESS
+        boolean[] constant = new boolean[columns.size()];
+        for (ConvergenceMonitor member : group) {
+            for (int i = 0; i < member.getColumnCount(); i++) {
+                BatchMeansESS estimator = member.getEstimator(i);
+                double ess = estimator.getESS(member.burnin);
+                if (Double.isNaN(ess)) {
+                    if (estimator.getVariance() != 0.0) {
+                        // too few samples
+                        return;
+                    }
+                    if (member == this) {
+                        constant[i] = true;
+                    }
+                    continue;
+                }
+                if (ess < minESS) {
+                    minESS = ess;
+                    minESSLabel = member.getColumnLabel(i);
+                }
+            }
+        }
+        if (minESSLabel == null) {
+            return;
+        }
+
+        if (!Double.isNaN(targetRHat)) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (constant[i]) {
+                    continue;
+                }
+                double rHat = getRHat(i);
+                if (Double.isNaN(rHat)) {
+                    return;
+                }
+                if (rHat > maxRHat) {
+                    maxRHat = rHat;
+                    maxRHatLabel = getColumnLabel(i);
+                }
+            }
+        }
+
+        boolean met = minESS >= targetESS && (Double.isNaN(targetRHat) || maxRHat <= targetRHat);
+
+        java.util.logging.Logger.getLogger("dr.inference").info("Convergence at state " + state +
+                ": minimum ESS " + Math.round(minESS) + " (" + minESSLabel + ")" +
+                (maxRHatLabel != null ? String.format(", maximum R-hat %.4f (%s)", maxRHat, maxRHatLabel) : "") +
+                (met ? " - targets met, stopping" : ""));
+
+        if (met) {
+            for (ConvergenceMonitor member : group) {
+                member.stop();
+            }
+        }
+    }
+
+    private void stop() {
+        converged = true;
+        MarkovChain chain = markovChain;
+        if (chain != null) {
+            chain.pleaseStop();
+        }
+    }
+
+    private static final Map<String, List<ConvergenceMonitor>> GROUPS = new HashMap<String, List<ConvergenceMonitor>>();
+
+    private final List<NumberColumn> columns;
+    private final long sampleEvery;
+    private final long checkEvery;
+    private final double targetESS;
+    private final double targetRHat;
+    private final double burnin;
+
+    private final BatchMeansESS[] estimators;
+    private final String group;
+    private final List<ConvergenceMonitor> members;
+
+    private volatile MarkovChain markovChain = null;
+    private volatile boolean converged = false;
+    private volatile boolean finished = false;
+}
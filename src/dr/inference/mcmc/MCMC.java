@@ -32,6 +32,8 @@ import dr.inference.state.StateLoader;
 import dr.inference.loggers.LogColumn;
 import dr.inference.loggers.Loggable;
 import dr.inference.loggers.Logger;
+import dr.inference.loggers.MCLogger;
+import dr.inference.markovchain.ESSMonitor;
 import dr.inference.markovchain.MarkovChain;
 import dr.inference.markovchain.MarkovChainListener;
 import dr.inference.model.Likelihood;
@@ -174,6 +176,14 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
 
             mc.addMarkovChainListener(chainListener);
 
+            ESSMonitor essMonitor = createESSMonitor();
+            if (essMonitor != null) {
+                mc.addMarkovChainListener(essMonitor);
+            }
+            if (convergenceMonitor != null) {
+                mc.addMarkovChainListener(convergenceMonitor);
+            }
+
             long chainLength = getChainLength();
 
             //this also potentially gets the new adaptationDelay of a possibly increased chain length
@@ -186,16 +196,27 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
                 mc.runChain(adaptationDelay - loadedState, true);
                 chainLength -= adaptationDelay;
 
-                for (int i = 0; i < schedule.getOperatorCount(); i++) {
-                    schedule.getOperator(i).reset();
+                if (!mc.isStopped()) {
+                    for (int i = 0; i < schedule.getOperatorCount(); i++) {
+                        schedule.getOperator(i).reset();
+                    }
                 }
             }
 
-            mc.runChain(chainLength, false);
+            if (!mc.isStopped()) {
+                // the chain may have been stopped during adaptation (e.g., by the convergence monitor)
+                mc.runChain(chainLength, false);
+            }
 
             mc.terminateChain();
 
             mc.removeMarkovChainListener(chainListener);
+            if (essMonitor != null) {
+                mc.removeMarkovChainListener(essMonitor);
+            }
+            if (convergenceMonitor != null) {
+                mc.removeMarkovChainListener(convergenceMonitor);
+            }
 
         }
         timer.stop();
@@ -265,7 +286,10 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
 
             if (loggers != null) {
                 for (Logger logger : loggers) {
-                    logger.log(currentState);
+                    if (!markovChain.isStopped()) {
+                        // a chain that stopped itself has already logged this state
+                        logger.log(currentState);
+                    }
                     logger.stopLogging();
                 }
             }
@@ -273,11 +297,17 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
             if (showOperatorAnalysis) {
                 OperatorAnalysisPrinter.showOperatorAnalysis(System.out, getOperatorSchedule(), options.useAdaptation(), false);
             }
+            if (markovChain.getProfiler() != null) {
+                OperatorAnalysisPrinter.showProfileAnalysis(System.out, markovChain.getProfiler(), false);
+            }
 
             if (operatorAnalysisFile != null) {
                 try {
                     PrintStream out = new PrintStream(new FileOutputStream(operatorAnalysisFile));
                     OperatorAnalysisPrinter.showOperatorAnalysis(out, getOperatorSchedule(), options.useAdaptation(), operatorAnalysisCSVFile);
+                    if (markovChain.getProfiler() != null) {
+                        OperatorAnalysisPrinter.showProfileAnalysis(out, markovChain.getProfiler(), operatorAnalysisCSVFile);
+                    }
                     out.flush();
                     out.close();
                 } catch (IOException e) {
@@ -361,6 +391,17 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
 
 
     //PRIVATE METHODS *****************************************
+
+    /**
+     * @return a monitor of the ESS of the columns of the largest log if it has been requested
+     */
+    private ESSMonitor createESSMonitor() {
+        if (!ESSMonitor.isRequested()) {
+            return null;
+        }
+        MCLogger largestLogger = MCLogger.getLargestLogger(loggers);
+        return (largestLogger != null ? new ESSMonitor(largestLogger) : null);
+    }
     protected long getAdaptationDelay() {
 
         long delay = options.getAdaptationDelay();
@@ -380,6 +421,17 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
         return -1;
     }
 
+    /**
+     * Sets a monitor that stops the chain when it has converged.
+     */
+    public void setConvergenceMonitor(ConvergenceMonitor convergenceMonitor) {
+        this.convergenceMonitor = convergenceMonitor;
+    }
+
+    public ConvergenceMonitor getConvergenceMonitor() {
+        return convergenceMonitor;
+    }
+
     public void setShowOperatorAnalysis(boolean soa) {
         showOperatorAnalysis = soa;
     }
@@ -405,6 +457,7 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
     protected boolean stopping = false;
     protected boolean showOperatorAnalysis = Boolean.parseBoolean(System.getProperty(OperatorSchedule.SHOW_OPERATORS));
     protected File operatorAnalysisFile = null;
+    protected ConvergenceMonitor convergenceMonitor = null;
     protected boolean operatorAnalysisCSVFile = false;
     protected final dr.util.Timer timer = new dr.util.Timer();
     protected long currentState = 0;
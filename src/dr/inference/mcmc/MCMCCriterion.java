@@ -61,6 +61,23 @@ public class MCMCCriterion implements Acceptor {
         return acceptanceValue;
     }
 
+    /**
+     * Accepts or rejects a proposal using an acceptance value previously drawn with
+     * getAcceptanceValue(oldScore, hastingsRatio). The new score may be an upper bound on the
+     * score of the proposed state if that bound is no greater than the acceptance value. The
+     * acceptance probability can't then be found so logr is given the outcome (log 1 or log 0),
+     * which has the acceptance probability as its expectation, for the operators to adapt to.
+     */
+    public boolean accept(double acceptanceValue, double oldScore, double newScore, double hastingsRatio, double[] logr) {
+
+        final boolean accept = newScore > acceptanceValue;
+
+        // for coercedAcceptanceProbability
+        logr[0] = (accept ? 0.0 : Double.NEGATIVE_INFINITY);
+
+        return accept;
+    }
+
     public boolean accept(double oldScore, double newScore, double hastingsRatio, double[] logr) {
 
         logr[0] = (newScore - oldScore) * temperature + hastingsRatio;
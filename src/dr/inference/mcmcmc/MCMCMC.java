@@ -46,6 +46,12 @@ import dr.util.NumberFormatter;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * An MCMC analysis that estimates parameters of a probabilistic model.
@@ -92,15 +98,27 @@ public class MCMCMC implements Runnable {
 
         chains = new MarkovChain[mcmcs.length];
 
+        // each chain draws from its own random number stream so the chains can run concurrently
+        // without contending for the shared generator and a seeded analysis is reproducible
+        randomStreams = new MathUtils.RandomStream[mcmcs.length];
+        for (int i = 0; i < randomStreams.length; i++) {
+            randomStreams[i] = MathUtils.nextRandomStream();
+        }
+
         chains[0] = mcmcs[0].getMarkovChain();
         for (int i = 1; i < chains.length; i++) {
             chains[i] = mcmcs[i].getMarkovChain();
             MCMCCriterion acceptor = ((MCMCCriterion) chains[i].getAcceptor());
             acceptor.setTemperature(mcmcmcOptions.getChainTemperatures()[i]);
             acceptor.setRank(i);
+            if (chains[i].getProfiler() != null) {
+                // each heated chain writes its timings to its own metrics file
+                chains[i].getProfiler().setChainIndex(i);
+            }
         }
 
-        if (USE_PARALLEL_TEMPERING_SCHEME) {
+        if (USE_PARALLEL_TEMPERING_SCHEME ||
+                mcmcmcOptions.getSwapScheme() != MCMCMCOptions.SwapScheme.ORIGINAL_FLAVOR) {
             scheme = mcmcmcOptions.getSwapScheme().factory(chains, schedules, mcmcmcOptions);
         } else {
             scheme = null;
@@ -127,7 +145,7 @@ public class MCMCMC implements Runnable {
 //        }
 
         MCLogger[] coldChainLoggers = mcLoggers[coldChain];
-        List<LogFormatter>[] logFormatters = new List[coldChainLoggers.length];
+        logFormatters = new List[coldChainLoggers.length];
 
         for (int i = 0; i < coldChainLoggers.length; i++) {
             // Start the logging for the cold chain
@@ -148,102 +166,134 @@ public class MCMCMC implements Runnable {
 
         chains[coldChain].addMarkovChainListener(chainListener);
 
-        MCMCMCRunner[] threads = new MCMCMCRunner[chains.length];
-        for (int i = 0; i < chains.length; i++) {
-            threads[i] = new MCMCMCRunner(chains[i], mcmcmcOptions.getSwapChainsEvery(), getChainLength(), false);
-            if (!DEBUG_IN_SERIES) {
-                threads[i].start();
+        if (DEBUG_IN_SERIES) {
+            runners = new MCMCMCRunner[chains.length];
+            for (int i = 0; i < chains.length; i++) {
+                runners[i] = new MCMCMCRunner(chains[i], mcmcmcOptions.getSwapChainsEvery(), getChainLength(), false,
+                        null, randomStreams[i]);
             }
-        }
 
-        while (chains[coldChain].getCurrentLength() < getChainLength()) {
-
-            if (DEBUG_IN_SERIES) {
-                for (int i = 0; i < chains.length; ++i) {
-                    threads[i].runSubChain();
+            while (!isFinished()) {
+                for (MCMCMCRunner runner : runners) {
+                    runner.runSubChain();
                 }
-            } else {
-                // wait for all the threads to complete their alloted chain length
-                boolean allDone;
-                do {
-                    try {
-                        Thread.sleep(10);
-                    } catch (InterruptedException e) {
-                        //
-                    }
-
-                    allDone = true;
-                    for (int i = 0; i < chains.length; i++) {
-                        if (!threads[i].isChainDone()) {
-                            allDone = false;
+                swapChains();
+            }
+        } else {
+            // Each chain runs on its own thread for the whole analysis. When all the chains
+            // have reached the swap point the last one to arrive at the barrier does the
+            // swap (or ends the run) before they are all released to continue.
+            CyclicBarrier barrier = new CyclicBarrier(chains.length, new Runnable() {
+                public void run() {
+                    if (isFinished()) {
+                        for (MCMCMCRunner runner : runners) {
+                            runner.finish();
                         }
+                    } else {
+                        swapChains();
                     }
-                } while (!allDone);
+                }
+            });
+
+            runners = new MCMCMCRunner[chains.length];
+            for (int i = 0; i < chains.length; i++) {
+                runners[i] = new MCMCMCRunner(chains[i], mcmcmcOptions.getSwapChainsEvery(), getChainLength(), false,
+                        barrier, randomStreams[i]);
             }
 
-            if (chains[coldChain].getCurrentLength() < getChainLength()) {
-                int oldColdChain = coldChain;
+            runOnPool(runners);
+        }
 
-                // attempt to swap two or more chains' temperatures
-                if (USE_PARALLEL_TEMPERING_SCHEME) {
-                    coldChain = scheme.swapChainTemperatures(coldChain);
-                } else {
-                    coldChain = swapChainTemperatures();
-                }
+        finish();
 
-                // if the cold chain was involved in a swap then we need to change the
-                // listener that does the logging and the destinations for the coldChainLoggers.
-                if (coldChain != oldColdChain) {
+        timer.stop();
+    }
 
-                    chains[oldColdChain].removeMarkovChainListener(chainListener);
+    private boolean isFinished() {
+        return stopRequested || chains[coldChain].getCurrentLength() >= getChainLength();
+    }
 
-                    // Set the new cold chain's loggers with the formatters (destinations) of
-                    // the original cold chain
-                    for (int i = 0; i < mcLoggers[coldChain].length; i++) {
-                        mcLoggers[coldChain][i].setFormatters(logFormatters[i]);
-                    }
+    /**
+     * Attempts to swap the temperatures of chains. Only called when all the chains are paused.
+     */
+    private void swapChains() {
+        int oldColdChain = coldChain;
 
-                    // Set the old cold chain to have null log formatters...
-                    for (int i = 0; i < mcLoggers[oldColdChain].length; i++) {
-                        mcLoggers[oldColdChain][i].setFormatters(Collections.EMPTY_LIST);
-                    }
+        // attempt to swap two or more chains' temperatures
+        if (scheme != null) {
+            coldChain = scheme.swapChainTemperatures(coldChain);
+        } else {
+            coldChain = swapChainTemperatures();
+        }
 
-                    chains[coldChain].addMarkovChainListener(chainListener);
+        // if the cold chain was involved in a swap then we need to change the
+        // listener that does the logging and the destinations for the coldChainLoggers.
+        if (coldChain != oldColdChain) {
 
-                }
+            chains[oldColdChain].removeMarkovChainListener(chainListener);
 
-                for (int i = 0; i < chains.length; i++) {
-                    threads[i].continueChain();
-                }
+            // Set the old cold chain to have null log formatters. This is done first so that any
+            // rows it has buffered (when logging asynchronously) are written before those of the
+            // new cold chain.
+            for (int i = 0; i < mcLoggers[oldColdChain].length; i++) {
+                mcLoggers[oldColdChain][i].setFormatters(Collections.EMPTY_LIST);
             }
 
-        }
+            // Set the new cold chain's loggers with the formatters (destinations) of
+            // the original cold chain
+            for (int i = 0; i < mcLoggers[coldChain].length; i++) {
+                mcLoggers[coldChain][i].setFormatters(logFormatters[i]);
+            }
 
-        finish();
+            chains[coldChain].addMarkovChainListener(chainListener);
 
-        timer.stop();
+        }
     }
 
-    private void runChains(long length, boolean disableCoerce) {
-
-        Thread[] threads = new Thread[chains.length];
-        for (int i = 0; i < chains.length; i++) {
-            threads[i] = new MCMCMCRunner(chains[i], length, length, false);
-            threads[i].start();
-        }
+    /**
+     * Runs each of the runners on a thread of its own and waits for them all to complete. If
+     * one fails the others are interrupted, which releases them from the barrier.
+     */
+    private void runOnPool(Runnable[] tasks) {
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.length);
+        try {
+            CompletionService<Object> completionService = new ExecutorCompletionService<Object>(pool);
+            for (Runnable task : tasks) {
+                completionService.submit(task, null);
+            }
 
-        // wait for all threads collected to die
-        for (int i = 0; i < chains.length; i++) {
-            // wait doggedly for thread to die
-            while (threads[i].isAlive()) {
+            // wait doggedly for all the chains to finish
+            int remaining = tasks.length;
+            while (remaining > 0) {
                 try {
-                    threads[i].join();
+                    completionService.take().get();
+                    remaining--;
                 } catch (InterruptedException ie) {
                     // DO NOTHING
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
                 }
             }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void runChains(long length, boolean disableCoerce) {
 
+        MCMCMCRunner[] runners = new MCMCMCRunner[chains.length];
+        for (int i = 0; i < chains.length; i++) {
+            runners[i] = new MCMCMCRunner(chains[i], length, length, disableCoerce, null, randomStreams[i]);
         }
+
+        runOnPool(runners);
     }
 
     private int swapChainTemperatures() {
@@ -348,10 +398,29 @@ public class MCMCMC implements Runnable {
         System.out.println();
         System.out.println("Time taken: " + timer.toString());
 
+        if (runners != null && chains.length > 1) {
+            System.out.println("Time spent waiting at swaps:");
+            for (int i = 0; i < runners.length; i++) {
+                System.out.println("  chain " + (i + 1) + ": " +
+                        formatter.format(runners[i].getIdleTime() / 1.0E9) + " seconds (" +
+                        formatter.format(100.0 * runners[i].getIdleFraction()) + "%)");
+            }
+            System.out.println();
+        }
+
         if (showOperatorAnalysis) {
             OperatorAnalysisPrinter.showOperatorAnalysis(System.out, schedules[coldChain], mcmcOptions.useAdaptation(), false);
             System.out.println();
         }
+
+        for (MarkovChain chain : chains) {
+            if (chain.getProfiler() != null) {
+                chain.getProfiler().finished(currentState, chain);
+            }
+        }
+        if (chains[coldChain].getProfiler() != null) {
+            OperatorAnalysisPrinter.showProfileAnalysis(System.out, chains[coldChain].getProfiler(), false);
+        }
     }
 
     private final MarkovChainListener chainListener = new MarkovChainListener() {
@@ -456,11 +525,45 @@ public class MCMCMC implements Runnable {
      * Requests that the MCMC chain stop prematurely.
      */
     public void pleaseStop() {
+        stopRequested = true;
         for (MarkovChain chain : chains) {
             chain.pleaseStop();
         }
     }
 
+    /**
+     * @return for each chain, the time in seconds spent waiting for the other chains to reach the swap point
+     */
+    public double[] getChainIdleTimes() {
+        double[] idleTimes = new double[chains.length];
+        for (int i = 0; runners != null && i < runners.length; i++) {
+            idleTimes[i] = runners[i].getIdleTime() / 1.0E9;
+        }
+        return idleTimes;
+    }
+
+    /**
+     * @return for each chain, the time in seconds spent running the chain
+     */
+    public double[] getChainBusyTimes() {
+        double[] busyTimes = new double[chains.length];
+        for (int i = 0; runners != null && i < runners.length; i++) {
+            busyTimes[i] = runners[i].getBusyTime() / 1.0E9;
+        }
+        return busyTimes;
+    }
+
+    /**
+     * @return for each chain, the proportion of time spent waiting for the other chains
+     */
+    public double[] getChainIdleFractions() {
+        double[] idleFractions = new double[chains.length];
+        for (int i = 0; runners != null && i < runners.length; i++) {
+            idleFractions[i] = runners[i].getIdleFraction();
+        }
+        return idleFractions;
+    }
+
     public void setShowOperatorAnalysis(boolean soa) {
         showOperatorAnalysis = soa;
     }
@@ -477,8 +580,13 @@ public class MCMCMC implements Runnable {
     private final MarkovChain[] chains;
     private final MCLogger[][] mcLoggers;
     private final OperatorSchedule[] schedules;
+    private final MathUtils.RandomStream[] randomStreams;
     private int coldChain;
 
+    private MCMCMCRunner[] runners = null;
+    private List<LogFormatter>[] logFormatters;
+    private volatile boolean stopRequested = false;
+
     private final ParallelTempering scheme;
     private static final boolean USE_PARALLEL_TEMPERING_SCHEME = false;
 }
@@ -0,0 +1,485 @@
+/*
+ * MCMCMCCoordinator.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.mcmcmc;
+
+import dr.math.MathUtils;
+import dr.util.NumberFormatter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The coordinator for an MCMCMC analysis in which each chain runs in a separate BEAST process
+ * (an MCMCMCWorker), possibly on different machines. The coordinator listens on a TCP port for
+ * one worker per temperature. It then repeatedly tells every worker which temperature to run at
+ * for the next sub-chain, collects the resulting log posteriors and proposes swaps of temperature
+ * between the workers. Only temperatures, ranks and scores are exchanged so a round costs one
+ * small message in each direction per worker.
+ *
+ * By default the coordinator only listens on the loopback interface. To accept workers on other
+ * machines an interface must be given explicitly, together with a shared secret. Every worker
+ * must prove that it knows the secret by answering a random challenge with an HMAC of it, so
+ * the secret itself is never sent over the network.
+ *
+ * Each worker logs only the samples it draws while it is the cold chain, so its log files hold
+ * its cold segments with the global state numbers. The coordinator does not merge these logs:
+ * the cold chain is the union of the workers' log files, which can be combined by concatenating
+ * them and sorting the rows by state. Workers save and resume from their own
+ * BeastCheckpointer state files, which record the chain's temperature, so the coordinator
+ * recovers the temperature assignment from the workers when an analysis is resumed.
+ *
+ * @author Andrew Rambaut
+ */
+public class MCMCMCCoordinator implements Runnable {
+
+    static final int MAGIC = 0x4D433343; // "MC3C"
+
+    static final byte RUN = 1;
+    static final byte STOP = 2;
+
+    static final int CHALLENGE_LENGTH = 16;
+    static final int HANDSHAKE_TIMEOUT = 30000; // milliseconds
+
+    /**
+     * Creates a coordinator that only accepts workers on this machine.
+     * @param port the TCP port to listen on for workers (0 to choose any free port)
+     * @param mcmcmcOptions the temperatures, swap frequency and swap scheme
+     */
+    public MCMCMCCoordinator(int port, MCMCMCOptions mcmcmcOptions) throws IOException {
+        this(null, port, null, mcmcmcOptions);
+    }
+
+    /**
+     * @param host the interface to listen on, or null for the loopback interface only
+     * @param port the TCP port to listen on for workers (0 to choose any free port)
+     * @param secret the secret that workers must share, required if a host is given
+     * @param mcmcmcOptions the temperatures, swap frequency and swap scheme
+     */
+    public MCMCMCCoordinator(String host, int port, String secret, MCMCMCOptions mcmcmcOptions) throws IOException {
+        this.mcmcmcOptions = mcmcmcOptions;
+        this.workerCount = mcmcmcOptions.getChainTemperatures().length;
+
+        if (workerCount < 2) {
+            throw new IllegalArgumentException("At least two chains are required");
+        }
+        if (mcmcmcOptions.getChainTemperatures()[0] != 1.0) {
+            throw new IllegalArgumentException("The first chain should be cold (temperature = 1.0)");
+        }
+
+        if (host != null && (secret == null || secret.isEmpty())) {
+            throw new IllegalArgumentException("A shared secret is required to accept workers from other machines");
+        }
+        this.secret = secret;
+
+        InetAddress address = (host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host));
+
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(address, port));
+
+        this.temperatures = new double[workerCount];
+        this.ranks = new int[workerCount];
+        this.scores = new double[workerCount];
+        this.coldTime = new long[workerCount];
+        this.swapAttempts = new long[workerCount][workerCount];
+        this.swapAccepts = new long[workerCount][workerCount];
+    }
+
+    /**
+     * @return the port on which the coordinator is listening
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void run() {
+        Logger logger = Logger.getLogger("dr.inference");
+
+        DataInputStream[] ins = new DataInputStream[workerCount];
+        DataOutputStream[] outs = new DataOutputStream[workerCount];
+        Socket[] sockets = new Socket[workerCount];
+
+        try {
+            logger.info("Waiting for " + workerCount + " MCMCMC workers on port " + getPort());
+
+            SecureRandom random = new SecureRandom();
+            for (int i = 0; i < workerCount; ) {
+                Socket socket = serverSocket.accept();
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                    ins[i] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    outs[i] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                    if (ins[i].readInt() != MAGIC) {
+                        throw new IOException("not an MCMCMC worker");
+                    }
+
+                    byte[] challenge = new byte[CHALLENGE_LENGTH];
+                    random.nextBytes(challenge);
+                    outs[i].writeInt(MAGIC);
+                    outs[i].write(challenge);
+                    outs[i].flush();
+
+                    byte[] expected = getResponse(challenge, secret);
+                    byte[] response = new byte[expected.length];
+                    ins[i].readFully(response);
+                    if (!MessageDigest.isEqual(expected, response)) {
+                        outs[i].writeInt(-1);
+                        outs[i].flush();
+                        throw new IOException("wrong shared secret");
+                    }
+
+                    outs[i].writeInt(i);
+                    outs[i].writeInt(workerCount);
+                    outs[i].flush();
+                    socket.setSoTimeout(0);
+                } catch (IOException ioe) {
+                    logger.warning("Rejected connection from " + socket.getRemoteSocketAddress() + ": " + ioe.getMessage());
+                    closeQuietly(socket);
+                    continue;
+                }
+
+                sockets[i] = socket;
+                logger.info("  worker " + (i + 1) + " connected from " + socket.getRemoteSocketAddress());
+                i++;
+            }
+
+            // each worker reports the state it is starting from (non-zero if it has resumed from a
+            // checkpoint), its chain length and the temperature and rank it was saved with.
+            long[] startStates = new long[workerCount];
+            long chainLength = -1;
+            for (int i = 0; i < workerCount; i++) {
+                startStates[i] = ins[i].readLong();
+                long length = ins[i].readLong();
+                temperatures[i] = ins[i].readDouble();
+                ranks[i] = ins[i].readInt();
+
+                if (chainLength >= 0 && length != chainLength) {
+                    throw new IOException("MCMCMC workers have different chain lengths (" + length + " and " + chainLength + ")");
+                }
+                chainLength = length;
+            }
+
+            long state = assignTemperatures(startStates);
+
+            long screenEvery = 1000;
+            long lastTime = System.nanoTime();
+
+            while (state < chainLength) {
+                long length = Math.min(mcmcmcOptions.getSwapChainsEvery(), chainLength - state);
+
+                for (int i = 0; i < workerCount; i++) {
+                    outs[i].writeByte(RUN);
+                    outs[i].writeDouble(temperatures[i]);
+                    outs[i].writeInt(ranks[i]);
+                    outs[i].writeLong(length);
+                    outs[i].flush();
+                }
+
+                long previousState = state;
+                for (int i = 0; i < workerCount; i++) {
+                    long workerState = ins[i].readLong();
+                    scores[i] = ins[i].readDouble();
+                    if (i > 0 && workerState != state) {
+                        throw new IOException("MCMCMC workers are out of step (states " + workerState + " and " + state + ")");
+                    }
+                    state = workerState;
+                }
+
+                long time = System.nanoTime();
+                coldTime[getColdChain()] += time - lastTime;
+                lastTime = time;
+
+                if (state / screenEvery != previousState / screenEvery) {
+                    printScores(state);
+                }
+
+                if (state < chainLength) {
+                    swapChainTemperatures();
+                }
+            }
+
+            for (int i = 0; i < workerCount; i++) {
+                outs[i].writeByte(STOP);
+                outs[i].flush();
+            }
+
+            printReport();
+
+        } catch (EOFException eofe) {
+            throw new RuntimeException("An MCMCMC worker has disconnected", eofe);
+        } catch (IOException ioe) {
+            throw new RuntimeException("MCMCMC coordinator failed: " + ioe.getMessage(), ioe);
+        } finally {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Computes the answer to a connection challenge, an HMAC-SHA256 of the challenge keyed by the
+     * shared secret.
+     * @param challenge the random bytes sent by the coordinator
+     * @param secret the shared secret (may be null)
+     * @return the response the worker should send
+     */
+    static byte[] getResponse(byte[] challenge, String secret) {
+        // prefix the key so that it is never empty
+        byte[] key = ("MC3C" + (secret == null ? "" : secret)).getBytes(StandardCharsets.UTF_8);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException gse) {
+            throw new RuntimeException("Unable to compute MCMCMC handshake: " + gse.getMessage(), gse);
+        }
+    }
+
+    /**
+     * Sets up the temperatures for the first round. If all the workers have resumed from the same
+     * state and their saved ranks are a permutation of the temperature ladder then these are kept,
+     * otherwise (a new analysis) worker i takes the i-th temperature.
+     * @return the state the analysis starts from
+     */
+    private long assignTemperatures(long[] startStates) throws IOException {
+        long state = startStates[0];
+        for (long startState : startStates) {
+            if (startState != state) {
+                throw new IOException("MCMCMC workers have resumed from different states (" + startState + " and " + state + ")");
+            }
+        }
+
+        double[] ladder = mcmcmcOptions.getChainTemperatures();
+        boolean[] seen = new boolean[workerCount];
+        boolean resumed = state > 0;
+        for (int i = 0; resumed && i < workerCount; i++) {
+            int rank = ranks[i];
+            if (rank < 0 || rank >= workerCount || seen[rank] || temperatures[i] != ladder[rank]) {
+                resumed = false;
+            } else {
+                seen[rank] = true;
+            }
+        }
+
+        if (resumed) {
+            Logger.getLogger("dr.inference").info("Resuming MCMCMC analysis at state " + state +
+                    " with worker " + (getColdChain() + 1) + " as the cold chain");
+        } else {
+            if (state > 0) {
+                Logger.getLogger("dr.inference").warning("Saved MCMCMC temperatures do not match the " +
+                        "temperature ladder; reassigning temperatures to workers");
+            }
+            for (int i = 0; i < workerCount; i++) {
+                temperatures[i] = ladder[i];
+                ranks[i] = i;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Proposes swaps of temperature between pairs of workers according to the swap scheme. The
+     * pairs proposed in a round are disjoint.
+     */
+    private void swapChainTemperatures() {
+        for (int[] pair : getPairsToSwap()) {
+            int index1 = pair[0];
+            int index2 = pair[1];
+
+            double temperature1 = temperatures[index1];
+            double temperature2 = temperatures[index2];
+
+            double logRatio = ((scores[index2] - scores[index1]) * temperature1) +
+                    ((scores[index1] - scores[index2]) * temperature2);
+            boolean swap = (Math.log(MathUtils.nextDouble()) < logRatio);
+
+            int rank1 = Math.min(ranks[index1], ranks[index2]);
+            int rank2 = Math.max(ranks[index1], ranks[index2]);
+            swapAttempts[rank1][rank2]++;
+
+            if (swap) {
+                swapAccepts[rank1][rank2]++;
+
+                temperatures[index1] = temperature2;
+                temperatures[index2] = temperature1;
+
+                int tmp = ranks[index1];
+                ranks[index1] = ranks[index2];
+                ranks[index2] = tmp;
+            }
+        }
+    }
+
+    private List<int[]> getPairsToSwap() {
+        List<int[]> pairs = new ArrayList<int[]>();
+
+        switch (mcmcmcOptions.getSwapScheme()) {
+            case ORIGINAL_FLAVOR: {
+                int index1 = MathUtils.nextInt(workerCount);
+                int index2 = MathUtils.nextInt(workerCount);
+                while (index1 == index2) {
+                    index2 = MathUtils.nextInt(workerCount);
+                }
+                pairs.add(new int[]{index1, index2});
+                break;
+            }
+            case RANDOM_MULTIPLE: {
+                int[] order = MathUtils.shuffled(workerCount);
+                for (int i = 0; i + 1 < order.length; i += 2) {
+                    pairs.add(new int[]{order[i], order[i + 1]});
+                }
+                break;
+            }
+            default: {
+                // the neighbouring-temperature schemes, as in ParallelTempering.New
+                int[] mapRankToWorker = new int[workerCount];
+                for (int i = 0; i < workerCount; i++) {
+                    mapRankToWorker[ranks[i]] = i;
+                }
+
+                MCMCMCOptions.SwapScheme scheme = mcmcmcOptions.getSwapScheme();
+                boolean deterministic = scheme == MCMCMCOptions.SwapScheme.DETERMINISTIC_SINGLE ||
+                        scheme == MCMCMCOptions.SwapScheme.DETERMINISTIC_MULTIPLE;
+                boolean single = scheme == MCMCMCOptions.SwapScheme.DETERMINISTIC_SINGLE ||
+                        scheme == MCMCMCOptions.SwapScheme.STOCHASTIC_SINGLE;
+
+                evenStep = deterministic ? !evenStep : MathUtils.nextBoolean();
+
+                int halfK = workerCount / 2;
+                int first = single ? MathUtils.nextInt(halfK) : 0;
+                int last = single ? first + 1 : halfK;
+                for (int halfIndex = first; halfIndex < last; halfIndex++) {
+                    int rank1 = 2 * halfIndex + (evenStep ? 0 : 1);
+                    int rank2 = rank1 + 1;
+                    if (rank2 >= workerCount) {
+                        rank2 = 0;
+                    }
+                    pairs.add(new int[]{mapRankToWorker[rank1], mapRankToWorker[rank2]});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @return the index of the worker currently running the cold chain
+     */
+    public int getColdChain() {
+        for (int i = 0; i < workerCount; i++) {
+            if (ranks[i] == 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No cold chain");
+    }
+
+    private void printScores(long state) {
+        NumberFormatter formatter = new NumberFormatter(8);
+        formatter.setPadding(false);
+
+        int coldChain = getColdChain();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < workerCount; i++) {
+            String score;
+            if (i == coldChain) {
+                score = "[" + formatter.format(scores[i]) + "]";
+            } else {
+                score = formatter.format(scores[i]);
+            }
+            sb.append(formatter.formatToFieldWidth(score + " ", 12));
+        }
+        System.out.println(state + "\t" + sb);
+    }
+
+    private void printReport() {
+        NumberFormatter formatter = new NumberFormatter(4);
+
+        System.out.println();
+        System.out.println("Temperature swap acceptance (ranks, attempts, accepted):");
+        for (int i = 0; i < workerCount; i++) {
+            for (int j = i + 1; j < workerCount; j++) {
+                if (swapAttempts[i][j] > 0) {
+                    System.out.println("  " + i + " <-> " + j + "\t" + swapAttempts[i][j] + "\t" +
+                            formatter.format((double) swapAccepts[i][j] / swapAttempts[i][j]));
+                }
+            }
+        }
+        System.out.println();
+        System.out.println("Time spent as the cold chain:");
+        for (int i = 0; i < workerCount; i++) {
+            System.out.println("  worker " + (i + 1) + ": " + formatter.format(coldTime[i] / 1.0E9) + " seconds");
+        }
+        System.out.println();
+        System.out.println("The cold chain samples are split across the workers' log files; concatenate them");
+        System.out.println("and sort the rows by state to obtain the log of the cold chain.");
+        System.out.println();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private final MCMCMCOptions mcmcmcOptions;
+    private final int workerCount;
+    private final ServerSocket serverSocket;
+    private final String secret;
+
+    private final double[] temperatures;
+    private final int[] ranks;
+    private final double[] scores;
+    private boolean evenStep = false;
+
+    private final long[] coldTime;
+    private final long[][] swapAttempts;
+    private final long[][] swapAccepts;
+}
@@ -95,6 +95,13 @@ public class MCMCMCOptions {
                                              MCMCMCOptions mcmcmcOptions) {
                 return new ParallelTempering.DeterministicMultipleSwap(chains, schedules, mcmcmcOptions);
             }
+        },
+        RANDOM_MULTIPLE("random_multiple") {
+            @Override
+            public ParallelTempering factory(MarkovChain[] chains, OperatorSchedule[] schedules,
+                                             MCMCMCOptions mcmcmcOptions) {
+                return new ParallelTempering.RandomMultipleSwap(chains, schedules, mcmcmcOptions);
+            }
         };
 
         SwapScheme(String name) {
@@ -28,70 +28,130 @@
 package dr.inference.mcmcmc;
 
 import dr.inference.markovchain.MarkovChain;
+import dr.math.MathUtils;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
 /**
+ * Runs one chain of an MCMCMC analysis in sub-chains of a fixed length. After each
+ * sub-chain the runner waits at a barrier shared by all the chains; the barrier action
+ * does the temperature swaps while every chain is paused. The time spent running and
+ * the time spent waiting for the other chains are recorded so the swap interval can
+ * be tuned.
+ *
  * @author rambaut
  *         Date: Jan 5, 2005
  *         Time: 5:05:59 PM
  */
-public class MCMCMCRunner extends Thread {
+public class MCMCMCRunner implements Runnable {
 
     public MCMCMCRunner(MarkovChain markovChain, long length, long totalLength, boolean disableCoerce) {
+        this(markovChain, length, totalLength, disableCoerce, null, null);
+    }
+
+    /**
+     * @param randomStream if not null the chain draws its random numbers from this stream
+     *                     (see MathUtils.nextRandomStream) rather than the shared generator
+     */
+    public MCMCMCRunner(MarkovChain markovChain, long length, long totalLength, boolean disableCoerce,
+                        CyclicBarrier barrier, MathUtils.RandomStream randomStream) {
 
         this.markovChain = markovChain;
         this.length = length;
         this.totalLength = totalLength;
         this.disableCoerce = disableCoerce;
+        this.barrier = barrier;
+        this.randomStream = randomStream;
     }
 
     public void runSubChain() {
-        markovChain.runChain(length, disableCoerce);
+        // the stream is only bound while the chain runs so the swaps done by the barrier
+        // action (on whichever thread arrives last) use the shared generator
+        MathUtils.RandomStream previousStream = MathUtils.setThreadRandomStream(randomStream);
+        long start = System.nanoTime();
+        try {
+            markovChain.runChain(length, disableCoerce);
+        } finally {
+            MathUtils.setThreadRandomStream(previousStream);
+        }
+        busyTime += System.nanoTime() - start;
+        subChainCount++;
     }
 
-	public void run() {
+    public void run() {
         long i = 0;
-        while (i < totalLength) {
+        while (i < totalLength && !finished) {
             runSubChain();
 
             i += length;
 
-	        chainDone();
-
-            if (i < totalLength) {
-                synchronized(this) {
-                    while (isChainDone()) { //DM. This test needs to be synchronized too. Otherwise, there is a nonzero chance that the MCMCMC.run thread calls continueChain, setting this.chainDone=false and notifies the thread to continue right before it starts listening, making the MC3 hang forever 
-                        try {
-                            //synchronized(this) {
-                                wait();
-                            //}
-                        } catch (InterruptedException e) {
-                            // continue...
-                        }
-                    }
+            if (barrier != null) {
+                long start = System.nanoTime();
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    // another chain has failed or the analysis was abandoned
+                    return;
+                } finally {
+                    idleTime += System.nanoTime() - start;
                 }
             }
         }
     }
 
-	private synchronized void chainDone() {
-		chainDone = true;
-	}
+    /**
+     * Tells the runner not to start another sub-chain. Only safe to call from the
+     * barrier action (or when the runner is not running).
+     */
+    void finish() {
+        finished = true;
+    }
+
+    public MarkovChain getMarkovChain() {
+        return markovChain;
+    }
 
-	public synchronized boolean isChainDone() {
-		return chainDone;
-	}
+    /**
+     * @return the number of sub-chains completed
+     */
+    public long getSubChainCount() {
+        return subChainCount;
+    }
 
-    public synchronized void continueChain() {
-        this.chainDone = false;
-	    notify();
+    /**
+     * @return the time spent running the chain in nanoseconds
+     */
+    public long getBusyTime() {
+        return busyTime;
     }
 
+    /**
+     * @return the time spent waiting for the other chains to reach the swap point in nanoseconds
+     */
+    public long getIdleTime() {
+        return idleTime;
+    }
 
-	private final MarkovChain markovChain;
-	private final long length;
+    /**
+     * @return the proportion of the runner's time spent waiting for the other chains
+     */
+    public double getIdleFraction() {
+        long total = busyTime + idleTime;
+        return total > 0 ? (double) idleTime / total : 0.0;
+    }
+
+    private final MarkovChain markovChain;
+    private final long length;
     private final long totalLength;
     private final boolean disableCoerce;
-
-	private boolean chainDone;
+    private final CyclicBarrier barrier;
+    private final MathUtils.RandomStream randomStream;
+
+    // these are written by the runner's thread and read by others only after the
+    // barrier (or the end of the run) so the barrier provides the memory visibility.
+    private volatile boolean finished = false;
+    private long busyTime = 0;
+    private long idleTime = 0;
+    private long subChainCount = 0;
 }
-
@@ -0,0 +1,217 @@
+/*
+ * MCMCMCWorker.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.mcmcmc;
+
+import dr.inference.loggers.Logger;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.markovchain.MarkovChainListener;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCCriterion;
+import dr.inference.model.Model;
+import dr.inference.state.Factory;
+import dr.inference.state.StateLoader;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * Runs one chain of a distributed MCMCMC analysis in this process under the control of an
+ * MCMCMCCoordinator. The worker connects to the coordinator before the XML is parsed so that
+ * its index can be used to label the output files. For each round it is sent a temperature
+ * and a number of states to run, and it replies with the state reached and the log posterior.
+ * The worker's loggers only record samples while it is the cold chain, so the cold chain's
+ * samples end up split across the workers' log files.
+ *
+ * @author Andrew Rambaut
+ */
+public class MCMCMCWorker {
+
+    private MCMCMCWorker(Socket socket, String secret) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        out.writeInt(MCMCMCCoordinator.MAGIC);
+        out.flush();
+
+        if (in.readInt() != MCMCMCCoordinator.MAGIC) {
+            throw new IOException("Unexpected response from MCMCMC coordinator");
+        }
+
+        byte[] challenge = new byte[MCMCMCCoordinator.CHALLENGE_LENGTH];
+        in.readFully(challenge);
+        out.write(MCMCMCCoordinator.getResponse(challenge, secret));
+        out.flush();
+
+        this.workerIndex = in.readInt();
+        if (workerIndex < 0) {
+            throw new IOException("The MCMCMC coordinator rejected the shared secret");
+        }
+        this.workerCount = in.readInt();
+    }
+
+    /**
+     * Connects to a coordinator that does not require a shared secret.
+     * @param address the coordinator's address as host:port
+     */
+    public static MCMCMCWorker connect(String address) throws IOException {
+        return connect(address, null);
+    }
+
+    /**
+     * Connects to a coordinator.
+     * @param address the coordinator's address as host:port
+     * @param secret the secret shared with the coordinator (may be null)
+     */
+    public static MCMCMCWorker connect(String address, String secret) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 1) {
+            throw new IllegalArgumentException("The MCMCMC coordinator address should be host:port");
+        }
+        String host = address.substring(0, colon);
+        int port = Integer.parseInt(address.substring(colon + 1));
+        return new MCMCMCWorker(new Socket(host, port), secret);
+    }
+
+    /**
+     * @return the index of this worker (0 to workerCount - 1) assigned by the coordinator
+     */
+    public int getWorkerIndex() {
+        return workerIndex;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Runs the chain of the given MCMC until the coordinator stops it.
+     */
+    public void run(MCMC mcmc) throws IOException {
+        final MarkovChain markovChain = mcmc.getMarkovChain();
+        final MCMCCriterion acceptor = (MCMCCriterion) markovChain.getAcceptor();
+        final Logger[] loggers = mcmc.getLoggers();
+
+        // resume from a checkpoint in the same way as MCMC.run(); this also restores
+        // the temperature and rank the chain had when it was saved.
+        long loadedState = 0;
+        if (Factory.INSTANCE != null) {
+            StateLoader initialStateLoader = Factory.INSTANCE.getInitialStateLoader();
+            if (initialStateLoader != null) {
+                double[] savedLnL = new double[1];
+
+                loadedState = initialStateLoader.loadState(markovChain, savedLnL);
+
+                markovChain.setCurrentLength(loadedState);
+
+                double lnL = markovChain.evaluate();
+
+                initialStateLoader.checkLoadState(savedLnL[0], lnL);
+            }
+        }
+
+        out.writeLong(loadedState);
+        out.writeLong(mcmc.getOptions().getChainLength());
+        out.writeDouble(acceptor.getTemperature());
+        out.writeInt(acceptor.getRank());
+        out.flush();
+
+        if (loggers != null) {
+            for (Logger logger : loggers) {
+                logger.startLogging();
+            }
+        }
+
+        MarkovChainListener chainListener = new MarkovChainListener() {
+            public void currentState(long state, MarkovChain markovChain, Model currentModel) {
+                if (isCold && loggers != null) {
+                    for (Logger logger : loggers) {
+                        logger.log(state);
+                    }
+                }
+            }
+
+            public void bestState(long state, MarkovChain markovChain, Model bestModel) {
+            }
+
+            public void finished(long chainLength, MarkovChain markovChain) {
+            }
+        };
+        markovChain.addMarkovChainListener(chainListener);
+
+        try {
+            byte command = in.readByte();
+            while (command == MCMCMCCoordinator.RUN) {
+                acceptor.setTemperature(in.readDouble());
+                acceptor.setRank(in.readInt());
+                long length = in.readLong();
+
+                isCold = acceptor.getRank() == 0;
+
+                markovChain.runChain(length, false);
+
+                out.writeLong(markovChain.getCurrentLength());
+                out.writeDouble(markovChain.getCurrentScore());
+                out.flush();
+
+                command = in.readByte();
+            }
+
+            if (command != MCMCMCCoordinator.STOP) {
+                throw new IOException("Unexpected command from MCMCMC coordinator: " + command);
+            }
+
+            if (isCold && loggers != null) {
+                for (Logger logger : loggers) {
+                    logger.log(markovChain.getCurrentLength());
+                }
+            }
+
+            markovChain.terminateChain();
+        } finally {
+            markovChain.removeMarkovChainListener(chainListener);
+
+            if (loggers != null) {
+                for (Logger logger : loggers) {
+                    logger.stopLogging();
+                }
+            }
+
+            socket.close();
+        }
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int workerIndex;
+    private final int workerCount;
+
+    private boolean isCold = false;
+}
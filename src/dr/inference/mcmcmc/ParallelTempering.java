@@ -196,6 +196,29 @@ public interface ParallelTempering {
         }
     }
 
+    /**
+     * Proposes several swaps per round between disjoint pairs of chains chosen at random,
+     * so the pairs need not be adjacent in temperature. As the pairs do not share a chain
+     * the swaps are independent of each other.
+     */
+    class RandomMultipleSwap extends Base {
+
+        public RandomMultipleSwap(MarkovChain[] chains, OperatorSchedule[] schedules, MCMCMCOptions options) {
+            super(chains, schedules, options);
+        }
+
+        @Override
+        List<IndexPair> getPairsToSwap() {
+            int[] order = MathUtils.shuffled(chains.length);
+
+            List<IndexPair> pairs = new ArrayList<>();
+            for (int i = 0; i + 1 < order.length; i += 2) {
+                pairs.add(new IndexPair(order[i], order[i + 1]));
+            }
+            return pairs;
+        }
+    }
+
     abstract class New extends Base {
 
         private final ParitySelector paritySelector;
@@ -0,0 +1,44 @@
+/*
+ * BoundedLikelihood.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.model;
+
+/**
+ * An interface for likelihoods that know an upper bound on their value that holds in every state
+ * (for example, the log probability of discrete data can never be greater than zero). This allows
+ * CompoundLikelihood to stop evaluating a proposal once it cannot reach the acceptance value.
+ *
+ * @author Andrew Rambaut
+ */
+public interface BoundedLikelihood {
+
+    /**
+     * @return an upper bound on the log likelihood or positive infinity if there isn't one
+     */
+    double getLogLikelihoodUpperBound();
+
+}
@@ -28,6 +28,7 @@
 package dr.inference.model;
 
 import dr.util.BenchmarkTimer;
+import dr.util.ComputeService;
 import dr.util.Keywordable;
 import dr.util.NumberFormatter;
 import dr.xml.Reportable;
@@ -41,7 +42,7 @@ import java.util.concurrent.*;
  * @author Alexei Drummond
  * @author Andrew Rambaut
  */
-public class CompoundLikelihood implements Likelihood, Profileable, Reportable, Keywordable {
+public class CompoundLikelihood implements Likelihood, Profileable, Reportable, Keywordable, BoundedLikelihood {
 
     public final static boolean UNROLL_COMPOUND = true;
 
@@ -71,11 +72,9 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
             threadCount = 0;
         }
 
-        if (threadCount > 0) {
-            pool = Executors.newFixedThreadPool(threadCount);
-        } else if (threadCount < 0) {
-            // create a cached thread pool which should create one thread per likelihood...
-            pool = Executors.newCachedThreadPool();
+        if (threadCount != 0) {
+            // compute the likelihoods in the shared pool (the number of threads is set by -threads)
+            pool = ComputeService.getPool("CompoundLikelihood");
         } else {
             // don't use a threadpool (i.e., compute serially)
             pool = null;
@@ -271,6 +270,135 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
         return logLikelihood;
     }
 
+    /**
+     * Evaluates the component likelihoods one at a time, those with no upper bound first and then
+     * from the cheapest to the most expensive by their mean evaluation time. Evaluation stops as soon
+     * as the total so far plus the upper bounds of the remaining components is no greater than the
+     * threshold, in which case that bound is returned instead of the log likelihood. If this
+     * likelihood evaluates its components on a thread pool then they are all evaluated.
+     *
+     * @param threshold the value the log likelihood needs to exceed to be of interest
+     * @param excluded  a component likelihood (at any depth) to leave out of the total, or null
+     * @return the log likelihood or an upper bound on it that is no greater than the threshold
+     */
+    public double getLogLikelihood(double threshold, Likelihood excluded) {
+        if (pool != null && (excluded == null || !contains(excluded))) {
+            return getLogLikelihood();
+        }
+
+        final int[] order = getEvaluationOrder();
+
+        // the bound on the sum of the components that are still to be evaluated
+        final double[] remaining = new double[order.length + 1];
+        remaining[order.length] = 0.0;
+        for (int k = order.length - 1; k >= 0; k--) {
+            Likelihood likelihood = likelihoods.get(order[k]);
+            remaining[k] = remaining[k + 1] + (likelihood == excluded ? 0.0 : getUpperBound(likelihood));
+        }
+
+        double logLikelihood = 0.0;
+        for (int k = 0; k < order.length; k++) {
+            final int index = order[k];
+            final Likelihood likelihood = likelihoods.get(index);
+            if (likelihood == excluded) {
+                continue;
+            }
+
+            long time = System.nanoTime();
+            final double l;
+            if (likelihood instanceof CompoundLikelihood) {
+                l = ((CompoundLikelihood) likelihood).getLogLikelihood(
+                        threshold - logLikelihood - remaining[k + 1], excluded);
+            } else {
+                l = likelihood.getLogLikelihood();
+            }
+            if (EVALUATION_TIMERS) {
+                evaluationTimes[index] += System.nanoTime() - time;
+                evaluationCounts[index] ++;
+            }
+
+            if (l == Double.NEGATIVE_INFINITY) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            logLikelihood += l;
+
+            if (logLikelihood + remaining[k + 1] <= threshold) {
+                return logLikelihood + remaining[k + 1];
+            }
+        }
+        return logLikelihood;
+    }
+
+    /**
+     * @return true if the given likelihood is this or one of its components at any depth
+     */
+    public boolean contains(Likelihood likelihood) {
+        if (likelihood == this) {
+            return true;
+        }
+        for (Likelihood l : likelihoods) {
+            if (l == likelihood || (l instanceof CompoundLikelihood && ((CompoundLikelihood) l).contains(likelihood))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] getEvaluationOrder() {
+        if (evaluationOrder == null || evaluationOrderAge >= EVALUATION_ORDER_UPDATE) {
+            final int n = likelihoods.size();
+            final double[] costs = new double[n];
+            final boolean[] bounded = new boolean[n];
+            List<Integer> indices = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                costs[i] = (EVALUATION_TIMERS && evaluationCounts[i] > 0 ?
+                        ((double) evaluationTimes[i]) / evaluationCounts[i] : 0.0);
+                bounded[i] = getUpperBound(likelihoods.get(i)) < Double.POSITIVE_INFINITY;
+                indices.add(i);
+            }
+
+            // likelihoods that must be evaluated early come first, then the unbounded ones as
+            // nothing can be rejected until they are known, and then the cheapest
+            Collections.sort(indices, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    boolean early1 = likelihoods.get(i1).evaluateEarly();
+                    boolean early2 = likelihoods.get(i2).evaluateEarly();
+                    if (early1 != early2) {
+                        return early1 ? -1 : 1;
+                    }
+                    if (bounded[i1] != bounded[i2]) {
+                        return bounded[i1] ? 1 : -1;
+                    }
+                    return Double.compare(costs[i1], costs[i2]);
+                }
+            });
+
+            evaluationOrder = new int[n];
+            for (int i = 0; i < n; i++) {
+                evaluationOrder[i] = indices.get(i);
+            }
+            evaluationOrderAge = 0;
+        }
+        evaluationOrderAge++;
+        return evaluationOrder;
+    }
+
+    private static double getUpperBound(Likelihood likelihood) {
+        if (likelihood instanceof BoundedLikelihood) {
+            return ((BoundedLikelihood) likelihood).getLogLikelihoodUpperBound();
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public double getLogLikelihoodUpperBound() {
+        double bound = 0.0;
+        for (Likelihood likelihood : likelihoods) {
+            bound += getUpperBound(likelihood);
+        }
+        return bound;
+    }
+
     public void makeDirty() {
         for( Likelihood likelihood : likelihoods ) {
             likelihood.makeDirty();
@@ -550,6 +678,13 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
     private final ExecutorService pool;
 
     private final ArrayList<Likelihood> likelihoods = new ArrayList<Likelihood>();
+
+    // the order in which getLogLikelihood(threshold, excluded) evaluates the components is
+    // recalculated from their measured costs after this many evaluations
+    private static final int EVALUATION_ORDER_UPDATE = 1000;
+    private int[] evaluationOrder = null;
+    private int evaluationOrderAge = 0;
+
     private final CompoundModel compoundModel = new CompoundModel("compoundModel");
 
     private final ArrayList<Likelihood> earlyLikelihoods = new ArrayList<Likelihood>();
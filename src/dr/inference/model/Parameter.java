@@ -52,6 +52,17 @@ public interface Parameter extends Statistic, Variable<Double> {
      */
     double[] getParameterValues();
 
+    /**
+     * Copies the parameter's values into a caller-supplied buffer, avoiding the copy made by getParameterValues()
+     *
+     * @param values the buffer to fill, of length at least getDimension()
+     */
+    default void getParameterValues(double[] values) {
+        for (int i = 0; i < getDimension(); i++) {
+            values[i] = getParameterValue(i);
+        }
+    }
+
     /**
      * sets the scalar value in the given dimension of this parameter
      *
@@ -630,6 +641,10 @@ public interface Parameter extends Statistic, Variable<Double> {
             return copyOfValues;
         }
 
+        public final void getParameterValues(double[] buffer) {
+            System.arraycopy(values, 0, buffer, 0, values.length);
+        }
+
         /**
          * Do not write to the returned array directly!!
          *
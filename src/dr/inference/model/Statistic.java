@@ -201,6 +201,10 @@ public interface Statistic extends Attribute<double[]>, Identifiable, Loggable {
 
             public double getDoubleValue() {
                 return getStatisticValue(dim); }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
         }
 
         @Override
@@ -154,6 +154,10 @@ public interface Variable<V> extends Identifiable {
             public double getDoubleValue() {
                 return getValue(dim).doubleValue();
             }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
         }
 
         /**
@@ -323,6 +327,10 @@ public interface Variable<V> extends Identifiable {
             public double getDoubleValue() {
                 return getValue(dim);
             }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
         }
 
         String id;
@@ -468,6 +476,10 @@ public interface Variable<V> extends Identifiable {
             public double getDoubleValue() {
                 return getValue(i)[j];
             }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
         }
 
         String id;
@@ -637,6 +649,10 @@ public interface Variable<V> extends Identifiable {
             public double getDoubleValue() {
                 return getValue(dim);
             }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
         }
 
         String id;
@@ -0,0 +1,199 @@
+/*
+ * MultipleTryOperator.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inference.operators;
+
+import dr.inference.model.Likelihood;
+import dr.inference.model.Model;
+import dr.inferencexml.operators.MultipleTryOperatorParser;
+import dr.math.LogTricks;
+import dr.math.MathUtils;
+
+/**
+ * Multiple-try Metropolis (Liu, Liang & Wong 2000, JASA 95:121-134) wrapped around any ordinary
+ * operator. K candidates are proposed from the current state and each is evaluated; one is chosen
+ * with probability proportional to its weight and K-1 reference points are then proposed back from
+ * it. The returned Hastings ratio makes the chain's usual Metropolis-Hastings test the multiple-try
+ * acceptance test.
+ * <p>
+ * The weights are w(x, y) = pi(y) sqrt(q(y, x) / q(x, y)), so only the Hastings ratio of the inner
+ * operator is needed. The model has a single stored state so the candidates are evaluated one after
+ * another, each being restored before the next (so everything the inner operator changes must be
+ * part of the model). A candidate is recreated by replaying the random number stream from where it
+ * was first proposed, so the inner operator must only use MathUtils for its random numbers.
+ * <p>
+ * The inner operator is not tuned (its accept and reject are never called).
+ *
+ * @author Andrew Rambaut
+ */
+public class MultipleTryOperator extends SimpleMCMCOperator implements GeneralOperator {
+
+    public MultipleTryOperator(SimpleMCMCOperator operator, int tryCount, double weight) {
+        if (operator instanceof GibbsOperator || operator instanceof GeneralOperator) {
+            throw new IllegalArgumentException("Operator, " + operator.getOperatorName() +
+                    ", is a Gibbs or general operator and can't be used for multiple tries");
+        }
+        if (tryCount < 1) {
+            throw new IllegalArgumentException("The number of tries must be at least 1");
+        }
+        this.operator = operator;
+        this.tryCount = tryCount;
+
+        tryStates = new int[tryCount][];
+        tryWeights = new double[tryCount];
+        referenceWeights = new double[tryCount];
+
+        setWeight(weight);
+    }
+
+    /**
+     * The temperature the chain raises the posterior to. This is set by the chain before each
+     * operation so the weights are those of the tempered target.
+     */
+    public void setTemperature(double temperature) {
+        this.temperature = temperature;
+    }
+
+    public SimpleMCMCOperator getOperator() {
+        return operator;
+    }
+
+    public int getTryCount() {
+        return tryCount;
+    }
+
+    @Override
+    public double doOperation() {
+        throw new UnsupportedOperationException("MultipleTryOperator requires the likelihood");
+    }
+
+    @Override
+    public double doOperation(Likelihood likelihood) {
+
+        final Model model = likelihood.getModel();
+        final double currentLogPosterior = evaluate(likelihood);
+
+        for (int j = 0; j < tryCount; j++) {
+            tryStates[j] = MathUtils.getCurrentRandomState();
+            double hastingsRatio = operator.doOperation();
+            double logPosterior = (hastingsRatio == Double.NEGATIVE_INFINITY ?
+                    Double.NEGATIVE_INFINITY : evaluate(likelihood));
+            tryWeights[j] = logWeight(logPosterior, hastingsRatio);
+
+            model.restoreModelState();
+            model.storeModelState();
+        }
+
+        final double tryLogWeight = logSum(tryWeights);
+        if (tryLogWeight == Double.NEGATIVE_INFINITY) {
+            // none of the tries can be accepted
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        final int chosen = MathUtils.randomChoiceLogPDF(tryWeights.clone());
+
+        for (int j = 0; j < tryCount - 1; j++) {
+            replayTry(chosen);
+            double hastingsRatio = operator.doOperation();
+            double logPosterior = (hastingsRatio == Double.NEGATIVE_INFINITY ?
+                    Double.NEGATIVE_INFINITY : evaluate(likelihood));
+            referenceWeights[j] = logWeight(logPosterior, hastingsRatio);
+
+            model.restoreModelState();
+            model.storeModelState();
+        }
+
+        // the chosen try is left as the proposed state and the current state is the last reference point
+        final double chosenHastingsRatio = replayTry(chosen);
+        referenceWeights[tryCount - 1] = logWeight(currentLogPosterior, -chosenHastingsRatio);
+
+        final double chosenLogPosterior = evaluate(likelihood);
+        if (Math.abs(logWeight(chosenLogPosterior, chosenHastingsRatio) - tryWeights[chosen]) >
+                TOLERANCE * Math.max(1.0, Math.abs(tryWeights[chosen]))) {
+            throw new RuntimeException("Operator, " + operator.getOperatorName() +
+                    ", did not reproduce its proposal when its random numbers were replayed" +
+                    " (the variables it changes must be part of the posterior's model so they are restored)");
+        }
+
+        // the chain will multiply the posterior ratio by the temperature and add this
+        return tryLogWeight - logSum(referenceWeights)
+                - temperature * (chosenLogPosterior - currentLogPosterior);
+    }
+
+    /**
+     * Repeat the chosen try from the current state leaving the random number stream where it was.
+     *
+     * @return the Hastings ratio of the try
+     */
+    private double replayTry(int chosen) {
+        int[] state = MathUtils.getCurrentRandomState();
+        MathUtils.setCurrentRandomState(tryStates[chosen]);
+        double hastingsRatio = operator.doOperation();
+        MathUtils.setCurrentRandomState(state);
+        return hastingsRatio;
+    }
+
+    private double logWeight(double logPosterior, double hastingsRatio) {
+        if (logPosterior == Double.NEGATIVE_INFINITY || hastingsRatio == Double.NEGATIVE_INFINITY) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return temperature * logPosterior + 0.5 * hastingsRatio;
+    }
+
+    /**
+     * LogTricks.logSum but giving -Inf (rather than NaN) when all the weights are zero.
+     */
+    private static double logSum(double[] logWeights) {
+        for (double logWeight : logWeights) {
+            if (logWeight != Double.NEGATIVE_INFINITY) {
+                return LogTricks.logSum(logWeights);
+            }
+        }
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    private static double evaluate(Likelihood likelihood) {
+        double logPosterior = likelihood.getLogLikelihood();
+        return Double.isNaN(logPosterior) ? Double.NEGATIVE_INFINITY : logPosterior;
+    }
+
+    @Override
+    public String getOperatorName() {
+        return MultipleTryOperatorParser.MULTIPLE_TRY_OPERATOR + "(" + operator.getOperatorName() + ")";
+    }
+
+    private static final double TOLERANCE = 1E-6;
+
+    private final SimpleMCMCOperator operator;
+    private final int tryCount;
+
+    private final int[][] tryStates;
+    private final double[] tryWeights;
+    private final double[] referenceWeights;
+
+    private double temperature = 1.0;
+}
@@ -27,6 +27,7 @@
 
 package dr.inference.operators;
 
+import dr.inference.markovchain.MarkovChainProfiler;
 import dr.util.NumberFormatter;
 
 import java.io.PrintStream;
@@ -132,6 +133,105 @@ public class OperatorAnalysisPrinter {
         out.println();
     }
 
+    /**
+     * Writes the time each operator has spent in each phase of an MCMC step, followed by the
+     * evaluation counts and times of the component likelihoods, to the provided print stream
+     *
+     * @param out      the print stream to write the profile to
+     * @param profiler the profiler of the chain that ran the schedule
+     * @param csvFile  write comma separated values rather than a formatted table
+     */
+    public static void showProfileAnalysis(PrintStream out, MarkovChainProfiler profiler, boolean csvFile) {
+        final OperatorSchedule schedule = profiler.getSchedule();
+        final MarkovChainProfiler.Phase[] phases = MarkovChainProfiler.Phase.values();
+
+        if (!csvFile) {
+            out.println();
+            out.println("Operator profile (ms)");
+
+            StringBuilder sb = new StringBuilder(formatter.formatToFieldWidth("Operator", 50));
+            sb.append(formatter.formatToFieldWidth("Count", 11));
+            for (MarkovChainProfiler.Phase phase : phases) {
+                sb.append(formatter.formatToFieldWidth(phase.toString(), 11));
+            }
+            sb.append(formatter.formatToFieldWidth("Total", 11));
+            sb.append(formatter.formatToFieldWidth("Total/Op", 11));
+            out.println(sb);
+        } else {
+            StringBuilder sb = new StringBuilder("Operator,Count");
+            for (MarkovChainProfiler.Phase phase : phases) {
+                sb.append(",").append(phase).append(" (ms)");
+            }
+            sb.append(",Total (ms),Total/Op (ms)");
+            out.println(sb);
+        }
+
+        for (int i = 0; i < schedule.getOperatorCount(); i++) {
+            final long count = profiler.getCount(i);
+            final double total = profiler.getTotalTime(i) / 1.0E6;
+
+            StringBuilder sb = new StringBuilder();
+            if (!csvFile) {
+                sb.append(formattedOperatorName(schedule.getOperator(i).getOperatorName()));
+                sb.append(formatter.formatToFieldWidth(Long.toString(count), 10)).append(" ");
+                for (MarkovChainProfiler.Phase phase : phases) {
+                    sb.append(formattedMillisString(profiler.getTime(i, phase) / 1.0E6, 0));
+                }
+                sb.append(formattedMillisString(total, 0));
+                sb.append(formattedMillisString(count > 0 ? total / count : 0.0, 4));
+            } else {
+                sb.append(schedule.getOperator(i).getOperatorName()).append(",").append(count);
+                for (MarkovChainProfiler.Phase phase : phases) {
+                    sb.append(",").append(formatter.formatDecimal(profiler.getTime(i, phase) / 1.0E6, 0));
+                }
+                sb.append(",").append(formatter.formatDecimal(total, 0));
+                sb.append(",").append(formatter.formatDecimal(count > 0 ? total / count : 0.0, 4));
+            }
+            out.println(sb);
+        }
+        out.println();
+
+        if (!csvFile) {
+            out.println("Likelihood profile (ms)");
+            out.println(formatter.formatToFieldWidth("Likelihood", 50) +
+                    formatter.formatToFieldWidth("Count", 11) +
+                    formatter.formatToFieldWidth("Time", 11) +
+                    formatter.formatToFieldWidth("Time/Eval", 11) +
+                    formatter.formatToFieldWidth("Calculations", 13));
+        } else {
+            out.println("Likelihood,Count,Time (ms),Time/Eval (ms),Calculations");
+        }
+
+        for (MarkovChainProfiler.LikelihoodProfile profile : profiler.getLikelihoodProfiles()) {
+            final double time = profile.time / 1.0E6;
+            final double timePerEvaluation = profile.evaluations > 0 ? time / profile.evaluations : 0.0;
+            final String calculations = profile.calculations >= 0 ? Long.toString(profile.calculations) : "";
+            if (!csvFile) {
+                StringBuilder name = new StringBuilder();
+                for (int j = 0; j < profile.depth; j++) {
+                    name.append("  ");
+                }
+                name.append(profile.name);
+                out.println(formattedOperatorName(name.toString())
+                        + formatter.formatToFieldWidth(Long.toString(profile.evaluations), 10) + " "
+                        + formattedMillisString(time, 0)
+                        + formattedMillisString(timePerEvaluation, 4)
+                        + formatter.formatToFieldWidth(calculations, 12));
+            } else {
+                out.println(profile.name
+                        + "," + profile.evaluations
+                        + "," + formatter.formatDecimal(time, 0)
+                        + "," + formatter.formatDecimal(timePerEvaluation, 4)
+                        + "," + calculations);
+            }
+        }
+        out.println();
+    }
+
+    private static String formattedMillisString(double time, int decimals) {
+        return formatter.formatToFieldWidth(formatter.formatDecimal(time, decimals), 10) + " ";
+    }
+
     private static String formattedOperatorName(String operatorName) {
         return formatter.formatToFieldWidth(operatorName, 50);
     }
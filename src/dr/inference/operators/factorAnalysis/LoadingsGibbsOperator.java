@@ -39,13 +39,13 @@ import dr.math.MathUtils;
 import dr.math.distributions.MultivariateNormalDistribution;
 import dr.math.distributions.NormalDistribution;
 import dr.math.matrixAlgebra.*;
+import dr.util.ComputeService;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Created with IntelliJ IDEA.
@@ -164,7 +164,7 @@ public class LoadingsGibbsOperator extends SimpleMCMCOperator implements PathDep
             int threads = numThreads;
 
 //                    Integer.parseInt(System.getProperty("thread.count"));
-            pool = Executors.newFixedThreadPool(threads);
+            pool = ComputeService.getPool("LoadingsGibbsOperator");
         }
         else{
             pool = null;
@@ -35,13 +35,13 @@ import dr.inference.operators.SimpleMCMCOperator;
 import dr.math.MathUtils;
 import dr.math.distributions.MultivariateNormalDistribution;
 import dr.math.matrixAlgebra.*;
+import dr.util.ComputeService;
 import dr.xml.Reportable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author Max R. Tolkoff
@@ -107,7 +107,7 @@ public class NewLoadingsGibbsOperator extends SimpleMCMCOperator implements Gibb
                 int dim = columnDimProvider.getColumnDim(i, adaptor.getNumberOfFactors());
                 drawCallers.add(new DrawCaller(i, new double[dim][dim], new double[dim], new double[dim]));
             }
-            pool = Executors.newFixedThreadPool(numThreads);
+            pool = ComputeService.getPool("NewLoadingsGibbsOperator");
         } else {
             pool = null;
             columnDimProvider.allocateStorage(precisionArray, meanMidArray, meanArray, adaptor.getNumberOfFactors());
@@ -178,7 +178,8 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
         double[] lastPosition = leapFrogEngine.getLastPosition();
         double[] currentPosition = leapFrogEngine.getInitialPosition();
         if (preconditionScheduler.shouldStoreSecant(lastGradient, lastPosition)) {
-            preconditioning.storeSecant(new WrappedVector.Raw(lastGradient), new WrappedVector.Raw(currentPosition));
+            // the engine reuses its gradient buffer so the secant needs its own copy
+            preconditioning.storeSecant(new WrappedVector.Raw(lastGradient.clone()), new WrappedVector.Raw(currentPosition));
         }
         preconditioning.updateMass();
     }
@@ -487,8 +488,10 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
         final double prop = getKineticEnergy(momentum) +
                 leapFrogEngine.getParameterLogJacobian();
 
+        final double[] gradient = getGradientBuffer();
+
         leapFrogEngine.updateMomentum(position, momentum.getBuffer(),
-                mask(gradientProvider.getGradientLogDensity(), mask), stepSize / 2);
+                getMaskedGradient(gradient), stepSize / 2);
 
 
         int nStepsThisLeap = getNumberOfSteps();
@@ -505,7 +508,7 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
 
                 try {
                     leapFrogEngine.updateMomentum(position, momentum.getBuffer(),
-                            mask(gradientProvider.getGradientLogDensity(), mask), stepSize);
+                            getMaskedGradient(gradient), stepSize);
                 } catch (ArithmeticException e) {
                     throw new NumericInstabilityException();
                 }
@@ -513,7 +516,7 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
         }
 
         leapFrogEngine.updateMomentum(position, momentum.getBuffer(),
-                mask(gradientProvider.getGradientLogDensity(), mask), stepSize / 2);
+                getMaskedGradient(gradient), stepSize / 2);
 
         final double res = getKineticEnergy(momentum) +
                 leapFrogEngine.getParameterLogJacobian();
@@ -521,6 +524,20 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
         return prop - res; //hasting ratio
     }
 
+    private double[] getGradientBuffer() {
+        if (gradientBuffer == null || gradientBuffer.length != gradientProvider.getDimension()) {
+            gradientBuffer = new double[gradientProvider.getDimension()];
+        }
+        return gradientBuffer;
+    }
+
+    private double[] getMaskedGradient(double[] gradient) {
+        gradientProvider.fillGradientLogDensity(gradient);
+        return mask(gradient, mask);
+    }
+
+    private double[] gradientBuffer;
+
     @Override
     protected double getAdaptableParameterValue() {
         return Math.log(stepSize);
@@ -767,6 +784,7 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
 
             final protected Transform transform;
             double[] unTransformedPosition;
+            private double[] transformedGradient;
 
             WithTransform(Parameter parameter, Transform transform,
                           InstabilityHandler instabilityHandler,
@@ -783,18 +801,23 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
 
             @Override
             public double[] getInitialPosition() {
-                unTransformedPosition = super.getInitialPosition();
-                return transform.transform(unTransformedPosition, 0, unTransformedPosition.length);
+                final int dim = parameter.getDimension();
+                if (unTransformedPosition == null || unTransformedPosition.length != dim) {
+                    unTransformedPosition = new double[dim];
+                    transformedGradient = new double[dim];
+                }
+                parameter.getParameterValues(unTransformedPosition);
+                return transform.transform(unTransformedPosition, 0, dim);
             }
 
             @Override
             public void updateMomentum(double[] position, double[] momentum, double[] gradient,
                                        double functionalStepSize) throws NumericInstabilityException {
 
-                gradient = transform.updateGradientLogDensity(gradient, unTransformedPosition,
-                        0, unTransformedPosition.length);
-                mask(gradient, mask);
-                super.updateMomentum(position, momentum, gradient, functionalStepSize);
+                transform.updateGradientLogDensity(gradient, unTransformedPosition,
+                        0, unTransformedPosition.length, transformedGradient);
+                mask(transformedGradient, mask);
+                super.updateMomentum(position, momentum, transformedGradient, functionalStepSize);
             }
 
             @Override
@@ -810,7 +833,7 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
 
             @Override
             public void setParameter(double[] position) {
-                unTransformedPosition = transform.inverse(position, 0, position.length);
+                transform.inverse(position, 0, position.length, unTransformedPosition);
                 super.setParameter(unTransformedPosition);
             }
 
@@ -855,7 +878,8 @@ public HamiltonianMonteCarloOperator(AdaptationMode mode, double weight,
     }
 
     public void updateGradient(WrappedVector gradient) {
-        double[] buffer = gradientProvider.getGradientLogDensity();
+        double[] buffer = getGradientBuffer();
+        gradientProvider.fillGradientLogDensity(buffer);
         for (int i = 0; i < buffer.length; i++) {
             gradient.set(i, buffer[i]);
         }
@@ -36,6 +36,7 @@ import dr.inference.operators.SimpleMCMCOperator;
 import dr.math.MathUtils;
 import dr.math.matrixAlgebra.WrappedVector;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 
 public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator, Loggable {
@@ -104,16 +105,13 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
         final double initialJointDensity = hmcProvider.getJointProbability(initialMomentum);
         double logSliceU = Math.log(getUniform()) + initialJointDensity;
 
-        TreeState trajectoryTree = new TreeState(initialPosition, initialMomentum.getBuffer(),
-                hmcProvider.getGradientProvider().getGradientLogDensity(), 1, true);
+        TreeState trajectoryTree = new TreeState(copyOf(initialPosition), copyOf(initialMomentum.getBuffer()),
+                copyOf(hmcProvider.getGradientProvider().getGradientLogDensity()), 1, true);
 
         int height = 0;
 
         while (trajectoryTree.flagContinue) {
-            double[] tmp = updateTrajectoryTree(trajectoryTree, height, logSliceU, initialJointDensity);
-            if (tmp != null) {
-                endPosition = tmp;
-            }
+            updateTrajectoryTree(trajectoryTree, height, logSliceU, initialJointDensity, endPosition);
 
             height++;
 
@@ -125,13 +123,13 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
             stepSizeInformation.update(m, trajectoryTree.cumAcceptProb, trajectoryTree.numAcceptProbStates);
             if (printStepsize) System.err.println("step size is " + stepSizeInformation.getStepSize());
         }
+        trajectoryTree.release();
+
         return endPosition;
     }
 
-    private double[] updateTrajectoryTree(TreeState trajectoryTree, int depth, double logSliceU,
-                                          double initialJointDensity) {
-
-        double[] endPosition = null;
+    private void updateTrajectoryTree(TreeState trajectoryTree, int depth, double logSliceU,
+                                      double initialJointDensity, double[] endPosition) {
 
         final double uniform1 = getUniform();
         int direction = (uniform1 < 0.5) ? -1 : 1;
@@ -145,13 +143,12 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
             final double uniform = getUniform();
             final double acceptProb = (double) nextTrajectoryTree.numNodes / (double) trajectoryTree.numNodes;
             if (uniform < acceptProb) {
-                endPosition = nextTrajectoryTree.getSample();
+                // copied as the merge may recycle the sample's array
+                System.arraycopy(nextTrajectoryTree.getSample(), 0, endPosition, 0, endPosition.length);
             }
         }
 
         trajectoryTree.mergeNextTree(nextTrajectoryTree, direction);
-
-        return endPosition;
     }
 
     private TreeState buildTree(double[] position, double[] momentum, double[] gradient, int direction,
@@ -170,9 +167,9 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
                                     double logSliceU, double stepSize, double initialJointDensity) {
         recordOneBaseCall();
         // Make deep copy of position and momentum
-        WrappedVector position = new WrappedVector.Raw(Arrays.copyOf(inPosition, inPosition.length));
-        WrappedVector momentum = new WrappedVector.Raw(Arrays.copyOf(inMomentum, inMomentum.length));
-        WrappedVector gradient = new WrappedVector.Raw(Arrays.copyOf(inGradient, inGradient.length));
+        WrappedVector position = new WrappedVector.Raw(copyOf(inPosition));
+        WrappedVector momentum = new WrappedVector.Raw(copyOf(inMomentum));
+        WrappedVector gradient = new WrappedVector.Raw(copyOf(inGradient));
 
         hmcProvider.setParameter(position.getBuffer());
 
@@ -217,6 +214,24 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
         return subtree;
     }
 
+    private double[] copyOf(double[] source) {
+        double[] copy = freeArrays.pollLast();
+        if (copy == null || copy.length != source.length) {
+            copy = new double[source.length];
+        }
+        System.arraycopy(source, 0, copy, 0, source.length);
+        return copy;
+    }
+
+    private void recycle(double[] array) {
+        for (double[] free : freeArrays) {
+            if (free == array) {
+                return;
+            }
+        }
+        freeArrays.add(array);
+    }
+
     private static boolean computeStopCriterion(boolean flagContinue, TreeState state) {
         return computeStopCriterion(flagContinue,
                 state.getPosition(1), state.getPosition(-1),
@@ -273,36 +288,23 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
                                                 double[] positionPlus, double[] positionMinus,
                                                 double[] momentumPlus, double[] momentumMinus) {
 
-        double[] positionDifference = subtractArray(positionPlus, positionMinus);
-
-        return flagContinue &&
-                getDotProduct(positionDifference, momentumMinus) >= 0 &&
-                getDotProduct(positionDifference, momentumPlus) >= 0;
-    }
-
-    private static double getDotProduct(double[] x, double[] y) {
-
-        assert (x.length == y.length);
-        final int dim = x.length;
-
-        double total = 0.0;
-        for (int i = 0; i < dim; i++) {
-            total += x[i] * y[i];
+        if (!flagContinue) {
+            return false;
         }
-        return total;
-    }
 
-    private static double[] subtractArray(double[] a, double[] b) {
+        assert (positionPlus.length == positionMinus.length);
+        final int dim = positionPlus.length;
 
-        assert (a.length == b.length);
-        final int dim = a.length;
-
-        double[] result = new double[dim];
+        // dot products with (positionPlus - positionMinus), without forming the difference
+        double totalMinus = 0.0;
+        double totalPlus = 0.0;
         for (int i = 0; i < dim; i++) {
-            result[i] = a[i] - b[i];
+            final double difference = positionPlus[i] - positionMinus[i];
+            totalMinus += difference * momentumMinus[i];
+            totalPlus += difference * momentumPlus[i];
         }
 
-        return result;
+        return totalMinus >= 0 && totalPlus >= 0;
     }
 
 
@@ -393,12 +395,28 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
 
         private void mergeNextTree(TreeState nextTree, int direction) {
 
+            final double[] oldPosition = getPosition(direction);
+            final double[] oldMomentum = getMomentum(direction);
+            final double[] oldGradient = getGradient(direction);
+            final double[] oldSample = getSample();
+
             setPosition(direction, nextTree.getPosition(direction));
             setMomentum(direction, nextTree.getMomentum(direction));
             setGradient(direction, nextTree.getGradient(direction));
 
             updateSample(nextTree);
 
+            // the replaced end, the replaced sample and the inner end of the next tree are no longer
+            // part of any trajectory, so their arrays can be reused by later base cases
+            releaseIfUnused(oldPosition);
+            releaseIfUnused(oldSample);
+            releaseIfUnused(oldMomentum);
+            releaseIfUnused(oldGradient);
+            releaseIfUnused(nextTree.getPosition(-direction));
+            releaseIfUnused(nextTree.getSample());
+            releaseIfUnused(nextTree.getMomentum(-direction));
+            releaseIfUnused(nextTree.getGradient(-direction));
+
             numNodes += nextTree.numNodes;
             flagContinue = computeStopCriterion(nextTree.flagContinue, this);
 
@@ -406,6 +424,28 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
             numAcceptProbStates += nextTree.numAcceptProbStates;
         }
 
+        private void release() {
+            for (int direction = -1; direction <= 1; direction += 2) {
+                recycle(getPosition(direction));
+                recycle(getMomentum(direction));
+                recycle(getGradient(direction));
+            }
+            recycle(getSample());
+        }
+
+        private void releaseIfUnused(double[] array) {
+            // the momentum and gradient in the middle slot are never read
+            for (int direction = -1; direction <= 1; direction += 2) {
+                if (array == getPosition(direction) || array == getMomentum(direction)
+                        || array == getGradient(direction)) {
+                    return;
+                }
+            }
+            if (array != getSample()) {
+                recycle(array);
+            }
+        }
+
         private void updateSample(TreeState nextTree) {
             double uniform = getUniform();
             if (nextTree.numNodes > 0
@@ -480,6 +520,7 @@ public class NoUTurnOperator extends SimpleMCMCOperator implements GibbsOperator
     }
 
     private ReversibleHMCProvider hmcProvider;
+    private final ArrayDeque<double[]> freeArrays = new ArrayDeque<>();
     private StepSize stepSizeInformation;
     private boolean adaptiveStepsize;
     private int adaptiveDelay;
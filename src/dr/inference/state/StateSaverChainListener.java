@@ -70,7 +70,13 @@ public class StateSaverChainListener implements MarkovChainListener {
      */
     @Override
     public void finished(long chainLength, MarkovChain markovChain) {
-        currentState(chainLength, markovChain,null);
+        if (isRepeating && writeState > 0 && markovChain.isStopped() && chainLength % writeState != 0) {
+            // the chain stopped early so save its final state as well
+            double lnL = markovChain.getCurrentScore();
+            stateSaver.saveState(markovChain, chainLength, lnL);
+        } else {
+            currentState(chainLength, markovChain, null);
+        }
     }
 
     private final long writeState;
@@ -0,0 +1,256 @@
+/*
+ * BatchMeansESS.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.trace;
+
+/**
+ * A streaming estimate of the effective sample size of a trace by the method of batch means. The
+ * values are summed in at most MAX_BATCHES consecutive batches; when these are all full, adjacent
+ * pairs are merged and the batch size doubles. Each value is added in constant time and the memory
+ * used is fixed so it can be updated during a run.
+ * <p>
+ * The ESS is the number of values times their variance divided by the batch size times the variance
+ * of the batch means. With fewer than MIN_BATCHES full batches the estimate is NaN. A fraction of
+ * the full batches can be discarded as burn-in and the batches also give the split-R-hat of one or
+ * more chains.
+ *
+ * @author Andrew Rambaut
+ */
+public class BatchMeansESS {
+
+    private static final int MAX_BATCHES = 128;
+    private static final int MIN_BATCHES = 8;
+
+    public BatchMeansESS() {
+    }
+
+    /**
+     * A copy of the current state of another estimator.
+     */
+    public BatchMeansESS(BatchMeansESS ess) {
+        count = ess.count;
+        mean = ess.mean;
+        sumOfSquares = ess.sumOfSquares;
+        shift = ess.shift;
+        System.arraycopy(ess.batchSums, 0, batchSums, 0, MAX_BATCHES);
+        System.arraycopy(ess.batchSquares, 0, batchSquares, 0, MAX_BATCHES);
+        fullBatches = ess.fullBatches;
+        batchSize = ess.batchSize;
+        batchSum = ess.batchSum;
+        batchSquare = ess.batchSquare;
+        batchCount = ess.batchCount;
+    }
+
+    /**
+     * Adds the next value of the trace.
+     */
+    public void add(double value) {
+        // Welford's running mean and variance
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        sumOfSquares += delta * (value - mean);
+
+        // the batches are summed relative to the first value so the sums of squares keep their precision
+        if (count == 1) {
+            shift = value;
+        }
+        batchSum += value - shift;
+        batchSquare += (value - shift) * (value - shift);
+        batchCount++;
+        if (batchCount == batchSize) {
+            batchSums[fullBatches] = batchSum;
+            batchSquares[fullBatches] = batchSquare;
+            fullBatches++;
+            batchSum = 0.0;
+            batchSquare = 0.0;
+            batchCount = 0;
+
+            if (fullBatches == MAX_BATCHES) {
+                for (int i = 0; i < MAX_BATCHES / 2; i++) {
+                    batchSums[i] = batchSums[i * 2] + batchSums[i * 2 + 1];
+                    batchSquares[i] = batchSquares[i * 2] + batchSquares[i * 2 + 1];
+                }
+                fullBatches = MAX_BATCHES / 2;
+                batchSize *= 2;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return (count > 1 ? sumOfSquares / (count - 1) : Double.NaN);
+    }
+
+    /**
+     * @return the variance of the mean of the trace times the number of values
+     */
+    public double getAsymptoticVariance() {
+        return getAsymptoticVariance(0);
+    }
+
+    private double getAsymptoticVariance(int firstBatch) {
+        final int batches = fullBatches - firstBatch;
+        if (batches < MIN_BATCHES) {
+            return Double.NaN;
+        }
+        double batchMean = 0.0;
+        for (int i = firstBatch; i < fullBatches; i++) {
+            batchMean += batchSums[i] / batchSize;
+        }
+        batchMean /= batches;
+
+        double variance = 0.0;
+        for (int i = firstBatch; i < fullBatches; i++) {
+            double delta = batchSums[i] / batchSize - batchMean;
+            variance += delta * delta;
+        }
+        variance /= (batches - 1);
+
+        return batchSize * variance;
+    }
+
+    /**
+     * @return the mean and variance of the values in the full batches from firstBatch to lastBatch - 1
+     */
+    private double[] getMeanAndVariance(int firstBatch, int lastBatch) {
+        double n = (double) (lastBatch - firstBatch) * batchSize;
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        for (int i = firstBatch; i < lastBatch; i++) {
+            sum += batchSums[i];
+            sumOfSquares += batchSquares[i];
+        }
+        return new double[]{shift + sum / n, (sumOfSquares - sum * sum / n) / (n - 1)};
+    }
+
+    private int getFirstBatch(double burnin) {
+        return (int) Math.ceil(burnin * fullBatches);
+    }
+
+    public double getStdErrorOfMean() {
+        return Math.sqrt(getAsymptoticVariance() / count);
+    }
+
+    /**
+     * @return the estimated ESS or NaN if there are too few values or they are constant
+     */
+    public double getESS() {
+        double asymptoticVariance = getAsymptoticVariance();
+        if (Double.isNaN(asymptoticVariance) || asymptoticVariance == 0.0) {
+            return Double.NaN;
+        }
+        return count * getVariance() / asymptoticVariance;
+    }
+
+    /**
+     * @param burnin the fraction of the full batches to discard
+     * @return the estimated ESS of the values after the burn-in or NaN if there are too few values
+     * or they are constant
+     */
+    public double getESS(double burnin) {
+        int firstBatch = getFirstBatch(burnin);
+        double asymptoticVariance = getAsymptoticVariance(firstBatch);
+        if (Double.isNaN(asymptoticVariance) || asymptoticVariance == 0.0) {
+            return Double.NaN;
+        }
+        double variance = getMeanAndVariance(firstBatch, fullBatches)[1];
+        return (double) (fullBatches - firstBatch) * batchSize * variance / asymptoticVariance;
+    }
+
+    /**
+     * Calculates the split-R-hat (Gelman et al. 2013, Bayesian Data Analysis, 3rd edition) of one or
+     * more chains. After the burn-in, the full batches of each chain are split into two halves and
+     * the variance of the means of all the halves is compared with the variance within them.
+     *
+     * @param chains the estimators of the chains
+     * @param burnin the fraction of the full batches of each chain to discard
+     * @return the split-R-hat or NaN if any chain has too few values
+     */
+    public static double getSplitRHat(BatchMeansESS[] chains, double burnin) {
+        final int sequenceCount = chains.length * 2;
+        double[] means = new double[sequenceCount];
+        double withinVariance = 0.0;
+        double n = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < chains.length; i++) {
+            BatchMeansESS chain = chains[i];
+            int half = (chain.fullBatches - chain.getFirstBatch(burnin)) / 2;
+            if (half < MIN_BATCHES / 2) {
+                return Double.NaN;
+            }
+            int middle = chain.fullBatches - half;
+            double[] first = chain.getMeanAndVariance(middle - half, middle);
+            double[] second = chain.getMeanAndVariance(middle, chain.fullBatches);
+            means[i * 2] = first[0];
+            means[i * 2 + 1] = second[0];
+            withinVariance += first[1] + second[1];
+            n = Math.min(n, (double) half * chain.batchSize);
+        }
+        withinVariance /= sequenceCount;
+        if (withinVariance <= 0.0) {
+            return Double.NaN;
+        }
+
+        double meanOfMeans = 0.0;
+        for (double m : means) {
+            meanOfMeans += m;
+        }
+        meanOfMeans /= sequenceCount;
+        double varianceOfMeans = 0.0;
+        for (double m : means) {
+            varianceOfMeans += (m - meanOfMeans) * (m - meanOfMeans);
+        }
+        varianceOfMeans /= (sequenceCount - 1);
+
+        double pooledVariance = (n - 1) / n * withinVariance + varianceOfMeans;
+        return Math.sqrt(pooledVariance / withinVariance);
+    }
+
+    private long count = 0;
+    private double mean = 0.0;
+    private double sumOfSquares = 0.0;
+
+    private double shift = 0.0;
+
+    private final double[] batchSums = new double[MAX_BATCHES];
+    private final double[] batchSquares = new double[MAX_BATCHES];
+    private int fullBatches = 0;
+    private long batchSize = 1;
+
+    private double batchSum = 0.0;
+    private double batchSquare = 0.0;
+    private long batchCount = 0;
+}
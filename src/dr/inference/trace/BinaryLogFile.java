@@ -0,0 +1,417 @@
+/*
+ * BinaryLogFile.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.inference.trace;
+
+import dr.inference.loggers.BinaryLogFormatter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reader for the binary, column oriented logs written by BinaryLogFormatter. The file is indexed
+ * when it is opened and then memory-mapped so that a column can be decoded without reading the
+ * others. A block that has only been partly written (i.e., a log that is still being written)
+ * is ignored.
+ *
+ * @author Andrew Rambaut
+ */
+public class BinaryLogFile implements Closeable {
+
+    public enum ColumnType {
+        INTEGER,
+        REAL,
+        STRING
+    }
+
+    // the largest region that is mapped in one piece
+    private static final long MAX_MAPPED_SIZE = 1L << 28;
+
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 8;
+
+    /**
+     * @return true if the file starts with the magic number of a binary log
+     */
+    public static boolean isBinaryLog(File file) {
+        if (!file.isFile() || file.length() < 8) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == BinaryLogFormatter.MAGIC;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    public BinaryLogFile(File file) throws IOException {
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        readFully(header, 0, 8);
+        if (header.getInt() != BinaryLogFormatter.MAGIC) {
+            throw new IOException("File, " + file.getName() + ", is not a binary log");
+        }
+        int version = header.getInt();
+        if (version > BinaryLogFormatter.VERSION) {
+            throw new IOException("Binary log, " + file.getName() + ", was written by a newer version (" + version + ")");
+        }
+
+        // index the records
+        List<long[]> blockPositions = new ArrayList<long[]>();
+        long position = 8;
+        while (position < size) {
+            byte record = readByte(position);
+            position += 1;
+            if (record == BinaryLogFormatter.HEADING || record == BinaryLogFormatter.LABELS) {
+                String[] strings;
+                if (record == BinaryLogFormatter.LABELS) {
+                    if (position + 4 > size) break;
+                    readFully(header, position, 4);
+                    position += 4;
+                    strings = new String[header.getInt()];
+                } else {
+                    strings = new String[1];
+                }
+                boolean complete = true;
+                for (int i = 0; i < strings.length && complete; i++) {
+                    if (position + 4 > size) {
+                        complete = false;
+                        break;
+                    }
+                    readFully(header, position, 4);
+                    int length = header.getInt();
+                    if (position + 4 + length > size) {
+                        complete = false;
+                        break;
+                    }
+                    ByteBuffer bytes = ByteBuffer.allocate(length);
+                    channel.read(bytes, position + 4);
+                    strings[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+                    position += 4 + length;
+                }
+                if (!complete) break;
+                if (record == BinaryLogFormatter.LABELS) {
+                    if (labels != null && rowCount > 0) {
+                        throw new IOException("Binary log, " + file.getName() + ", has more than one set of column labels");
+                    }
+                    labels = strings;
+                } else {
+                    headings.add(strings[0]);
+                }
+            } else if (record == BinaryLogFormatter.BLOCK) {
+                if (position + BLOCK_HEADER_SIZE > size) break;
+                readFully(header, position, BLOCK_HEADER_SIZE);
+                int rows = header.getInt();
+                int columns = header.getInt();
+                long length = header.getLong();
+                position += BLOCK_HEADER_SIZE;
+                if (position + length > size) break;
+                if (labels == null || columns != labels.length) {
+                    throw new IOException("Binary log, " + file.getName() + ", has a block with " + columns +
+                            " columns but " + (labels == null ? 0 : labels.length) + " labels");
+                }
+                blockPositions.add(new long[] { position, length, rows, rowCount });
+                rowCount += rows;
+                position += length;
+            } else {
+                throw new IOException("Binary log, " + file.getName() + ", has an unknown record type (" + record + ")");
+            }
+        }
+
+        if (labels == null) {
+            labels = new String[0];
+        }
+
+        // map the blocks in as few regions as possible and find where each column starts
+        blocks = new Block[blockPositions.size()];
+        MappedByteBuffer region = null;
+        long regionStart = 0;
+        long regionEnd = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            long[] block = blockPositions.get(b);
+            long start = block[0];
+            long end = block[0] + block[1];
+            if (region == null || end > regionEnd) {
+                regionStart = start;
+                regionEnd = start;
+                // extend the region over as many whole blocks as will fit
+                for (int c = b; c < blocks.length; c++) {
+                    long[] next = blockPositions.get(c);
+                    long nextEnd = next[0] + next[1];
+                    if (nextEnd - regionStart > MAX_MAPPED_SIZE && c > b) {
+                        break;
+                    }
+                    regionEnd = nextEnd;
+                }
+                region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+            }
+            blocks[b] = new Block(region, (int) (start - regionStart), (int) block[2], labels.length, (int) block[3]);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    private byte readByte(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        readFully(buffer, position, 1);
+        return buffer.get();
+    }
+
+    /**
+     * @return the heading lines (those starting with '#' in a text log)
+     */
+    public List<String> getHeadings() {
+        return headings;
+    }
+
+    /**
+     * @return the column labels, the first being the state
+     */
+    public String[] getLabels() {
+        return labels;
+    }
+
+    public int getColumnCount() {
+        return labels.length;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the type of the column over the whole file
+     */
+    public ColumnType getColumnType(int column) {
+        ColumnType type = ColumnType.INTEGER;
+        for (Block block : blocks) {
+            byte blockType = block.types[column];
+            if (blockType == BinaryLogFormatter.STRING_COLUMN) {
+                return ColumnType.STRING;
+            } else if (blockType == BinaryLogFormatter.DOUBLE_COLUMN) {
+                type = ColumnType.REAL;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * @return the state numbers (the first column)
+     */
+    public long[] getStates() {
+        long[] states = new long[rowCount];
+        for (Block block : blocks) {
+            ByteBuffer buffer = block.column(0);
+            for (int i = 0; i < block.rows; i++) {
+                states[block.firstRow + i] = (long) block.getNumber(buffer, 0);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Decode a numerical column.
+     *
+     * @throws NumberFormatException if the column contains values that are not numbers
+     */
+    public double[] getValues(int column) {
+        double[] values = new double[rowCount];
+        for (Block block : blocks) {
+            ByteBuffer buffer = block.column(column);
+            if (block.types[column] == BinaryLogFormatter.STRING_COLUMN) {
+                for (int i = 0; i < block.rows; i++) {
+                    values[block.firstRow + i] = Double.parseDouble(readString(buffer));
+                }
+            } else {
+                for (int i = 0; i < block.rows; i++) {
+                    values[block.firstRow + i] = block.getNumber(buffer, column);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Decode a column as strings (as they would appear in a text log).
+     */
+    public String[] getStrings(int column) {
+        String[] values = new String[rowCount];
+        for (Block block : blocks) {
+            ByteBuffer buffer = block.column(column);
+            for (int i = 0; i < block.rows; i++) {
+                values[block.firstRow + i] = block.getString(buffer, column);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get one row as strings. The rows of the most recently used block are cached so that
+     * reading the rows in order decodes each block once.
+     */
+    public String[] getRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        if (currentRows == null || row < currentFirstRow || row >= currentFirstRow + currentRows.length) {
+            int lo = 0;
+            int hi = blocks.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (blocks[mid].firstRow <= row) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            Block block = blocks[lo];
+            currentRows = new String[block.rows][labels.length];
+            for (int j = 0; j < labels.length; j++) {
+                ByteBuffer buffer = block.column(j);
+                for (int i = 0; i < block.rows; i++) {
+                    currentRows[i][j] = block.getString(buffer, j);
+                }
+            }
+            currentFirstRow = block.firstRow;
+        }
+        return currentRows[row - currentFirstRow];
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The location of a block within a mapped region and the type and offset of each column.
+     */
+    private static class Block {
+        Block(MappedByteBuffer region, int offset, int rows, int columns, int firstRow) {
+            this.region = region;
+            this.rows = rows;
+            this.firstRow = firstRow;
+            this.types = new byte[columns];
+            this.offsets = new int[columns];
+
+            ByteBuffer buffer = region.duplicate();
+            int position = offset;
+            for (int j = 0; j < columns; j++) {
+                byte type = buffer.get(position);
+                types[j] = type;
+                offsets[j] = position + 1;
+                switch (type) {
+                    case BinaryLogFormatter.LONG_COLUMN:
+                    case BinaryLogFormatter.DOUBLE_COLUMN:
+                        position += 1 + 8 * rows;
+                        break;
+                    case BinaryLogFormatter.INT_COLUMN:
+                        position += 1 + 4 * rows;
+                        break;
+                    case BinaryLogFormatter.STRING_COLUMN:
+                        position += 1 + 4 + buffer.getInt(position + 1);
+                        offsets[j] += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown column type in binary log (" + type + ")");
+                }
+            }
+        }
+
+        /**
+         * @return a buffer positioned at the start of the column
+         */
+        ByteBuffer column(int column) {
+            ByteBuffer buffer = region.duplicate();
+            buffer.position(offsets[column]);
+            return buffer;
+        }
+
+        double getNumber(ByteBuffer buffer, int column) {
+            switch (types[column]) {
+                case BinaryLogFormatter.LONG_COLUMN:
+                    return buffer.getLong();
+                case BinaryLogFormatter.INT_COLUMN:
+                    return buffer.getInt();
+                case BinaryLogFormatter.DOUBLE_COLUMN:
+                    return buffer.getDouble();
+                default:
+                    return Double.parseDouble(readString(buffer));
+            }
+        }
+
+        String getString(ByteBuffer buffer, int column) {
+            switch (types[column]) {
+                case BinaryLogFormatter.LONG_COLUMN:
+                    return Long.toString(buffer.getLong());
+                case BinaryLogFormatter.INT_COLUMN:
+                    return Integer.toString(buffer.getInt());
+                case BinaryLogFormatter.DOUBLE_COLUMN:
+                    return Double.toString(buffer.getDouble());
+                default:
+                    return readString(buffer);
+            }
+        }
+
+        final MappedByteBuffer region;
+        final int rows;
+        final int firstRow;
+        final byte[] types;
+        final int[] offsets;
+    }
+
+    private final FileChannel channel;
+
+    private final List<String> headings = new ArrayList<String>();
+    private String[] labels = null;
+    private int rowCount = 0;
+    private final Block[] blocks;
+
+    private String[][] currentRows = null;
+    private int currentFirstRow = 0;
+}
@@ -126,8 +126,7 @@ public class LogFileTraces extends AbstractTraceList {
      */
     public int getTraceIndex(String name) {
         for (int i = 0; i < traces.size(); i++) {
-            Trace trace = getTrace(i);
-            if (name.equals(trace.getName())) {
+            if (name.equals(getTraceName(i))) {
                 return i;
             }
         }
@@ -138,6 +137,9 @@ public class LogFileTraces extends AbstractTraceList {
      * @return the name of the trace with the given index
      */
     public String getTraceName(int index) {
+        if (binaryLog != null) {
+            return binaryLog.getLabels()[index + 1];
+        }
         return getTrace(index).getName();
     }
 
@@ -146,13 +148,19 @@ public class LogFileTraces extends AbstractTraceList {
      * @return the trace for a given index
      */
     public Trace getTrace(int index) {
-        return traces.get(index);
+        Trace trace = traces.get(index);
+        if (trace == null) {
+            trace = loadBinaryTrace(index);
+        }
+        return trace;
     }
 
     public void setBurnIn(long burnin) {
         this.burnIn = burnin;
         for (Trace trace : traces) {
-            trace.setTraceStatistics(null);
+            if (trace != null) {
+                trace.setTraceStatistics(null);
+            }
         }
     }
 
@@ -222,6 +230,10 @@ public class LogFileTraces extends AbstractTraceList {
      * @throws IOException
      */
     public void loadTraces(File file) throws TraceException, IOException {
+        if (BinaryLogFile.isBinaryLog(file)) {
+            loadBinaryTraces(file);
+            return;
+        }
         final Reader reader = new FileReader(file);
         loadTraces(reader);
         reader.close();
@@ -362,6 +374,89 @@ public class LogFileTraces extends AbstractTraceList {
         validateTraceType(tokens);
         validateUniqueValues();
     }
+
+    /**
+     * Read the state numbers and trace names of a binary log. The traces themselves are
+     * only decoded from the memory-mapped file when they are first asked for.
+     *
+     * @param file <code>File</code>
+     * @throws TraceException
+     * @throws IOException
+     */
+    private void loadBinaryTraces(File file) throws TraceException, IOException {
+        binaryLog = new BinaryLogFile(file);
+
+        String[] labels = binaryLog.getLabels();
+        if (labels.length == 0) {
+            throw new TraceException("Trace file is empty.");
+        }
+        for (int i = 1; i < labels.length; i++) {
+            traces.add(null);
+        }
+
+        long[] states = binaryLog.getStates();
+        for (int i = 0; i < states.length; i++) {
+            long state = states[i];
+            if (i == 0 && state == 1) {
+                // MrBayes puts 1 as the first state, BEAST puts 0
+                state = 0;
+            }
+            if (!addState(state, i + 1)) {
+                throw new TraceException("State " + state + " is not consistent with previous spacing (Row " +
+                        (i + 1) + ")");
+            }
+        }
+
+        if (states.length == 0)
+            throw new TraceException("Incorrect file format, no sample is found !");
+
+        burnIn =  lastState / 10;
+
+        if (lastState < 0)
+            lastState = firstState;
+        if (stepSize < 0 && lastState > 0)
+            stepSize = lastState;
+    }
+
+    /**
+     * Decode one trace from a binary log. The column types are known so this follows the
+     * same rules as the text reader without having to re-check the values.
+     */
+    private synchronized Trace loadBinaryTrace(int index) {
+        Trace trace = traces.get(index);
+        if (trace != null) {
+            return trace;
+        }
+
+        int column = index + 1;
+        String name = binaryLog.getLabels()[column];
+        switch (binaryLog.getColumnType(column)) {
+            case STRING:
+                trace = new Trace(name, TraceType.CATEGORICAL);
+                for (String value : binaryLog.getStrings(column)) {
+                    trace.add(value.trim());
+                }
+                break;
+            case INTEGER:
+                trace = new Trace(name, TraceType.INTEGER);
+                for (double value : binaryLog.getValues(column)) {
+                    trace.add(value);
+                }
+                if (trace.getUniqueValueCount() > MAX_UNIQUE_VALUE) {
+                    trace.setTraceType(TraceType.REAL);
+                }
+                break;
+            default:
+                trace = new Trace(name, TraceType.REAL);
+                for (double value : binaryLog.getValues(column)) {
+                    trace.add(value);
+                }
+        }
+
+        traces.set(index, trace);
+        return trace;
+    }
+
     public static final int MIN_SAMPLE = 5; // used in StatisticsModel
 
     private final int MAX_UNIQUE_VALUE = 200;
@@ -564,6 +659,8 @@ public class LogFileTraces extends AbstractTraceList {
     protected final String name;
 
     private final List<Trace> traces = new ArrayList<Trace>();
+    // for a binary log, the traces are null until they are decoded from this
+    private BinaryLogFile binaryLog = null;
 
     private long burnIn = -1;
     private long firstState = -1;
@@ -27,6 +27,8 @@
 
 package dr.inference.trace;
 
+import dr.math.FastFourierTransform;
+
 import java.util.List;
 import java.util.Map;
 
@@ -88,6 +90,9 @@ public class TraceCorrelation extends TraceDistribution {
 
     private static final int MAX_LAG = 2000;
 
+    // the number of lags calculated directly before the rest are calculated by FFT
+    private static final int DIRECT_LAGS = 64;
+
     private void analyseCorrelation(List<Double> values, long stepSize) {
 //        this.values = values; // move to TraceDistribution(T[] values)
 
@@ -137,15 +142,27 @@ public class TraceCorrelation extends TraceDistribution {
         //double assVarCor = 1.0;
         //double del1, del2;
 
+        boolean useFFT = false;
+
         for (int lag = 0; lag < maxLag; lag++) {
-            for (int j = 0; j < samples - lag; j++) {
-                final double del1 = values[j] - mean;
-                final double del2 = values[j + lag] - mean;
-                gammaStat[lag] += (del1 * del2);
-                //varGammaStat[lag] += (del1*del1*del2*del2);
+            if (lag == DIRECT_LAGS) {
+                // the autocorrelation is decaying slowly so calculate the remaining lags in
+                // O(n log n) rather than O(n) each
+                double[] autoCovariance = getAutoCovariance(values, mean, maxLag);
+                System.arraycopy(autoCovariance, lag, gammaStat, lag, maxLag - lag);
+                useFFT = true;
             }
 
-            gammaStat[lag] /= ((double) (samples - lag));
+            if (!useFFT) {
+                for (int j = 0; j < samples - lag; j++) {
+                    final double del1 = values[j] - mean;
+                    final double del2 = values[j + lag] - mean;
+                    gammaStat[lag] += (del1 * del2);
+                    //varGammaStat[lag] += (del1*del1*del2*del2);
+                }
+
+                gammaStat[lag] /= ((double) (samples - lag));
+            }
             //varGammaStat[lag] /= ((double) samples-lag);
             //varGammaStat[lag] -= (gammaStat[0] * gammaStat[0]);
 
@@ -190,4 +207,40 @@ public class TraceCorrelation extends TraceDistribution {
 //        minEqualToMax = true;
     }
 
+    /**
+     * Calculates the autocovariances of the values at lags 0 to maxLag - 1 by FFT (as the inverse
+     * transform of the power spectrum of the centred values). The values are padded with zeros so
+     * the circular correlation doesn't wrap around for these lags.
+     *
+     * @return the autocovariance at each lag (divided by the number of pairs of values)
+     */
+    static double[] getAutoCovariance(double[] values, double mean, int maxLag) {
+        final int samples = values.length;
+
+        int length = 1;
+        while (length < samples + maxLag) {
+            length <<= 1;
+        }
+
+        // interleaved real and imaginary parts
+        double[] data = new double[length * 2];
+        for (int i = 0; i < samples; i++) {
+            data[i * 2] = values[i] - mean;
+        }
+
+        FastFourierTransform.fft(data, length, false);
+        for (int i = 0; i < length; i++) {
+            data[i * 2] = data[i * 2] * data[i * 2] + data[i * 2 + 1] * data[i * 2 + 1];
+            data[i * 2 + 1] = 0.0;
+        }
+        FastFourierTransform.fft(data, length, true);
+
+        double[] autoCovariance = new double[maxLag];
+        for (int lag = 0; lag < maxLag; lag++) {
+            // the inverse transform isn't scaled
+            autoCovariance[lag] = data[lag * 2] / length / (samples - lag);
+        }
+        return autoCovariance;
+    }
+
 }
\ No newline at end of file
@@ -27,8 +27,13 @@
 
 package dr.inferencexml;
 
+import dr.inference.loggers.LogColumn;
+import dr.inference.loggers.Loggable;
 import dr.inference.loggers.Logger;
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.NumberColumn;
 import dr.inference.markovchain.MarkovChain;
+import dr.inference.mcmc.ConvergenceMonitor;
 import dr.inference.mcmc.MCMC;
 import dr.inference.mcmc.MCMCOptions;
 import dr.inference.model.CompoundLikelihood;
@@ -109,6 +114,11 @@ public class MCMCParser extends AbstractXMLObjectParser {
 
         int minOperatorCountForFullEvaluation = xo.getAttribute(MIN_OPS_EVALUATIONS, 1);
 
+        boolean useEarlyRejection = xo.getAttribute(EARLY_REJECTION, false);
+        if (System.getProperty(MarkovChain.EARLY_REJECTION) != null) {
+            useEarlyRejection = Boolean.parseBoolean(System.getProperty(MarkovChain.EARLY_REJECTION));
+        }
+
         MCMCOptions options = new MCMCOptions(chainLength,
                 fullEvaluationCount,
                 minOperatorCountForFullEvaluation,
@@ -177,13 +187,31 @@ public class MCMCParser extends AbstractXMLObjectParser {
                 "\n  chain length = " + options.getChainLength() +
                 "\n  operator adaption = " + options.useAdaptation() +
                 (options.useAdaptation() ? "\n  adaptation delayed for " + options.getAdaptationDelay() + " steps" : "") +
-                (options.getFullEvaluationCount() == 0 ? "\n  full evaluation test off" : "")
+                (options.getFullEvaluationCount() == 0 ? "\n  full evaluation test off" : "") +
+                (useEarlyRejection ? "\n  early rejection on" : "")
         );
 
         mcmc.init(options, likelihood, opsched, loggerArray);
 
 
         MarkovChain mc = mcmc.getMarkovChain();
+
+        try {
+            mc.setEarlyRejection(useEarlyRejection);
+
+            XMLObject cxo = xo.getChild(DELAYED_ACCEPTANCE);
+            if (cxo != null) {
+                Likelihood surrogate = (Likelihood) cxo.getElementFirstChild(SURROGATE);
+                Likelihood approximated = (Likelihood) cxo.getElementFirstChild(APPROXIMATES);
+                surrogate.setUsed();
+                mc.setDelayedAcceptance(surrogate, approximated);
+
+                java.util.logging.Logger.getLogger("dr.inference").info("  delayed acceptance using " +
+                        surrogate.getId() + " as a surrogate for " + approximated.getId());
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new XMLParseException(iae.getMessage());
+        }
         double initialScore = mc.getCurrentScore();
 
         if (initialScore == Double.NEGATIVE_INFINITY) {
@@ -196,12 +224,68 @@ public class MCMCParser extends AbstractXMLObjectParser {
             throw new IllegalArgumentException(message);
         }
 
+        if (xo.hasChildNamed(CONVERGENCE)) {
+            mcmc.setConvergenceMonitor(parseConvergenceMonitor(xo.getChild(CONVERGENCE), loggerArray, options.getChainLength()));
+        }
+
         if (!xo.getAttribute(SPAWN, true))
             mcmc.setSpawnable(false);
 
         return mcmc;
     }
 
+    /**
+     * Parse the convergence element which gives the targets for stopping the chain early.
+     */
+    private ConvergenceMonitor parseConvergenceMonitor(XMLObject cxo, Logger[] loggers, long chainLength)
+            throws XMLParseException {
+
+        // by default the columns of the largest log are monitored as often as it logs
+        MCLogger largestLogger = MCLogger.getLargestLogger(loggers);
+
+        List<NumberColumn> columns = new ArrayList<NumberColumn>();
+        for (int i = 0; i < cxo.getChildCount(); i++) {
+            if (cxo.getChild(i) instanceof Loggable) {
+                for (LogColumn column : ((Loggable) cxo.getChild(i)).getColumns()) {
+                    if (column instanceof NumberColumn) {
+                        columns.add((NumberColumn) column);
+                    }
+                }
+            }
+        }
+        if (columns.isEmpty() && largestLogger != null) {
+            for (int i = 0; i < largestLogger.getColumnCount(); i++) {
+                if (largestLogger.getColumn(i) instanceof NumberColumn) {
+                    columns.add((NumberColumn) largestLogger.getColumn(i));
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new XMLParseException("The " + CONVERGENCE + " element has no numerical columns to monitor");
+        }
+
+        long sampleEvery = cxo.getAttribute(SAMPLE_EVERY, largestLogger != null ? largestLogger.getLogEvery() : 1000L);
+        long checkEvery = cxo.getAttribute(CHECK_EVERY, Math.max(chainLength / 100, sampleEvery));
+        double targetESS = cxo.getAttribute(TARGET_ESS, DEFAULT_TARGET_ESS);
+        double targetRHat = cxo.getAttribute(TARGET_RHAT, Double.NaN);
+        double burnin = cxo.getAttribute(BURNIN, DEFAULT_CONVERGENCE_BURNIN);
+        String group = cxo.hasAttribute(GROUP) ? cxo.getStringAttribute(GROUP) : null;
+
+        try {
+            ConvergenceMonitor monitor = new ConvergenceMonitor(columns, sampleEvery, checkEvery,
+                    targetESS, targetRHat, burnin, group);
+
+            java.util.logging.Logger.getLogger("dr.inference").info("  stopping when the ESS of " + columns.size() +
+                    " columns reaches " + targetESS +
+                    (!Double.isNaN(targetRHat) ? " and their split-R-hat is below " + targetRHat : "") +
+                    " (checked every " + checkEvery + " states)");
+
+            return monitor;
+        } catch (IllegalArgumentException iae) {
+            throw new XMLParseException(iae.getMessage());
+        }
+    }
+
     /**
      * Parse the SMC variant of MCMC.
      * @param xo the XML object
@@ -302,6 +386,22 @@ public class MCMCParser extends AbstractXMLObjectParser {
             AttributeRule.newBooleanRule(SPAWN, true),
             AttributeRule.newStringRule(NAME, true),
             AttributeRule.newStringRule(OPERATOR_ANALYSIS, true),
+            AttributeRule.newBooleanRule(EARLY_REJECTION, true),
+            new ElementRule(DELAYED_ACCEPTANCE, new XMLSyntaxRule[]{
+                    new ElementRule(SURROGATE, Likelihood.class,
+                            "A cheap approximation to the approximated likelihood"),
+                    new ElementRule(APPROXIMATES, Likelihood.class,
+                            "An expensive component of the posterior that is only evaluated for proposals accepted using the surrogate")
+            }, true),
+            new ElementRule(CONVERGENCE, new XMLSyntaxRule[]{
+                    AttributeRule.newDoubleRule(TARGET_ESS, true, "The ESS that every monitored column must reach (default 200)"),
+                    AttributeRule.newDoubleRule(TARGET_RHAT, true, "The largest split-R-hat allowed for any monitored column"),
+                    AttributeRule.newLongIntegerRule(CHECK_EVERY, true, "The number of states between checks (default 1% of the chain length)"),
+                    AttributeRule.newLongIntegerRule(SAMPLE_EVERY, true, "The number of states between samples (default that of the largest log)"),
+                    AttributeRule.newDoubleRule(BURNIN, true, "The fraction of the samples to discard (default 0.1)"),
+                    AttributeRule.newStringRule(GROUP, true, "The name shared by replicate chains to be compared by R-hat"),
+                    new ElementRule(Loggable.class, "The columns to monitor (default all those of the largest log)", 0, Integer.MAX_VALUE)
+            }, true),
             new ElementRule(OperatorSchedule.class),
             new ElementRule(Likelihood.class),
             new ElementRule(Logger.class, 1, Integer.MAX_VALUE),
@@ -324,7 +424,20 @@ public class MCMCParser extends AbstractXMLObjectParser {
     public static final String SPAWN = "spawn";
     public static final String OPERATOR_ANALYSIS = "operatorAnalysis";
     public static final String OPERATOR_ANALYSIS_FORMAT = "format";
+    public static final String EARLY_REJECTION = "earlyRejection";
+    public static final String DELAYED_ACCEPTANCE = "delayedAcceptance";
+    public static final String SURROGATE = "surrogate";
+    public static final String APPROXIMATES = "approximates";
     public static final long DEFAULT_FULL_EVALUATION_COUNT = 1000;
+    public static final String CONVERGENCE = "convergence";
+    public static final String TARGET_ESS = "targetESS";
+    public static final String TARGET_RHAT = "targetRHat";
+    public static final String CHECK_EVERY = "checkEvery";
+    public static final String SAMPLE_EVERY = "sampleEvery";
+    public static final String BURNIN = "burnin";
+    public static final String GROUP = "group";
+    public static final double DEFAULT_TARGET_ESS = 200.0;
+    public static final double DEFAULT_CONVERGENCE_BURNIN = 0.1;
 
 
 }
@@ -28,6 +28,7 @@
 package dr.inferencexml.loggers;
 
 import dr.app.beast.BeastVersion;
+import dr.app.checkpoint.BeastCheckpointer;
 import dr.inference.loggers.*;
 import dr.math.MathUtils;
 import dr.math.matrixAlgebra.SymmetricMatrix;
@@ -37,6 +38,8 @@ import dr.util.Property;
 import dr.xml.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
 
@@ -56,8 +59,10 @@ public class LoggerParser extends AbstractXMLObjectParser {
     public static final String TAB = "tab";
     public static final String HTML = "html";
     public static final String PRETTY = "pretty";
+    public static final String BINARY = "binary";
     public static final String LOG_EVERY = "logEvery";
     public static final String ALLOW_OVERWRITE_LOG = "overwrite";
+    public static final String ASYNCHRONOUS = "asynchronous";
 
     public static final String COLUMNS = "columns";
     public static final String COLUMN = "column";
@@ -78,9 +83,28 @@ public class LoggerParser extends AbstractXMLObjectParser {
         // You must say how often you want to log
         final int logEvery = xo.getIntegerAttribute(LOG_EVERY);
 
-        final PrintWriter pw = getLogFile(xo, getParserName());
-
-        final LogFormatter formatter = new TabDelimitedFormatter(pw);
+        final LogFormatter formatter;
+        if (xo.getAttribute(FORMAT, TAB).equals(BINARY)) {
+            if (!xo.hasAttribute(FILE_NAME)) {
+                throw new XMLParseException("A binary log requires a " + FILE_NAME + " attribute");
+            }
+            // a run resumed from a checkpoint adds to its binary logs rather than replacing them
+            final boolean resuming = System.getProperty(BeastCheckpointer.LOAD_STATE_FILE) != null;
+            final File logFile = (resuming ? XMLParser.getFileHandle(xo, FILE_NAME) : XMLParser.getLogFile(xo, FILE_NAME));
+            try {
+                if (resuming) {
+                    formatter = new BinaryLogFormatter(logFile, BinaryLogFormatter.DEFAULT_BLOCK_SIZE);
+                } else {
+                    formatter = new BinaryLogFormatter(new FileOutputStream(logFile));
+                }
+            } catch (IOException ioe) {
+                throw new XMLParseException("File '" + logFile.getAbsolutePath() +
+                        "' can not be opened for " + getParserName() + " element.");
+            }
+        } else {
+            final PrintWriter pw = getLogFile(xo, getParserName());
+            formatter = new TabDelimitedFormatter(pw);
+        }
 
         boolean performanceReport = false;
 
@@ -92,6 +116,10 @@ public class LoggerParser extends AbstractXMLObjectParser {
         // added a performance measurement delay to avoid the full evaluation period.
         final MCLogger logger = new MCLogger(formatter, logEvery, performanceReport, 10000);
 
+        if (xo.hasAttribute(FILE_NAME)) {
+            logger.setAsynchronous(xo.getAttribute(ASYNCHRONOUS, Boolean.getBoolean(MCLogger.ASYNCHRONOUS_LOGGING)));
+        }
+
         String title = null;
         if (xo.hasAttribute(TITLE)) {
             title = xo.getStringAttribute(TITLE);
@@ -159,6 +187,8 @@ public class LoggerParser extends AbstractXMLObjectParser {
     private final XMLSyntaxRule[] rules = {
             AttributeRule.newIntegerRule(LOG_EVERY),
             AttributeRule.newBooleanRule(ALLOW_OVERWRITE_LOG, true),
+            AttributeRule.newBooleanRule(ASYNCHRONOUS, true,
+                    "Format and write the log on a background thread (file logs only)"),
             new StringAttributeRule(FILE_NAME,
                     "The name of the file to send log output to. " +
                             "If no file name is specified then log is sent to standard output", true),
@@ -166,6 +196,9 @@ public class LoggerParser extends AbstractXMLObjectParser {
                     "The title of the log", true),
             new StringAttributeRule(HEADER,
                     "The subtitle of the log", true),
+            new StringAttributeRule(FORMAT,
+                    "The format of the log file: '" + TAB + "' (the default) or '" + BINARY +
+                            "' for a column oriented binary file", new String[]{TAB, BINARY}, true),
             new OrRule(
                     new XMLSyntaxRule[]{
                             new ElementRule(Columns.class, 1, Integer.MAX_VALUE),
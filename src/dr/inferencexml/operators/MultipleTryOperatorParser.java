@@ -0,0 +1,91 @@
+/*
+ * MultipleTryOperatorParser.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package dr.inferencexml.operators;
+
+import dr.inference.operators.GeneralOperator;
+import dr.inference.operators.GibbsOperator;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.MultipleTryOperator;
+import dr.inference.operators.SimpleMCMCOperator;
+import dr.xml.*;
+
+/**
+ * @author Andrew Rambaut
+ */
+public class MultipleTryOperatorParser extends AbstractXMLObjectParser {
+
+    public static final String MULTIPLE_TRY_OPERATOR = "multipleTryOperator";
+    public static final String TRIES = "tries";
+
+    public String getParserName() {
+        return MULTIPLE_TRY_OPERATOR;
+    }
+
+    public Object parseXMLObject(XMLObject xo) throws XMLParseException {
+
+        double weight = xo.getDoubleAttribute(MCMCOperator.WEIGHT);
+        int tries = xo.getIntegerAttribute(TRIES);
+
+        if (tries < 1) {
+            throw new XMLParseException("The number of tries must be at least 1");
+        }
+
+        MCMCOperator operator = (MCMCOperator) xo.getChild(MCMCOperator.class);
+
+        if (!(operator instanceof SimpleMCMCOperator) ||
+                operator instanceof GibbsOperator || operator instanceof GeneralOperator) {
+            throw new XMLParseException("Operator, " + operator.getOperatorName() +
+                    ", can't be used for multiple tries (Gibbs and general operators are not supported)");
+        }
+
+        return new MultipleTryOperator((SimpleMCMCOperator) operator, tries, weight);
+    }
+
+    //************************************************************************
+    // AbstractXMLObjectParser implementation
+    //************************************************************************
+
+    public String getParserDescription() {
+        return "This element returns a multiple-try Metropolis operator that proposes a number of candidate " +
+                "states with the given operator and chooses between them.";
+    }
+
+    public Class getReturnType() {
+        return MultipleTryOperator.class;
+    }
+
+    public XMLSyntaxRule[] getSyntaxRules() {
+        return rules;
+    }
+
+    private final XMLSyntaxRule[] rules = {
+            AttributeRule.newDoubleRule(MCMCOperator.WEIGHT),
+            AttributeRule.newIntegerRule(TRIES),
+            new ElementRule(MCMCOperator.class),
+    };
+}
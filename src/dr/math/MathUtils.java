@@ -31,6 +31,8 @@ import dr.util.NumberFormatter;
 
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Handy utility functions which have some Mathematical relavance.
@@ -55,6 +57,18 @@ public class MathUtils {
      */
     private static final MersenneTwisterFast random = MersenneTwisterFast.DEFAULT_INSTANCE;
 
+    /**
+     * A random number stream bound to the current thread (see setThreadRandomStream). When one
+     * is bound the static methods below draw from it without locking instead of from the shared
+     * instance.
+     */
+    private static final ThreadLocal<RandomStream> threadRandomStream = new ThreadLocal<RandomStream>();
+
+    /**
+     * The streams handed out by nextRandomStream() since the seed was last set, in order.
+     */
+    private static final List<RandomStream> randomStreams = new ArrayList<RandomStream>();
+
     // Chooses one category if a cumulative probability distribution is given
     public static int randomChoice(double[] cf) {
 
@@ -193,12 +207,20 @@ public class MathUtils {
         synchronized (random) {
             random.setSeed(seed);
         }
+        synchronized (randomStreams) {
+            // start a new sequence of streams derived from this seed
+            randomStreams.clear();
+        }
     }
 
     /**
      * Access a default instance of this class, access is synchronized
      */
     public static byte nextByte() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextByte();
+        }
         synchronized (random) {
             return random.nextByte();
         }
@@ -208,6 +230,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static boolean nextBoolean() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextBoolean();
+        }
         synchronized (random) {
             return random.nextBoolean();
         }
@@ -217,6 +243,11 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static void nextBytes(byte[] bs) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            stream.random.nextBytes(bs);
+            return;
+        }
         synchronized (random) {
             random.nextBytes(bs);
         }
@@ -226,6 +257,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static char nextChar() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextChar();
+        }
         synchronized (random) {
             return random.nextChar();
         }
@@ -235,6 +270,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static double nextGaussian() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextGaussian();
+        }
         synchronized (random) {
             return random.nextGaussian();
         }
@@ -244,6 +283,10 @@ public class MathUtils {
     //Variance = alpha / (lambda*lambda)
 
     public static double nextGamma(double alpha, double lambda) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextGamma(alpha, lambda);
+        }
         synchronized (random) {
             return random.nextGamma(alpha, lambda);
         }
@@ -265,6 +308,10 @@ public class MathUtils {
      * @return a pseudo random double precision floating point number in [01)
      */
     public static double nextDouble() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextDouble();
+        }
         synchronized (random) {
             return random.nextDouble();
         }
@@ -281,26 +328,22 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static double nextExponential(double lambda) {
-        synchronized (random) {
-            return -1.0 * Math.log(1 - random.nextDouble()) / lambda;
-        }
+        return -1.0 * Math.log(1 - nextDouble()) / lambda;
     }
 
     /**
      * Access a default instance of this class, access is synchronized
      */
     public static double nextInverseGaussian(double mu, double lambda) {
-        synchronized (random) {
-            /* CODE TAKEN FROM WIKIPEDIA. TESTING DONE WITH RESULTS GENERATED IN R AND LOOK COMPARABLE */
-            double v = random.nextGaussian();   // sample from a normal distribution with a mean of 0 and 1 standard deviation
-            double y = v * v;
-            double x = mu + (mu * mu * y) / (2 * lambda) - (mu / (2 * lambda)) * Math.sqrt(4 * mu * lambda * y + mu * mu * y * y);
-            double test = MathUtils.nextDouble();  // sample from a uniform distribution between 0 and 1
-            if (test <= (mu) / (mu + x)) {
-                return x;
-            } else {
-                return (mu * mu) / x;
-            }
+        /* CODE TAKEN FROM WIKIPEDIA. TESTING DONE WITH RESULTS GENERATED IN R AND LOOK COMPARABLE */
+        double v = nextGaussian();   // sample from a normal distribution with a mean of 0 and 1 standard deviation
+        double y = v * v;
+        double x = mu + (mu * mu * y) / (2 * lambda) - (mu / (2 * lambda)) * Math.sqrt(4 * mu * lambda * y + mu * mu * y * y);
+        double test = MathUtils.nextDouble();  // sample from a uniform distribution between 0 and 1
+        if (test <= (mu) / (mu + x)) {
+            return x;
+        } else {
+            return (mu * mu) / x;
         }
     }
 
@@ -309,6 +352,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static float nextFloat() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextFloat();
+        }
         synchronized (random) {
             return random.nextFloat();
         }
@@ -318,6 +365,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static long nextLong() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextLong();
+        }
         synchronized (random) {
             return random.nextLong();
         }
@@ -327,6 +378,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static short nextShort() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextShort();
+        }
         synchronized (random) {
             return random.nextShort();
         }
@@ -336,6 +391,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static int nextInt() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextInt();
+        }
         synchronized (random) {
             return random.nextInt();
         }
@@ -345,6 +404,10 @@ public class MathUtils {
      * Access a default instance of this class, access is synchronized
      */
     public static int nextInt(int n) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.nextInt(n);
+        }
         synchronized (random) {
             return random.nextInt(n);
         }
@@ -363,6 +426,11 @@ public class MathUtils {
      * Shuffles an array.
      */
     public static void shuffle(int[] array) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            stream.random.shuffle(array);
+            return;
+        }
         synchronized (random) {
             random.shuffle(array);
         }
@@ -372,6 +440,11 @@ public class MathUtils {
      * Shuffles an array. Shuffles numberOfShuffles times
      */
     public static void shuffle(int[] array, int numberOfShuffles) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            stream.random.shuffle(array, numberOfShuffles);
+            return;
+        }
         synchronized (random) {
             random.shuffle(array, numberOfShuffles);
         }
@@ -383,6 +456,10 @@ public class MathUtils {
      * @param l length of the array required.
      */
     public static int[] shuffled(int l) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.shuffled(l);
+        }
         synchronized (random) {
             return random.shuffled(l);
         }
@@ -390,18 +467,21 @@ public class MathUtils {
 
 
     public static int[] sampleIndicesWithReplacement(int length) {
-        synchronized (random) {
-            int[] result = new int[length];
-            for (int i = 0; i < length; i++)
-                result[i] = random.nextInt(length);
-            return result;
-        }
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++)
+            result[i] = nextInt(length);
+        return result;
     }
 
     /**
      * Permutes an array.
      */
     public static void permute(int[] array) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            stream.random.permute(array);
+            return;
+        }
         synchronized (random) {
             random.permute(array);
         }
@@ -413,6 +493,10 @@ public class MathUtils {
      * @param l length of the array required.
      */
     public static int[] permuted(int l) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.permuted(l);
+        }
         synchronized (random) {
             return random.permuted(l);
         }
@@ -469,6 +553,121 @@ public class MathUtils {
         }
     }
 
+    /**
+     * @return the state of the generator the static methods draw from on this thread: the bound
+     * stream if there is one (see setThreadRandomStream), otherwise the shared instance
+     */
+    public static int[] getCurrentRandomState() {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            return stream.random.getRandomState();
+        }
+        return getRandomState();
+    }
+
+    /**
+     * Restore a state returned by getCurrentRandomState() so the same random numbers are drawn again.
+     */
+    public static void setCurrentRandomState(int[] rngState) {
+        final RandomStream stream = threadRandomStream.get();
+        if (stream != null) {
+            stream.random.setRandomState(rngState);
+        } else {
+            setRandomState(rngState);
+        }
+    }
+
+    // ===================== Independent random number streams ===========
+
+    /**
+     * Create a new random number stream for a chain or worker thread. The n-th stream created after
+     * the seed is set is seeded from the master seed and n, so as long as the streams are created
+     * in the same order (e.g., as the model is parsed) a seeded run is reproducible whatever order
+     * the threads using them run in. Bind the stream to a thread with setThreadRandomStream.
+     *
+     * @return the new stream
+     */
+    public static RandomStream nextRandomStream() {
+        synchronized (randomStreams) {
+            MersenneTwisterFast generator = new MersenneTwisterFast();
+            generator.setSeed(getStreamSeed(getSeed(), randomStreams.size()));
+            RandomStream stream = new RandomStream(generator);
+            randomStreams.add(stream);
+            return stream;
+        }
+    }
+
+    private static long getStreamSeed(long masterSeed, int index) {
+        long seed = masterSeed + (index + 1) * 0x9E3779B97F4A7C15L;
+        // SplitMix64 finaliser so that neighbouring streams get unrelated seeds
+        seed = (seed ^ (seed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        seed = (seed ^ (seed >>> 27)) * 0x94D049BB133111EBL;
+        seed = seed ^ (seed >>> 31);
+
+        // MersenneTwisterFast only uses the low 32 bits and these must be non-zero
+        int streamSeed = (int) seed;
+        if (streamSeed == 0) {
+            streamSeed = (int) (seed >>> 32) | 1;
+        }
+        return streamSeed;
+    }
+
+    /**
+     * Make the static random methods called on this thread draw from the given stream (or from the
+     * shared instance if null).
+     *
+     * @return the stream that was previously bound to this thread (or null)
+     */
+    public static RandomStream setThreadRandomStream(RandomStream stream) {
+        RandomStream previous = threadRandomStream.get();
+        if (stream == null) {
+            threadRandomStream.remove();
+        } else {
+            threadRandomStream.set(stream);
+        }
+        return previous;
+    }
+
+    /**
+     * @return the state of each stream created by nextRandomStream, in order of creation. The
+     * caller must make sure none of the streams is in use.
+     */
+    public static int[][] getRandomStreamStates() {
+        synchronized (randomStreams) {
+            int[][] states = new int[randomStreams.size()][];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = randomStreams.get(i).random.getRandomState();
+            }
+            return states;
+        }
+    }
+
+    /**
+     * Restore the states of the streams created by nextRandomStream, in order of creation.
+     */
+    public static void setRandomStreamStates(int[][] states) {
+        synchronized (randomStreams) {
+            if (states.length != randomStreams.size()) {
+                throw new IllegalArgumentException("Expecting the states of " + randomStreams.size() +
+                        " random number streams but found " + states.length);
+            }
+            for (int i = 0; i < states.length; i++) {
+                randomStreams.get(i).random.setRandomState(states[i]);
+            }
+        }
+    }
+
+    /**
+     * An independent random number stream. Only used by binding it to a thread.
+     */
+    public static final class RandomStream {
+        private final MersenneTwisterFast random;
+
+        private RandomStream(MersenneTwisterFast random) {
+            this.random = random;
+        }
+    }
+
     public static boolean isClose(double[] x, double[] y, double tolerance) {
         if (x.length != y.length) return false;
 
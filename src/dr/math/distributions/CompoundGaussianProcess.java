@@ -30,6 +30,7 @@ package dr.math.distributions;
 import dr.inference.distribution.DistributionLikelihood;
 import dr.inference.model.CompoundLikelihood;
 import dr.inference.model.Likelihood;
+import dr.util.ComputeService;
 import dr.xml.Reportable;
 
 import java.util.ArrayList;
@@ -65,7 +66,7 @@ public class CompoundGaussianProcess implements GaussianProcessRandomGenerator,
         if (USE_POOL) {
             callers = createTasks();
             threadCount = callers.size();
-            pool = Executors.newFixedThreadPool(threadCount);
+            pool = ComputeService.getPool("CompoundGaussianProcess");
         } else {
             callers = null;
             threadCount = -1;
@@ -0,0 +1,372 @@
+/*
+ * ComputeService.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package dr.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single, process-wide fork/join pool that all the parallel computations in BEAST share
+ * so that between them they use no more than a fixed number of threads. Each component gets
+ * a named {@link ExecutorService} view of the pool with {@link #getPool(String)} (shutting it
+ * down does nothing) and the time spent in each is recorded for {@link #getReport()}.
+ *
+ * Tasks that submit more tasks and wait for them (e.g., a likelihood within a compound
+ * likelihood that is itself computed in parallel) don't deadlock: a pool thread that is
+ * waiting runs queued tasks itself.
+ *
+ * The number of threads is taken from the thread.count property (set by the -threads
+ * command line option) or is the number of processors. It is fixed when the pool is first
+ * used.
+ *
+ * @author Andrew Rambaut
+ */
+public final class ComputeService {
+
+    public static final String THREAD_COUNT = "thread.count";
+
+    private ComputeService() {
+        // no instances
+    }
+
+    /**
+     * Sets the number of threads. This has no effect once the pool has been created.
+     * @param threadCount the number of threads (if <= 0 then the number of processors)
+     */
+    public static synchronized void setParallelism(int threadCount) {
+        if (forkJoinPool == null) {
+            parallelism = threadCount;
+        }
+    }
+
+    /**
+     * @return the number of threads in the pool
+     */
+    public static int getParallelism() {
+        return getForkJoinPool().getParallelism();
+    }
+
+    /**
+     * Returns the view of the shared pool with the given name, creating it if necessary.
+     * Components of the same kind should use the same name so that their statistics are
+     * reported together.
+     */
+    public static ExecutorService getPool(String name) {
+        return pools.computeIfAbsent(name, Pool::new);
+    }
+
+    /**
+     * @return true if any tasks have been run
+     */
+    public static boolean isUsed() {
+        for (Pool pool : pools.values()) {
+            if (pool.taskCount.sum() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A summary of the use of each of the named pools: the number of tasks, the total time spent
+     * running them, the average number running at once when a set of them was invoked together,
+     * and the proportion of the total capacity of the threads since the pool was created.
+     */
+    public static String getReport() {
+        ForkJoinPool forkJoinPool = getForkJoinPool();
+        double elapsed = (System.nanoTime() - startTime) / 1.0E9;
+        NumberFormatter formatter = new NumberFormatter(4);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Compute threads: ").append(forkJoinPool.getParallelism())
+                .append(" (").append(forkJoinPool.getStealCount()).append(" steals)\n");
+        sb.append(String.format("%-32s %12s %12s %12s %12s%n", "Pool", "Tasks", "Busy (s)", "Concurrency", "Utilisation"));
+
+        List<String> names = new ArrayList<>(pools.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Pool pool = pools.get(name);
+            long taskCount = pool.taskCount.sum();
+            if (taskCount == 0) {
+                continue;
+            }
+            double busy = pool.busyTime.sum() / 1.0E9;
+            double invokedBusy = pool.invokedBusyTime.sum() / 1.0E9;
+            double invokedWall = pool.invokedWallTime.sum() / 1.0E9;
+
+            sb.append(String.format("%-32s %12d %12s %12s %12s%n", name, taskCount,
+                    formatter.format(busy),
+                    (invokedWall > 0.0 ? formatter.format(invokedBusy / invokedWall) : "-"),
+                    formatter.format(busy / (elapsed * forkJoinPool.getParallelism()))));
+        }
+        return sb.toString();
+    }
+
+    private static ForkJoinPool getForkJoinPool() {
+        ForkJoinPool pool = forkJoinPool;
+        return pool != null ? pool : createForkJoinPool();
+    }
+
+    private static synchronized ForkJoinPool createForkJoinPool() {
+        if (forkJoinPool == null) {
+            int threadCount = parallelism;
+            if (threadCount <= 0 && System.getProperty(THREAD_COUNT) != null) {
+                threadCount = Integer.parseInt(System.getProperty(THREAD_COUNT));
+            }
+            if (threadCount <= 0) {
+                threadCount = Runtime.getRuntime().availableProcessors();
+            }
+
+            startTime = System.nanoTime();
+
+            final AtomicInteger threadNumber = new AtomicInteger(1);
+            forkJoinPool = new ForkJoinPool(threadCount, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("BEAST compute " + threadNumber.getAndIncrement());
+                return thread;
+            }, null, false);
+        }
+        return forkJoinPool;
+    }
+
+    private static boolean inPool(ForkJoinPool forkJoinPool) {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == forkJoinPool;
+    }
+
+    /**
+     * A named view of the shared pool.
+     */
+    private static final class Pool extends AbstractExecutorService {
+
+        Pool(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> callable) {
+            ForkJoinPool forkJoinPool = getForkJoinPool();
+            TimedTask<T> task = new TimedTask<>(callable);
+            if (inPool(forkJoinPool)) {
+                task.fork();
+            } else {
+                forkJoinPool.execute(task);
+            }
+            return new TaskFuture<>(task);
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable runnable, T result) {
+            return submit(Executors.callable(runnable, result));
+        }
+
+        @Override
+        public Future<?> submit(Runnable runnable) {
+            return submit(Executors.callable(runnable));
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            submit(runnable);
+        }
+
+        /**
+         * Runs the tasks and waits for them all to complete. The calling thread runs the first
+         * task itself and, if it is a pool thread, any of the others that haven't been started
+         * when it comes to wait for them.
+         */
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> callables) {
+            ForkJoinPool forkJoinPool = getForkJoinPool();
+            boolean inPool = inPool(forkJoinPool);
+
+            long start = System.nanoTime();
+
+            List<TimedTask<T>> tasks = new ArrayList<>(callables.size());
+            for (Callable<T> callable : callables) {
+                tasks.add(new TimedTask<>(callable));
+            }
+
+            for (int i = 1; i < tasks.size(); i++) {
+                if (inPool) {
+                    tasks.get(i).fork();
+                } else {
+                    forkJoinPool.execute(tasks.get(i));
+                }
+            }
+
+            long busy = 0;
+            if (!tasks.isEmpty()) {
+                tasks.get(0).invoke();
+                busy += tasks.get(0).time;
+            }
+
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (int i = tasks.size() - 1; i > 0; i--) {
+                tasks.get(i).quietlyJoin();
+                busy += tasks.get(i).time;
+            }
+            for (TimedTask<T> task : tasks) {
+                futures.add(new TaskFuture<>(task));
+            }
+
+            invokedWallTime.add(System.nanoTime() - start);
+            invokedBusyTime.add(busy);
+
+            return futures;
+        }
+
+        @Override
+        public void shutdown() {
+            // the pool is shared so it is never shut down
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        private final class TimedTask<T> extends RecursiveAction {
+
+            TimedTask(Callable<T> callable) {
+                this.callable = callable;
+            }
+
+            @Override
+            protected void compute() {
+                long start = System.nanoTime();
+                try {
+                    result = callable.call();
+                } catch (Throwable t) {
+                    throwable = t;
+                } finally {
+                    time = System.nanoTime() - start;
+                    busyTime.add(time);
+                    taskCount.increment();
+                }
+            }
+
+            private final Callable<T> callable;
+            private T result;
+            private Throwable throwable;
+            private long time;
+        }
+
+        private final String name;
+
+        private final LongAdder taskCount = new LongAdder();
+        private final LongAdder busyTime = new LongAdder();
+        private final LongAdder invokedBusyTime = new LongAdder();
+        private final LongAdder invokedWallTime = new LongAdder();
+    }
+
+    /**
+     * The Future for a task that, unlike that of a ForkJoinTask, gives back the exception thrown
+     * by the task as it was thrown (and, when waited on by a pool thread, lets it run other tasks).
+     */
+    private static final class TaskFuture<T> implements Future<T> {
+
+        TaskFuture(Pool.TimedTask<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return task.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        @Override
+        public T get() throws ExecutionException {
+            task.quietlyJoin();
+            return getResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!task.isDone()) {
+                try {
+                    task.get(timeout, unit);
+                } catch (ExecutionException | CancellationException e) {
+                    // reported below
+                }
+            }
+            return getResult();
+        }
+
+        private T getResult() throws ExecutionException {
+            if (task.isCancelled()) {
+                throw new CancellationException();
+            }
+            if (task.throwable != null) {
+                throw new ExecutionException(task.throwable);
+            }
+            return task.result;
+        }
+
+        private final Pool.TimedTask<T> task;
+    }
+
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private static int parallelism = 0;
+    private static volatile ForkJoinPool forkJoinPool = null;
+    private static volatile long startTime;
+}
@@ -95,10 +95,8 @@ public class TaskPool {
 
         final ExecutorService pool;
 
-        if (threadCount > 1) {
-            pool = Executors.newFixedThreadPool(threadCount);
-        } else if (threadCount < 0) {
-            pool = Executors.newCachedThreadPool();
+        if (threadCount > 1 || threadCount < 0) {
+            pool = ComputeService.getPool("TaskPool");
         } else {
             pool = null;
         }
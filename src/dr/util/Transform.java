@@ -64,6 +64,17 @@ public interface Transform {
      */
     double[] transform(double[] x, int from, int to);
 
+    /**
+     * transformation into a caller-supplied buffer; values outside [from, to) are copied unchanged
+     * @param x evaluation points
+     * @param from start transformation at this index
+     * @param to end transformation at this index
+     * @param result buffer for the transformed values (may be x)
+     */
+    default void transform(double[] x, int from, int to, double[] result) {
+        System.arraycopy(transform(x, from, to), 0, result, 0, x.length);
+    }
+
     /**
      * @param value evaluation point
      * @return the inverse transformed value
@@ -79,6 +90,17 @@ public interface Transform {
      */
     double[] inverse(double[] y, int from, int to);
 
+    /**
+     * inverse transformation into a caller-supplied buffer; values outside [from, to) are copied unchanged
+     * @param y evaluation points
+     * @param from start transformation at this index
+     * @param to end transformation at this index
+     * @param result buffer for the inverse transformed values (may be y)
+     */
+    default void inverse(double[] y, int from, int to, double[] result) {
+        System.arraycopy(inverse(y, from, to), 0, result, 0, y.length);
+    }
+
     /**
      * overloaded transformation that takes and returns an array of doubles
      * @param values evaluation points
@@ -93,6 +115,14 @@ public interface Transform {
 
     double[] updateGradientLogDensity(double[] gradient, double[] value, int from, int to);
 
+    /**
+     * gradient update into a caller-supplied buffer, with the same result as the allocating version
+     * @param result buffer for the updated gradient (may be gradient or value)
+     */
+    default void updateGradientLogDensity(double[] gradient, double[] value, int from, int to, double[] result) {
+        System.arraycopy(updateGradientLogDensity(gradient, value, from, to), 0, result, 0, value.length);
+    }
+
     double updateDiagonalHessianLogDensity(double diagonalHessian, double gradient, double value);
 
     double[] updateDiagonalHessianLogDensity(double[] diagonalHessian, double[] gradient, double[] value, int from, int to);
@@ -175,6 +205,16 @@ public interface Transform {
 
     boolean isInInteriorDomain(double[] values, int from, int to);
 
+    /**
+     * copies the values outside [from, to) into the result buffer of an in-place transformation
+     */
+    static void copyOutside(double[] values, int from, int to, double[] result) {
+        if (result != values) {
+            System.arraycopy(values, 0, result, 0, from);
+            System.arraycopy(values, to, result, to, values.length - to);
+        }
+    }
+
     abstract class UnivariableTransform implements Transform {
 
         public abstract double transform(double value);
@@ -187,6 +227,13 @@ public interface Transform {
             return result;
         }
 
+        public void transform(double[] values, int from, int to, double[] result) {
+            copyOutside(values, from, to, result);
+            for (int i = from; i < to; ++i) {
+                result[i] = transform(values[i]);
+            }
+        }
+
         public abstract double inverse(double value);
 
         public double[] inverse(double[] values, int from, int to) {
@@ -197,6 +244,13 @@ public interface Transform {
             return result;
         }
 
+        public void inverse(double[] values, int from, int to, double[] result) {
+            copyOutside(values, from, to, result);
+            for (int i = from; i < to; ++i) {
+                result[i] = inverse(values[i]);
+            }
+        }
+
         public double[] inverse(double[] values, int from, int to, double sum) {
             throw new RuntimeException("Fixed sum cannot be enforced for a univariate transformation.");
         }
@@ -224,6 +278,13 @@ public interface Transform {
             return result;
         }
 
+        public void updateGradientLogDensity(double[] gradient, double[] value, int from, int to, double[] result) {
+            copyOutside(value, from, to, result);
+            for (int i = from; i < to; ++i) {
+                result[i] = updateGradientLogDensity(gradient[i], value[i]);
+            }
+        }
+
         public double[] updateDiagonalHessianLogDensity(double[] diagonalHessian, double[] gradient, double[] value, int from, int to) {
             double[] result = value.clone();
             for (int i = from; i < to; ++i) {
@@ -2217,6 +2278,16 @@ public interface Transform {
               return result;
           }
 
+          @Override
+          public void transform(double[] values, int from, int to, double[] result) {
+
+              copyOutside(values, from, to, result);
+
+              for (int i = from; i < to; ++i) {
+                  result[i] = array.get(i).transform(values[i]);
+              }
+          }
+
           @Override
           public double[] inverse(double[] values, int from, int to) {
 
@@ -2228,6 +2299,16 @@ public interface Transform {
               return result;
           }
 
+          @Override
+          public void inverse(double[] values, int from, int to, double[] result) {
+
+              copyOutside(values, from, to, result);
+
+              for (int i = from; i < to; ++i) {
+                  result[i] = array.get(i).inverse(values[i]);
+              }
+          }
+
           @Override
           public double[] inverse(double[] values, int from, int to, double sum) {
               throw new RuntimeException("Not yet implemented.");
@@ -2263,6 +2344,16 @@ public interface Transform {
               return result;
           }
 
+          @Override
+          public void updateGradientLogDensity(double[] gradient, double[] values, int from, int to, double[] result) {
+
+              copyOutside(values, from, to, result);
+
+              for (int i = from; i < to; ++i) {
+                  result[i] = array.get(i).updateGradientLogDensity(gradient[i], values[i]);
+              }
+          }
+
         @Override
         public double[] updateDiagonalHessianLogDensity(double[] diagonalHessian, double[] gradient, double[] values, int from, int to) {
             final double[] result = values.clone();
@@ -2409,6 +2500,22 @@ public interface Transform {
             return result;
         }
 
+        @Override
+        public void transform(double[] values, int from, int to, double[] result) {
+
+            copyOutside(values, from, to, result);
+
+            for (ParsedTransform segment : segments) {
+                if (from < segment.end && to >= segment.start) {
+                    final int begin = Math.max(segment.start, from);
+                    final int end = Math.min(segment.end, to);
+                    for (int i = begin; i < end; ++i) {
+                        result[i] = segment.transform.transform(values[i]);
+                    }
+                }
+            }
+        }
+
         @Override
         public double[] inverse(double[] values, int from, int to) {
 
@@ -2426,6 +2533,22 @@ public interface Transform {
             return result;
         }
 
+        @Override
+        public void inverse(double[] values, int from, int to, double[] result) {
+
+            copyOutside(values, from, to, result);
+
+            for (ParsedTransform segment : segments) {
+                if (from < segment.end && to >= segment.start) {
+                    final int begin = Math.max(segment.start, from);
+                    final int end = Math.min(segment.end, to);
+                    for (int i = begin; i < end; ++i) {
+                        result[i] = segment.transform.inverse(values[i]);
+                    }
+                }
+            }
+        }
+
         @Override
         public double[] inverse(double[] values, int from, int to, double sum) {
             throw new RuntimeException("Not yet implemented.");
@@ -2479,6 +2602,22 @@ public interface Transform {
             return result;
         }
 
+        @Override
+        public void updateGradientLogDensity(double[] gradient, double[] values, int from, int to, double[] result) {
+
+            copyOutside(values, from, to, result);
+
+            for (ParsedTransform segment : segments) {
+                if (from < segment.end && to >= segment.start) {
+                    final int begin = Math.max(segment.start, from);
+                    final int end = Math.min(segment.end, to);
+                    for (int i = begin; i < end; ++i) {
+                        result[i] = segment.transform.updateGradientLogDensity(gradient[i], values[i]);
+                    }
+                }
+            }
+        }
+
         @Override
         public double[] updateDiagonalHessianLogDensity(double[] diagonalHessian, double[] gradient, double[] values, int from, int to) {
 
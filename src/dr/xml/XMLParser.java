@@ -85,6 +85,15 @@ public class XMLParser {
                 } else {
                     replaced = true;
                 }
+            } else if (parserIndex.containsKey(parserName)) {
+                if (!canReplace) {
+                    throw new IllegalArgumentException("New parser (" + parser.getParserName()
+                            + ") in {" + parser.getReturnType() + "} cannot replace existing parser {"
+                            + parserIndex.get(parserName) + "}");
+                } else {
+                    replaced = true;
+                }
+                parserIndex.remove(parserName);
             }
             parserStore.put(parserName, parser);
         }
@@ -92,18 +101,104 @@ public class XMLParser {
         return replaced;
     }
 
+    /**
+     * Adds a parser that is only created when an element with the given name is first parsed. The
+     * parser class is either an XMLObjectParser with a default constructor or, given as
+     * 'class#field', a static XMLObjectParser member of a class.
+     *
+     * @param parserName  the element name
+     * @param parserClass the parser class
+     * @param canReplace  can this replace a parser already added with the same name
+     * @return true if an existing parser was replaced
+     */
+    public boolean addIndexedXMLObjectParser(String parserName, String parserClass, boolean canReplace) {
+
+        boolean replaced = parserStore.containsKey(parserName) || parserIndex.containsKey(parserName);
+        if (replaced && !canReplace) {
+            throw new IllegalArgumentException("New parser {" + parserClass + "} cannot replace existing parser ("
+                    + parserName + ")");
+        }
+
+        parserStore.remove(parserName);
+        parserIndex.put(parserName, parserClass);
+
+        return replaced;
+    }
+
     public Iterator getParserNames() {
-        return parserStore.keySet().iterator();
+        Set<String> parserNames = new TreeSet<String>(new ParserComparator());
+        parserNames.addAll(parserStore.keySet());
+        parserNames.addAll(parserIndex.keySet());
+        return parserNames.iterator();
     }
 
-    public XMLObjectParser getParser(String name) {
-        return parserStore.get(name);
+    public synchronized XMLObjectParser getParser(String name) {
+        XMLObjectParser parser = parserStore.get(name);
+        if (parser == null && parserIndex.containsKey(name)) {
+            parser = loadIndexedParser(name);
+        }
+        return parser;
     }
 
-    public Iterator getParsers() {
+    public synchronized Iterator getParsers() {
+        // all the parsers are needed so create those that haven't been used
+        for (String parserName : new ArrayList<String>(parserIndex.keySet())) {
+            if (parserIndex.containsKey(parserName)) {
+                loadIndexedParser(parserName);
+            }
+        }
         return parserStore.values().iterator();
     }
 
+    /**
+     * @return the classes of the indexed parsers that have been created, in the order they were needed
+     */
+    public List<String> getLoadedIndexedParsers() {
+        return new ArrayList<String>(loadedIndexedParsers);
+    }
+
+    /**
+     * @return the number of element names that have an indexed parser which has not been created
+     */
+    public int getUnloadedIndexedParserCount() {
+        return parserIndex.size();
+    }
+
+    private XMLObjectParser loadIndexedParser(String name) {
+        String parserClass = parserIndex.get(name);
+
+        XMLObjectParser parser;
+        try {
+            int index = parserClass.indexOf('#');
+            if (index < 0) {
+                parser = (XMLObjectParser) Class.forName(parserClass).getDeclaredConstructor().newInstance();
+            } else {
+                Class<?> c = Class.forName(parserClass.substring(0, index));
+                parser = (XMLObjectParser) c.getDeclaredField(parserClass.substring(index + 1)).get(null);
+            }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            System.err.println("\nFailed to load parser: " + e.getMessage());
+            System.err.println("parser = " + parserClass + "\n");
+            parserIndex.remove(name);
+            return null;
+        }
+
+        // a parser may have several names; take those which are still indexed to this class
+        for (String parserName : parser.getParserNames()) {
+            if (parserClass.equals(parserIndex.get(parserName))) {
+                parserIndex.remove(parserName);
+                parserStore.put(parserName, parser);
+            }
+        }
+        if (parserIndex.remove(name) != null) {
+            // the parser no longer declares the name it was indexed under
+            parserStore.put(name, parser);
+        }
+        loadedIndexedParsers.add(parserClass);
+
+        return parser;
+    }
+
     public Iterator getThreads() {
         return threads.iterator();
     }
@@ -252,7 +347,7 @@ public class XMLParser {
                 throw new XMLParseException("Object with idref=" + idref + " has not been parsed.");
             }
 
-            XMLObjectParser parser = parserStore.get(e.getTagName());
+            XMLObjectParser parser = getParser(e.getTagName());
             boolean classMatch = parser != null && parser.getReturnType().isAssignableFrom(restoredXMLObject.getNativeObject().getClass());
 
             if (!e.getTagName().equals(restoredXMLObject.getName()) && !classMatch) {
@@ -283,7 +378,7 @@ public class XMLParser {
 
             XMLObject xo = new XMLObject(e, parent);
 
-            final XMLObjectParser parser = doParse ? parserStore.get(xo.getName()) : null;
+            final XMLObjectParser parser = doParse ? getParser(xo.getName()) : null;
 
             String id = null;
             NodeList nodes = e.getChildNodes();
@@ -428,7 +523,7 @@ public class XMLParser {
      * @param xo
      * @return
      */
-    private static File getFileHandle(XMLObject xo, String attributeName) throws XMLParseException {
+    public static File getFileHandle(XMLObject xo, String attributeName) throws XMLParseException {
         String fileName = xo.getStringAttribute(attributeName);
 
         // Check to see if a filename prefix has been specified, check it doesn't contain directory
@@ -610,6 +705,9 @@ public class XMLParser {
 
     //    private final Hashtable<String, XMLObject> store = new Hashtable<String, XMLObject>();
     private final Map<String, XMLObjectParser> parserStore = new TreeMap<String, XMLObjectParser>(new ParserComparator());
+    // parsers that haven't been created yet (element name to parser class)
+    private final Map<String, String> parserIndex = new TreeMap<String, String>(new ParserComparator());
+    private final List<String> loadedIndexedParsers = new ArrayList<String>();
     private final Map<String, XMLObject> objectStore = new LinkedHashMap<String, XMLObject>();
     private final Map<Pair<String, String>, List<Citation>> citationStore = new LinkedHashMap<Pair<String, String>, List<Citation>>();
     private boolean concurrent = false;
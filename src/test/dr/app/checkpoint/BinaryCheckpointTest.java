@@ -0,0 +1,209 @@
+/*
+ * BinaryCheckpointTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.app.checkpoint;
+
+import dr.app.checkpoint.BeastCheckpointer;
+
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.coalescent.CoalescentLikelihood;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.evomodel.operators.ExchangeOperator;
+import dr.evomodel.operators.SubtreeSlideOperator;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.treedatalikelihood.JavaDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.evomodelxml.coalescent.demographicmodel.ConstantPopulationModelParser;
+import dr.evomodelxml.substmodel.HKYParser;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.mcmc.MCMCCriterion;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.*;
+import dr.inference.state.Factory;
+import dr.math.MathUtils;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import test.dr.inference.trace.TraceCorrelationAssert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes binary checkpoints (full snapshots and deltas) of a small tree analysis and checks that
+ * resuming from them gives exactly the saved likelihood.
+ *
+ * @author Andrew Rambaut
+ */
+public class BinaryCheckpointTest extends TraceCorrelationAssert {
+
+    private static final long STATES_PER_CHECKPOINT = 200;
+
+    private MarkovChain markovChain;
+    private Likelihood posterior;
+
+    private File file;
+
+    public BinaryCheckpointTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        MathUtils.setSeed(666);
+
+        createAlignment(DENGUE4_TAXON_SEQUENCE, Nucleotides.INSTANCE);
+
+        Parameter popSize = new Parameter.Default(ConstantPopulationModelParser.POPULATION_SIZE, 380.0, 0, Double.POSITIVE_INFINITY);
+        ConstantPopulationModel constantModel = createRandomInitialTree(popSize);
+
+        CoalescentLikelihood coalescent = new CoalescentLikelihood(new TreeIntervals(treeModel, null, null), constantModel);
+
+        Parameter kappa = new Parameter.Default(HKYParser.KAPPA, 1.0, 0, Double.POSITIVE_INFINITY);
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(kappa, f);
+
+        SitePatterns patterns = new SitePatterns(alignment, null, 0, -1, 1, true);
+        TreeDataLikelihood treeDataLikelihood = new TreeDataLikelihood(
+                new JavaDataLikelihoodDelegate(treeModel, patterns, new HomogeneousBranchModel(hky),
+                        new GammaSiteRateModel("gamma"), false, PartialsRescalingScheme.DEFAULT, 1),
+                treeModel,
+                new DefaultBranchRateModel());
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        likelihoods.add(coalescent);
+        likelihoods.add(treeDataLikelihood);
+        posterior = new CompoundLikelihood(0, likelihoods);
+
+        OperatorSchedule schedule = new SimpleOperatorSchedule();
+
+        MCMCOperator operator = new ScaleOperator(kappa, 0.75);
+        operator.setWeight(1.0);
+        schedule.addOperator(operator);
+
+        operator = new ScaleOperator(popSize, 0.75);
+        operator.setWeight(1.0);
+        schedule.addOperator(operator);
+
+        Parameter internalHeights = ((DefaultTreeModel) treeModel).createNodeHeightsParameter(false, true, false);
+        schedule.addOperator(new UniformOperator(internalHeights, 10.0));
+
+        schedule.addOperator(new SubtreeSlideOperator(((DefaultTreeModel) treeModel), 5.0, 1.0, true, false, false, false,
+                AdaptationMode.ADAPTATION_ON, AdaptableMCMCOperator.DEFAULT_ADAPTATION_TARGET));
+
+        schedule.addOperator(new ExchangeOperator(ExchangeOperator.NARROW, treeModel, 5.0));
+
+        markovChain = new MarkovChain(posterior, schedule, new MCMCCriterion(),
+                2000, 1, 0.1, true, false);
+
+        file = File.createTempFile("binary_checkpoint", ".state");
+        file.deleteOnExit();
+        new File(file.getPath() + ".delta").deleteOnExit();
+
+        System.setProperty(BeastCheckpointer.SAVE_STATE_FORMAT, BeastCheckpointer.BINARY_FORMAT);
+        System.setProperty(BeastCheckpointer.SAVE_STATE_FULL_EVERY, "3");
+        System.setProperty(BeastCheckpointer.SAVE_STATE_FILE, file.getPath());
+        System.setProperty(BeastCheckpointer.LOAD_STATE_FILE, file.getPath());
+    }
+
+    public void tearDown() throws Exception {
+        System.clearProperty(BeastCheckpointer.SAVE_STATE_FORMAT);
+        System.clearProperty(BeastCheckpointer.SAVE_STATE_FULL_EVERY);
+        System.clearProperty(BeastCheckpointer.SAVE_STATE_FILE);
+        System.clearProperty(BeastCheckpointer.LOAD_STATE_FILE);
+
+        file.delete();
+        new File(file.getPath() + ".delta").delete();
+
+        super.tearDown();
+    }
+
+    public void testResumeGivesIdenticalLikelihood() throws Exception {
+        BeastCheckpointer checkpointer = BeastCheckpointer.getInstance(null, -1, -1, false);
+
+        // full, delta, delta, full, delta
+        long savedState = 0;
+        double savedLnL = 0.0;
+        String savedTree = null;
+        for (int i = 0; i < 5; i++) {
+            markovChain.runChain(STATES_PER_CHECKPOINT, false);
+            savedState = markovChain.getCurrentLength();
+            savedLnL = markovChain.getCurrentScore();
+            savedTree = treeModel.getNewick();
+            assertTrue(checkpointer.saveState(markovChain, savedState, savedLnL));
+        }
+        int[] savedRandomState = MathUtils.getRandomState();
+
+        // carry on so the state has moved away from the checkpoint
+        markovChain.runChain(STATES_PER_CHECKPOINT, false);
+        assertFalse(markovChain.getCurrentScore() == savedLnL);
+
+        double[] loadedLnL = new double[1];
+        long state = Factory.INSTANCE.getInitialStateLoader().loadState(markovChain, loadedLnL);
+
+        File deltaFile = new File(file.getPath() + ".delta");
+        assertTrue(deltaFile.length() > 0);
+        assertTrue(deltaFile.length() < file.length());
+
+        assertEquals(savedState, state);
+        assertEquals(savedLnL, loadedLnL[0], 0.0);
+        assertEquals(savedTree, treeModel.getNewick());
+        assertTrue(Arrays.equals(savedRandomState, MathUtils.getRandomState()));
+
+        posterior.makeDirty();
+        assertEquals("restored lnL", savedLnL, posterior.getLogLikelihood(), 0.0);
+
+        // a partly written record at the end of the delta file is ignored
+        markovChain.runChain(STATES_PER_CHECKPOINT, false);
+        FileOutputStream out = new FileOutputStream(deltaFile, true);
+        out.write(new byte[]{0x42, 0x43, 0x44, 0x44, 0, 0, 1});
+        out.close();
+
+        state = Factory.INSTANCE.getInitialStateLoader().loadState(markovChain, loadedLnL);
+        assertEquals(savedState, state);
+        posterior.makeDirty();
+        assertEquals("restored lnL", savedLnL, posterior.getLogLikelihood(), 0.0);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BinaryCheckpointTest.class);
+    }
+}
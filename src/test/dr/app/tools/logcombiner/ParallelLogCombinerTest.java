@@ -0,0 +1,171 @@
+/*
+ * ParallelLogCombinerTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.app.tools.logcombiner;
+
+import dr.app.tools.logcombiner.LogCombiner;
+import dr.app.tools.logcombiner.ParallelLogCombiner;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that ParallelLogCombiner writes the same files as LogCombiner. The logs are large enough
+ * to be split into several chunks.
+ *
+ * @author Andrew Rambaut
+ */
+public class ParallelLogCombinerTest extends TestCase {
+
+    public ParallelLogCombinerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("logcombiner").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    private String writeLog(String name, int stateCount, Random random) throws IOException {
+        File file = new File(directory, name);
+        PrintWriter writer = new PrintWriter(file);
+        writer.println("# BEAST");
+        writer.println("state\tposterior\tclock.rate\ttreeModel.rootHeight\tcount");
+        for (int i = 0; i < stateCount; i++) {
+            writer.println(String.format(Locale.US, "%d\t%.10E\t%.8f\t%.6E\t%d",
+                    i * 1000, -random.nextDouble() * 1000, random.nextDouble(), random.nextDouble() * 10, i));
+            if (i == 100) {
+                // a corrupt line that is skipped
+                writer.println((i * 1000 + 1) + "\tcorrupt\t1\t2\t3");
+            }
+        }
+        writer.close();
+        return file.getPath();
+    }
+
+    private String writeTrees(String name, int stateCount, Random random) throws IOException {
+        File file = new File(directory, name);
+        PrintWriter writer = new PrintWriter(file);
+        writer.println("#NEXUS");
+        writer.println();
+        writer.println("Begin trees;");
+        writer.println("\tTranslate");
+        writer.println("\t\t1 A,");
+        writer.println("\t\t2 B,");
+        writer.println("\t\t3 C,");
+        writer.println("\t\t4 D");
+        writer.println("\t\t;");
+        for (int i = 0; i < stateCount; i++) {
+            writer.println(String.format(Locale.US,
+                    "tree STATE_%d [&lnP=-%.4f] = [&R] ((1[&rate=%.6E]:%.8E,2:%.4f)[&height=%.3f]:%.4f,(3:%.4f,4:%.4f):%.4f);",
+                    i * 1000, random.nextDouble() * 100, random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                    random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble()));
+        }
+        writer.println("End;");
+        writer.close();
+        return file.getPath();
+    }
+
+    private void checkSame(String[] inputFiles, long burnin, long resample, boolean treeFiles,
+                           boolean convertToDecimal, boolean stripAnnotations, boolean renumber) throws IOException {
+        File expected = new File(directory, "expected.out");
+        File actual = new File(directory, "actual.out");
+
+        new LogCombiner(new long[]{burnin}, resample, inputFiles, expected.getPath(), treeFiles,
+                convertToDecimal, stripAnnotations, renumber, false, 1.0);
+        new ParallelLogCombiner(new long[]{burnin}, resample, inputFiles, actual.getPath(), treeFiles,
+                convertToDecimal, stripAnnotations, renumber, false, 1.0, 0);
+
+        assertEquals(new String(Files.readAllBytes(expected.toPath())), new String(Files.readAllBytes(actual.toPath())));
+    }
+
+    public void testLogs() throws IOException {
+        Random random = new Random(1234);
+        String[] inputFiles = {writeLog("a.log", 30000, random), writeLog("b.log", 20000, random)};
+
+        checkSame(inputFiles, -1, -1, false, false, false, false);
+        checkSame(inputFiles, 2000000, 4000, false, false, false, false);
+        checkSame(inputFiles, 1000000, 4000, false, true, false, true);
+    }
+
+    public void testTrees() throws IOException {
+        Random random = new Random(1234);
+        String[] inputFiles = {writeTrees("a.trees", 4000, random), writeTrees("b.trees", 2000, random)};
+
+        checkSame(inputFiles, -1, -1, true, false, false, false);
+        checkSame(inputFiles, 1000000, 3000, true, true, false, false);
+        checkSame(inputFiles, -1, 2000, true, false, true, true);
+    }
+
+    public void testTreeOnSeveralLines() throws IOException {
+        Random random = new Random(1234);
+        String[] inputFiles = {writeTrees("a.trees", 4000, random)};
+
+        File file = new File(inputFiles[0]);
+        String trees = new String(Files.readAllBytes(file.toPath()));
+        // break one of the trees over two lines
+        int index = trees.indexOf(",(3:", trees.indexOf("tree STATE_2000000 "));
+        Files.write(file.toPath(), (trees.substring(0, index) + "\n" + trees.substring(index)).getBytes());
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true));
+        try {
+            new ParallelLogCombiner(new long[]{-1}, -1, inputFiles, new File(directory, "actual.out").getPath(), true,
+                    false, false, false, false, 1.0, 0);
+        } finally {
+            System.setErr(err);
+        }
+        assertTrue(errors.toString(), errors.toString().contains("is not on one line"));
+    }
+
+    public static Test suite() {
+        return new TestSuite(ParallelLogCombinerTest.class);
+    }
+
+    private File directory;
+}
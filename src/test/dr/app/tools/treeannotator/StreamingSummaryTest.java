@@ -0,0 +1,139 @@
+/*
+ * StreamingSummaryTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+
+package test.dr.app.tools.treeannotator;
+
+import dr.app.tools.treeannotator.StreamingSummary;
+import dr.stats.DiscreteStatistics;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the streaming summaries used by TreeAnnotator against the full lists of values.
+ *
+ * @author Andrew Rambaut
+ */
+public class StreamingSummaryTest extends TestCase {
+
+    public StreamingSummaryTest(String name) {
+        super(name);
+    }
+
+    private static double[] getHPD(double proportion, double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int diff = (int) Math.round(proportion * sorted.length);
+        double minRange = Double.MAX_VALUE;
+        int hpdIndex = 0;
+        for (int i = 0; i <= sorted.length - diff; i++) {
+            double range = sorted[i + diff - 1] - sorted[i];
+            if (range < minRange) {
+                minRange = range;
+                hpdIndex = i;
+            }
+        }
+        return new double[] { sorted[hpdIndex], sorted[hpdIndex + diff - 1] };
+    }
+
+    public void testExactWhenFewValues() {
+        Random random = new Random(1234);
+        for (int n : new int[] { 1, 2, 9, 10, 255, 256 }) {
+            double[] values = new double[n];
+            StreamingSummary summary = new StreamingSummary();
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextGaussian();
+                summary.add(values[i]);
+            }
+            assertEquals(n, summary.getCount());
+            assertEquals(DiscreteStatistics.mean(values), summary.getMean(), 1E-12);
+            assertEquals(DiscreteStatistics.median(values), summary.getMedian(), 0.0);
+            assertEquals(DiscreteStatistics.min(values), summary.getMin(), 0.0);
+            assertEquals(DiscreteStatistics.max(values), summary.getMax(), 0.0);
+            double[] hpd = getHPD(0.95, values);
+            assertEquals(hpd[0], summary.getHPD(0.95)[0], 0.0);
+            assertEquals(hpd[1], summary.getHPD(0.95)[1], 0.0);
+        }
+    }
+
+    public void testExactWithRepeatedValues() {
+        // many samples but few distinct values (e.g., trees repeated by a slowly mixing chain)
+        Random random = new Random(42);
+        double[] values = new double[10000];
+        StreamingSummary summary = new StreamingSummary(16);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10) * 0.5;
+            summary.add(values[i]);
+        }
+        assertEquals(DiscreteStatistics.median(values), summary.getMedian(), 0.0);
+        double[] hpd = getHPD(0.8, values);
+        assertEquals(hpd[0], summary.getHPD(0.8)[0], 0.0);
+        assertEquals(hpd[1], summary.getHPD(0.8)[1], 0.0);
+    }
+
+    public void testApproximateWhenManyValues() {
+        Random random = new Random(666);
+        double[] values = new double[200000];
+        StreamingSummary summary = new StreamingSummary();
+        for (int i = 0; i < values.length; i++) {
+            // a skewed distribution such as a node height
+            values[i] = Math.exp(random.nextGaussian() * 0.5);
+            summary.add(values[i]);
+        }
+        double sd = Math.sqrt(DiscreteStatistics.variance(values));
+
+        assertEquals(DiscreteStatistics.mean(values), summary.getMean(), 1E-9);
+        assertEquals(sd * sd, summary.getVariance(), 1E-6);
+        assertEquals(DiscreteStatistics.min(values), summary.getMin(), 0.0);
+        assertEquals(DiscreteStatistics.max(values), summary.getMax(), 0.0);
+        assertEquals(DiscreteStatistics.median(values), summary.getMedian(), 0.01 * sd);
+        assertEquals(DiscreteStatistics.quantile(0.1, values), summary.getQuantile(0.1), 0.01 * sd);
+        assertEquals(DiscreteStatistics.quantile(0.9, values), summary.getQuantile(0.9), 0.01 * sd);
+
+        double[] hpd = getHPD(0.95, values);
+        double[] estimate = summary.getHPD(0.95);
+        assertEquals(hpd[0], estimate[0], 0.02 * sd);
+        assertEquals(hpd[1], estimate[1], 0.02 * sd);
+    }
+
+    public void testNegativeProportion() {
+        StreamingSummary summary = new StreamingSummary(4);
+        for (int i = -25; i < 75; i++) {
+            summary.add(i);
+        }
+        assertEquals(0.25, summary.getNegativeProportion(), 0.0);
+    }
+
+    public static Test suite() {
+        return new TestSuite(StreamingSummaryTest.class);
+    }
+}
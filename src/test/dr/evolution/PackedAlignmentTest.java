@@ -0,0 +1,142 @@
+/*
+ * LikelihoodTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.evolution;
+
+import dr.evolution.alignment.AlignmentParseException;
+import dr.evolution.alignment.PackedAlignment;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evoxml.AlignmentParser;
+import dr.xml.XMLObject;
+import dr.xml.XMLParser;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import test.dr.inference.trace.TraceCorrelationAssert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Checks that a PackedAlignment has the same states as the alignment it is made from.
+ *
+ * @author Andrew Rambaut
+ */
+public class PackedAlignmentTest extends TraceCorrelationAssert {
+
+    public PackedAlignmentTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        createAlignment(PRIMATES_TAXON_SEQUENCE, Nucleotides.INSTANCE);
+    }
+
+    private void assertSameStates(PackedAlignment packed) {
+        assertEquals(alignment.getTaxonCount(), packed.getTaxonCount());
+        assertEquals(alignment.getSiteCount(), packed.getSiteCount());
+
+        int[] pattern = new int[packed.getPatternLength()];
+        for (int j = 0; j < alignment.getSiteCount(); j++) {
+            packed.getSitePattern(j, pattern);
+            assertTrue(Arrays.equals(alignment.getSitePattern(j), pattern));
+        }
+        for (int i = 0; i < alignment.getTaxonCount(); i++) {
+            assertEquals(alignment.getTaxonId(i), packed.getTaxonId(i));
+            assertEquals(alignment.getAlignedSequenceString(i), packed.getAlignedSequenceString(i));
+        }
+    }
+
+    public void testPackedAlignment() {
+        PackedAlignment packed = new PackedAlignment(alignment);
+        assertTrue(packed.isNibblePacked());
+        assertSameStates(packed);
+
+        SitePatterns patterns = new SitePatterns(packed);
+        assertEquals("Wrong number of compressed patterns", 69, patterns.getPatternCount());
+    }
+
+    private void writeFasta(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(file);
+        for (int i = 0; i < alignment.getTaxonCount(); i++) {
+            writer.println(">" + alignment.getTaxonId(i));
+            String sequence = alignment.getAlignedSequenceString(i).toLowerCase();
+            for (int j = 0; j < sequence.length(); j += 60) {
+                writer.println(sequence.substring(j, Math.min(j + 60, sequence.length())));
+            }
+        }
+        writer.close();
+    }
+
+    public void testReadFasta() throws IOException, AlignmentParseException {
+        File file = File.createTempFile("packed", ".fasta");
+        try {
+            writeFasta(file);
+
+            assertSameStates(PackedAlignment.readFasta(file, Nucleotides.INSTANCE));
+
+            PrintWriter writer = new PrintWriter(file);
+            writer.println(">A\nACGT\n>B\nACG");
+            writer.close();
+            try {
+                PackedAlignment.readFasta(file, Nucleotides.INSTANCE);
+                fail("Sequences of different lengths should not be read");
+            } catch (AlignmentParseException ape) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testAlignmentParser() throws Exception {
+        File file = File.createTempFile("packed", ".fasta");
+        try {
+            writeFasta(file);
+
+            XMLParser parser = new XMLParser(false, false, false, null);
+            parser.addXMLObjectParser(new AlignmentParser());
+
+            Map<String, XMLObject> objects = parser.parse(new StringReader(
+                    "<beast><alignment id=\"fasta\" dataType=\"nucleotide\" fileName=\"" + file.getAbsolutePath() + "\"/></beast>"),
+                    false);
+            assertSameStates((PackedAlignment) objects.get("fasta").getNativeObject());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PackedAlignmentTest.class);
+    }
+}
@@ -27,8 +27,10 @@
 
 package test.dr.evolution;
 
+import dr.evolution.alignment.SimpleAlignment;
 import dr.evolution.alignment.SitePatterns;
 import dr.evolution.datatype.Nucleotides;
+import dr.evolution.sequence.Sequence;
 import dr.evolution.tree.TreeUtils;
 import dr.evomodel.branchmodel.HomogeneousBranchModel;
 import dr.evomodel.branchratemodel.DefaultBranchRateModel;
@@ -46,11 +48,13 @@ import dr.evomodel.treelikelihood.PartialsRescalingScheme;
 import dr.evomodelxml.substmodel.GTRParser;
 import dr.evomodelxml.substmodel.HKYParser;
 import dr.inference.model.Parameter;
+import dr.util.ComputeService;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import test.dr.inference.trace.TraceCorrelationAssert;
 
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Locale;
 
 
@@ -99,6 +103,44 @@ public class SitePatternsTest extends TraceCorrelationAssert {
         assertEquals("Wrong number of compressed patterns", patterns.getPatternCount(), 37);
     }
 
+    public void testParallelSitePatterns() {
+        // repeat the alignment enough times for the patterns to be found in parallel
+        SimpleAlignment largeAlignment = new SimpleAlignment();
+        largeAlignment.setDataType(Nucleotides.INSTANCE);
+        for (int i = 0; i < alignment.getSequenceCount(); i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < 1000; j++) {
+                builder.append(alignment.getAlignedSequenceString(i));
+            }
+            Sequence sequence = new Sequence(builder.toString());
+            sequence.setTaxon(alignment.getTaxon(i));
+            sequence.setDataType(Nucleotides.INSTANCE);
+            largeAlignment.addSequence(sequence);
+        }
+
+        int parallelism = ComputeService.getParallelism();
+        try {
+            System.setProperty(SitePatterns.PARALLEL_PATTERNS, "false");
+            SitePatterns expected = new SitePatterns(largeAlignment, null, 0, -1, 1, true);
+
+            System.setProperty(SitePatterns.PARALLEL_PATTERNS, "true");
+            ComputeService.setParallelism(4);
+            SitePatterns patterns = new SitePatterns(largeAlignment, null, 0, -1, 1, true);
+
+            assertEquals("Wrong number of compressed patterns", 69, patterns.getPatternCount());
+            assertEquals(expected.getPatternCount(), patterns.getPatternCount());
+            for (int i = 0; i < patterns.getPatternCount(); i++) {
+                assertTrue(Arrays.equals(expected.getPattern(i), patterns.getPattern(i)));
+                assertEquals(expected.getPatternWeight(i), patterns.getPatternWeight(i));
+            }
+            for (int i = 0; i < largeAlignment.getSiteCount(); i++) {
+                assertEquals(expected.getPatternIndex(i), patterns.getPatternIndex(i));
+            }
+        } finally {
+            System.clearProperty(SitePatterns.PARALLEL_PATTERNS);
+            ComputeService.setParallelism(parallelism);
+        }
+    }
 
     public static Test suite() {
         return new TestSuite(SitePatternsTest.class);
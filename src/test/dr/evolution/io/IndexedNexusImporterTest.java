@@ -0,0 +1,199 @@
+/*
+ * IndexedNexusImporterTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.evolution.io;
+
+import dr.evolution.io.Importer;
+import dr.evolution.io.IndexedNexusImporter;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.io.NexusTreeIndex;
+import dr.evolution.tree.FlexibleNode;
+import dr.evolution.tree.Tree;
+import dr.evolution.tree.TreeUtils;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that IndexedNexusImporter reads the same trees as NexusImporter.
+ *
+ * @author Andrew Rambaut
+ */
+public class IndexedNexusImporterTest extends TestCase {
+
+    private static final int TREE_COUNT = 200;
+
+    public IndexedNexusImporterTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("indexed", ".trees");
+        writeTrees(file, "\n");
+    }
+
+    public void tearDown() throws Exception {
+        NexusTreeIndex.getIndexFile(file).delete();
+        file.delete();
+        super.tearDown();
+    }
+
+    private static void writeTrees(File file, String newLine) throws IOException {
+        Random random = new Random(1234);
+        PrintWriter writer = new PrintWriter(file);
+        writer.print("#NEXUS" + newLine + newLine);
+        writer.print("Begin taxa;" + newLine + "\tDimensions ntax=4;" + newLine + "\tTaxlabels" + newLine);
+        writer.print("\t\tA" + newLine + "\t\tB" + newLine + "\t\tC" + newLine + "\t\tD" + newLine + "\t\t;" + newLine);
+        writer.print("End;" + newLine + newLine);
+        writer.print("Begin trees;" + newLine + "\tTranslate" + newLine);
+        writer.print("\t\t1 A," + newLine + "\t\t2 B," + newLine + "\t\t3 C," + newLine + "\t\t4 D" + newLine + "\t\t;" + newLine);
+        for (int i = 0; i < TREE_COUNT; i++) {
+            // every tenth tree is written over two lines
+            String split = (i % 10 == 5 ? newLine + "\t" : "");
+            writer.print(String.format(Locale.US,
+                    "tree STATE_%d [&lnP=-%.4f] = [&R] ((1[&rate=%.6E]:%.8E,2:%.4f)[&height=%.3f]:%.4f," + split +
+                            "(3:%.4f,4:%.4f):%.4f);" + newLine,
+                    i * 1000, random.nextDouble() * 100, random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                    random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble()));
+        }
+        writer.print("End;" + newLine);
+        writer.close();
+    }
+
+    private List<Tree> readAllTrees() throws IOException, Importer.ImportException {
+        FileReader reader = new FileReader(file);
+        List<Tree> trees = new NexusImporter(reader).importTrees(null);
+        reader.close();
+        return trees;
+    }
+
+    private static void assertSameTree(Tree expected, Tree actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(TreeUtils.newick(expected), TreeUtils.newick(actual));
+        assertEquals(expected.getAttribute("lnP"), actual.getAttribute("lnP"));
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            assertEquals(((FlexibleNode) expected.getNode(i)).getAttribute("height"),
+                    ((FlexibleNode) actual.getNode(i)).getAttribute("height"));
+        }
+        for (int i = 0; i < expected.getExternalNodeCount(); i++) {
+            assertEquals(expected.getNodeTaxon(expected.getExternalNode(i)),
+                    actual.getNodeTaxon(actual.getExternalNode(i)));
+        }
+    }
+
+    public void testIndex() throws IOException {
+        NexusTreeIndex index = NexusTreeIndex.buildIndex(file);
+        assertEquals(TREE_COUNT, index.getTreeCount());
+        assertEquals(0, index.getState(0));
+        assertEquals(1000 * (TREE_COUNT - 1), index.getState(TREE_COUNT - 1));
+        assertEquals(50, index.getFirstTree(49001));
+
+        index.writeIndex(NexusTreeIndex.getIndexFile(file));
+        NexusTreeIndex readIndex = NexusTreeIndex.readIndex(NexusTreeIndex.getIndexFile(file));
+        assertTrue(readIndex.isIndexOf(file));
+        assertEquals(index.getTreeStart(100), readIndex.getTreeStart(100));
+        assertEquals(index.getTreeEnd(TREE_COUNT - 1), readIndex.getTreeEnd(TREE_COUNT - 1));
+    }
+
+    public void testAllTrees() throws IOException, Importer.ImportException {
+        List<Tree> expected = readAllTrees();
+
+        IndexedNexusImporter importer = new IndexedNexusImporter(file);
+        assertTrue(NexusTreeIndex.getIndexFile(file).exists());
+        List<Tree> actual = importer.importTrees(null);
+        importer.close();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameTree(expected.get(i), actual.get(i));
+        }
+    }
+
+    public void testBurninAndThinning() throws IOException, Importer.ImportException {
+        List<Tree> expected = readAllTrees();
+
+        IndexedNexusImporter importer = new IndexedNexusImporter(file, null, false, false);
+        importer.selectTreesFromState(50000, 7);
+        assertEquals((TREE_COUNT - 50 + 6) / 7, importer.countTrees());
+
+        int i = 50;
+        while (importer.hasTree()) {
+            assertSameTree(expected.get(i), importer.importNextTree());
+            i += 7;
+        }
+        assertEquals(50 + 7 * importer.countTrees(), i);
+        importer.close();
+    }
+
+    public void testTaxonListNumbering() throws IOException, Importer.ImportException {
+        Taxa taxa = new Taxa();
+        for (String id : new String[]{"D", "C", "B", "A"}) {
+            taxa.addTaxon(new Taxon(id));
+        }
+
+        FileReader reader = new FileReader(file);
+        List<Tree> expected = new NexusImporter(reader).importTrees(taxa, true);
+        reader.close();
+
+        IndexedNexusImporter importer = new IndexedNexusImporter(file, taxa, false, false);
+        List<Tree> actual = importer.importTrees(taxa);
+        importer.close();
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameTree(expected.get(i), actual.get(i));
+        }
+    }
+
+    public void testWindowsLineEndings() throws IOException, Importer.ImportException {
+        List<Tree> expected = readAllTrees();
+        writeTrees(file, "\r\n");
+
+        IndexedNexusImporter importer = new IndexedNexusImporter(file, null, false, false);
+        assertEquals(TREE_COUNT, importer.getTreeCount());
+        assertSameTree(expected.get(TREE_COUNT - 1), importer.importTree(TREE_COUNT - 1));
+        assertSameTree(expected.get(15), importer.importTree(15));
+        importer.close();
+    }
+
+    public static Test suite() {
+        return new TestSuite(IndexedNexusImporterTest.class);
+    }
+
+    private File file;
+}
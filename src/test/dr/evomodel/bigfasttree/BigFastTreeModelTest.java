@@ -0,0 +1,128 @@
+/*
+ * BigFastTreeModelTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.evomodel.bigfasttree;
+
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.bigfasttree.BigFastTreeModel;
+import dr.evomodel.operators.ScaleNodeHeightOperator;
+import dr.evomodel.operators.SubtreeLeapOperator;
+import dr.evomodel.operators.UniformNodeHeightOperator;
+import dr.evomodelxml.operators.NodeHeightOperatorParser;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.SimpleMCMCOperator;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the partial store and restore of BigFastTreeModel gives back the stored tree.
+ *
+ * @author Andrew Rambaut
+ */
+public class BigFastTreeModelTest extends TestCase {
+
+    public void setUp() throws Exception {
+        NewickImporter importer = new NewickImporter("(((0:0.5,(1:1.0,2:1.0)n6:1.0)n7:1.0,3:1.5)n8:1.0,(4:2.0,5:1.51)n9:1.5)n10;");
+        tree = new BigFastTreeModel(importer.importTree(null));
+    }
+
+    /**
+     * @return the parent, children, height and rate of each node and the root
+     */
+    private static double[] getState(BigFastTreeModel tree) {
+        double[] state = new double[tree.getNodeCount() * 5 + 1];
+        for (int i = 0; i < tree.getNodeCount(); i++) {
+            NodeRef node = tree.getNode(i);
+            NodeRef parent = tree.getParent(node);
+            state[i * 5] = (parent != null ? parent.getNumber() : -1);
+            state[i * 5 + 1] = (tree.getChildCount(node) > 0 ? tree.getChild(node, 0).getNumber() : -1);
+            state[i * 5 + 2] = (tree.getChildCount(node) > 1 ? tree.getChild(node, 1).getNumber() : -1);
+            state[i * 5 + 3] = tree.getNodeHeight(node);
+            state[i * 5 + 4] = tree.getNodeRate(node);
+        }
+        state[tree.getNodeCount() * 5] = tree.getRoot().getNumber();
+        return state;
+    }
+
+    public void testStoreRestore() {
+        MathUtils.setSeed(7);
+
+        SimpleMCMCOperator[] operators = new SimpleMCMCOperator[] {
+                new SubtreeLeapOperator(tree, 1, 1.0, SubtreeLeapOperator.DistanceKernelType.NORMAL, AdaptationMode.ADAPTATION_OFF, 0.2),
+                new UniformNodeHeightOperator(tree, 1),
+                new ScaleNodeHeightOperator(tree, 1, 0.75, NodeHeightOperatorParser.OperatorType.SCALEROOT, AdaptationMode.ADAPTATION_OFF, 0.25)
+        };
+
+        for (int i = 0; i < 10000; i++) {
+            double[] stored = getState(tree);
+            tree.storeModelState();
+
+            operators[MathUtils.nextInt(operators.length)].doOperation();
+            if (MathUtils.nextBoolean()) {
+                tree.setNodeRate(tree.getNode(MathUtils.nextInt(tree.getNodeCount())), MathUtils.nextDouble());
+            }
+            assertTrue(tree.isTreeValid());
+
+            if (MathUtils.nextBoolean()) {
+                tree.restoreModelState();
+                assertTrue("restored tree differs at iteration " + i, Arrays.equals(stored, getState(tree)));
+            } else {
+                tree.acceptModelState();
+            }
+        }
+    }
+
+    public void testReplaceChild() {
+        NodeRef root = tree.getRoot();
+        NodeRef left = tree.getChild(root, 0);
+        NodeRef grandchild = tree.getChild(left, 1);
+
+        double[] stored = getState(tree);
+        tree.storeModelState();
+
+        tree.beginTreeEdit();
+        tree.removeChild(left, grandchild);
+        tree.replaceChild(root, left, grandchild);
+
+        assertEquals(root, tree.getParent(grandchild));
+        assertNull(tree.getParent(left));
+        assertEquals(grandchild, tree.getChild(root, 0));
+
+        // put it back so the tree is valid at the end of the edit
+        tree.replaceChild(root, grandchild, left);
+        tree.addChild(left, grandchild);
+        tree.endTreeEdit();
+
+        tree.restoreModelState();
+        assertTrue(Arrays.equals(stored, getState(tree)));
+    }
+
+    private BigFastTreeModel tree;
+}
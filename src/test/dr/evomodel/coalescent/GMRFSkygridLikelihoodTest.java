@@ -0,0 +1,152 @@
+/*
+ * GMRFSkygridLikelihoodTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.evomodel.coalescent;
+
+import dr.evolution.coalescent.IntervalList;
+import dr.evolution.io.NewickImporter;
+import dr.evomodel.coalescent.GMRFSkygridLikelihood;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.operators.ScaleNodeHeightOperator;
+import dr.evomodel.operators.UniformNodeHeightOperator;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeModel;
+import dr.evomodelxml.operators.NodeHeightOperatorParser;
+import dr.inference.model.Parameter;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.SimpleMCMCOperator;
+import dr.math.MathUtils;
+import dr.util.ComputeService;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the sufficient statistics of GMRFSkygridLikelihood, which are only recalculated for
+ * the trees that change, give the same likelihood as calculating them for all the trees.
+ *
+ * @author Andrew Rambaut
+ */
+public class GMRFSkygridLikelihoodTest extends TestCase {
+
+    private static final int TREE_COUNT = 8;
+    private static final int GRID_POINTS = 20;
+    private static final double CUT_OFF = 10.0;
+
+    public void setUp() throws Exception {
+        MathUtils.setSeed(13);
+
+        trees = new ArrayList<TreeModel>();
+        operators = new ArrayList<SimpleMCMCOperator[]>();
+        for (int i = 0; i < TREE_COUNT; i++) {
+            NewickImporter importer = new NewickImporter("(((0:0.5,(1:1.0,2:1.0)n6:1.0)n7:1.0,3:1.5)n8:1.0,(4:2.0,5:1.51)n9:1.5)n10;");
+            TreeModel tree = new DefaultTreeModel("tree" + i, importer.importTree(null));
+            // moving the root changes the grid cells that the tree covers
+            SimpleMCMCOperator[] treeOperators = new SimpleMCMCOperator[]{
+                    new UniformNodeHeightOperator(tree, 1.0),
+                    new ScaleNodeHeightOperator(tree, 1.0, 0.75, NodeHeightOperatorParser.OperatorType.SCALEROOT,
+                            AdaptationMode.ADAPTATION_OFF, 0.25)
+            };
+            for (int j = 0; j < 100; j++) {
+                treeOperators[j % 2].doOperation();
+            }
+            trees.add(tree);
+            operators.add(treeOperators);
+        }
+
+        popSizes = new Parameter.Default(GRID_POINTS + 1, 0.0);
+        for (int i = 0; i < popSizes.getDimension(); i++) {
+            popSizes.setParameterValue(i, MathUtils.nextGaussian());
+        }
+        ploidyFactors = new Parameter.Default(TREE_COUNT, 1.0);
+        ploidyFactors.setParameterValue(1, 0.5);
+        ploidyFactors.setParameterValue(2, 2.0);
+    }
+
+    private GMRFSkygridLikelihood createLikelihood() {
+        List<IntervalList> intervalsList = new ArrayList<IntervalList>();
+        for (TreeModel tree : trees) {
+            intervalsList.add(new TreeIntervals(tree));
+        }
+        return new GMRFSkygridLikelihood(intervalsList, popSizes, null,
+                new Parameter.Default(1.0), new Parameter.Default(1.0), null, null, false,
+                CUT_OFF, GRID_POINTS, null, ploidyFactors);
+    }
+
+    private void checkIncrementalUpdates() {
+        GMRFSkygridLikelihood likelihood = createLikelihood();
+
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            double before = likelihood.getLogLikelihood();
+            likelihood.storeModelState();
+
+            // usually move one tree but sometimes several
+            int moves = (MathUtils.nextInt(5) == 0 ? 1 + MathUtils.nextInt(TREE_COUNT) : 1);
+            for (int j = 0; j < moves; j++) {
+                SimpleMCMCOperator[] treeOperators = operators.get(MathUtils.nextInt(TREE_COUNT));
+                treeOperators[MathUtils.nextInt(treeOperators.length)].doOperation();
+            }
+            if (MathUtils.nextInt(20) == 0) {
+                ploidyFactors.setParameterValue(MathUtils.nextInt(TREE_COUNT), 0.5 + MathUtils.nextDouble());
+            }
+
+            double expected = createLikelihood().getLogLikelihood();
+            assertEquals("log likelihood at iteration " + iteration, expected, likelihood.getLogLikelihood(),
+                    Math.abs(expected) * 1E-12);
+
+            if (MathUtils.nextBoolean()) {
+                likelihood.restoreModelState();
+                likelihood.makeDirty();
+                assertEquals("restored log likelihood at iteration " + iteration, before,
+                        likelihood.getLogLikelihood(), Math.abs(before) * 1E-12);
+            } else {
+                likelihood.acceptModelState();
+            }
+        }
+    }
+
+    public void testIncrementalUpdates() {
+        checkIncrementalUpdates();
+    }
+
+    public void testParallelUpdates() {
+        int parallelism = ComputeService.getParallelism();
+        ComputeService.setParallelism(4);
+        try {
+            checkIncrementalUpdates();
+        } finally {
+            ComputeService.setParallelism(parallelism);
+        }
+    }
+
+    private List<TreeModel> trees;
+    private List<SimpleMCMCOperator[]> operators;
+    private Parameter popSizes;
+    private Parameter ploidyFactors;
+}
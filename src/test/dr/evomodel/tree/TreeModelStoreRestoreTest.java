@@ -0,0 +1,151 @@
+/*
+ * TreeModelStoreRestoreTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.evomodel.tree;
+
+import dr.evolution.coalescent.CoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.tree.TreeUtils;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.evomodel.operators.ExchangeOperator;
+import dr.evomodel.operators.SubtreeLeapOperator;
+import dr.evomodel.operators.WilsonBalding;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.inference.model.Parameter;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.UniformOperator;
+import dr.math.MathUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that restoring a tree model after tree operators (including ones that move the root)
+ * gets back exactly the stored tree, whether the state is journaled or copied.
+ *
+ * @author Andrew Rambaut
+ */
+public class TreeModelStoreRestoreTest extends TestCase {
+
+    public TreeModelStoreRestoreTest(String name) {
+        super(name);
+    }
+
+    private void createTreeModel(boolean journalState) {
+        MathUtils.setSeed(666);
+
+        Taxa taxa = new Taxa();
+        for (int i = 0; i < 50; i++) {
+            taxa.addTaxon(new Taxon("taxon" + i));
+        }
+        ConstantPopulation constant = new ConstantPopulation(Units.Type.YEARS);
+        constant.setN0(10.0);
+        treeModel = new DefaultTreeModel("treeModel", new CoalescentSimulator().simulateTree(taxa, constant),
+                false, false, false, journalState);
+
+        rates = treeModel.createNodeRatesParameter(null, false, true, true);
+        internalHeights = treeModel.createNodeHeightsParameter(false, true, false);
+    }
+
+    public void testStoreRestoreJournaled() {
+        createTreeModel(true);
+        checkStoreRestore();
+    }
+
+    public void testStoreRestoreCopied() {
+        createTreeModel(false);
+        checkStoreRestore();
+    }
+
+    private void checkStoreRestore() {
+        Parameter rootHeight = treeModel.getRootHeightParameter();
+
+        MCMCOperator[] operators = new MCMCOperator[]{
+                new SubtreeLeapOperator(treeModel, 1.0, 1.0, SubtreeLeapOperator.DistanceKernelType.NORMAL,
+                        AdaptationMode.ADAPTATION_OFF, 0.23),
+                new ExchangeOperator(ExchangeOperator.NARROW, treeModel, 1.0),
+                new ExchangeOperator(ExchangeOperator.WIDE, treeModel, 1.0),
+                new WilsonBalding(treeModel, 1.0),
+                new UniformOperator(internalHeights, 1.0)
+        };
+
+        String state = getState();
+        for (int i = 0; i < 5000; i++) {
+            treeModel.storeModelState();
+            rates.storeParameterValues();
+
+            MCMCOperator operator = operators[i % operators.length];
+            try {
+                operator.operate();
+            } catch (RuntimeException e) {
+                // some operators throw if there is no valid move
+            }
+            int index = MathUtils.nextInt(rates.getDimension());
+            rates.setParameterValue(index, MathUtils.nextDouble());
+
+            if (MathUtils.nextBoolean()) {
+                treeModel.restoreModelState();
+                rates.restoreParameterValues();
+                assertEquals("state after restore (" + operator.getOperatorName() + ")", state, getState());
+            } else {
+                treeModel.acceptModelState();
+                rates.acceptParameterValues();
+                state = getState();
+            }
+
+            // the root always has the same height parameter
+            assertSame(rootHeight, treeModel.getRootHeightParameter());
+            assertSame(treeModel.getRoot(), treeModel.getNodeOfParameter(rootHeight));
+        }
+    }
+
+    private String getState() {
+        StringBuilder sb = new StringBuilder(TreeUtils.newick(treeModel));
+        for (int i = 0; i < treeModel.getNodeCount(); i++) {
+            NodeRef node = treeModel.getNode(i);
+            NodeRef parent = treeModel.getParent(node);
+            sb.append(' ').append(parent == null ? -1 : parent.getNumber());
+            if (!treeModel.isRoot(node)) {
+                sb.append(':').append(treeModel.getNodeRate(node));
+            }
+        }
+        return sb.toString();
+    }
+
+    public static Test suite() {
+        return new TestSuite(TreeModelStoreRestoreTest.class);
+    }
+
+    private DefaultTreeModel treeModel;
+    private Parameter rates;
+    private Parameter internalHeights;
+}
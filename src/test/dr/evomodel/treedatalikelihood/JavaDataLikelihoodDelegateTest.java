@@ -0,0 +1,395 @@
+/*
+ * JavaDataLikelihoodDelegateTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.evomodel.treedatalikelihood;
+
+import dr.evolution.alignment.PatternList;
+import dr.evolution.alignment.Patterns;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.tree.Tree;
+import dr.evomodel.branchmodel.BranchModel;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.BranchRateModel;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.SubstitutionModel;
+import dr.evomodel.substmodel.nucleotide.GTR;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.tree.TreeModel;
+import dr.evomodel.treedatalikelihood.DataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.JavaDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.ShardedDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.evomodelxml.substmodel.GTRParser;
+import dr.evomodelxml.substmodel.HKYParser;
+import dr.inference.model.Parameter;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import test.dr.inference.trace.TraceCorrelationAssert;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * @author Andrew Rambaut
+ * Checks the Java delegate against the expected values in TreeDataLikelihoodTest
+ */
+
+public class JavaDataLikelihoodDelegateTest extends TraceCorrelationAssert {
+
+    private TreeModel treeModel;
+    private NumberFormat format = NumberFormat.getNumberInstance(Locale.ENGLISH);
+
+    public JavaDataLikelihoodDelegateTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        format.setMaximumFractionDigits(5);
+
+        createAlignment(PRIMATES_TAXON_SEQUENCE, Nucleotides.INSTANCE);
+
+        treeModel = createPrimateTreeModel ();
+    }
+
+    private TreeDataLikelihood getTreeDataLikelihood(SubstitutionModel substitutionModel, GammaSiteRateModel siteRateModel) {
+        return getTreeDataLikelihood(substitutionModel, siteRateModel, PartialsRescalingScheme.DEFAULT, 1);
+    }
+
+    private TreeDataLikelihood getTreeDataLikelihood(SubstitutionModel substitutionModel, GammaSiteRateModel siteRateModel,
+                                                     PartialsRescalingScheme scalingScheme, int threadCount) {
+        return getTreeDataLikelihood(substitutionModel, siteRateModel, scalingScheme, true, threadCount);
+    }
+
+    private TreeDataLikelihood getTreeDataLikelihood(SubstitutionModel substitutionModel, GammaSiteRateModel siteRateModel,
+                                                     PartialsRescalingScheme scalingScheme, boolean delayScaling,
+                                                     int threadCount) {
+        SitePatterns patterns = new SitePatterns(alignment, null, 0, -1, 1, true);
+
+        DataLikelihoodDelegate dataLikelihoodDelegate = new JavaDataLikelihoodDelegate(
+                treeModel,
+                patterns,
+                new HomogeneousBranchModel(substitutionModel),
+                siteRateModel,
+                false,
+                scalingScheme,
+                delayScaling,
+                threadCount
+        );
+
+        TreeDataLikelihood treeDataLikelihood = new TreeDataLikelihood(
+                dataLikelihoodDelegate,
+                treeModel,
+                new DefaultBranchRateModel());
+        return treeDataLikelihood;
+    }
+
+
+    public void testLikelihoodJC69() {
+        System.out.println("\nTest Likelihood using JC69:");
+        // Sub model
+        Parameter freqs = new Parameter.Default(new double[]{0.25, 0.25, 0.25, 0.25});
+        Parameter kappa = new Parameter.Default(HKYParser.KAPPA, 1.0);
+
+        FrequencyModel frequencyModel = new FrequencyModel(Nucleotides.INSTANCE, freqs);
+        HKY hky = new HKY(kappa, frequencyModel);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma");
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodJC69", format.format(-1992.20564), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+
+    public void testLikelihoodK80() {
+        System.out.println("\nTest Likelihood using K80:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(new double[]{0.25, 0.25, 0.25, 0.25}));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma");
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodK80", format.format(-1868.89782), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodHKY85() {
+        System.out.println("\nTest Likelihood using HKY85:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma");
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodHKY85", format.format(-1839.84514), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodHKY85G() {
+        System.out.println("\nTest Likelihood using HKY85G:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5),
+                4, null);
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodHKY85G", format.format(-1816.82611), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodHKY85I() {
+        System.out.println("\nTest Likelihood using HKY85I:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                null,
+                1,
+                new Parameter.Default(0.75));
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodHKY85I", format.format(-1822.37478), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodHKY85GI() {
+        System.out.println("\nTest Likelihood using HKY85GI:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5),
+                4,
+                new Parameter.Default(0.75));
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(hky, siteRateModel);
+
+        assertEquals("treeLikelihoodHKY85GI", format.format(-1815.02176), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodGTR() {
+        System.out.println("\nTest Likelihood using GTR:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        GTR gtr = new GTR(
+                new Parameter.Default(GTRParser.A_TO_C, 1.0),
+                new Parameter.Default(GTRParser.A_TO_G, 1.0),
+                new Parameter.Default(GTRParser.A_TO_T, 1.0),
+                new Parameter.Default(GTRParser.C_TO_G, 1.0),
+                new Parameter.Default(GTRParser.C_TO_T, 1.0),
+                new Parameter.Default(GTRParser.G_TO_T, 1.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                null, 1,
+                null);
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(gtr, siteRateModel);
+
+        assertEquals("treeLikelihoodGTR", format.format(-1969.14584), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodGTRI() {
+        System.out.println("\nTest Likelihood using GTRI:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        GTR gtr = new GTR(
+                new Parameter.Default(GTRParser.A_TO_C, 1.0),
+                new Parameter.Default(GTRParser.A_TO_G, 1.0),
+                new Parameter.Default(GTRParser.A_TO_T, 1.0),
+                new Parameter.Default(GTRParser.C_TO_G, 1.0),
+                new Parameter.Default(GTRParser.C_TO_T, 1.0),
+                new Parameter.Default(GTRParser.G_TO_T, 1.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                null, 1,
+                new Parameter.Default(0.5));
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(gtr, siteRateModel);
+
+        assertEquals("treeLikelihoodGTRI", format.format(-1948.84175), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodGTRG() {
+        System.out.println("\nTest Likelihood using GTRG:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        GTR gtr = new GTR(
+                new Parameter.Default(GTRParser.A_TO_C, 1.0),
+                new Parameter.Default(GTRParser.A_TO_G, 1.0),
+                new Parameter.Default(GTRParser.A_TO_T, 1.0),
+                new Parameter.Default(GTRParser.C_TO_G, 1.0),
+                new Parameter.Default(GTRParser.C_TO_T, 1.0),
+                new Parameter.Default(GTRParser.G_TO_T, 1.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5), 4,
+                null);
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(gtr, siteRateModel);
+
+        assertEquals("treeLikelihoodGTRG", format.format(-1949.03601), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testLikelihoodGTRGI() {
+        System.out.println("\nTest Likelihood using GTRGI:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        GTR gtr = new GTR(
+                new Parameter.Default(GTRParser.A_TO_C, 1.0),
+                new Parameter.Default(GTRParser.A_TO_G, 1.0),
+                new Parameter.Default(GTRParser.A_TO_T, 1.0),
+                new Parameter.Default(GTRParser.C_TO_G, 1.0),
+                new Parameter.Default(GTRParser.C_TO_T, 1.0),
+                new Parameter.Default(GTRParser.G_TO_T, 1.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5), 4,
+                new Parameter.Default(0.5));
+
+        //treeLikelihood
+        TreeDataLikelihood treeDataLikelihood = getTreeDataLikelihood(gtr, siteRateModel);
+
+        assertEquals("treeLikelihoodGTRGI", format.format(-1951.62188), format.format(treeDataLikelihood.getLogLikelihood()));
+    }
+
+    public void testThreadsAndScaling() {
+        System.out.println("\nTest Likelihood using HKY85GI with threads and scaling:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5),
+                4,
+                new Parameter.Default(0.75));
+
+        TreeDataLikelihood threaded = getTreeDataLikelihood(hky, siteRateModel, PartialsRescalingScheme.NONE, 4);
+        assertEquals("treeLikelihoodHKY85GI threaded", format.format(-1815.02176), format.format(threaded.getLogLikelihood()));
+
+        TreeDataLikelihood scaled = getTreeDataLikelihood(hky, siteRateModel, PartialsRescalingScheme.ALWAYS, 3);
+        assertEquals("treeLikelihoodHKY85GI scaled", format.format(-1815.02176), format.format(scaled.getLogLikelihood()));
+
+        TreeDataLikelihood undelayed = getTreeDataLikelihood(hky, siteRateModel, PartialsRescalingScheme.DEFAULT, false, 1);
+        assertFalse(undelayed.getDataLikelihoodDelegate().getDelayRescalingUntilUnderflow());
+        assertEquals("treeLikelihoodHKY85GI not delayed", format.format(-1815.02176), format.format(undelayed.getLogLikelihood()));
+
+        hky.setKappa(2.0);
+        assertEquals("treeLikelihoodHKY85GI updated", format.format(threaded.getLogLikelihood()), format.format(scaled.getLogLikelihood()));
+    }
+
+    public void testShardedPatterns() {
+        System.out.println("\nTest Likelihood using HKY85GI with pattern shards:");
+
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(alignment.getStateFrequencies()));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 8.0), f);
+
+        //siteModel
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gamma",
+                null, 1.0,
+                new Parameter.Default(0.5),
+                4,
+                new Parameter.Default(0.75));
+
+        HomogeneousBranchModel branchModel = new HomogeneousBranchModel(hky);
+        SitePatterns patterns = new SitePatterns(alignment, null, 0, -1, 1, true);
+
+        int shardCount = 3;
+        List<DataLikelihoodDelegate> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            PatternList shardPatterns = new Patterns(patterns, i, shardCount, patterns.areUnique());
+            shards.add(new JavaDataLikelihoodDelegate(treeModel, shardPatterns, branchModel, siteRateModel,
+                    false, PartialsRescalingScheme.DEFAULT, 1));
+        }
+
+        TreeDataLikelihood sharded = new TreeDataLikelihood(
+                new ShardedDataLikelihoodDelegate(shards, branchModel, siteRateModel, shardCount),
+                treeModel,
+                new DefaultBranchRateModel());
+
+        assertEquals("treeLikelihoodHKY85GI sharded", format.format(-1815.02176), format.format(sharded.getLogLikelihood()));
+        assertEquals("site count", patterns.getPatternCount(), sharded.getDataLikelihoodDelegate().getSiteLogLikelihoods().length);
+
+        TreeDataLikelihood single = getTreeDataLikelihood(hky, siteRateModel);
+
+        sharded.storeModelState();
+        hky.setKappa(2.0);
+        assertEquals("treeLikelihoodHKY85GI sharded updated", format.format(single.getLogLikelihood()), format.format(sharded.getLogLikelihood()));
+
+        hky.setKappa(8.0);
+        sharded.restoreModelState();
+        assertEquals("treeLikelihoodHKY85GI sharded restored", format.format(-1815.02176), format.format(sharded.getLogLikelihood()));
+    }
+
+    public static Test suite() {
+        return new TestSuite(JavaDataLikelihoodDelegateTest.class);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * AsyncLogWriterTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.inference.loggers;
+
+import dr.inference.loggers.*;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Checks that asynchronous logging writes exactly what synchronous logging does.
+ *
+ * @author Andrew Rambaut
+ */
+public class AsyncLogWriterTest extends TestCase {
+
+    public AsyncLogWriterTest(String name) {
+        super(name);
+    }
+
+    private static String writeLog(boolean asynchronous) {
+        final double[] value = new double[1];
+
+        StringWriter out = new StringWriter();
+        MCLogger logger = new MCLogger(new TabDelimitedFormatter(new PrintWriter(out)), 10, false);
+        logger.setAsynchronous(asynchronous);
+
+        NumberColumn number = new NumberColumn("x") {
+            public double getDoubleValue() {
+                return value[0];
+            }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
+        };
+        number.setSignificantFigures(4);
+        logger.addColumn(number);
+        // doesn't opt in so is formatted when logged
+        NumberColumn square = new NumberColumn("y") {
+            public double getDoubleValue() {
+                return value[0] * value[0];
+            }
+        };
+        assertFalse(square.isFormattedFromValue());
+        logger.addColumn(square);
+        PercentColumn percent = new PercentColumn(number);
+        // formats the value as a percentage so can't be written from the captured value
+        assertTrue(number.isFormattedFromValue());
+        assertFalse(percent.isFormattedFromValue());
+        logger.addColumn(percent);
+        logger.addColumn(new LogColumn.Abstract("label") {
+            protected String getFormattedValue() {
+                return value[0] < 0 ? "negative" : "positive";
+            }
+        });
+
+        logger.startLogging();
+        for (long state = 0; state <= 10000; state++) {
+            value[0] = Math.sin(state) * 1000;
+            logger.log(state);
+        }
+        logger.stopLogging();
+
+        return out.toString();
+    }
+
+    public void testSameAsSynchronous() {
+        String expected = writeLog(false);
+        assertEquals(1002, expected.split("\n").length);
+        assertEquals(expected, writeLog(true));
+    }
+
+    public void testBackPressureAndFlush() {
+        final List<Integer> written = new ArrayList<Integer>();
+        int[][] slots = new int[2][1];
+
+        AsyncLogWriter<int[]> writer = new AsyncLogWriter<int[]>("test", slots, new Consumer<int[]>() {
+            public void accept(int[] slot) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ie) {
+                    // ignore
+                }
+                synchronized (written) {
+                    written.add(slot[0]);
+                }
+            }
+        });
+
+        for (int i = 0; i < 50; i++) {
+            int[] slot = writer.acquire();
+            slot[0] = i;
+            writer.publish(slot);
+        }
+        AsyncLogWriter.flushAll();
+
+        synchronized (written) {
+            assertEquals(50, written.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, written.get(i).intValue());
+            }
+        }
+        writer.close();
+    }
+
+    public void testErrorIsReported() {
+        AsyncLogWriter<int[]> writer = new AsyncLogWriter<int[]>("test", new int[1][1], new Consumer<int[]>() {
+            public void accept(int[] slot) {
+                throw new IllegalStateException("disk full");
+            }
+        });
+
+        writer.publish(writer.acquire());
+        try {
+            writer.flush();
+            fail("The error should have been reported");
+        } catch (IllegalStateException ise) {
+            assertEquals("disk full", ise.getMessage());
+        }
+        writer.close();
+    }
+
+    public static Test suite() {
+        return new TestSuite(AsyncLogWriterTest.class);
+    }
+}
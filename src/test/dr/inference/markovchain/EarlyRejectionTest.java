@@ -0,0 +1,226 @@
+/*
+ * EarlyRejectionTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.inference.markovchain;
+
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.loggers.ArrayLogFormatter;
+import dr.inference.loggers.MCLogger;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCOptions;
+import dr.inference.model.BoundedLikelihood;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Model;
+import dr.inference.model.Parameter;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.inference.operators.ScaleOperator;
+import dr.inference.operators.SimpleOperatorSchedule;
+import dr.inference.trace.Trace;
+import dr.math.MathUtils;
+import dr.math.distributions.LogNormalDistribution;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that early rejection gives exactly the same chain as full evaluation while evaluating the
+ * bounded likelihood less often, and that delayed acceptance samples the same posterior.
+ *
+ * @author Andrew Rambaut
+ */
+public class EarlyRejectionTest extends TestCase {
+
+    private static final long CHAIN_LENGTH = 100000;
+    private static final int LOG_EVERY = 10;
+
+    public EarlyRejectionTest(String name) {
+        super(name);
+    }
+
+    public void testEarlyRejectionGivesTheSameChain() {
+        MathUtils.setSeed(666);
+        Chain full = new Chain(false, false);
+        full.mcmc.run();
+
+        MathUtils.setSeed(666);
+        Chain early = new Chain(true, false);
+        early.mcmc.run();
+
+        assertEquals(full.getSamples(), early.getSamples());
+        assertTrue("the bounded likelihood should be calculated less often",
+                early.binomial.calculationCount < full.binomial.calculationCount);
+    }
+
+    public void testAdaptationWithEarlyRejection() {
+        MathUtils.setSeed(666);
+        Chain full = new Chain(false, false, true);
+        full.mcmc.run();
+
+        MathUtils.setSeed(666);
+        Chain early = new Chain(true, false, true);
+        early.mcmc.run();
+
+        // the operator is tuned to the target acceptance probability whether or not proposals are
+        // rejected before they are fully evaluated
+        assertEquals(0.234, full.operator.getAcceptanceProbability(), 0.02);
+        assertEquals(0.234, early.operator.getAcceptanceProbability(), 0.02);
+    }
+
+    public void testDelayedAcceptance() {
+        MathUtils.setSeed(666);
+        Chain full = new Chain(false, false);
+        full.mcmc.run();
+
+        MathUtils.setSeed(666);
+        Chain delayed = new Chain(false, true);
+        delayed.mcmc.run();
+
+        assertEquals("mean of log(x)", getMeanLog(full.getSamples()), getMeanLog(delayed.getSamples()), 0.05);
+        assertTrue("the approximated likelihood should be calculated less often",
+                delayed.binomial.calculationCount < full.binomial.calculationCount);
+    }
+
+    private static double getMeanLog(List<Double> values) {
+        double mean = 0.0;
+        for (double value : values) {
+            mean += Math.log(value);
+        }
+        return mean / values.size();
+    }
+
+    private static class Chain {
+        Chain(boolean earlyRejection, boolean delayedAcceptance) {
+            this(earlyRejection, delayedAcceptance, false);
+        }
+
+        Chain(boolean earlyRejection, boolean delayedAcceptance, boolean useAdaptation) {
+            Parameter x = new Parameter.Default(1.0);
+            x.setId("x");
+            ConstantPopulationModel demo = new ConstantPopulationModel(x, Units.Type.YEARS);
+
+            DistributionLikelihood prior = new DistributionLikelihood(new LogNormalDistribution(0.0, 1.0), 0);
+            prior.addData(x);
+
+            binomial = new BinomialLikelihood(demo, x, 20, 12, 1.0);
+
+            List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+            likelihoods.add(binomial);
+            likelihoods.add(prior);
+            Likelihood posterior = new CompoundLikelihood(likelihoods);
+
+            OperatorSchedule schedule = new SimpleOperatorSchedule();
+            operator = new ScaleOperator(x, 0.75);
+            operator.setWeight(1.0);
+            schedule.addOperator(operator);
+
+            formatter = new ArrayLogFormatter(false);
+            MCLogger logger = new MCLogger(formatter, LOG_EVERY, false);
+            logger.add(x);
+
+            mcmc = new MCMC("mcmc");
+            mcmc.setShowOperatorAnalysis(false);
+            // with adaptation the chains differ as the operator adapts to the outcome of early rejections
+            MCMCOptions options = new MCMCOptions(CHAIN_LENGTH, 2000, 1, MarkovChain.EVALUATION_TEST_THRESHOLD,
+                    useAdaptation, 0, 0.234, false, 1.0);
+            mcmc.init(options, posterior, schedule, new MCLogger[]{logger});
+            mcmc.getMarkovChain().setEarlyRejection(earlyRejection);
+            if (delayedAcceptance) {
+                mcmc.getMarkovChain().setDelayedAcceptance(new BinomialLikelihood(demo, x, 20, 12, 0.9), binomial);
+            }
+        }
+
+        List<Double> getSamples() {
+            Trace trace = formatter.getTraces().get(1);
+            return trace.getValues(0, trace.getValueCount());
+        }
+
+        final MCMC mcmc;
+        final MCMCOperator operator;
+        final BinomialLikelihood binomial;
+        final ArrayLogFormatter formatter;
+    }
+
+    /**
+     * The probability of k successes in n trials with a success probability of scale * x / (1 + x)
+     */
+    private static class BinomialLikelihood extends Likelihood.Abstract implements BoundedLikelihood {
+        BinomialLikelihood(Model model, Parameter x, int n, int k, double scale) {
+            super(model);
+            this.x = x;
+            this.n = n;
+            this.k = k;
+            this.scale = scale;
+        }
+
+        @Override
+        protected double calculateLogLikelihood() {
+            // a restored state is made dirty so remember the last two values, as a model
+            // likelihood that stores its state would
+            double value = x.getParameterValue(0);
+            for (int i = 0; i < 2; i++) {
+                if (cachedX[i] == value) {
+                    return cachedLogL[i];
+                }
+            }
+            calculationCount++;
+            double p = scale * value / (1.0 + value);
+            double logL = k * Math.log(p) + (n - k) * Math.log(1.0 - p);
+
+            cachedX[1] = cachedX[0];
+            cachedLogL[1] = cachedLogL[0];
+            cachedX[0] = value;
+            cachedLogL[0] = logL;
+            return logL;
+        }
+
+        @Override
+        public double getLogLikelihoodUpperBound() {
+            // the likelihood is greatest when p = k / n
+            return k * Math.log(((double) k) / n) + (n - k) * Math.log(((double) (n - k)) / n);
+        }
+
+        private final Parameter x;
+        private final int n;
+        private final int k;
+        private final double scale;
+        private final double[] cachedX = {Double.NaN, Double.NaN};
+        private final double[] cachedLogL = new double[2];
+        int calculationCount = 0;
+    }
+
+    public static Test suite() {
+        return new TestSuite(EarlyRejectionTest.class);
+    }
+}
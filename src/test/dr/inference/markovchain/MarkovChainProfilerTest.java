@@ -0,0 +1,175 @@
+/*
+ * MarkovChainProfilerTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.inference.markovchain;
+
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.loggers.MCLogger;
+import dr.inference.markovchain.MarkovChainProfiler;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCOptions;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.DummyLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorAnalysisPrinter;
+import dr.inference.operators.OperatorSchedule;
+import dr.inference.operators.ScaleOperator;
+import dr.inference.operators.SimpleOperatorSchedule;
+import dr.math.MathUtils;
+import dr.math.distributions.LogNormalDistribution;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a short chain with profiling switched on and checks the timings and metrics file.
+ *
+ * @author Andrew Rambaut
+ */
+public class MarkovChainProfilerTest extends TestCase {
+
+    private static final long CHAIN_LENGTH = 10000;
+    private static final long PROFILE_EVERY = 2500;
+
+    public MarkovChainProfilerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        MathUtils.setSeed(666);
+    }
+
+    public void tearDown() throws Exception {
+        System.clearProperty(MarkovChainProfiler.PROFILE);
+        System.clearProperty(MarkovChainProfiler.PROFILE_FILE);
+        System.clearProperty(MarkovChainProfiler.PROFILE_EVERY);
+
+        super.tearDown();
+    }
+
+    public void testProfilingOff() {
+        MCMC mcmc = createChain();
+        assertNull(mcmc.getMarkovChain().getProfiler());
+    }
+
+    public void testProfile() {
+        System.setProperty(MarkovChainProfiler.PROFILE, Boolean.TRUE.toString());
+
+        MCMC mcmc = createChain();
+        mcmc.run();
+
+        MarkovChainProfiler profiler = mcmc.getMarkovChain().getProfiler();
+        assertNotNull(profiler);
+
+        long count = 0;
+        for (int i = 0; i < profiler.getSchedule().getOperatorCount(); i++) {
+            count += profiler.getCount(i);
+            assertTrue(profiler.getTime(i, MarkovChainProfiler.Phase.EVALUATE) > 0);
+            assertTrue(profiler.getTotalTime(i) >= profiler.getTime(i, MarkovChainProfiler.Phase.EVALUATE));
+        }
+        assertEquals(CHAIN_LENGTH, count);
+
+        List<MarkovChainProfiler.LikelihoodProfile> profiles = profiler.getLikelihoodProfiles();
+        assertEquals(2, profiles.size());
+        assertEquals("prior", profiles.get(1).name);
+        assertTrue(profiles.get(1).evaluations > 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OperatorAnalysisPrinter.showProfileAnalysis(new PrintStream(bytes), profiler, true);
+        String[] lines = bytes.toString().split("\n");
+        assertTrue(lines[0].startsWith("Operator,Count,store (ms)"));
+        assertTrue(lines[1].startsWith("scale(x)," + CHAIN_LENGTH + ","));
+    }
+
+    public void testMetricsFile() throws Exception {
+        File file = File.createTempFile("profile", ".csv");
+        file.deleteOnExit();
+        System.setProperty(MarkovChainProfiler.PROFILE_FILE, file.getAbsolutePath());
+        System.setProperty(MarkovChainProfiler.PROFILE_EVERY, Long.toString(PROFILE_EVERY));
+
+        MCMC mcmc = createChain();
+        mcmc.run();
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+
+        assertTrue(lines.get(0).startsWith("state,elapsed,type,name,count"));
+
+        // one operator and two likelihood rows at every interval within the chain and at the end
+        int reports = (int) (CHAIN_LENGTH / PROFILE_EVERY);
+        assertEquals(1 + reports * 3, lines.size());
+        assertTrue(lines.get(lines.size() - 3).startsWith(CHAIN_LENGTH + ","));
+    }
+
+    private MCMC createChain() {
+        Parameter x = new Parameter.Default(1.0);
+        x.setId("x");
+        ConstantPopulationModel demo = new ConstantPopulationModel(x, Units.Type.YEARS);
+
+        DistributionLikelihood prior = new DistributionLikelihood(new LogNormalDistribution(0.0, 1.0), 0);
+        prior.setId("prior");
+        prior.addData(x);
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        likelihoods.add(new DummyLikelihood(demo));
+        likelihoods.add(prior);
+        Likelihood posterior = new CompoundLikelihood(0, likelihoods);
+
+        OperatorSchedule schedule = new SimpleOperatorSchedule();
+        MCMCOperator operator = new ScaleOperator(x, 0.75);
+        operator.setWeight(1.0);
+        schedule.addOperator(operator);
+
+        MCMC mcmc = new MCMC("mcmc");
+        mcmc.setShowOperatorAnalysis(false);
+        mcmc.init(new MCMCOptions(CHAIN_LENGTH), posterior, schedule, new MCLogger[0]);
+        return mcmc;
+    }
+
+    public static Test suite() {
+        return new TestSuite(MarkovChainProfilerTest.class);
+    }
+}
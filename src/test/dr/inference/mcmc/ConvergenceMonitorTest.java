@@ -0,0 +1,163 @@
+/*
+ * ConvergenceMonitorTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.inference.mcmc;
+
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.loggers.ArrayLogFormatter;
+import dr.inference.loggers.LogColumn;
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.NumberColumn;
+import dr.inference.mcmc.ConvergenceMonitor;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCOptions;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.DummyLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.inference.operators.ScaleOperator;
+import dr.inference.operators.SimpleOperatorSchedule;
+import dr.math.MathUtils;
+import dr.math.distributions.LogNormalDistribution;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a chain with a convergence monitor stops once its targets are met.
+ *
+ * @author Andrew Rambaut
+ */
+public class ConvergenceMonitorTest extends TestCase {
+
+    private static final long CHAIN_LENGTH = 100000000;
+    private static final double TARGET_ESS = 200;
+
+    public ConvergenceMonitorTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        MathUtils.setSeed(666);
+    }
+
+    public void testChainStops() {
+        Parameter x = new Parameter.Default(1.0);
+        x.setId("x");
+        ConvergenceMonitor monitor = new ConvergenceMonitor(getColumns(x), 10, 1000, TARGET_ESS, Double.NaN, 0.1, null);
+        MCMC mcmc = createChain("mcmc", x, monitor);
+
+        mcmc.run();
+
+        assertTrue(monitor.hasConverged());
+        long length = mcmc.getMarkovChain().getCurrentLength();
+        assertTrue("chain stopped at " + length, length < CHAIN_LENGTH);
+        assertTrue(monitor.getESS(0) >= TARGET_ESS);
+    }
+
+    public void testGroupStopsTogether() throws Exception {
+        final int chainCount = 2;
+        final ConvergenceMonitor[] monitors = new ConvergenceMonitor[chainCount];
+        final MCMC[] chains = new MCMC[chainCount];
+        for (int i = 0; i < chainCount; i++) {
+            Parameter x = new Parameter.Default(1.0);
+            x.setId("x" + i);
+            monitors[i] = new ConvergenceMonitor(getColumns(x), 10, 1000, TARGET_ESS, 1.05, 0.1, "replicates");
+            chains[i] = createChain("mcmc" + i, x, monitors[i]);
+        }
+
+        Thread[] threads = new Thread[chainCount];
+        for (int i = 0; i < chainCount; i++) {
+            final MCMC mcmc = chains[i];
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    mcmc.run();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < chainCount; i++) {
+            assertTrue(monitors[i].hasConverged());
+            assertTrue(chains[i].getMarkovChain().getCurrentLength() < CHAIN_LENGTH);
+            // neither chain stops before both have reached the target (allowing for the few samples
+            // the other chain adds before it sees the request to stop)
+            assertTrue(monitors[i].getESS(0) >= 0.9 * TARGET_ESS);
+            assertTrue(monitors[i].getRHat(0) <= 1.05 * 1.01);
+        }
+    }
+
+    private static List<NumberColumn> getColumns(Parameter x) {
+        List<NumberColumn> columns = new ArrayList<NumberColumn>();
+        for (LogColumn column : x.getColumns()) {
+            columns.add((NumberColumn) column);
+        }
+        return columns;
+    }
+
+    private static MCMC createChain(String id, Parameter x, ConvergenceMonitor monitor) {
+        ConstantPopulationModel demo = new ConstantPopulationModel(x, Units.Type.YEARS);
+
+        DistributionLikelihood prior = new DistributionLikelihood(new LogNormalDistribution(0.0, 1.0), 0);
+        prior.addData(x);
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        likelihoods.add(new DummyLikelihood(demo));
+        likelihoods.add(prior);
+        Likelihood posterior = new CompoundLikelihood(0, likelihoods);
+
+        OperatorSchedule schedule = new SimpleOperatorSchedule();
+        MCMCOperator operator = new ScaleOperator(x, 0.75);
+        operator.setWeight(1.0);
+        schedule.addOperator(operator);
+
+        MCLogger logger = new MCLogger(new ArrayLogFormatter(false), 1000, false);
+        logger.add(x);
+
+        MCMC mcmc = new MCMC(id);
+        mcmc.setShowOperatorAnalysis(false);
+        mcmc.init(new MCMCOptions(CHAIN_LENGTH), posterior, schedule, new MCLogger[]{logger});
+        mcmc.setConvergenceMonitor(monitor);
+        return mcmc;
+    }
+
+    public static Test suite() {
+        return new TestSuite(ConvergenceMonitorTest.class);
+    }
+}
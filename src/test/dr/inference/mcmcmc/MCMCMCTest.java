@@ -0,0 +1,304 @@
+/*
+ * MCMCMCTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.inference.mcmcmc;
+
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.loggers.ArrayLogFormatter;
+import dr.inference.loggers.MCLogger;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCOptions;
+import dr.inference.mcmcmc.MCMCMC;
+import dr.inference.mcmcmc.MCMCMCCoordinator;
+import dr.inference.mcmcmc.MCMCMCOptions;
+import dr.inference.mcmcmc.MCMCMCWorker;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.DummyLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.inference.operators.ScaleOperator;
+import dr.inference.operators.SimpleOperatorSchedule;
+import dr.inference.trace.Trace;
+import dr.math.MathUtils;
+import dr.math.distributions.LogNormalDistribution;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a small Metropolis-coupled analysis of a log normal distribution.
+ *
+ * @author Andrew Rambaut
+ */
+public class MCMCMCTest extends TestCase {
+
+    private static final long CHAIN_LENGTH = 50000;
+    private static final int SWAP_EVERY = 50;
+    private static final int LOG_EVERY = 100;
+
+    public MCMCMCTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        MathUtils.setSeed(666);
+    }
+
+    public void testOriginalScheme() {
+        runAndCheck(MCMCMCOptions.SwapScheme.ORIGINAL_FLAVOR);
+    }
+
+    public void testRandomMultipleScheme() {
+        runAndCheck(MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE);
+    }
+
+    public void testSeededRunIsReproducible() {
+        double[] temperatures = new double[]{1.0, 0.8, 0.6, 0.4};
+
+        List<List<Double>> runs = new ArrayList<List<Double>>();
+        for (int run = 0; run < 2; run++) {
+            MathUtils.setSeed(666);
+
+            ArrayLogFormatter formatter = new ArrayLogFormatter(false);
+            MCMC[] chains = new MCMC[temperatures.length];
+            for (int i = 0; i < chains.length; i++) {
+                chains[i] = createChain(i, i == 0 ? formatter : new ArrayLogFormatter(false));
+            }
+
+            MCMCMC mc3 = new MCMCMC(chains, new MCMCMCOptions(temperatures, SWAP_EVERY,
+                    MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE));
+            mc3.setShowOperatorAnalysis(false);
+            mc3.run();
+
+            Trace trace = formatter.getTraces().get(1);
+            runs.add(trace.getValues(0, trace.getValueCount()));
+        }
+
+        // the chains run concurrently but each draws from its own random number stream
+        assertEquals(runs.get(0), runs.get(1));
+    }
+
+    public void testAsynchronousLogging() {
+        double[] temperatures = new double[]{1.0, 0.8, 0.6, 0.4};
+
+        ArrayLogFormatter formatter = new ArrayLogFormatter(false);
+        MCMC[] chains = new MCMC[temperatures.length];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = createChain(i, i == 0 ? formatter : new ArrayLogFormatter(false), true);
+        }
+
+        MCMCMC mc3 = new MCMCMC(chains, new MCMCMCOptions(temperatures, SWAP_EVERY,
+                MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE));
+        mc3.setShowOperatorAnalysis(false);
+        mc3.run();
+
+        // the rows buffered by a cold chain are written before it hands over the log
+        Trace trace = formatter.getTraces().get(0);
+        List<Double> states = trace.getValues(0, trace.getValueCount());
+        assertEquals(CHAIN_LENGTH / LOG_EVERY, states.size());
+        for (int i = 0; i < states.size(); i++) {
+            assertEquals((double) (i * LOG_EVERY), states.get(i));
+        }
+    }
+
+    public void testDistributed() throws Exception {
+        double[] temperatures = new double[]{1.0, 0.8, 0.6, 0.4};
+
+        runDistributed(new MCMCMCCoordinator(0,
+                new MCMCMCOptions(temperatures, SWAP_EVERY, MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE)), null);
+    }
+
+    public void testDistributedWithSecret() throws Exception {
+        double[] temperatures = new double[]{1.0, 0.8, 0.6, 0.4};
+
+        runDistributed(new MCMCMCCoordinator("127.0.0.1", 0, "secret",
+                new MCMCMCOptions(temperatures, SWAP_EVERY, MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE)), "secret");
+    }
+
+    public void testRemoteCoordinatorRequiresSecret() throws Exception {
+        double[] temperatures = new double[]{1.0, 0.8};
+
+        try {
+            new MCMCMCCoordinator("127.0.0.1", 0, null,
+                    new MCMCMCOptions(temperatures, SWAP_EVERY, MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE));
+            fail("a coordinator listening on an explicit interface should require a secret");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testWrongSecretIsRejected() throws Exception {
+        double[] temperatures = new double[]{1.0, 0.8};
+
+        MCMCMCCoordinator coordinator = new MCMCMCCoordinator("127.0.0.1", 0, "secret",
+                new MCMCMCOptions(temperatures, SWAP_EVERY, MCMCMCOptions.SwapScheme.RANDOM_MULTIPLE));
+        Thread coordinatorThread = new Thread(coordinator);
+        coordinatorThread.setDaemon(true);
+        coordinatorThread.start();
+
+        try {
+            MCMCMCWorker.connect("localhost:" + coordinator.getPort(), "guess");
+            fail("a worker with the wrong secret should be rejected");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    private void runDistributed(final MCMCMCCoordinator coordinator, final String secret) throws Exception {
+        final int workerCount = 4;
+
+        Thread coordinatorThread = new Thread(coordinator);
+        coordinatorThread.start();
+
+        final ArrayLogFormatter[] formatters = new ArrayLogFormatter[workerCount];
+        final Exception[] exceptions = new Exception[workerCount];
+        Thread[] workerThreads = new Thread[workerCount];
+        for (int i = 0; i < workerThreads.length; i++) {
+            formatters[i] = new ArrayLogFormatter(false);
+            final MCMC mcmc = createChain(i, formatters[i]);
+            final int index = i;
+            workerThreads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        MCMCMCWorker.connect("localhost:" + coordinator.getPort(), secret).run(mcmc);
+                    } catch (Exception e) {
+                        exceptions[index] = e;
+                    }
+                }
+            });
+            workerThreads[i].start();
+        }
+
+        for (Thread thread : workerThreads) {
+            thread.join();
+        }
+        coordinatorThread.join();
+
+        // each worker has logged the samples it drew while it was the cold chain
+        int count = 0;
+        double mean = 0.0;
+        for (int i = 0; i < formatters.length; i++) {
+            assertNull(exceptions[i]);
+            List<Trace> traces = formatters[i].getTraces();
+            if (traces.size() > 1) {
+                Trace trace = traces.get(1);
+                for (Double value : trace.getValues(0, trace.getValueCount())) {
+                    mean += Math.log(value);
+                    count++;
+                }
+            }
+        }
+        mean /= count;
+
+        assertTrue(count >= CHAIN_LENGTH / LOG_EVERY);
+        assertEquals("mean of log(x) in the cold chain", 0.0, mean, 0.3);
+    }
+
+    private void runAndCheck(MCMCMCOptions.SwapScheme swapScheme) {
+        double[] temperatures = new double[]{1.0, 0.8, 0.6, 0.4};
+
+        ArrayLogFormatter formatter = new ArrayLogFormatter(false);
+        MCMC[] chains = new MCMC[temperatures.length];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = createChain(i, i == 0 ? formatter : new ArrayLogFormatter(false));
+        }
+
+        MCMCMC mc3 = new MCMCMC(chains, new MCMCMCOptions(temperatures, SWAP_EVERY, swapScheme));
+        mc3.setShowOperatorAnalysis(false);
+        mc3.run();
+
+        // the cold chain's logger writes to the first chain's destination whichever chain is cold
+        Trace trace = formatter.getTraces().get(1);
+        List<Double> values = trace.getValues(0, trace.getValueCount());
+        assertEquals("x", trace.getName());
+        assertTrue(values.size() >= CHAIN_LENGTH / LOG_EVERY);
+
+        // x is log normally distributed so log(x) should have a mean of zero
+        double mean = 0.0;
+        for (double value : values) {
+            mean += Math.log(value);
+        }
+        mean /= values.size();
+        assertEquals("mean of log(x) in the cold chain", 0.0, mean, 0.3);
+
+        double[] idleTimes = mc3.getChainIdleTimes();
+        double[] busyTimes = mc3.getChainBusyTimes();
+        double[] idleFractions = mc3.getChainIdleFractions();
+        assertEquals(chains.length, idleTimes.length);
+        for (int i = 0; i < chains.length; i++) {
+            assertTrue(idleTimes[i] >= 0.0);
+            assertTrue(busyTimes[i] > 0.0);
+            assertTrue(idleFractions[i] >= 0.0 && idleFractions[i] < 1.0);
+        }
+    }
+
+    private MCMC createChain(int index, ArrayLogFormatter formatter) {
+        return createChain(index, formatter, false);
+    }
+
+    private MCMC createChain(int index, ArrayLogFormatter formatter, boolean asynchronous) {
+        Parameter x = new Parameter.Default(1.0);
+        x.setId("x");
+        ConstantPopulationModel demo = new ConstantPopulationModel(x, Units.Type.YEARS);
+
+        DistributionLikelihood prior = new DistributionLikelihood(new LogNormalDistribution(0.0, 1.0), 0);
+        prior.addData(x);
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        likelihoods.add(new DummyLikelihood(demo));
+        likelihoods.add(prior);
+        Likelihood posterior = new CompoundLikelihood(0, likelihoods);
+
+        OperatorSchedule schedule = new SimpleOperatorSchedule();
+        MCMCOperator operator = new ScaleOperator(x, 0.75);
+        operator.setWeight(1.0);
+        schedule.addOperator(operator);
+
+        MCLogger logger = new MCLogger(formatter, LOG_EVERY, false);
+        logger.setAsynchronous(asynchronous);
+        logger.add(x);
+
+        MCMC mcmc = new MCMC("mcmc" + index);
+        mcmc.setShowOperatorAnalysis(false);
+        mcmc.init(new MCMCOptions(CHAIN_LENGTH), posterior, schedule, new MCLogger[]{logger});
+        return mcmc;
+    }
+
+    public static Test suite() {
+        return new TestSuite(MCMCMCTest.class);
+    }
+}
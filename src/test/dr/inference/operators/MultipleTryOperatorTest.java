@@ -0,0 +1,197 @@
+/*
+ * MultipleTryOperatorTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.inference.operators;
+
+import dr.evolution.coalescent.CoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.CoalescentLikelihood;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.coalescent.demographicmodel.ConstantPopulationModel;
+import dr.evomodel.operators.ExchangeOperator;
+import dr.evomodel.operators.SubtreeLeapOperator;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.distribution.LogNormalDistributionModel;
+import dr.inference.loggers.ArrayLogFormatter;
+import dr.inference.loggers.MCLogger;
+import dr.inference.markovchain.MarkovChain;
+import dr.inference.mcmc.MCMC;
+import dr.inference.mcmc.MCMCOptions;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.MultipleTryOperator;
+import dr.inference.operators.OperatorSchedule;
+import dr.inference.operators.ScaleOperator;
+import dr.inference.operators.SimpleOperatorSchedule;
+import dr.inference.trace.Trace;
+import dr.math.MathUtils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples a log-normal(0, 1) with a poorly tuned scale operator wrapped in a multiple-try operator
+ * and checks the moments of log(x) and that the extra tries increase the acceptance rate. Also checks
+ * that tree operators can be wrapped (their tries must be reproduced when they are replayed).
+ *
+ * @author Andrew Rambaut
+ */
+public class MultipleTryOperatorTest extends TestCase {
+
+    private static final long CHAIN_LENGTH = 100000;
+    private static final int LOG_EVERY = 10;
+    private static final double SCALE_FACTOR = 0.1;
+
+    public MultipleTryOperatorTest(String name) {
+        super(name);
+    }
+
+    public void testMultipleTries() {
+        MathUtils.setSeed(666);
+        Chain chain = new Chain(4);
+        chain.mcmc.run();
+
+        List<Double> samples = chain.getSamples();
+        double mean = 0.0;
+        for (double value : samples) {
+            mean += Math.log(value);
+        }
+        mean /= samples.size();
+
+        double variance = 0.0;
+        for (double value : samples) {
+            variance += (Math.log(value) - mean) * (Math.log(value) - mean);
+        }
+        variance /= samples.size() - 1;
+
+        assertEquals("mean of log(x)", 0.0, mean, 0.05);
+        assertEquals("variance of log(x)", 1.0, variance, 0.05);
+    }
+
+    public void testAcceptanceIncreases() {
+        MathUtils.setSeed(666);
+        Chain single = new Chain(1);
+        single.mcmc.run();
+
+        MathUtils.setSeed(666);
+        Chain multiple = new Chain(4);
+        multiple.mcmc.run();
+
+        assertTrue("extra tries should be accepted more often",
+                multiple.operator.getAcceptanceProbability() > single.operator.getAcceptanceProbability());
+    }
+
+    public void testTreeOperators() throws Exception {
+        MathUtils.setSeed(666);
+
+        Taxa taxa = new Taxa();
+        for (int i = 0; i < 20; i++) {
+            taxa.addTaxon(new Taxon("taxon" + i));
+        }
+        ConstantPopulation constant = new ConstantPopulation(Units.Type.YEARS);
+        constant.setN0(10.0);
+        DefaultTreeModel treeModel = new DefaultTreeModel("treeModel", new CoalescentSimulator().simulateTree(taxa, constant));
+
+        ConstantPopulationModel constantModel = new ConstantPopulationModel(new Parameter.Default(10.0), Units.Type.YEARS);
+        CoalescentLikelihood coalescent = new CoalescentLikelihood(new TreeIntervals(treeModel, null, null), constantModel);
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        likelihoods.add(coalescent);
+        Likelihood posterior = new CompoundLikelihood(likelihoods);
+
+        OperatorSchedule schedule = new SimpleOperatorSchedule();
+        MCMCOperator exchange = new MultipleTryOperator(new ExchangeOperator(ExchangeOperator.NARROW, treeModel, 1.0), 4, 1.0);
+        schedule.addOperator(exchange);
+        MCMCOperator leap = new MultipleTryOperator(new SubtreeLeapOperator(treeModel, 1.0, 1.0,
+                SubtreeLeapOperator.DistanceKernelType.NORMAL, AdaptationMode.ADAPTATION_OFF, 0.23), 4, 1.0);
+        schedule.addOperator(leap);
+
+        MCMC mcmc = new MCMC("mcmc");
+        mcmc.setShowOperatorAnalysis(false);
+        MCMCOptions options = new MCMCOptions(10000, 100, 1, MarkovChain.EVALUATION_TEST_THRESHOLD,
+                false, 0, 0.234, false, 1.0);
+        mcmc.init(options, posterior, schedule, new MCLogger[0]);
+        // a try that isn't reproduced or an incorrectly restored tree throws
+        mcmc.run();
+
+        assertTrue(exchange.getAcceptCount() > 0);
+        assertTrue(leap.getAcceptCount() > 0);
+    }
+
+    private static class Chain {
+        Chain(int tryCount) {
+            Parameter x = new Parameter.Default(1.0);
+            x.setId("x");
+            x.addBounds(new Parameter.DefaultBounds(Double.POSITIVE_INFINITY, 0.0, 1));
+            // the distribution model hosts x so that it is stored and restored
+            DistributionLikelihood prior = new DistributionLikelihood(new LogNormalDistributionModel(
+                    new Parameter.Default(0.0), new Parameter.Default(1.0), 0.0, false));
+            prior.addData(x);
+
+            List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+            likelihoods.add(prior);
+            Likelihood posterior = new CompoundLikelihood(likelihoods);
+
+            OperatorSchedule schedule = new SimpleOperatorSchedule();
+            operator = new MultipleTryOperator(new ScaleOperator(x, SCALE_FACTOR), tryCount, 1.0);
+            schedule.addOperator(operator);
+
+            formatter = new ArrayLogFormatter(false);
+            MCLogger logger = new MCLogger(formatter, LOG_EVERY, false);
+            logger.add(x);
+
+            mcmc = new MCMC("mcmc");
+            mcmc.setShowOperatorAnalysis(false);
+            MCMCOptions options = new MCMCOptions(CHAIN_LENGTH, 2000, 1, MarkovChain.EVALUATION_TEST_THRESHOLD,
+                    false, 0, 0.234, false, 1.0);
+            mcmc.init(options, posterior, schedule, new MCLogger[]{logger});
+        }
+
+        List<Double> getSamples() {
+            Trace trace = formatter.getTraces().get(1);
+            return trace.getValues(0, trace.getValueCount());
+        }
+
+        final MCMC mcmc;
+        final MCMCOperator operator;
+        final ArrayLogFormatter formatter;
+    }
+
+    public static Test suite() {
+        return new TestSuite(MultipleTryOperatorTest.class);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * BinaryLogTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.inference.trace;
+
+import dr.inference.loggers.BinaryLogFormatter;
+import dr.inference.loggers.LogFormatter;
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.NumberColumn;
+import dr.inference.loggers.TabDelimitedFormatter;
+import dr.inference.trace.BinaryLogFile;
+import dr.inference.trace.LogFileTraces;
+import dr.inference.trace.Trace;
+import dr.inference.trace.TraceType;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+/**
+ * Checks that a binary log reads back the same traces as the equivalent text log.
+ *
+ * @author Andrew Rambaut
+ */
+public class BinaryLogTest extends TestCase {
+
+    private static final String[] LABELS = {"state", "count", "likelihood", "model", "mixed"};
+    private static final int ROWS = 53;
+
+    public BinaryLogTest(String name) {
+        super(name);
+    }
+
+    private static void writeLog(LogFormatter formatter) {
+        formatter.startLogging("test");
+        formatter.logHeading("BEAST test\nGenerated now");
+        formatter.logLabels(LABELS);
+        for (int i = 0; i < ROWS; i++) {
+            formatter.logValues(new String[]{
+                    Integer.toString(i * 1000),
+                    Integer.toString(i % 7),
+                    Double.toString(-1234.5 + Math.sin(i)),
+                    (i % 3 == 0 ? "HKY" : "GTR"),
+                    // integers in the first blocks then a real number
+                    (i < 40 ? Integer.toString(i) : Double.toString(i + 0.5))
+            });
+        }
+        formatter.stopLogging();
+    }
+
+    private static File writeBinaryLog() throws IOException {
+        File file = File.createTempFile("binarylog", ".log");
+        file.deleteOnExit();
+        writeLog(new BinaryLogFormatter(new FileOutputStream(file), 7));
+        return file;
+    }
+
+    private static File writeTextLog() throws IOException {
+        File file = File.createTempFile("textlog", ".log");
+        file.deleteOnExit();
+        writeLog(new TabDelimitedFormatter(new PrintWriter(new FileOutputStream(file))));
+        return file;
+    }
+
+    public void testFile() throws IOException {
+        File file = writeBinaryLog();
+        assertTrue(BinaryLogFile.isBinaryLog(file));
+        assertFalse(BinaryLogFile.isBinaryLog(writeTextLog()));
+
+        BinaryLogFile log = new BinaryLogFile(file);
+        assertEquals(ROWS, log.getRowCount());
+        assertEquals(2, log.getHeadings().size());
+        assertEquals(LABELS.length, log.getColumnCount());
+        assertEquals(BinaryLogFile.ColumnType.INTEGER, log.getColumnType(1));
+        assertEquals(BinaryLogFile.ColumnType.REAL, log.getColumnType(2));
+        assertEquals(BinaryLogFile.ColumnType.STRING, log.getColumnType(3));
+        assertEquals(BinaryLogFile.ColumnType.REAL, log.getColumnType(4));
+
+        long[] states = log.getStates();
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(i * 1000L, states[i]);
+            String[] row = log.getRow(i);
+            assertEquals(Integer.toString(i % 7), row[1]);
+            assertEquals(i % 3 == 0 ? "HKY" : "GTR", row[3]);
+        }
+        log.close();
+    }
+
+    public void testTruncatedBlockIsIgnored() throws IOException {
+        File file = writeBinaryLog();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 10);
+        raf.close();
+
+        BinaryLogFile log = new BinaryLogFile(file);
+        // the last block has 53 % 7 = 4 rows
+        assertEquals(ROWS - 4, log.getRowCount());
+        log.close();
+    }
+
+    public void testSameTracesAsText() throws Exception {
+        LogFileTraces text = new LogFileTraces("text.log", writeTextLog());
+        text.loadTraces();
+        LogFileTraces binary = new LogFileTraces("binary.log", writeBinaryLog());
+        binary.loadTraces();
+
+        assertEquals(text.getTraceCount(), binary.getTraceCount());
+        assertEquals(text.getStateCount(), binary.getStateCount());
+        assertEquals(text.getStepSize(), binary.getStepSize());
+        assertEquals(text.getBurnIn(), binary.getBurnIn());
+        assertEquals(text.getMaxState(), binary.getMaxState());
+
+        for (int i = 0; i < text.getTraceCount(); i++) {
+            assertEquals(text.getTraceName(i), binary.getTraceName(i));
+            assertEquals(i, binary.getTraceIndex(text.getTraceName(i)));
+
+            Trace textTrace = text.getTrace(i);
+            Trace binaryTrace = binary.getTrace(i);
+            assertEquals(textTrace.getTraceType(), binaryTrace.getTraceType());
+            assertEquals(textTrace.getValueCount(), binaryTrace.getValueCount());
+            for (int j = 0; j < textTrace.getValueCount(); j++) {
+                assertEquals(textTrace.getValue(j), binaryTrace.getValue(j), 0.0);
+            }
+        }
+        assertEquals(TraceType.CATEGORICAL, binary.getTrace(2).getTraceType());
+
+        binary.setBurnIn(5000);
+        text.setBurnIn(5000);
+        for (int i = 0; i < text.getTraceCount(); i++) {
+            if (text.getTrace(i).getTraceType().isNumber()) {
+                assertEquals(text.getValues(i), binary.getValues(i));
+            }
+        }
+    }
+
+    public void testNumbersAreNotFormatted() throws IOException {
+        File file = File.createTempFile("binarylog", ".log");
+        file.deleteOnExit();
+
+        // the column is formatted to 3 significant figures for text logs
+        logValues(new BinaryLogFormatter(new FileOutputStream(file), 7), 0, 200, 0.0);
+
+        BinaryLogFile log = new BinaryLogFile(file);
+        assertEquals(BinaryLogFile.ColumnType.REAL, log.getColumnType(1));
+        double[] values = log.getValues(1);
+        long[] states = log.getStates();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(getValue(states[i], 0.0), values[i], 0.0);
+        }
+        log.close();
+    }
+
+    public void testResumeAppends() throws IOException {
+        File file = File.createTempFile("binarylog", ".log");
+        file.deleteOnExit();
+        logValues(new BinaryLogFormatter(file, 7), 0, 530, 0.0);
+
+        // a block that was being written when the run was killed
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 10);
+        raf.close();
+
+        // resume from a checkpoint at state 300 (the first run had logged beyond this)
+        logValues(new BinaryLogFormatter(file, 7), 300, 800, 1.0);
+
+        BinaryLogFile log = new BinaryLogFile(file);
+        assertEquals(2, log.getHeadings().size());
+        assertEquals(2, log.getColumnCount());
+        assertEquals(81, log.getRowCount());
+        long[] states = log.getStates();
+        double[] values = log.getValues(1);
+        for (int i = 0; i < states.length; i++) {
+            assertEquals(i * 10L, states[i]);
+            assertEquals(getValue(states[i], states[i] < 300 ? 0.0 : 1.0), values[i], 0.0);
+        }
+        log.close();
+    }
+
+    private static double getValue(long state, double offset) {
+        return Math.PI * state + offset;
+    }
+
+    private static void logValues(LogFormatter formatter, long firstState, long lastState, final double offset) {
+        final long[] state = new long[1];
+        NumberColumn column = new NumberColumn("x") {
+            public double getDoubleValue() {
+                return getValue(state[0], offset);
+            }
+
+            public boolean isFormattedFromValue() {
+                return true;
+            }
+        };
+        column.setSignificantFigures(3);
+
+        MCLogger logger = new MCLogger(formatter, 10, false);
+        logger.setTitle("BEAST test\nGenerated now");
+        logger.addColumn(column);
+        logger.startLogging();
+        for (state[0] = firstState; state[0] <= lastState; state[0]++) {
+            logger.log(state[0]);
+        }
+        logger.stopLogging();
+    }
+
+    public static Test suite() {
+        return new TestSuite(BinaryLogTest.class);
+    }
+}
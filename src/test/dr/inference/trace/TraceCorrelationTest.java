@@ -0,0 +1,160 @@
+/*
+ * TraceCorrelationTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.inference.trace;
+
+import dr.inference.trace.BatchMeansESS;
+import dr.inference.trace.TraceCorrelation;
+import dr.inference.trace.TraceType;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the ESS of TraceCorrelation against a direct calculation and the batch means ESS against
+ * the known ESS of an AR(1) process.
+ *
+ * @author Andrew Rambaut
+ */
+public class TraceCorrelationTest extends TestCase {
+
+    public TraceCorrelationTest(String name) {
+        super(name);
+    }
+
+    /**
+     * @return an AR(1) series, x[i] = phi * x[i - 1] + e[i], with an ESS of n (1 - phi) / (1 + phi)
+     */
+    private static List<Double> getAR1(int n, double phi, long seed) {
+        Random random = new Random(seed);
+        List<Double> values = new ArrayList<Double>(n);
+        double x = 0.0;
+        for (int i = 0; i < n; i++) {
+            x = phi * x + random.nextGaussian();
+            values.add(x);
+        }
+        return values;
+    }
+
+    /**
+     * The ESS calculated directly at every lag, as TraceCorrelation used to.
+     */
+    private static double getDirectESS(List<Double> valueList) {
+        final int samples = valueList.size();
+        double[] values = new double[samples];
+        double mean = 0.0;
+        for (int i = 0; i < samples; i++) {
+            values[i] = valueList.get(i);
+            mean += values[i];
+        }
+        mean /= samples;
+
+        int maxLag = Math.min(samples - 1, 2000);
+        double[] gammaStat = new double[maxLag];
+        double varStat = 0.0;
+        for (int lag = 0; lag < maxLag; lag++) {
+            for (int j = 0; j < samples - lag; j++) {
+                gammaStat[lag] += (values[j] - mean) * (values[j + lag] - mean);
+            }
+            gammaStat[lag] /= (samples - lag);
+
+            if (lag == 0) {
+                varStat = gammaStat[0];
+            } else if (lag % 2 == 0) {
+                if (gammaStat[lag - 1] + gammaStat[lag] > 0) {
+                    varStat += 2.0 * (gammaStat[lag - 1] + gammaStat[lag]);
+                } else {
+                    maxLag = lag;
+                }
+            }
+        }
+        return samples * gammaStat[0] / varStat;
+    }
+
+    public void testESS() {
+        for (double phi : new double[]{0.1, 0.95, 0.995}) {
+            List<Double> values = getAR1(20000, phi, 1234);
+            TraceCorrelation correlation = new TraceCorrelation(values, TraceType.REAL, 1);
+            double expected = getDirectESS(values);
+            assertEquals("ESS with phi = " + phi, expected, correlation.getESS(), expected * 1E-8);
+        }
+    }
+
+    public void testBatchMeansESS() {
+        final int n = 1000000;
+        final double phi = 0.9;
+        final double expected = n * (1.0 - phi) / (1.0 + phi);
+
+        BatchMeansESS ess = new BatchMeansESS();
+        assertTrue(Double.isNaN(ess.getESS()));
+        for (double value : getAR1(n, phi, 5678)) {
+            ess.add(value);
+        }
+        assertEquals(n, ess.getCount());
+        assertEquals(expected, ess.getESS(), expected * 0.3);
+    }
+
+    public void testSplitRHat() {
+        final int n = 200000;
+        BatchMeansESS[] chains = new BatchMeansESS[]{new BatchMeansESS(), new BatchMeansESS()};
+        BatchMeansESS[] shifted = new BatchMeansESS[]{new BatchMeansESS(), new BatchMeansESS()};
+        for (int i = 0; i < chains.length; i++) {
+            for (double value : getAR1(n, 0.5, 100 + i)) {
+                chains[i].add(value);
+                // the second chain is stuck away from the first
+                shifted[i].add(value + i * 5.0);
+            }
+        }
+        assertEquals(1.0, BatchMeansESS.getSplitRHat(chains, 0.1), 0.01);
+        assertTrue(BatchMeansESS.getSplitRHat(shifted, 0.1) > 1.5);
+    }
+
+    public void testBurnin() {
+        final int n = 200000;
+        final double phi = 0.5;
+        BatchMeansESS ess = new BatchMeansESS();
+        // a starting transient far from the stationary distribution
+        for (int i = 0; i < n / 10; i++) {
+            ess.add(100.0);
+        }
+        for (double value : getAR1(n * 9 / 10, phi, 42)) {
+            ess.add(value);
+        }
+        final double expected = 0.9 * n * (1.0 - phi) / (1.0 + phi);
+        assertTrue(ess.getESS() < expected * 0.5);
+        assertEquals(expected, ess.getESS(0.1), expected * 0.3);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TraceCorrelationTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * RandomStreamTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.math;
+
+import dr.math.MathUtils;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the per-thread random number streams are reproducible and independent of the
+ * shared generator.
+ *
+ * @author Andrew Rambaut
+ */
+public class RandomStreamTest extends MathTestCase {
+
+    public void testStreamsAreReproducible() throws Exception {
+        MathUtils.setSeed(666);
+        MathUtils.RandomStream stream1 = MathUtils.nextRandomStream();
+        MathUtils.RandomStream stream2 = MathUtils.nextRandomStream();
+
+        double[] draws1 = drawOnThread(stream1, 100);
+        double[] draws2 = drawOnThread(stream2, 100);
+        assertFalse(Arrays.equals(draws1, draws2));
+
+        // setting the seed again starts the same sequence of streams
+        MathUtils.setSeed(666);
+        assertTrue(Arrays.equals(draws1, drawOnThread(MathUtils.nextRandomStream(), 100)));
+        assertTrue(Arrays.equals(draws2, drawOnThread(MathUtils.nextRandomStream(), 100)));
+    }
+
+    public void testStreamsDoNotUseSharedGenerator() throws Exception {
+        MathUtils.setSeed(666);
+        MathUtils.RandomStream stream = MathUtils.nextRandomStream();
+        double expected = MathUtils.nextDouble();
+
+        MathUtils.setSeed(666);
+        drawOnThread(stream, 1000);
+
+        MathUtils.RandomStream previous = MathUtils.setThreadRandomStream(stream);
+        MathUtils.nextGaussian();
+        MathUtils.shuffled(10);
+        assertSame(stream, MathUtils.setThreadRandomStream(previous));
+
+        assertEquals(expected, MathUtils.nextDouble(), 0.0);
+    }
+
+    public void testStreamStatesRoundTrip() throws Exception {
+        MathUtils.setSeed(666);
+        MathUtils.RandomStream stream = MathUtils.nextRandomStream();
+        drawOnThread(stream, 10);
+
+        int[][] states = MathUtils.getRandomStreamStates();
+        double[] draws = drawOnThread(stream, 100);
+
+        MathUtils.setRandomStreamStates(states);
+        assertTrue(Arrays.equals(draws, drawOnThread(stream, 100)));
+    }
+
+    private double[] drawOnThread(final MathUtils.RandomStream stream, final int count) throws InterruptedException {
+        final double[] draws = new double[count];
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                MathUtils.setThreadRandomStream(stream);
+                for (int i = 0; i < count; i++) {
+                    draws[i] = MathUtils.nextDouble();
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        return draws;
+    }
+
+    public static Test suite() {
+        return new TestSuite(RandomStreamTest.class);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * ComputeServiceTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package test.dr.util;
+
+import dr.util.ComputeService;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author Andrew Rambaut
+ */
+public class ComputeServiceTest extends TestCase {
+
+    public ComputeServiceTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        ComputeService.setParallelism(2);
+    }
+
+    /**
+     * Tasks that invoke more tasks and wait for them; with only two threads this would deadlock
+     * if waiting threads didn't run the queued tasks.
+     */
+    public void testNestedInvokeAll() throws Exception {
+        ExecutorService pool = ComputeService.getPool("test");
+
+        // 4 + 16 + 64 tasks, the innermost each return 1
+        assertEquals(64L, sum(pool, 3, 4));
+
+        // from a pool thread as well as this one
+        assertEquals(64L, (long) pool.submit(() -> sum(pool, 3, 4)).get());
+    }
+
+    public void testException() throws Exception {
+        ExecutorService pool = ComputeService.getPool("test");
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        tasks.add(() -> 1L);
+        tasks.add(() -> {
+            throw new IOException("failed");
+        });
+
+        List<Future<Long>> futures = pool.invokeAll(tasks);
+        assertEquals(1L, (long) futures.get(0).get());
+        try {
+            futures.get(1).get();
+            fail("expected an ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("failed", e.getCause().getMessage());
+        }
+    }
+
+    public void testReport() throws Exception {
+        ExecutorService pool = ComputeService.getPool("report");
+        pool.submit(() -> 1L).get();
+
+        // shutting down a view of the shared pool does nothing
+        pool.shutdown();
+        assertEquals(2L, (long) pool.submit(() -> 2L).get());
+
+        assertTrue(ComputeService.isUsed());
+        assertEquals(2, ComputeService.getParallelism());
+        assertTrue(ComputeService.getReport().contains("report"));
+    }
+
+    private static long sum(final ExecutorService pool, final int depth, final int width) throws Exception {
+        if (depth == 0) {
+            return 1L;
+        }
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            tasks.add(() -> sum(pool, depth - 1, width));
+        }
+        long total = 0;
+        for (Future<Long> future : pool.invokeAll(tasks)) {
+            total += future.get();
+        }
+        return total;
+    }
+
+    public static Test suite() {
+        return new TestSuite(ComputeServiceTest.class);
+    }
+}
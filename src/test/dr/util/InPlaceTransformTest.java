@@ -0,0 +1,96 @@
+/*
+ * InPlaceTransformTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.util;
+
+import dr.inference.model.Parameter;
+import dr.util.Transform;
+import test.dr.math.MathTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the buffer-filling transform methods used by the HMC leapfrog agree with the allocating ones.
+ *
+ * @author Andrew Rambaut
+ */
+public class InPlaceTransformTest extends MathTestCase {
+
+    private static final double[] VALUES = new double[]{0.5, 1.5, 2.0, 3.0, 0.25};
+    private static final double[] GRADIENT = new double[]{-1.0, 0.5, 2.0, -0.3, 4.0};
+
+    public void testUnivariable() {
+        checkTransform(Transform.LOG, 1, 4);
+        checkTransform(Transform.LOG, 0, VALUES.length);
+    }
+
+    public void testArray() {
+        Parameter parameter = new Parameter.Default(VALUES);
+        checkTransform(new Transform.Array(Transform.LOG, VALUES.length, parameter), 0, VALUES.length);
+        checkTransform(new Transform.Array(Transform.LOG, VALUES.length, parameter), 2, 5);
+    }
+
+    public void testCollection() {
+        Parameter parameter = new Parameter.Default(VALUES);
+        List<Transform.ParsedTransform> segments = new ArrayList<Transform.ParsedTransform>();
+        segments.add(new Transform.ParsedTransform(Transform.LOG, 1, 3));
+        checkTransform(new Transform.Collection(segments, parameter), 0, VALUES.length);
+        checkTransform(new Transform.Collection(segments, parameter), 2, 4);
+    }
+
+    public void testParameterValues() {
+        Parameter parameter = new Parameter.Default(VALUES);
+        double[] buffer = new double[VALUES.length];
+        parameter.getParameterValues(buffer);
+        assertEquals(VALUES, buffer, 0.0);
+    }
+
+    private void checkTransform(Transform transform, int from, int to) {
+
+        double[] buffer = new double[VALUES.length];
+
+        transform.transform(VALUES, from, to, buffer);
+        assertEquals(transform.transform(VALUES, from, to), buffer, 0.0);
+
+        double[] transformed = transform.transform(VALUES, from, to);
+        transform.inverse(transformed, from, to, buffer);
+        assertEquals(transform.inverse(transformed, from, to), buffer, 0.0);
+
+        transform.updateGradientLogDensity(GRADIENT, VALUES, from, to, buffer);
+        assertEquals(transform.updateGradientLogDensity(GRADIENT, VALUES, from, to), buffer, 0.0);
+
+        // the result may alias the input
+        double[] aliased = transformed.clone();
+        transform.inverse(aliased, from, to, aliased);
+        assertEquals(transform.inverse(transformed, from, to), aliased, 0.0);
+
+        aliased = GRADIENT.clone();
+        transform.updateGradientLogDensity(aliased, VALUES, from, to, aliased);
+        assertEquals(transform.updateGradientLogDensity(GRADIENT, VALUES, from, to), aliased, 0.0);
+    }
+}
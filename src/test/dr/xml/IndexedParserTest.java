@@ -0,0 +1,115 @@
+/*
+ * IndexedParserTest.java
+ *
+ * Copyright © 2002-2024 the BEAST Development Team
+ * http://beast.community/about
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ *
+ */
+
+package test.dr.xml;
+
+import dr.inference.model.MatrixParameter;
+import dr.inference.model.Parameter;
+import dr.inference.model.ParameterParser;
+import dr.inferencexml.model.CompoundLikelihoodParser;
+import dr.xml.XMLObject;
+import dr.xml.XMLObjectParser;
+import dr.xml.XMLParser;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Checks that parsers added from an index are created once, when their element is first needed,
+ * and can be replaced as parsers added directly can.
+ *
+ * @author Andrew Rambaut
+ */
+public class IndexedParserTest extends TestCase {
+
+    public IndexedParserTest(String name) {
+        super(name);
+    }
+
+    public void testParserCreatedWhenUsed() {
+        XMLParser parser = new XMLParser(false, false, false, null);
+        for (String name : new CompoundLikelihoodParser().getParserNames()) {
+            parser.addIndexedXMLObjectParser(name, CompoundLikelihoodParser.class.getName(), false);
+        }
+        parser.addIndexedXMLObjectParser(MatrixParameter.MATRIX_PARAMETER,
+                MatrixParameter.class.getName() + "#PARSER", false);
+
+        assertTrue(parser.getLoadedIndexedParsers().isEmpty());
+
+        XMLObjectParser prior = parser.getParser(CompoundLikelihoodParser.PRIOR);
+        assertTrue(prior instanceof CompoundLikelihoodParser);
+        // the other names of the parser don't create it again
+        assertSame(prior, parser.getParser(CompoundLikelihoodParser.LIKELIHOOD));
+        assertEquals(1, parser.getLoadedIndexedParsers().size());
+        assertEquals(1, parser.getUnloadedIndexedParserCount());
+
+        assertSame(MatrixParameter.PARSER, parser.getParser(MatrixParameter.MATRIX_PARAMETER));
+        assertEquals(0, parser.getUnloadedIndexedParserCount());
+    }
+
+    public void testReplacement() {
+        XMLParser parser = new XMLParser(false, false, false, null);
+        parser.addIndexedXMLObjectParser(ParameterParser.PARAMETER, "dr.no.SuchParser", false);
+
+        try {
+            parser.addXMLObjectParser(new ParameterParser(), false);
+            fail("an indexed parser shouldn't be replaced");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+
+        assertTrue(parser.addXMLObjectParser(new ParameterParser(), true));
+        assertTrue(parser.getParser(ParameterParser.PARAMETER) instanceof ParameterParser);
+        assertTrue(parser.getLoadedIndexedParsers().isEmpty());
+
+        try {
+            parser.addIndexedXMLObjectParser(ParameterParser.PARAMETER, ParameterParser.class.getName(), false);
+            fail("a parser shouldn't be replaced by an indexed one");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testParse() throws Exception {
+        XMLParser parser = new XMLParser(false, false, false, null);
+        parser.addIndexedXMLObjectParser(ParameterParser.PARAMETER, ParameterParser.class.getName(), false);
+
+        Map<String, XMLObject> objects = parser.parse(new StringReader(
+                "<beast><parameter id=\"x\" value=\"1.0 2.0\"/></beast>"), false);
+
+        Parameter x = (Parameter) objects.get("x").getNativeObject();
+        assertEquals(2, x.getDimension());
+        assertEquals(2.0, x.getParameterValue(1));
+    }
+
+    public static Test suite() {
+        return new TestSuite(IndexedParserTest.class);
+    }
+}